@@ -45,7 +45,7 @@ import loci.formats.ChannelFiller;
 import loci.formats.DimensionSwapper;
 import loci.formats.FormatException;
 import loci.formats.FormatTools;
-import loci.formats.ImageReader;
+import loci.formats.IFormatReader;
 import loci.formats.MinMaxCalculator;
 import loci.formats.meta.MetadataRetrieve;
 import loci.formats.meta.MetadataStore;
@@ -88,7 +88,7 @@ public class Colorizer {
     final ImageProcessorReader reader = process.getReader();
     final DimensionSwapper dimSwapper = process.getDimensionSwapper();
     final ChannelFiller channelFiller = process.getChannelFiller();
-    final ImageReader imageReader = process.getImageReader();
+    final IFormatReader baseReader = process.getBaseReader();
 
     for (int i=0; i<imps.size(); i++) {
       ImagePlus imp = imps.get(i);
@@ -116,7 +116,7 @@ public class Colorizer {
       LUT[] luts;
       if (options.isColorModeDefault()) {
         // NB: Default color mode behavior depends on the situation.
-        final boolean isRGB = reader.isRGB() || imageReader.isRGB();
+        final boolean isRGB = reader.isRGB() || baseReader.isRGB();
         if (isRGB || channelFiller.isFilled()) {
           // NB: The original data had more than one channel per plane
           // (e.g., RGB image planes), so we use the composite display mode.
@@ -354,7 +354,7 @@ public class Colorizer {
         // rather than always assuming that the first channel is red, the
         // second green, etc. we will take into account the channel color
         // metadata and the acquisition wavelength
-        ImageReader reader = process.getImageReader();
+        IFormatReader reader = process.getBaseReader();
         MetadataStore store = reader.getMetadataStore();
         if (store instanceof MetadataRetrieve) {
           MetadataRetrieve retrieve = (MetadataRetrieve) store;
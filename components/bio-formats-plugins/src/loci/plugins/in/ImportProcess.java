@@ -29,6 +29,7 @@ package loci.plugins.in;
 
 import ij.IJ;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
@@ -54,6 +55,7 @@ import loci.formats.FormatException;
 import loci.formats.FormatTools;
 import loci.formats.IFormatReader;
 import loci.formats.ImageReader;
+import loci.formats.Memoizer;
 import loci.formats.MinMaxCalculator;
 import loci.formats.TileStitcher;
 import loci.formats.in.MetadataLevel;
@@ -89,6 +91,7 @@ public class ImportProcess implements StatusReporter {
 
   // reader stack, from bottom to top
   private IFormatReader baseReader;
+  private Memoizer memoizer;
   private ImageReader imageReader;
   private FileStitcher fileStitcher;
   private ChannelFiller channelFiller;
@@ -233,6 +236,16 @@ public class ImportProcess implements StatusReporter {
     assertStep(ImportStep.READER);
     return baseReader;
   }
+  /**
+   * Gets the memo wrapper around the base reader. After
+   * {@link ImportStep#FILE}, the base reader is the one it initialized,
+   * which may have been restored from a memo file.
+   * Valid only after {@link ImportStep#READER}.
+   */
+  public Memoizer getMemoizer() {
+    assertStep(ImportStep.READER);
+    return memoizer;
+  }
   /** Valid only after {@link ImportStep#READER}. */
   public ImageReader getImageReader() {
     assertStep(ImportStep.READER);
@@ -489,25 +502,28 @@ public class ImportProcess implements StatusReporter {
     saveDefaults();
 
     BF.status(options.isQuiet(), "Analyzing " + getIdName());
-    baseReader.setMetadataFiltered(true);
-    baseReader.setGroupFiles(!options.isUngroupFiles() || options.isGroupFiles());
+    memoizer.setMetadataFiltered(true);
+    memoizer.setGroupFiles(!options.isUngroupFiles() || options.isGroupFiles());
     if(options != null && !options.showROIs()){
-      baseReader.getMetadataOptions().setMetadataLevel(
+      memoizer.getMetadataOptions().setMetadataLevel(
           MetadataLevel.NO_OVERLAYS);
     }
-    baseReader.setId(options.isUsingPatternIds() ?
+    memoizer.setId(options.isUsingPatternIds() ?
       new FilePattern(options.getId()).getFiles()[0] : options.getId());
-    
+
+    // the memoizer replaces its reader when restoring from a memo file
+    baseReader = memoizer.getReader();
+
     boolean mustGroup = baseReader.fileGroupOption(options.getId()) == FormatTools.MUST_GROUP;
     options.setMustGroup(mustGroup);
   }
 
   /** Performed following ImportStep.STACK notification. */
   private void initializeStack() throws FormatException, IOException {
-    IFormatReader r = baseReader;
+    IFormatReader r = memoizer;
 
     if (options.isGroupFiles()) {
-      r = fileStitcher = new FileStitcher(baseReader);
+      r = fileStitcher = new FileStitcher(memoizer);
 
       // overwrite base filename with file pattern
       String id = options.getId();
@@ -669,7 +685,11 @@ public class ImportProcess implements StatusReporter {
           "Sorry, there was a problem constructing the OME-XML metadata store");
         throw new FormatException(exc);
     }
-    baseReader.setMetadataStore(meta);
+    // memo files are only valid for local files whose timestamps can be
+    // checked, so other sources are never memoized
+    File memoDir = options.isLocal() ? LociPrefs.getMemoDirectory() : null;
+    memoizer = new Memoizer(baseReader, memoDir);
+    memoizer.setMetadataStore(meta);
 
     BF.status(options.isQuiet(), "");
     DebugTools.enableIJLogging(IJ.debugMode);
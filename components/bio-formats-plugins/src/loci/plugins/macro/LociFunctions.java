@@ -32,6 +32,7 @@ import ij.ImagePlus;
 
 import java.io.IOException;
 
+import loci.common.Location;
 import loci.common.Region;
 import loci.common.services.DependencyException;
 import loci.common.services.ServiceException;
@@ -42,6 +43,7 @@ import loci.formats.FormatException;
 import loci.formats.FormatTools;
 import loci.formats.IFormatReader;
 import loci.formats.ImageReader;
+import loci.formats.Memoizer;
 import loci.formats.Modulo;
 import loci.formats.meta.MetadataRetrieve;
 import loci.formats.services.OMEXMLService;
@@ -82,32 +84,23 @@ public class LociFunctions extends MacroFunctions {
   private ImageProcessorReader r;
   private int series = 0;
 
+  /** Whether the reader stack includes a {@link FileStitcher}. */
+  private boolean stitchFiles = true;
+
+  /** Whether the reader stack includes a {@link Memoizer}. */
+  private boolean memoized;
+
   // -- Constructor --
 
   public LociFunctions() {
-    boolean groupFiles = true;
     try {
       ImporterOptions options = new ImporterOptions();
-      groupFiles = options.isGroupFiles();
+      stitchFiles = options.isGroupFiles();
     }
     catch (IOException exc) {
       IJ.handleException(exc);
     }
-    if (groupFiles) {
-      r = new ImageProcessorReader(new ChannelSeparator(
-        new FileStitcher(LociPrefs.makeImageReader(), true)));
-    }
-    else {
-      r = new ImageProcessorReader(new ChannelSeparator(
-        LociPrefs.makeImageReader()));
-    }
-    try {
-      ServiceFactory factory = new ServiceFactory();
-      OMEXMLService service = factory.getInstance(OMEXMLService.class);
-      r.setMetadataStore(service.createOMEXMLMetadata());
-    }
-    catch (DependencyException de) { }
-    catch (ServiceException se) { }
+    r = createReader(true);
   }
 
   // -- LociFunctions API methods - version numbers --
@@ -424,6 +417,18 @@ public class LociFunctions extends MacroFunctions {
   }
 
   public void setId(String id) throws FormatException, IOException {
+    // memo files are only valid for local files whose timestamps can be
+    // checked, so other sources are read without the memoizer
+    boolean local = new Location(id).exists();
+    if (local != memoized) {
+      ImageProcessorReader reader = createReader(local);
+      reader.setNormalized(r.isNormalized());
+      reader.setOriginalMetadataPopulated(r.isOriginalMetadataPopulated());
+      reader.setGroupFiles(r.isGroupFiles());
+      reader.setMetadataFiltered(r.isMetadataFiltered());
+      r.close();
+      r = reader;
+    }
     r.setId(id);
   }
 
@@ -770,6 +775,36 @@ public class LociFunctions extends MacroFunctions {
     }
   }
 
+  // -- Helper methods --
+
+  /**
+   * Creates the reader stack, memoizing the base reader if requested.
+   * Only local files should be memoized; see {@link #setId(String)}.
+   */
+  private ImageProcessorReader createReader(boolean memoize) {
+    IFormatReader base = LociPrefs.makeImageReader();
+    if (memoize) {
+      base = new Memoizer(base, LociPrefs.getMemoDirectory());
+    }
+    memoized = memoize;
+    ImageProcessorReader reader;
+    if (stitchFiles) {
+      reader = new ImageProcessorReader(new ChannelSeparator(
+        new FileStitcher(base, true)));
+    }
+    else {
+      reader = new ImageProcessorReader(new ChannelSeparator(base));
+    }
+    try {
+      ServiceFactory factory = new ServiceFactory();
+      OMEXMLService service = factory.getInstance(OMEXMLService.class);
+      reader.setMetadataStore(service.createOMEXMLMetadata());
+    }
+    catch (DependencyException de) { }
+    catch (ServiceException se) { }
+    return reader;
+  }
+
   // -- Utility methods --
 
   /** Finds the Plane index corresponding to the given image plane number. */
@@ -35,6 +35,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
+import loci.common.DebugTools;
 import loci.formats.ChannelMerger;
 import loci.formats.FormatException;
 import loci.formats.FormatTools;
@@ -44,6 +45,7 @@ import loci.formats.cache.Cache;
 import loci.formats.cache.CacheException;
 import loci.formats.cache.CacheStrategy;
 import loci.formats.cache.CrosshairStrategy;
+import loci.plugins.BF;
 import loci.plugins.util.RecordedImageProcessor.MethodEntry;
 
 /**
@@ -58,6 +60,7 @@ public class BFVirtualStack extends VirtualStack {
   protected ImageProcessorReader reader;
   protected String id;
   protected Cache cache;
+  protected PlanePrefetcher prefetcher;
 
   private List<List<MethodEntry>> methodStacks;
   private int currentSlice = -1;
@@ -123,7 +126,26 @@ public class BFVirtualStack extends VirtualStack {
     len[len.length - 1] = r.getSizeT();
     CacheStrategy strategy = new CrosshairStrategy(len);
 
-    cache = new Cache(strategy, new ImageProcessorSource(r), true);
+    // planes are read ahead in the background if memory allows; the cache
+    // then only tracks the current position, as updating it would read
+    // planes on the calling thread
+    long prefetchBytes = LociPrefs.getPrefetchMemory() * 1024L * 1024L;
+    if (prefetchBytes > 0) {
+      try {
+        prefetcher = new PlanePrefetcher(reader, path, prefetchBytes);
+        if (!prefetcher.isEnabled()) {
+          prefetcher.close();
+          prefetcher = null;
+        }
+      }
+      catch (FormatException exc) {
+        BF.debug("Prefetching disabled for " + path);
+        BF.debug(DebugTools.getStackTrace(exc));
+      }
+    }
+
+    cache = new Cache(strategy, new ImageProcessorSource(r),
+      prefetcher == null);
 
     methodStacks = new ArrayList<List<MethodEntry>>();
     for (int i=0; i<r.getImageCount(); i++) {
@@ -139,6 +161,9 @@ public class BFVirtualStack extends VirtualStack {
 
   public Cache getCache() { return cache; }
 
+  /** Gets the background plane prefetcher, or null if it is disabled. */
+  public PlanePrefetcher getPrefetcher() { return prefetcher; }
+
   public RecordedImageProcessor getRecordedProcessor() {
     return currentProcessor;
   }
@@ -152,6 +177,13 @@ public class BFVirtualStack extends VirtualStack {
     this.planeIndexes = planeIndexes;
   }
 
+  /** Stops prefetching and releases the prefetch reader. */
+  public void close() {
+    if (prefetcher != null) {
+      prefetcher.close();
+    }
+  }
+
   // -- VirtualStack API methods --
 
   @Override
@@ -179,10 +211,15 @@ public class BFVirtualStack extends VirtualStack {
       exc.printStackTrace();
     }
 
+    int index = reader.getIndex(pos[0], pos[1], pos[2]);
+    if (ip == null && prefetcher != null) {
+      ip = prefetcher.get(index);
+    }
+
     // cache missed
     try {
       if (ip == null) {
-        ip = reader.openProcessors(reader.getIndex(pos[0], pos[1], pos[2]))[0];
+        ip = reader.openProcessors(index)[0];
       }
     }
     catch (FormatException exc) {
@@ -192,6 +229,10 @@ public class BFVirtualStack extends VirtualStack {
       exc.printStackTrace();
     }
 
+    if (prefetcher != null) {
+      prefetchAfter(n - 1);
+    }
+
     if (colorize) {
       // apply color table, if necessary
       byte[] lut = new byte[256];
@@ -223,10 +264,13 @@ public class BFVirtualStack extends VirtualStack {
         catch (CacheException exc) {
           exc.printStackTrace();
         }
+        int channelIndex = reader.getIndex(pos[0], channel, pos[2]);
+        if (otherChannels[i] == null && prefetcher != null) {
+          otherChannels[i] = prefetcher.get(channelIndex);
+        }
         if (otherChannels[i] == null) {
           try {
-            int index = reader.getIndex(pos[0], channel, pos[2]);
-            otherChannels[i] = reader.openProcessors(index)[0];
+            otherChannels[i] = reader.openProcessors(channelIndex)[0];
           }
           catch (FormatException exc) {
             exc.printStackTrace();
@@ -236,28 +280,13 @@ public class BFVirtualStack extends VirtualStack {
           }
         }
       }
-      currentProcessor = new RecordedImageProcessor(ip, pos[1], otherChannels);
-      currentProcessor.setDoRecording(record);
-      if (calibrationTable == null) {
-        calibrationTable = currentProcessor.getChild().getCalibrationTable();
-      }
-      else {
-        currentProcessor.setCalibrationTable(calibrationTable);
-      }
-      return currentProcessor.getChild();
+      return setCurrentProcessor(
+        new RecordedImageProcessor(ip, pos[1], otherChannels));
     }
 
     if (ip != null) {
       currentSlice = n - 1;
-      currentProcessor = new RecordedImageProcessor(ip);
-      currentProcessor.setDoRecording(record);
-      if (calibrationTable == null) {
-        calibrationTable = currentProcessor.getChild().getCalibrationTable();
-      }
-      else {
-        currentProcessor.setCalibrationTable(calibrationTable);
-      }
-      return currentProcessor.getChild();
+      return setCurrentProcessor(new RecordedImageProcessor(ip));
     }
 
     return null;
@@ -283,4 +312,52 @@ public class BFVirtualStack extends VirtualStack {
     return planeIndexes == null ? reader.getImageCount() : planeIndexes.length;
   }
 
+  // -- Helper methods --
+
+  /**
+   * Replaces the current processor, applying the calibration table of the
+   * stack to it. Returns the processor to display.
+   */
+  private ImageProcessor setCurrentProcessor(RecordedImageProcessor proc) {
+    // ImageJ sets the calibration table on the displayed processor; planes
+    // from the prefetcher are new copies, so that processor is not returned
+    // again and the table must be taken from it before it is replaced
+    if (calibrationTable == null && currentProcessor != null) {
+      calibrationTable = currentProcessor.getChild().getCalibrationTable();
+    }
+    currentProcessor = proc;
+    currentProcessor.setDoRecording(record);
+    if (calibrationTable == null) {
+      calibrationTable = currentProcessor.getChild().getCalibrationTable();
+    }
+    else {
+      currentProcessor.setCalibrationTable(calibrationTable);
+    }
+    return currentProcessor.getChild();
+  }
+
+  /**
+   * Queues the planes needed by the slices that are expected to be
+   * displayed after the given 0-based slice.
+   */
+  private void prefetchAfter(int slice) {
+    int[] slices = prefetcher.nextSlices(slice, getSize());
+    ChannelMerger merger = merge ? new ChannelMerger(reader) : null;
+    int planesPerSlice = merge ? reader.getSizeC() : 1;
+    int[] planes = new int[slices.length * planesPerSlice];
+    for (int i=0; i<slices.length; i++) {
+      int sliceIndex =
+        planeIndexes == null ? slices[i] : planeIndexes[slices[i]];
+      int[] zct = merge ?
+        merger.getZCTCoords(sliceIndex) : reader.getZCTCoords(sliceIndex);
+      if (merge) {
+        for (int c=0; c<planesPerSlice; c++) {
+          planes[i * planesPerSlice + c] = reader.getIndex(zct[0], c, zct[2]);
+        }
+      }
+      else planes[i] = reader.getIndex(zct[0], zct[1], zct[2]);
+    }
+    prefetcher.prefetch(planes);
+  }
+
 }
@@ -29,6 +29,8 @@ package loci.plugins.util;
 
 import ij.Prefs;
 
+import java.io.File;
+
 import loci.formats.ClassList;
 import loci.formats.FormatTools;
 import loci.formats.IFormatReader;
@@ -67,6 +69,15 @@ public final class LociPrefs {
   public static final String PREF_SLICE_LABEL_BASE_INDEX = "bioformats.sliceLabelBaseIndex";
   public static final String PREF_CELLSENS_FAIL =
     "bioformats.cellsens.fail_on_missing_ets";
+  public static final String PREF_PREFETCH_MEMORY =
+    "bioformats.prefetchMemory";
+  public static final String PREF_MEMO_DIRECTORY = "bioformats.memoDirectory";
+
+  /** Default memory for prefetched virtual stack planes, in megabytes. */
+  public static final int PREFETCH_MEMORY_DEFAULT = 256;
+
+  /** Default memo file directory, relative to the ImageJ preferences. */
+  public static final String MEMO_DIRECTORY_DEFAULT = "bioformats-memo";
 
   // -- Constructor --
 
@@ -177,6 +188,33 @@ public final class LociPrefs {
     return Prefs.get(PREF_CELLSENS_FAIL, CellSensReader.FAIL_ON_MISSING_DEFAULT);
   }
 
+  /**
+   * Gets the number of megabytes of decoded planes that each virtual stack
+   * may prefetch in the background; 0 disables prefetching.
+   */
+  public static int getPrefetchMemory() {
+    return Prefs.getInt(PREF_PREFETCH_MEMORY, PREFETCH_MEMORY_DEFAULT);
+  }
+
+  /**
+   * Gets the directory in which the importer caches initialized readers
+   * as memo files, creating it if necessary. Returns null if the
+   * preference is empty or the directory cannot be created, in which case
+   * memo files are disabled.
+   */
+  public static File getMemoDirectory() {
+    String path = Prefs.get(PREF_MEMO_DIRECTORY, null);
+    if (path == null) {
+      String prefsDir = Prefs.getPrefsDir();
+      if (prefsDir == null) return null;
+      path = prefsDir + File.separator + MEMO_DIRECTORY_DEFAULT;
+    }
+    if (path.trim().isEmpty()) return null;
+    File dir = new File(path);
+    if (!dir.isDirectory() && !dir.mkdirs()) return null;
+    return dir;
+  }
+
   // -- Helper methods --
 
   private static boolean getPref(String pref,
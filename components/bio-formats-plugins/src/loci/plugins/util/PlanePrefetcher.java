@@ -0,0 +1,363 @@
+/*
+ * #%L
+ * Bio-Formats Plugins for ImageJ: a collection of ImageJ plugins including the
+ * Bio-Formats Importer, Bio-Formats Exporter, Bio-Formats Macro Extensions,
+ * Data Browser and Stack Slicer.
+ * %%
+ * Copyright (C) 2026 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.plugins.util;
+
+import ij.process.ImageProcessor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import loci.common.DebugTools;
+import loci.formats.DimensionSwapper;
+import loci.formats.FileStitcher;
+import loci.formats.FormatException;
+import loci.formats.FormatTools;
+import loci.formats.IFormatReader;
+import loci.formats.ReaderWrapper;
+import loci.plugins.BF;
+
+/**
+ * Decodes image planes ahead of time in a background thread, so that
+ * scrolling through a virtual stack does not wait on the reader.
+ * <p>
+ * Planes are read with a separate copy of the reader stack, which is
+ * initialized on the prefetch thread the first time it is needed. The copy
+ * uses the same reader classes and memo settings as the original stack, so
+ * when a memo directory is configured it is restored from the memo file
+ * written by the original reader instead of parsing the dataset again. Decoded
+ * planes are kept in a cache bounded by the total size of their pixel data.
+ * None of the methods called by a virtual stack wait on plane decoding.
+ */
+public class PlanePrefetcher implements Runnable {
+
+  // -- Constants --
+
+  /** Number of slices to read ahead of the current slice. */
+  public static final int DEFAULT_DEPTH = 8;
+
+  // -- Fields --
+
+  private final String id;
+  private final int series;
+  private final long maxBytes;
+  private final int maxPlanes;
+
+  /** Dimensions that the prefetch reader must match. */
+  private final int sizeX, sizeY, pixelType, imageCount;
+  private final String dimensionOrder;
+
+  /** Input and output orders of each DimensionSwapper in the reader stack. */
+  private final List<String[]> swappedOrders = new ArrayList<String[]>();
+
+  /** Copy of the reader stack; only used by the prefetch thread. */
+  private ImageProcessorReader reader;
+
+  private final Object lock = new Object();
+
+  /** Decoded planes, in least-recently-used order. Guarded by lock. */
+  private final LinkedHashMap<Integer, ImageProcessor> planes =
+    new LinkedHashMap<Integer, ImageProcessor>(16, 0.75f, true);
+  private long bytes;
+
+  /** Planes to read, in order of preference. Guarded by lock. */
+  private int[] pending = new int[0];
+  private int nextPending;
+
+  private Thread loader;
+  private boolean stop;
+  private boolean failed;
+
+  /** Last displayed slice and the predicted step between slices. */
+  private int lastSlice = -1;
+  private int stride = 1;
+
+  // -- Constructor --
+
+  /**
+   * Constructs a prefetcher for the current series of the given reader.
+   *
+   * @param r the reader used by the virtual stack; it is duplicated with
+   *   {@link ReaderWrapper#duplicate(Class)}, and never used by the prefetch
+   *   thread
+   * @param id the dataset to open with the duplicated reader
+   * @param maxBytes maximum number of bytes of pixel data to keep
+   * @throws FormatException if the reader stack cannot be duplicated
+   */
+  public PlanePrefetcher(IFormatReader r, String id, long maxBytes)
+    throws FormatException
+  {
+    if (!(r instanceof ReaderWrapper)) {
+      throw new FormatException("Cannot duplicate " + r.getClass().getName());
+    }
+    this.id = id;
+    this.maxBytes = maxBytes;
+    series = r.getSeries();
+    sizeX = r.getSizeX();
+    sizeY = r.getSizeY();
+    pixelType = r.getPixelType();
+    imageCount = r.getImageCount();
+    dimensionOrder = r.getDimensionOrder();
+    for (DimensionSwapper swapper : getSwappers(r)) {
+      swappedOrders.add(new String[] {
+        swapper.getInputOrder(), swapper.getDimensionOrder()});
+    }
+
+    // ImageJ stores 32 and 64 bit pixels as floats
+    long planeBytes = (long) sizeX * sizeY *
+      Math.min(4, FormatTools.getBytesPerPixel(pixelType));
+    maxPlanes = (int) Math.min(Integer.MAX_VALUE,
+      maxBytes / Math.max(1, planeBytes));
+
+    IFormatReader copy = ((ReaderWrapper) r).duplicate(null);
+    copy.setGroupFiles(r.isGroupFiles());
+    copy.setMetadataOptions(r.getMetadataOptions());
+    copy.setFlattenedResolutions(r.hasFlattenedResolutions());
+    reader = copy instanceof ImageProcessorReader ?
+      (ImageProcessorReader) copy : new ImageProcessorReader(copy);
+  }
+
+  // -- PlanePrefetcher API methods --
+
+  /**
+   * Returns whether at least two planes fit in the cache, so that a plane
+   * can be prefetched while another one is displayed.
+   */
+  public boolean isEnabled() {
+    synchronized (lock) {
+      return maxPlanes > 1 && !failed && !stop;
+    }
+  }
+
+  /**
+   * Gets a copy of the given plane if it has already been decoded.
+   * This never waits for the prefetch thread.
+   *
+   * @param no the plane index in the reader
+   * @return the decoded plane, or null if it is not cached
+   */
+  public ImageProcessor get(int no) {
+    ImageProcessor ip;
+    synchronized (lock) {
+      ip = planes.get(no);
+    }
+    // callers may modify the returned processor in place
+    return ip == null ? null : ip.duplicate();
+  }
+
+  /**
+   * Records that the given slice is displayed, and predicts the slices that
+   * will be displayed next. The step between the last two slices determines
+   * the direction; larger jumps only keep their direction.
+   *
+   * @param slice the 0-based index of the displayed slice
+   * @param sliceCount the number of slices in the stack
+   * @return up to {@link #DEFAULT_DEPTH} slice indices, nearest first
+   */
+  public int[] nextSlices(int slice, int sliceCount) {
+    synchronized (lock) {
+      if (lastSlice >= 0 && slice != lastSlice) {
+        int delta = slice - lastSlice;
+        stride = Math.abs(delta) <= DEFAULT_DEPTH ? delta : Integer.signum(delta);
+      }
+      lastSlice = slice;
+    }
+    int[] next = new int[DEFAULT_DEPTH];
+    int count = 0;
+    for (int i=1; i<=DEFAULT_DEPTH; i++) {
+      long s = slice + (long) stride * i;
+      if (s < 0 || s >= sliceCount) break;
+      next[count++] = (int) s;
+    }
+    int[] slices = new int[count];
+    System.arraycopy(next, 0, slices, 0, count);
+    return slices;
+  }
+
+  /**
+   * Replaces the planes waiting to be read. Planes that are already cached
+   * are skipped; the list is truncated to the number of planes that fit in
+   * the cache. This returns immediately.
+   *
+   * @param no plane indices in the reader, in order of preference
+   */
+  public void prefetch(int[] no) {
+    synchronized (lock) {
+      if (stop || failed || maxPlanes < 2) return;
+      int count = Math.min(no.length, maxPlanes - 1);
+      pending = new int[count];
+      System.arraycopy(no, 0, pending, 0, count);
+      nextPending = 0;
+      if (loader == null) {
+        loader = new Thread(this, "BioFormats-Prefetch");
+        loader.setDaemon(true);
+        loader.setPriority(Thread.MIN_PRIORITY);
+        loader.start();
+      }
+      lock.notifyAll();
+    }
+  }
+
+  /**
+   * Stops prefetching and discards all cached planes. The prefetch reader
+   * is closed by the prefetch thread once any plane it is reading has been
+   * decoded, so this does not wait.
+   */
+  public void close() {
+    synchronized (lock) {
+      stop = true;
+      planes.clear();
+      bytes = 0;
+      lock.notifyAll();
+      if (loader == null) closeReader();
+    }
+  }
+
+  // -- Runnable API methods --
+
+  /** Reads pending planes until the prefetcher is closed. */
+  @Override
+  public void run() {
+    try {
+      while (true) {
+        int no;
+        synchronized (lock) {
+          no = nextPlane();
+          while (no < 0 && !stop) {
+            lock.wait();
+            no = nextPlane();
+          }
+          if (stop) break;
+        }
+
+        ImageProcessor ip = null;
+        Exception exc = null;
+        try {
+          ip = read(no);
+        }
+        catch (FormatException e) { exc = e; }
+        catch (IOException e) { exc = e; }
+        if (exc != null) {
+          BF.debug("Prefetching disabled for " + id);
+          BF.debug(DebugTools.getStackTrace(exc));
+        }
+        synchronized (lock) {
+          if (ip == null) {
+            failed = true;
+            break;
+          }
+          if (!stop) store(no, ip);
+        }
+      }
+    }
+    catch (InterruptedException exc) {
+      BF.debug(DebugTools.getStackTrace(exc));
+    }
+    finally {
+      closeReader();
+    }
+  }
+
+  // -- Helper methods --
+
+  /** Gets the next pending plane that is not cached, or -1. */
+  private int nextPlane() {
+    while (nextPending < pending.length) {
+      int no = pending[nextPending++];
+      if (no >= 0 && no < imageCount && !planes.containsKey(no)) return no;
+    }
+    return -1;
+  }
+
+  /** Decodes a plane with the prefetch reader, opening it if necessary. */
+  private ImageProcessor read(int no) throws FormatException, IOException {
+    if (reader.getCurrentFile() == null) {
+      reader.setId(id);
+      reader.setSeries(series);
+      List<DimensionSwapper> swappers = getSwappers(reader);
+      for (int i=0; i<swappers.size() && i<swappedOrders.size(); i++) {
+        swappers.get(i).swapDimensions(swappedOrders.get(i)[0]);
+        swappers.get(i).setOutputOrder(swappedOrders.get(i)[1]);
+      }
+      if (reader.getSizeX() != sizeX || reader.getSizeY() != sizeY ||
+        reader.getPixelType() != pixelType ||
+        reader.getImageCount() != imageCount ||
+        !dimensionOrder.equals(reader.getDimensionOrder()))
+      {
+        throw new FormatException("Duplicated reader does not match " + id);
+      }
+    }
+    return reader.openProcessors(no)[0];
+  }
+
+  /** Adds a plane to the cache, dropping the least recently used planes. */
+  void store(int no, ImageProcessor ip) {
+    synchronized (lock) {
+      planes.put(no, ip);
+      bytes += getBytes(ip);
+      Iterator<Map.Entry<Integer, ImageProcessor>> it =
+        planes.entrySet().iterator();
+      while (bytes > maxBytes && it.hasNext()) {
+        Map.Entry<Integer, ImageProcessor> eldest = it.next();
+        bytes -= getBytes(eldest.getValue());
+        it.remove();
+      }
+    }
+  }
+
+  private void closeReader() {
+    try {
+      reader.close();
+    }
+    catch (IOException exc) {
+      BF.debug(DebugTools.getStackTrace(exc));
+    }
+  }
+
+  /**
+   * Gets the dimension swappers in a reader stack, outermost first. Readers
+   * wrapped by a FileStitcher are managed by the stitcher and are skipped.
+   */
+  private static List<DimensionSwapper> getSwappers(IFormatReader r) {
+    List<DimensionSwapper> swappers = new ArrayList<DimensionSwapper>();
+    while (r instanceof ReaderWrapper && !(r instanceof FileStitcher)) {
+      if (r instanceof DimensionSwapper) swappers.add((DimensionSwapper) r);
+      r = ((ReaderWrapper) r).getReader();
+    }
+    return swappers;
+  }
+
+  private static long getBytes(ImageProcessor ip) {
+    int bitDepth = ip.getBitDepth();
+    return (long) ip.getPixelCount() * (bitDepth == 24 ? 4 : bitDepth / 8);
+  }
+
+}
@@ -99,6 +99,10 @@ public class VirtualImagePlus extends ImagePlus {
 
   @Override
   public void close() {
+    ImageStack stack = getStack();
+    if (stack instanceof BFVirtualStack) {
+      ((BFVirtualStack) stack).close();
+    }
     super.close();
     try {
       r.close();
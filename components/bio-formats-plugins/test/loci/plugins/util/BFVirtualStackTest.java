@@ -0,0 +1,109 @@
+/*
+ * #%L
+ * Bio-Formats Plugins for ImageJ: a collection of ImageJ plugins including the
+ * Bio-Formats Importer, Bio-Formats Exporter, Bio-Formats Macro Extensions,
+ * Data Browser and Stack Slicer.
+ * %%
+ * Copyright (C) 2026 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+
+package loci.plugins.util;
+
+import ij.Prefs;
+import ij.process.ImageProcessor;
+
+import loci.formats.ChannelSeparator;
+import loci.formats.in.FakeReader;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests that {@link BFVirtualStack} keeps the calibration of signed planes
+ * while planes are prefetched.
+ */
+public class BFVirtualStackTest {
+
+  // -- Constants --
+
+  private static final int SLICES = 10;
+  private static final String ID =
+    "test&pixelType=int8&sizeX=16&sizeY=8&sizeZ=" + SLICES + ".fake";
+
+  // -- Fields --
+
+  private ImageProcessorReader reader;
+  private BFVirtualStack stack;
+
+  // -- Setup methods --
+
+  @BeforeMethod
+  public void setUp() throws Exception {
+    Prefs.set(LociPrefs.PREF_PREFETCH_MEMORY, 16);
+    reader = new ImageProcessorReader(new ChannelSeparator(new FakeReader()));
+    reader.setId(ID);
+    stack = new BFVirtualStack(ID, reader, false, false, false);
+  }
+
+  @AfterMethod
+  public void tearDown() throws Exception {
+    stack.close();
+    reader.close();
+  }
+
+  // -- Tests --
+
+  @Test
+  public void testPrefetchedCalibration() throws Exception {
+    PlanePrefetcher prefetcher = stack.getPrefetcher();
+    assertNotNull(prefetcher);
+
+    // the importer calibrates the first displayed plane, as ImageJ
+    // stores signed pixels as unsigned
+    float[] table = new float[256];
+    for (int i=0; i<table.length; i++) {
+      table[i] = i - 128;
+    }
+    stack.getProcessor(1).setCalibrationTable(table);
+
+    // wait for the next slice to be prefetched
+    long end = System.currentTimeMillis() + 10000;
+    while (prefetcher.get(1) == null && System.currentTimeMillis() < end) {
+      Thread.sleep(10);
+    }
+    assertNotNull(prefetcher.get(1));
+
+    for (int n=2; n<=SLICES; n++) {
+      ImageProcessor ip = stack.getProcessor(n);
+      assertEquals(ip.getCalibrationTable(), table, "slice " + n);
+    }
+    for (int n=SLICES; n>=1; n--) {
+      ImageProcessor ip = stack.getProcessor(n);
+      assertEquals(ip.getCalibrationTable(), table, "slice " + n);
+    }
+  }
+
+}
@@ -0,0 +1,175 @@
+/*
+ * #%L
+ * Bio-Formats Plugins for ImageJ: a collection of ImageJ plugins including the
+ * Bio-Formats Importer, Bio-Formats Exporter, Bio-Formats Macro Extensions,
+ * Data Browser and Stack Slicer.
+ * %%
+ * Copyright (C) 2026 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.plugins.util;
+
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+
+import loci.formats.ChannelSeparator;
+import loci.formats.in.FakeReader;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the slice prediction and plane cache of {@link PlanePrefetcher}.
+ */
+public class PlanePrefetcherTest {
+
+  // -- Constants --
+
+  private static final int WIDTH = 16, HEIGHT = 8, SLICES = 20;
+  private static final long PLANE_BYTES = WIDTH * HEIGHT;
+  private static final String ID = "test&pixelType=uint8&sizeX=" + WIDTH +
+    "&sizeY=" + HEIGHT + "&sizeZ=" + SLICES + ".fake";
+
+  // -- Fields --
+
+  private ImageProcessorReader reader;
+  private PlanePrefetcher prefetcher;
+
+  // -- Setup methods --
+
+  @BeforeMethod
+  public void setUp() throws Exception {
+    reader = new ImageProcessorReader(new ChannelSeparator(new FakeReader()));
+    reader.setId(ID);
+  }
+
+  @AfterMethod
+  public void tearDown() throws Exception {
+    if (prefetcher != null) prefetcher.close();
+    reader.close();
+  }
+
+  // -- Tests --
+
+  @Test
+  public void testNextSlicesForward() throws Exception {
+    prefetcher = new PlanePrefetcher(reader, ID, 10 * PLANE_BYTES);
+    assertEquals(prefetcher.nextSlices(0, SLICES),
+      new int[] {1, 2, 3, 4, 5, 6, 7, 8});
+    assertEquals(prefetcher.nextSlices(1, SLICES),
+      new int[] {2, 3, 4, 5, 6, 7, 8, 9});
+    // slices past the end of the stack are not predicted
+    assertEquals(prefetcher.nextSlices(17, SLICES), new int[] {18, 19});
+    assertEquals(prefetcher.nextSlices(19, SLICES), new int[0]);
+  }
+
+  @Test
+  public void testNextSlicesBackward() throws Exception {
+    prefetcher = new PlanePrefetcher(reader, ID, 10 * PLANE_BYTES);
+    prefetcher.nextSlices(10, SLICES);
+    assertEquals(prefetcher.nextSlices(9, SLICES),
+      new int[] {8, 7, 6, 5, 4, 3, 2, 1});
+    // a small step is kept as the stride
+    assertEquals(prefetcher.nextSlices(7, SLICES), new int[] {5, 3, 1});
+    // the same slice again keeps the previous prediction
+    assertEquals(prefetcher.nextSlices(7, SLICES), new int[] {5, 3, 1});
+  }
+
+  @Test
+  public void testNextSlicesLargeJump() throws Exception {
+    prefetcher = new PlanePrefetcher(reader, ID, 10 * PLANE_BYTES);
+    prefetcher.nextSlices(0, SLICES);
+    // larger jumps only keep their direction
+    assertEquals(prefetcher.nextSlices(15, SLICES), new int[] {16, 17, 18, 19});
+    assertEquals(prefetcher.nextSlices(2, SLICES), new int[] {1, 0});
+  }
+
+  @Test
+  public void testStoreEviction() throws Exception {
+    prefetcher = new PlanePrefetcher(reader, ID, 3 * PLANE_BYTES);
+    for (int no=0; no<3; no++) {
+      prefetcher.store(no, new ByteProcessor(WIDTH, HEIGHT));
+    }
+    for (int no=0; no<3; no++) {
+      assertNotNull(prefetcher.get(no));
+    }
+
+    // plane 1 is now the least recently used
+    assertNotNull(prefetcher.get(0));
+    prefetcher.store(3, new ByteProcessor(WIDTH, HEIGHT));
+    assertNull(prefetcher.get(1));
+    assertNotNull(prefetcher.get(0));
+    assertNotNull(prefetcher.get(2));
+    assertNotNull(prefetcher.get(3));
+  }
+
+  @Test
+  public void testStoreEvictionBytes() throws Exception {
+    prefetcher = new PlanePrefetcher(reader, ID, 3 * PLANE_BYTES);
+    // each 16-bit plane uses two planes' worth of the cache
+    prefetcher.store(0, new ShortProcessor(WIDTH, HEIGHT));
+    prefetcher.store(1, new ShortProcessor(WIDTH, HEIGHT));
+    assertNull(prefetcher.get(0));
+    assertNotNull(prefetcher.get(1));
+
+    prefetcher.store(2, new ByteProcessor(WIDTH, HEIGHT));
+    assertNotNull(prefetcher.get(1));
+    assertNotNull(prefetcher.get(2));
+
+    // a plane larger than the cache is not kept
+    prefetcher.store(3, new ByteProcessor(WIDTH * 4, HEIGHT));
+    assertNull(prefetcher.get(1));
+    assertNull(prefetcher.get(2));
+    assertNull(prefetcher.get(3));
+  }
+
+  @Test
+  public void testPrefetch() throws Exception {
+    prefetcher = new PlanePrefetcher(reader, ID, 10 * PLANE_BYTES);
+    assertTrue(prefetcher.isEnabled());
+    prefetcher.prefetch(new int[] {3, 5});
+
+    ImageProcessor ip = null;
+    long end = System.currentTimeMillis() + 10000;
+    while ((ip = prefetcher.get(5)) == null &&
+      System.currentTimeMillis() < end)
+    {
+      Thread.sleep(10);
+    }
+    assertNotNull(ip);
+    assertEquals(ip.getPixels(), reader.openProcessors(5)[0].getPixels());
+    assertEquals(prefetcher.get(3).getPixels(),
+      reader.openProcessors(3)[0].getPixels());
+
+    prefetcher.close();
+    assertFalse(prefetcher.isEnabled());
+    assertNull(prefetcher.get(5));
+  }
+
+}
@@ -0,0 +1,570 @@
+/*
+ * #%L
+ * Bio-Formats command line tools for reading and converting files
+ * %%
+ * Copyright (C) 2026 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats.tools;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import loci.common.Constants;
+import loci.common.DataTools;
+import loci.common.DebugTools;
+import loci.formats.FormatException;
+import loci.formats.FormatTools;
+import loci.formats.IFormatReader;
+import loci.formats.IFormatWriter;
+import loci.formats.ImageReader;
+import loci.formats.ImageWriter;
+import loci.formats.codec.CompressionType;
+import loci.formats.in.FakeReader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * FakeCorpus writes a deterministic set of OME-TIFF, BigTIFF, DICOM and ICS
+ * files from {@link FakeReader} data, for use by performance tests.
+ * It is run via "mkfake path -corpus".
+ *
+ * Each combination of format, image size and compression is written to
+ * a separate file using {@link ImageFaker#fakeImage(String, String, boolean)}.
+ * The SHA-1 of every plane, as returned by openBytes, is recorded in a
+ * manifest file so that test suites can check the pixels they read;
+ * only the pixel data is deterministic, as files may contain UUIDs and
+ * timestamps.
+ */
+public class FakeCorpus {
+
+  // -- Constants --
+
+  private static final Logger LOGGER =
+    LoggerFactory.getLogger(FakeCorpus.class);
+
+  /** Name of the manifest file written to the corpus directory. */
+  public static final String MANIFEST = "manifest.txt";
+
+  /** Maximum number of bytes to read at once when computing checksums. */
+  private static final int MAX_READ_SIZE = 64 * 1024 * 1024;
+
+  private static final String SPEC_PREFIX = "# spec\t";
+
+  /** Compression types that do not change pixel values in TIFF files. */
+  private static final List<String> TIFF_LOSSLESS = Arrays.asList(
+    CompressionType.UNCOMPRESSED.getCompression(),
+    CompressionType.LZW.getCompression(),
+    CompressionType.ZLIB.getCompression(),
+    CompressionType.J2K.getCompression());
+
+  /** DICOM files use a JPEG-2000 transfer syntax that allows lossy data. */
+  private static final List<String> UNCOMPRESSED = Arrays.asList(
+    CompressionType.UNCOMPRESSED.getCompression());
+
+  /** Supported output formats. */
+  private static final Format[] FORMATS = {
+    new Format("ome-tiff", "ome.tiff", true, false, false, TIFF_LOSSLESS),
+    new Format("bigtiff", "ome.btf", true, true, false, TIFF_LOSSLESS),
+    new Format("dicom", "dcm", true, false, true, UNCOMPRESSED),
+    new Format("ics", "ics", false, false, false, UNCOMPRESSED),
+  };
+
+  // -- Fields --
+
+  private String directory;
+  private List<String> formats = new ArrayList<String>();
+  private int[] sizes = {1024};
+  private String[] compressions = {
+    CompressionType.UNCOMPRESSED.getCompression(),
+    CompressionType.LZW.getCompression()
+  };
+  private int tileSize = 512;
+  private int planes = 1;
+  private int resolutions = 0;
+  private String pixelType = "uint8";
+  private boolean verify = false;
+
+  // -- Constructor --
+
+  public FakeCorpus() {
+    for (Format format : FORMATS) {
+      formats.add(format.name);
+    }
+  }
+
+  // -- FakeCorpus API methods --
+
+  public boolean parseArgs(String[] args) {
+    if (args == null) {
+      return false;
+    }
+    for (int i=0; i<args.length; i++) {
+      if (args[i].startsWith("-")) {
+        if (args[i].equals("-corpus")) continue;
+        else if (args[i].equals("-formats")) {
+          formats = Arrays.asList(args[++i].split(","));
+        }
+        else if (args[i].equals("-sizes")) {
+          String[] s = args[++i].split(",");
+          sizes = new int[s.length];
+          for (int j=0; j<s.length; j++) {
+            sizes[j] = Integer.parseInt(s[j]);
+          }
+        }
+        else if (args[i].equals("-compressions")) {
+          compressions = args[++i].split(",");
+        }
+        else if (args[i].equals("-tile")) {
+          tileSize = Integer.parseInt(args[++i]);
+        }
+        else if (args[i].equals("-planes")) {
+          planes = Integer.parseInt(args[++i]);
+        }
+        else if (args[i].equals("-resolutions")) {
+          resolutions = Integer.parseInt(args[++i]);
+        }
+        else if (args[i].equals("-pixelType")) pixelType = args[++i];
+        else if (args[i].equals("-verify")) verify = true;
+        else if (args[i].equals("-debug")) {
+          DebugTools.setRootLevel("DEBUG");
+        }
+        else {
+          LOGGER.error("Found unknown command flag: {}; exiting.", args[i]);
+          return false;
+        }
+      }
+      else if (directory == null) {
+        directory = args[i];
+      }
+      else {
+        LOGGER.error("Found unknown argument: {}; exiting.", args[i]);
+        return false;
+      }
+    }
+    for (String format : formats) {
+      if (getFormat(format) == null) {
+        LOGGER.error("Unknown format: {}; exiting.", format);
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public void printUsage() {
+    String[] s = {
+      "To generate a corpus of test files, run:",
+      "  mkfake path -corpus [-formats list] [-sizes list]",
+      "    [-compressions list] [-tile size] [-planes count]",
+      "    [-resolutions count] [-pixelType type] [-verify] [-debug]", "",
+      "            path: the directory in which to write the files and " +
+        MANIFEST,
+      "        -formats: comma-separated list of formats to write",
+      "                  (default: ome-tiff,bigtiff,dicom,ics)",
+      "          -sizes: comma-separated list of image widths and heights",
+      "                  (default: 1024)",
+      "   -compressions: comma-separated list of compression types; types",
+      "                  not supported by a format are skipped",
+      "                  (default: Uncompressed,LZW)",
+      "           -tile: tile width and height (default: 512)",
+      "         -planes: number of Z sections (default: 1)",
+      "    -resolutions: number of resolutions (default: enough for the",
+      "                  smallest resolution to fit in a single tile)",
+      "      -pixelType: pixel type (default: uint8)",
+      "         -verify: check the files in path against " + MANIFEST,
+      "                  instead of writing a new corpus",
+      "          -debug: turn on debugging output", ""
+    };
+    for (int i=0; i<s.length; i++) {
+      LOGGER.info(s[i]);
+    }
+  }
+
+  public boolean run(String[] args) {
+    if (!parseArgs(args) || directory == null) {
+      printUsage();
+      return false;
+    }
+    try {
+      if (verify) {
+        return verify().isEmpty();
+      }
+      return generate();
+    }
+    catch (FormatException | IOException e) {
+      LOGGER.error("Could not process corpus {}", directory, e);
+      return false;
+    }
+  }
+
+  /**
+   * Write every file in the corpus, followed by the manifest.
+   *
+   * @return true if every lossless file contains the expected pixels
+   */
+  public boolean generate() throws FormatException, IOException {
+    File dir = new File(directory);
+    if (!dir.exists() && !dir.mkdirs()) {
+      throw new IOException("Could not create " + dir);
+    }
+
+    Map<String, String[]> files = new LinkedHashMap<String, String[]>();
+    for (String name : formats) {
+      Format format = getFormat(name);
+      for (int size : sizes) {
+        for (String compression : compressions) {
+          String file = getFileName(format, size, compression);
+          if (!isSupported(file, compression)) {
+            LOGGER.info("Skipping {}: compression not supported", file);
+            continue;
+          }
+          File output = new File(dir, file);
+          if (format.directory) {
+            // keep each dataset separate so that files are not grouped
+            String base = file.substring(0, file.indexOf('.'));
+            output = new File(new File(dir, base), file);
+            if (!output.getParentFile().exists() &&
+              !output.getParentFile().mkdirs())
+            {
+              throw new IOException("Could not create " + output.getParent());
+            }
+          }
+          String spec = getSpec(format, size, compression);
+          if (!new ImageFaker().fakeImage(spec, output.getAbsolutePath(),
+            format.bigtiff))
+          {
+            throw new FormatException("Could not write " + file);
+          }
+          if (format.directory) {
+            file = getFirstFile(output.getParentFile());
+          }
+          files.put(file, new String[] {spec,
+            String.valueOf(format.lossless.contains(compression))});
+        }
+      }
+    }
+
+    boolean valid = true;
+    PrintWriter manifest = new PrintWriter(new OutputStreamWriter(
+      new FileOutputStream(new File(dir, MANIFEST)), Constants.ENCODING));
+    try {
+      manifest.println("# file\tseries\tresolution\tplane\tsizeX\tsizeY\t" +
+        "pixelType\tSHA-1");
+      for (Map.Entry<String, String[]> entry : files.entrySet()) {
+        String file = entry.getKey();
+        String spec = entry.getValue()[0];
+        manifest.println(SPEC_PREFIX + file + "\t" + spec);
+        boolean lossless = Boolean.parseBoolean(entry.getValue()[1]);
+        valid &= checksum(dir, file, lossless ? spec : null, manifest);
+      }
+    }
+    finally {
+      manifest.close();
+    }
+    LOGGER.info("Wrote {} files and {} to {}",
+      new Object[] {files.size(), MANIFEST, dir});
+    return valid;
+  }
+
+  /**
+   * Check every plane listed in the manifest.
+   *
+   * @return a description of each plane whose checksum does not match
+   */
+  public List<String> verify() throws FormatException, IOException {
+    File dir = new File(directory);
+    List<String> failures = new ArrayList<String>();
+    BufferedReader in = new BufferedReader(new InputStreamReader(
+      new FileInputStream(new File(dir, MANIFEST)), Constants.ENCODING));
+    IFormatReader reader = null;
+    String currentFile = null;
+    int count = 0;
+    try {
+      String line;
+      while ((line = in.readLine()) != null) {
+        if (line.startsWith("#") || line.trim().isEmpty()) {
+          continue;
+        }
+        String[] tokens = line.split("\t");
+        if (!tokens[0].equals(currentFile)) {
+          if (reader != null) {
+            reader.close();
+          }
+          currentFile = tokens[0];
+          reader = openReader(new File(dir, currentFile));
+        }
+        reader.setSeries(Integer.parseInt(tokens[1]));
+        reader.setResolution(Integer.parseInt(tokens[2]));
+        String sha1 = sha1(reader, Integer.parseInt(tokens[3]), false);
+        if (!sha1.equals(tokens[7])) {
+          String failure = line + "\t(found " + sha1 + ")";
+          LOGGER.error("Checksum mismatch: {}", failure);
+          failures.add(failure);
+        }
+        count++;
+      }
+    }
+    finally {
+      in.close();
+      if (reader != null) {
+        reader.close();
+      }
+    }
+    LOGGER.info("Checked {} planes, {} mismatches", count, failures.size());
+    return failures;
+  }
+
+  // -- Helper methods --
+
+  /**
+   * Record the checksum of every plane in the given file,
+   * optionally comparing the pixels to the original FakeReader pixels.
+   *
+   * @param spec the fake file name to compare against, or null
+   * @return true if no comparison was requested or all of the pixels match
+   */
+  private boolean checksum(File dir, String file, String spec,
+    PrintWriter manifest)
+    throws FormatException, IOException
+  {
+    boolean valid = true;
+    IFormatReader reader = openReader(new File(dir, file));
+    IFormatReader fake = null;
+    try {
+      if (spec != null) {
+        fake = new FakeReader();
+        fake.setFlattenedResolutions(false);
+        fake.setId(spec);
+      }
+      for (int s=0; s<reader.getSeriesCount(); s++) {
+        reader.setSeries(s);
+        for (int r=0; r<reader.getResolutionCount(); r++) {
+          reader.setResolution(r);
+          for (int no=0; no<reader.getImageCount(); no++) {
+            manifest.println(file + "\t" + s + "\t" + r + "\t" + no + "\t" +
+              reader.getSizeX() + "\t" + reader.getSizeY() + "\t" +
+              FormatTools.getPixelTypeString(reader.getPixelType()) + "\t" +
+              sha1(reader, no, false));
+            if (fake != null) {
+              fake.setSeries(s);
+              fake.setResolution(r);
+              if (!sha1(reader, no, true).equals(sha1(fake, no, true))) {
+                LOGGER.error("Pixels in {} series {}, resolution {}, " +
+                  "plane {} do not match the original pixels",
+                  new Object[] {file, s, r, no});
+                valid = false;
+              }
+            }
+          }
+        }
+      }
+    }
+    finally {
+      reader.close();
+      if (fake != null) {
+        fake.close();
+      }
+    }
+    return valid;
+  }
+
+  private IFormatReader openReader(File file)
+    throws FormatException, IOException
+  {
+    IFormatReader reader = new ImageReader();
+    reader.setFlattenedResolutions(false);
+    reader.setId(file.getAbsolutePath());
+    return reader;
+  }
+
+  /**
+   * Calculate the SHA-1 of the given plane in the reader's current series
+   * and resolution, reading as many rows at a time as fit in memory.
+   *
+   * @param bigEndian true if multi-byte pixels should be converted to
+   *                  big-endian order first, so that readers with different
+   *                  byte orders can be compared
+   */
+  private static String sha1(IFormatReader reader, int no, boolean bigEndian)
+    throws FormatException, IOException
+  {
+    MessageDigest md;
+    try {
+      md = MessageDigest.getInstance("SHA-1");
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new FormatException(e);
+    }
+    int bpp = FormatTools.getBytesPerPixel(reader.getPixelType());
+    boolean swap = bigEndian && bpp > 1 && reader.isLittleEndian();
+    int sizeX = reader.getSizeX();
+    int sizeY = reader.getSizeY();
+    long rowSize = (long) sizeX * bpp * reader.getRGBChannelCount();
+    int rows = (int) Math.max(1, Math.min(sizeY, MAX_READ_SIZE / rowSize));
+    byte[] buf = null;
+    for (int y=0; y<sizeY; y+=rows) {
+      int h = Math.min(rows, sizeY - y);
+      buf = reader.openBytes(no, buf == null || buf.length != h * rowSize ?
+        new byte[(int) (h * rowSize)] : buf, 0, y, sizeX, h);
+      if (swap) {
+        for (int i=0; i<buf.length; i+=bpp) {
+          for (int b=0; b<bpp/2; b++) {
+            byte tmp = buf[i + b];
+            buf[i + b] = buf[i + bpp - b - 1];
+            buf[i + bpp - b - 1] = tmp;
+          }
+        }
+      }
+      md.update(buf);
+    }
+    return DataTools.bytesToHex(md.digest());
+  }
+
+  /**
+   * Return the path, relative to the corpus directory, of the first file
+   * in the given dataset directory.  Some writers (e.g. DICOM) add
+   * suffixes to the requested file name.
+   */
+  private static String getFirstFile(File datasetDir) throws IOException {
+    String[] list = datasetDir.list();
+    if (list == null || list.length == 0) {
+      throw new IOException("No files written to " + datasetDir);
+    }
+    Arrays.sort(list);
+    return datasetDir.getName() + "/" + list[0];
+  }
+
+  private boolean isSupported(String file, String compression)
+    throws FormatException
+  {
+    IFormatWriter writer = new ImageWriter().getWriter(file);
+    String[] types = writer.getCompressionTypes();
+    if (types == null) {
+      return compression.equals(CompressionType.UNCOMPRESSED.getCompression());
+    }
+    return Arrays.asList(types).contains(compression);
+  }
+
+  private String getFileName(Format format, int size, String compression) {
+    StringBuilder name = new StringBuilder();
+    name.append(format.name);
+    name.append("-").append(size).append("-").append(pixelType);
+    name.append("-").append(compression.replace(' ', '_'));
+    if (format.pyramid) {
+      name.append("-t").append(tileSize);
+    }
+    name.append("-p").append(planes);
+    name.append("-r").append(getResolutionCount(format, size));
+    name.append(".").append(format.suffix);
+    return name.toString();
+  }
+
+  private String getSpec(Format format, int size, String compression) {
+    StringBuilder spec = new StringBuilder("corpus");
+    spec.append("&sizeX=").append(size);
+    spec.append("&sizeY=").append(size);
+    spec.append("&sizeZ=").append(planes);
+    spec.append("&pixelType=").append(pixelType);
+    spec.append("&resolutions=").append(getResolutionCount(format, size));
+    if (format.pyramid) {
+      spec.append("&tileSizeX=").append(tileSize);
+      spec.append("&tileSizeY=").append(tileSize);
+    }
+    if (!compression.equals(CompressionType.UNCOMPRESSED.getCompression())) {
+      spec.append("&compression=").append(compression);
+    }
+    spec.append(".fake");
+    return spec.toString();
+  }
+
+  private int getResolutionCount(Format format, int size) {
+    if (!format.pyramid) {
+      return 1;
+    }
+    if (resolutions > 0) {
+      return resolutions;
+    }
+    int count = 1;
+    while (size / 2 >= tileSize) {
+      size /= 2;
+      count++;
+    }
+    return count;
+  }
+
+  private static Format getFormat(String name) {
+    for (Format format : FORMATS) {
+      if (format.name.equals(name)) {
+        return format;
+      }
+    }
+    return null;
+  }
+
+  // -- Helper classes --
+
+  /** An output format in the corpus. */
+  private static class Format {
+    /** Name used in file names and the -formats option. */
+    final String name;
+    final String suffix;
+    /** Whether the format supports tiles and sub-resolutions. */
+    final boolean pyramid;
+    final boolean bigtiff;
+    /** Whether each dataset must be written to its own directory. */
+    final boolean directory;
+    /** Compression types that preserve the original pixels. */
+    final List<String> lossless;
+
+    Format(String name, String suffix, boolean pyramid, boolean bigtiff,
+      boolean directory, List<String> lossless)
+    {
+      this.name = name;
+      this.suffix = suffix;
+      this.pyramid = pyramid;
+      this.bigtiff = bigtiff;
+      this.directory = directory;
+      this.lossless = lossless;
+    }
+  }
+
+}
@@ -1339,10 +1339,15 @@ public final class ImageConverter {
   private String getReaderCodecName() throws FormatException, IOException {
     if (reader instanceof ICompressedTileReader) {
       ICompressedTileReader r = (ICompressedTileReader) reader;
-      Codec c = r.getTileCodec(0);
-      CompressionType type = CompressionType.get(c);
-      if (type != null) {
-        return type.getCompression();
+      try {
+        Codec c = r.getTileCodec(0);
+        CompressionType type = CompressionType.get(c);
+        if (type != null) {
+          return type.getCompression();
+        }
+      }
+      catch (UnsupportedOperationException e) {
+        LOGGER.debug("Could not determine the input compression", e);
       }
     }
     return null;
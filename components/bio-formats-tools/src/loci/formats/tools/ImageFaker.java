@@ -32,10 +32,18 @@
 
 package loci.formats.tools;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import loci.common.DebugTools;
 import loci.common.Location;
+import loci.formats.FormatException;
 import loci.formats.FormatHandler;
+import loci.formats.ImageWriter;
 import loci.formats.ResourceNamer;
+import loci.formats.in.FakeReader;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -63,6 +71,8 @@ public class ImageFaker {
 
   private int fields = 1;
 
+  private String image = null;
+
   public boolean parseArgs(String[] args) {
     if (args == null || args.length == 0) {
       return false;
@@ -79,6 +89,8 @@ public class ImageFaker {
           columns = Integer.parseInt(args[++i]);
         } else if (args[i].equals("-fields")) {
           fields = Integer.parseInt(args[++i]);
+        } else if (args[i].equals("-image")) {
+          image = args[++i];
         } else if (args[i].equals("-debug")) {
           DebugTools.setRootLevel("DEBUG");
         }
@@ -97,13 +109,20 @@ public class ImageFaker {
   public void printUsage() {
     String[] s = { "To generate a fake file / dir structure, run:",
         "  mkfake path [-plates] [-runs] [-rows] [-columns] ",
-        "    [-fields] [-debug]", "",
-        "        path: the top-level directory for the SPW structure",
+        "    [-fields] [-image spec] [-debug]", "",
+        "  mkfake path -corpus [options] writes a corpus of test files;",
+        "  run 'mkfake -corpus -help' for details", "",
+        "        path: the top-level directory for the SPW structure,",
+        "              or the output file if -image is specified",
         "     -plates: number of plates (default: 1)",
         "       -runs: number of plate runs (acquisitions) (default: 1)",
         "       -rows: number of rows in a plate (default: 1)",
         "    -columns: number of columns in a plate (default: 1)",
         "     -fields: number of fields in a plate (default: 1)",
+        "      -image: write the fake image described by the given",
+        "              .fake name (e.g. 'image&sizeX=4096&tileSizeX=256",
+        "              &compression=LZW.fake') to path, using its",
+        "              tileSizeX, tileSizeY and compression keys",
         "      -debug: turn on debugging output", "" };
     for (int i = 0; i < s.length; i++) {
       LOGGER.info(s[i]);
@@ -113,6 +132,10 @@ public class ImageFaker {
   public boolean fakeScreen(String[] args) {
     DebugTools.enableLogging("INFO");
 
+    if (args != null && Arrays.asList(args).contains("-corpus")) {
+      return new FakeCorpus().run(args);
+    }
+
     boolean validArgs = parseArgs(args);
 
     if (!validArgs || targetDirectoryPath == null) {
@@ -120,6 +143,16 @@ public class ImageFaker {
       return false;
     }
 
+    if (image != null) {
+      try {
+        return fakeImage(image, targetDirectoryPath);
+      }
+      catch (FormatException | IOException e) {
+        LOGGER.error("Could not write {}", targetDirectoryPath, e);
+        return false;
+      }
+    }
+
     // make sure that we don't end up with just a ".fake" directory
     if (new Location(targetDirectoryPath).exists()) {
       Location p = new Location(targetDirectoryPath, "screen.fake");
@@ -147,6 +180,67 @@ public class ImageFaker {
     return true;
   }
 
+  /**
+   * Write the image described by the given fake file name to disk,
+   * so that benchmarks can be repeated against real files with
+   * a known tile size and compression type.
+   *
+   * @param spec the .fake file name (or .fake.ini file) describing the image
+   * @param output the file to write; the format is chosen from the extension
+   * @return true if the image was written successfully
+   */
+  public boolean fakeImage(String spec, String output)
+    throws FormatException, IOException
+  {
+    return fakeImage(spec, output, false);
+  }
+
+  /**
+   * Write the image described by the given fake file name to disk.
+   *
+   * @param spec the .fake file name (or .fake.ini file) describing the image
+   * @param output the file to write; the format is chosen from the extension
+   * @param bigtiff true if a TIFF-based output file must be a BigTIFF
+   * @return true if the image was written successfully
+   * @see #fakeImage(String, String)
+   */
+  public boolean fakeImage(String spec, String output, boolean bigtiff)
+    throws FormatException, IOException
+  {
+    List<String> args = new ArrayList<String>();
+    args.add(spec);
+    args.add(output);
+    args.add("-overwrite");
+    args.add("-noflat");
+    if (bigtiff) {
+      args.add("-bigtiff");
+    }
+
+    FakeReader reader = new FakeReader();
+    try {
+      reader.setId(spec);
+      if (reader.getCompression() != null) {
+        args.add("-compression");
+        args.add(reader.getCompression());
+      }
+      if (reader.getOptimalTileWidth() < reader.getSizeX() ||
+        reader.getOptimalTileHeight() < reader.getSizeY())
+      {
+        args.add("-tilex");
+        args.add(String.valueOf(reader.getOptimalTileWidth()));
+        args.add("-tiley");
+        args.add(String.valueOf(reader.getOptimalTileHeight()));
+      }
+    }
+    finally {
+      reader.close();
+    }
+
+    LOGGER.info("Writing {} to {}", spec, output);
+    return new ImageConverter().testConvert(new ImageWriter(),
+      args.toArray(new String[args.size()]));
+  }
+
   public static void main(String[] args) throws Exception {
     if (!new ImageFaker().fakeScreen(args)) {
       System.exit(1);
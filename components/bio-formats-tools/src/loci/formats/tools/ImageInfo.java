@@ -135,6 +135,9 @@ public class ImageInfo {
   private String format = null;
   private String cachedir = null;
   private int xmlSpaces = 3;
+  private boolean benchmark = false;
+  private int benchmarkRuns = 5;
+  private int benchmarkThreads = 1;
   private DynamicMetadataOptions options = new DynamicMetadataOptions();
   private Byte fillColor = null;
 
@@ -191,6 +194,9 @@ public class ImageInfo {
     map = null;
     cachedir = null;
     fillColor = null;
+    benchmark = false;
+    benchmarkRuns = 5;
+    benchmarkThreads = 1;
     if (args == null) return false;
     for (int i=0; i<args.length; i++) {
       if (args[i].startsWith("-")) {
@@ -284,6 +290,15 @@ public class ImageInfo {
           // allow specifying 0-255
           fillColor = (byte) Integer.parseInt(args[++i]);
         }
+        else if (args[i].equals("-benchmark")) benchmark = true;
+        else if (args[i].equals("-benchmark-runs")) {
+          benchmark = true;
+          benchmarkRuns = Integer.parseInt(args[++i]);
+        }
+        else if (args[i].equals("-benchmark-threads")) {
+          benchmark = true;
+          benchmarkThreads = Integer.parseInt(args[++i]);
+        }
         else if (!args[i].equals(CommandLineTools.NO_UPGRADE_CHECK)) {
           LOGGER.error("Found unknown command flag: {}; exiting.", args[i]);
           return false;
@@ -311,6 +326,7 @@ public class ImageInfo {
       "    [-map id] [-preload] [-crop x,y,w,h] [-autoscale] [-novalid]",
       "    [-omexml-only] [-no-sas] [-no-upgrade] [-noflat] [-format Format]",
       "    [-cache] [-cache-dir dir] [-option key value] [-fill color]",
+      "    [-benchmark] [-benchmark-runs n] [-benchmark-threads n]",
       "",
       "    -version: print the library version and exit",
       "        file: the image file to read",
@@ -355,6 +371,16 @@ public class ImageInfo {
       "              will be stored under the same folder as the image file",
       "     -option: add the specified key/value pair to the reader's options list",
       "       -fill: byte value to use for undefined pixels (0-255)",
+      "  -benchmark: measure cold and warm initialization time, and the",
+      "              throughput of full plane, sequential tile and random",
+      "              tile reads for every series and resolution, with and",
+      "              without a cache; use -range to limit the planes read",
+      "              and a .fake file with tileSizeX/tileSizeY keys (or a",
+      "              file written by mkfake -image) for repeatable results;",
+      "              -separate and -cache-dir are honored, -stitch is not",
+      "              supported",
+      "-benchmark-runs: number of initializations to time (default 5)",
+      "-benchmark-threads: number of concurrent readers (default 1)",
       "",
       "* = may result in loss of precision",
       ""
@@ -1040,6 +1066,16 @@ public class ImageInfo {
     CommandLineTools.runUpgradeCheck(args);
 
     mapLocation();
+
+    if (benchmark) {
+      if (stitch) {
+        LOGGER.error("-stitch cannot be used with -benchmark; exiting.");
+        return false;
+      }
+      runBenchmark();
+      return true;
+    }
+
     configureReaderPreInit();
 
     // initialize reader
@@ -1083,6 +1119,28 @@ public class ImageInfo {
     return true;
   }
 
+  /**
+   * Measure initialization and pixel read performance, instead of
+   * displaying the image.
+   */
+  public void runBenchmark() throws FormatException, IOException {
+    options.setMetadataLevel(
+        doMeta ? MetadataLevel.ALL : MetadataLevel.MINIMUM);
+    options.setValidate(validate);
+
+    ReaderBenchmark b = new ReaderBenchmark(id, reader.getClass());
+    b.setMetadataOptions(options);
+    b.setGroupFiles(group);
+    b.setSeparateChannels(separate);
+    if (cachedir != null) {
+      b.setCacheDirectory(new File(cachedir));
+    }
+    b.setRuns(benchmarkRuns);
+    b.setThreads(benchmarkThreads);
+    b.setPlaneRange(start, end);
+    b.run();
+  }
+
   /**
    * Log the size of the given dimension.
    * @param dim the name of the dimension to log
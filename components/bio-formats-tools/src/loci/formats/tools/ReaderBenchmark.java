@@ -0,0 +1,487 @@
+/*
+ * #%L
+ * Bio-Formats command line tools for reading and converting files
+ * %%
+ * Copyright (C) 2026 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import loci.formats.ChannelSeparator;
+import loci.formats.FormatException;
+import loci.formats.FormatTools;
+import loci.formats.IFormatReader;
+import loci.formats.Memoizer;
+import loci.formats.in.MetadataOptions;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * ReaderBenchmark measures reader initialization latency and pixel
+ * throughput for a single file.  It is used by {@link ImageInfo}
+ * when the -benchmark option is specified.
+ *
+ * Every series and resolution is read using three access patterns
+ * (full planes, sequential tiles and random tiles), both with and without
+ * a {@link Memoizer}, by the requested number of concurrent readers.
+ * Random tiles are chosen with a fixed seed so that results are repeatable.
+ */
+public class ReaderBenchmark {
+
+  // -- Constants --
+
+  private static final Logger LOGGER =
+    LoggerFactory.getLogger(ReaderBenchmark.class);
+
+  /** Seed used to choose random tiles. */
+  private static final long SEED = 0x5eed;
+
+  /** Maximum number of random tiles read per series and resolution. */
+  private static final int MAX_RANDOM_TILES = 1000;
+
+  // -- Fields --
+
+  private final String id;
+  private final Class<? extends IFormatReader> readerClass;
+
+  private MetadataOptions options;
+  private boolean group = true;
+  private boolean separate = false;
+  private File cacheDir;
+  private int runs = 5;
+  private int threads = 1;
+  private int start = 0;
+  private int end = Integer.MAX_VALUE;
+
+  // -- Constructor --
+
+  /**
+   * Construct a benchmark for the given file.
+   *
+   * @param id the file to read
+   * @param readerClass the reader to use; a new instance is created for
+   *                    every initialization, so the class must have a
+   *                    public no-argument constructor
+   */
+  public ReaderBenchmark(String id,
+    Class<? extends IFormatReader> readerClass)
+  {
+    this.id = id;
+    this.readerClass = readerClass;
+  }
+
+  // -- ReaderBenchmark API methods --
+
+  /** Set the metadata options used by every reader. */
+  public void setMetadataOptions(MetadataOptions options) {
+    this.options = options;
+  }
+
+  /** Set whether files should be grouped; defaults to true. */
+  public void setGroupFiles(boolean group) {
+    this.group = group;
+  }
+
+  /** Set whether RGB channels should be read separately; defaults to false. */
+  public void setSeparateChannels(boolean separate) {
+    this.separate = separate;
+  }
+
+  /**
+   * Set the directory used by the {@link Memoizer}.  By default, a temporary
+   * directory is created and deleted after the benchmark.  A directory set
+   * here is kept, and any memo file it already contains for the file is
+   * used by the first initialization.
+   */
+  public void setCacheDirectory(File cacheDir) {
+    this.cacheDir = cacheDir;
+  }
+
+  /**
+   * Set the number of times that each reader is initialized.
+   * The first initialization is reported as cold, and the remaining
+   * initializations as warm.  Defaults to 5.
+   */
+  public void setRuns(int runs) {
+    if (runs < 1) {
+      throw new IllegalArgumentException("Invalid run count: " + runs);
+    }
+    this.runs = runs;
+  }
+
+  /** Set the number of concurrent readers; defaults to 1. */
+  public void setThreads(int threads) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("Invalid thread count: " + threads);
+    }
+    this.threads = threads;
+  }
+
+  /** Set the range of planes to read in each series (inclusive). */
+  public void setPlaneRange(int start, int end) {
+    this.start = start;
+    this.end = end;
+  }
+
+  /** Run the benchmark without and then with a {@link Memoizer}. */
+  public void run() throws FormatException, IOException {
+    run(null);
+
+    if (this.cacheDir != null) {
+      run(this.cacheDir);
+      return;
+    }
+    File cacheDir = File.createTempFile("bfbenchmark", "");
+    if (!cacheDir.delete() || !cacheDir.mkdir()) {
+      throw new IOException("Could not create " + cacheDir);
+    }
+    try {
+      run(cacheDir);
+    }
+    finally {
+      delete(cacheDir);
+    }
+  }
+
+  // -- Helper methods --
+
+  /**
+   * Run the benchmark once.
+   *
+   * @param cacheDir the Memoizer cache directory, or null if the
+   *                 Memoizer should not be used
+   */
+  private void run(File cacheDir) throws FormatException, IOException {
+    LOGGER.info("");
+    LOGGER.info("Benchmarking {} {} Memoizer, {} reader(s)",
+      new Object[] {id, cacheDir == null ? "without" : "with", threads});
+
+    long[] init = new long[runs];
+    for (int i=0; i<runs; i++) {
+      IFormatReader reader = createReader(cacheDir);
+      try {
+        long s = System.nanoTime();
+        reader.setId(id);
+        init[i] = System.nanoTime() - s;
+      }
+      finally {
+        reader.close();
+      }
+    }
+    LOGGER.info("\tcold setId: {} ms", format(init[0] / 1e6));
+    if (runs > 1) {
+      LOGGER.info("\twarm setId: {}",
+        summarize(Arrays.copyOfRange(init, 1, runs)));
+    }
+
+    IFormatReader[] readers = new IFormatReader[threads];
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      for (int i=0; i<readers.length; i++) {
+        readers[i] = createReader(cacheDir);
+        readers[i].setId(id);
+      }
+      int seriesCount = readers[0].getSeriesCount();
+      for (int s=0; s<seriesCount; s++) {
+        readers[0].setSeries(s);
+        int resolutionCount = readers[0].getResolutionCount();
+        for (int r=0; r<resolutionCount; r++) {
+          for (IFormatReader reader : readers) {
+            reader.setSeries(s);
+            reader.setResolution(r);
+          }
+          benchmark(executor, readers, "series " + s + ", resolution " + r);
+        }
+      }
+    }
+    finally {
+      executor.shutdown();
+      for (IFormatReader reader : readers) {
+        if (reader != null) {
+          reader.close();
+        }
+      }
+    }
+  }
+
+  /** Read the current series and resolution using each access pattern. */
+  private void benchmark(ExecutorService executor, IFormatReader[] readers,
+    String label)
+    throws FormatException, IOException
+  {
+    IFormatReader reader = readers[0];
+    int first = Math.max(0, Math.min(start, reader.getImageCount() - 1));
+    int last = Math.max(first, Math.min(end, reader.getImageCount() - 1));
+    int sizeX = reader.getSizeX();
+    int sizeY = reader.getSizeY();
+    int tileWidth = Math.max(1, Math.min(reader.getOptimalTileWidth(), sizeX));
+    int tileHeight =
+      Math.max(1, Math.min(reader.getOptimalTileHeight(), sizeY));
+    int tileColumns = (sizeX + tileWidth - 1) / tileWidth;
+    int tileRows = (sizeY + tileHeight - 1) / tileHeight;
+    long planeSize = (long) sizeX * sizeY * reader.getRGBChannelCount() *
+      FormatTools.getBytesPerPixel(reader.getPixelType());
+
+    LOGGER.info("\t{}: {}x{}, planes {}-{}, {}x{} tiles", new Object[] {
+      label, sizeX, sizeY, first, last, tileWidth, tileHeight});
+
+    if (planeSize <= Integer.MAX_VALUE) {
+      List<int[]> planes = new ArrayList<int[]>();
+      for (int no=first; no<=last; no++) {
+        planes.add(new int[] {no, 0, 0, sizeX, sizeY});
+      }
+      read(executor, readers, "full planes", "planes", planes);
+    }
+    else {
+      LOGGER.info("\t\tfull planes: skipped, plane is larger than 2 GB");
+    }
+
+    if (tileColumns * tileRows <= 1) {
+      return;
+    }
+
+    List<int[]> tiles =
+      getTiles(first, last, sizeX, sizeY, tileWidth, tileHeight);
+    read(executor, readers, "sequential tiles", "tiles", tiles);
+    read(executor, readers, "random tiles", "tiles", getRandomTiles(
+      first, last, sizeX, sizeY, tileWidth, tileHeight, MAX_RANDOM_TILES));
+  }
+
+  /**
+   * Read the given regions, distributing them across the readers,
+   * and log the throughput and per-region latency.
+   *
+   * @param regions list of {plane, x, y, width, height} arrays
+   */
+  private void read(ExecutorService executor, final IFormatReader[] readers,
+    String pattern, String unit, final List<int[]> regions)
+    throws FormatException, IOException
+  {
+    final int bpp = FormatTools.getBytesPerPixel(readers[0].getPixelType()) *
+      readers[0].getRGBChannelCount();
+    List<Future<long[]>> results = new ArrayList<Future<long[]>>();
+
+    long s = System.nanoTime();
+    for (int t=0; t<readers.length; t++) {
+      final int thread = t;
+      results.add(executor.submit(new Callable<long[]>() {
+        @Override
+        public long[] call() throws FormatException, IOException {
+          IFormatReader reader = readers[thread];
+          int count =
+            getRegionCount(regions.size(), thread, readers.length);
+          long[] latency = new long[count];
+          byte[] buf = null;
+          for (int i=0; i<count; i++) {
+            int[] r = regions.get(thread + i * readers.length);
+            int length = r[3] * r[4] * bpp;
+            if (buf == null || buf.length < length) {
+              buf = new byte[length];
+            }
+            long start = System.nanoTime();
+            reader.openBytes(r[0], buf, r[1], r[2], r[3], r[4]);
+            latency[i] = System.nanoTime() - start;
+          }
+          return latency;
+        }
+      }));
+    }
+
+    long[] latency = new long[regions.size()];
+    int offset = 0;
+    for (Future<long[]> result : results) {
+      long[] l = get(result);
+      System.arraycopy(l, 0, latency, offset, l.length);
+      offset += l.length;
+    }
+    double seconds = (System.nanoTime() - s) / 1e9;
+
+    long bytes = 0;
+    for (int[] r : regions) {
+      bytes += (long) r[3] * r[4] * bpp;
+    }
+
+    LOGGER.info("\t\t{}: {} {} in {} s, {} {}/s, {} MB/s, latency {}",
+      new Object[] {pattern, regions.size(), unit, format(seconds),
+      format(regions.size() / seconds), unit,
+      format(bytes / seconds / (1024 * 1024)), summarize(latency)});
+  }
+
+  private IFormatReader createReader(File cacheDir) throws FormatException {
+    IFormatReader reader;
+    try {
+      reader = readerClass.getDeclaredConstructor().newInstance();
+    }
+    catch (ReflectiveOperationException e) {
+      throw new FormatException("Cannot create " + readerClass.getName(), e);
+    }
+    if (separate) {
+      reader = new ChannelSeparator(reader);
+    }
+    if (cacheDir != null) {
+      reader = new Memoizer(reader, 0, cacheDir);
+    }
+    reader.setGroupFiles(group);
+    reader.setFlattenedResolutions(false);
+    if (options != null) {
+      reader.setMetadataOptions(options);
+    }
+    return reader;
+  }
+
+  /**
+   * List every tile in the given range of planes, in plane, row and
+   * column order.  Tiles in the last row and column may be smaller.
+   *
+   * @return list of {plane, x, y, width, height} arrays
+   */
+  static List<int[]> getTiles(int first, int last, int sizeX, int sizeY,
+    int tileWidth, int tileHeight)
+  {
+    int tileColumns = (sizeX + tileWidth - 1) / tileWidth;
+    int tileRows = (sizeY + tileHeight - 1) / tileHeight;
+    List<int[]> tiles = new ArrayList<int[]>();
+    for (int no=first; no<=last; no++) {
+      for (int row=0; row<tileRows; row++) {
+        for (int col=0; col<tileColumns; col++) {
+          tiles.add(getTile(no, col, row, tileWidth, tileHeight, sizeX, sizeY));
+        }
+      }
+    }
+    return tiles;
+  }
+
+  /**
+   * Choose tiles at random from the given range of planes, using a fixed
+   * seed.  At most one tile per tile in the range is chosen.
+   *
+   * @return list of {plane, x, y, width, height} arrays
+   */
+  static List<int[]> getRandomTiles(int first, int last, int sizeX,
+    int sizeY, int tileWidth, int tileHeight, int maxTiles)
+  {
+    int tileColumns = (sizeX + tileWidth - 1) / tileWidth;
+    int tileRows = (sizeY + tileHeight - 1) / tileHeight;
+    long tileCount = (long) tileColumns * tileRows * (last - first + 1);
+    int count = (int) Math.min(tileCount, maxTiles);
+
+    Random random = new Random(SEED);
+    List<int[]> tiles = new ArrayList<int[]>(count);
+    for (int i=0; i<count; i++) {
+      tiles.add(getTile(first + random.nextInt(last - first + 1),
+        random.nextInt(tileColumns), random.nextInt(tileRows),
+        tileWidth, tileHeight, sizeX, sizeY));
+    }
+    return tiles;
+  }
+
+  /**
+   * Return the number of regions read by the given reader, when regions
+   * are dealt out to the readers in turn.
+   */
+  static int getRegionCount(int regions, int thread, int threads) {
+    return (regions - thread + threads - 1) / threads;
+  }
+
+  private static int[] getTile(int no, int col, int row, int tileWidth,
+    int tileHeight, int sizeX, int sizeY)
+  {
+    int x = col * tileWidth;
+    int y = row * tileHeight;
+    return new int[] {no, x, y,
+      Math.min(tileWidth, sizeX - x), Math.min(tileHeight, sizeY - y)};
+  }
+
+  private static long[] get(Future<long[]> result)
+    throws FormatException, IOException
+  {
+    try {
+      return result.get();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(e);
+    }
+    catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof FormatException) throw (FormatException) cause;
+      if (cause instanceof IOException) throw (IOException) cause;
+      if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+      throw new FormatException(cause);
+    }
+  }
+
+  /** Summarize the given latencies as milliseconds at several percentiles. */
+  static String summarize(long[] nanos) {
+    if (nanos.length == 0) {
+      return "n/a";
+    }
+    long[] sorted = nanos.clone();
+    Arrays.sort(sorted);
+    return "p50=" + format(percentile(sorted, 50) / 1e6) +
+      " p90=" + format(percentile(sorted, 90) / 1e6) +
+      " p99=" + format(percentile(sorted, 99) / 1e6) +
+      " max=" + format(sorted[sorted.length - 1] / 1e6) + " ms";
+  }
+
+  /** Return the nearest-rank percentile of the given sorted values. */
+  static long percentile(long[] sorted, int p) {
+    int rank = (int) Math.ceil(p / 100.0 * sorted.length);
+    return sorted[Math.max(0, Math.min(rank, sorted.length) - 1)];
+  }
+
+  private static String format(double value) {
+    return String.format("%.2f", value);
+  }
+
+  private static void delete(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        delete(child);
+      }
+    }
+    if (!file.delete()) {
+      LOGGER.debug("Could not delete {}", file);
+    }
+  }
+
+}
@@ -0,0 +1,140 @@
+/*
+ * #%L
+ * Bio-Formats command line tools for reading and converting files
+ * %%
+ * Copyright (C) 2026 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import loci.formats.FormatException;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Tests the functionality of FakeCorpus
+ */
+public class FakeCorpusTest {
+
+  private Path tempDir;
+
+  @BeforeMethod
+  public void setUp() throws IOException {
+    tempDir = Files.createTempDirectory(this.getClass().getName());
+  }
+
+  @AfterMethod
+  public void tearDown() throws IOException {
+    delete(tempDir.toFile());
+  }
+
+  private FakeCorpus createCorpus(String... extraArgs) {
+    List<String> args = new ArrayList<String>();
+    args.add(tempDir.toString());
+    args.add("-corpus");
+    args.add("-sizes");
+    args.add("256");
+    args.add("-tile");
+    args.add("128");
+    for (String arg : extraArgs) {
+      args.add(arg);
+    }
+    FakeCorpus corpus = new FakeCorpus();
+    assertTrue(corpus.parseArgs(args.toArray(new String[args.size()])));
+    return corpus;
+  }
+
+  @Test
+  public void testGenerate() throws FormatException, IOException {
+    FakeCorpus corpus = createCorpus("-planes", "2");
+    assertTrue(corpus.generate());
+
+    List<String> lines = Files.readAllLines(
+      tempDir.resolve(FakeCorpus.MANIFEST), StandardCharsets.UTF_8);
+    int planes = 0;
+    for (String line : lines) {
+      if (!line.startsWith("#")) {
+        String[] tokens = line.split("\t");
+        assertEquals(tokens.length, 8);
+        assertTrue(tempDir.resolve(tokens[0]).toFile().exists());
+        planes++;
+      }
+    }
+    // OME-TIFF and BigTIFF write Uncompressed and LZW with 2 resolutions,
+    // DICOM and ICS only write Uncompressed, with 2 and 1 resolutions
+    assertEquals(planes, (4 * 2 + 2 + 1) * 2);
+    assertTrue(corpus.verify().isEmpty());
+  }
+
+  @Test
+  public void testVerifyMismatch() throws FormatException, IOException {
+    FakeCorpus corpus = createCorpus("-formats", "ome-tiff",
+      "-compressions", "LZW");
+    assertTrue(corpus.generate());
+
+    Path manifest = tempDir.resolve(FakeCorpus.MANIFEST);
+    List<String> lines =
+      Files.readAllLines(manifest, StandardCharsets.UTF_8);
+    // replace the checksum of the last plane
+    int last = lines.size() - 1;
+    String line = lines.get(last);
+    lines.set(last, line.substring(0, line.lastIndexOf('\t')) + "\t0");
+    Files.write(manifest, lines, StandardCharsets.UTF_8);
+    assertEquals(corpus.verify().size(), 1);
+  }
+
+  @Test
+  public void testUnknownFormat() {
+    assertFalse(new FakeCorpus().parseArgs(
+      new String[] {"-corpus", "-formats", "foo", tempDir.toString()}));
+  }
+
+  private static void delete(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+
+}
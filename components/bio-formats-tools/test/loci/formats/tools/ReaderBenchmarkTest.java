@@ -0,0 +1,197 @@
+/*
+ * #%L
+ * Bio-Formats command line tools for reading and converting files
+ * %%
+ * Copyright (C) 2026 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import loci.formats.FormatException;
+import loci.formats.in.FakeReader;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Tests the functionality of ReaderBenchmark
+ */
+public class ReaderBenchmarkTest {
+
+  private File tempDir;
+
+  @BeforeMethod
+  public void setUp() throws IOException {
+    tempDir =
+      Files.createTempDirectory(this.getClass().getName()).toFile();
+  }
+
+  @AfterMethod
+  public void tearDown() {
+    delete(tempDir);
+  }
+
+  @Test
+  public void testPercentile() {
+    long[] sorted = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10};
+    assertEquals(ReaderBenchmark.percentile(sorted, 0), 1);
+    assertEquals(ReaderBenchmark.percentile(sorted, 50), 5);
+    assertEquals(ReaderBenchmark.percentile(sorted, 90), 9);
+    assertEquals(ReaderBenchmark.percentile(sorted, 99), 10);
+    assertEquals(ReaderBenchmark.percentile(sorted, 100), 10);
+    assertEquals(ReaderBenchmark.percentile(new long[] {7}, 50), 7);
+  }
+
+  @Test
+  public void testSummarize() {
+    assertEquals(ReaderBenchmark.summarize(new long[0]), "n/a");
+    long[] nanos = {3000000, 1000000, 2000000};
+    assertEquals(ReaderBenchmark.summarize(nanos),
+      "p50=" + format(2) + " p90=" + format(3) + " p99=" + format(3) +
+      " max=" + format(3) + " ms");
+    // the input is not sorted in place
+    assertEquals(nanos[0], 3000000);
+  }
+
+  @Test
+  public void testTiles() {
+    List<int[]> tiles = ReaderBenchmark.getTiles(1, 2, 100, 50, 32, 32);
+    assertEquals(tiles.size(), 2 * 4 * 2);
+    assertEquals(tiles.get(0), new int[] {1, 0, 0, 32, 32});
+    assertEquals(tiles.get(3), new int[] {1, 96, 0, 4, 32});
+    assertEquals(tiles.get(7), new int[] {1, 96, 32, 4, 18});
+    assertEquals(tiles.get(8), new int[] {2, 0, 0, 32, 32});
+
+    // every pixel of both planes is covered exactly once
+    long area = 0;
+    for (int[] tile : tiles) {
+      assertTrue(tile[1] + tile[3] <= 100);
+      assertTrue(tile[2] + tile[4] <= 50);
+      area += (long) tile[3] * tile[4];
+    }
+    assertEquals(area, 2 * 100 * 50);
+  }
+
+  @Test
+  public void testRandomTiles() {
+    List<int[]> all = ReaderBenchmark.getTiles(1, 2, 100, 50, 32, 32);
+    List<int[]> tiles =
+      ReaderBenchmark.getRandomTiles(1, 2, 100, 50, 32, 32, 1000);
+    assertEquals(tiles.size(), all.size());
+    for (int[] tile : tiles) {
+      boolean found = false;
+      for (int[] t : all) {
+        found |= Arrays.equals(t, tile);
+      }
+      assertTrue(found);
+    }
+
+    // the same seed is used every time
+    List<int[]> again =
+      ReaderBenchmark.getRandomTiles(1, 2, 100, 50, 32, 32, 5);
+    assertEquals(again.size(), 5);
+    for (int i=0; i<again.size(); i++) {
+      assertEquals(again.get(i), tiles.get(i));
+    }
+  }
+
+  @Test
+  public void testRegionCount() {
+    for (int threads=1; threads<=4; threads++) {
+      for (int regions=0; regions<=10; regions++) {
+        int total = 0;
+        for (int thread=0; thread<threads; thread++) {
+          int count = ReaderBenchmark.getRegionCount(regions, thread, threads);
+          if (count > 0) {
+            assertTrue(thread + (count - 1) * threads < regions);
+          }
+          assertTrue(thread + count * threads >= regions);
+          total += count;
+        }
+        assertEquals(total, regions);
+      }
+    }
+  }
+
+  @Test
+  public void testRun() throws FormatException, IOException {
+    File fake = new File(tempDir,
+      "test&sizeX=40&sizeY=30&sizeC=3&rgb=3&sizeZ=2" +
+      "&tileSizeX=16&tileSizeY=16.fake");
+    assertTrue(fake.createNewFile());
+    File cacheDir = new File(tempDir, "cache");
+    assertTrue(cacheDir.mkdir());
+
+    ReaderBenchmark benchmark =
+      new ReaderBenchmark(fake.getAbsolutePath(), FakeReader.class);
+    benchmark.setRuns(2);
+    benchmark.setThreads(2);
+    benchmark.setSeparateChannels(true);
+    benchmark.setCacheDirectory(cacheDir);
+    benchmark.run();
+
+    // the memo file is written to, and left in, the given directory
+    assertTrue(containsMemo(cacheDir));
+  }
+
+  private static String format(double millis) {
+    return String.format("%.2f", millis);
+  }
+
+  private static boolean containsMemo(File dir) {
+    File[] children = dir.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        if (child.getName().endsWith(".bfmemo") || containsMemo(child)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private static void delete(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+
+}
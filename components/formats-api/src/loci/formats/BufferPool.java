@@ -0,0 +1,154 @@
+/*
+ * #%L
+ * Top-level reader and writer APIs
+ * %%
+ * Copyright (C) 2018 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A small pool of temporary byte arrays, keyed by exact length.
+ *
+ * Readers typically need one or two scratch arrays of the same size for
+ * every call to openBytes (compressed tile data, padded scanlines, etc.).
+ * Keeping those arrays between calls avoids repeatedly allocating
+ * plane-sized arrays when a large image is read tile by tile.
+ *
+ * Arrays returned by {@link #borrow(int)} always have exactly the requested
+ * length, but their contents are undefined.  Arrays that are no longer
+ * needed should be passed to {@link #release(byte[])}; arrays that are
+ * never released are simply left to the garbage collector.
+ *
+ * All methods are synchronized, so a single pool can be shared by threads
+ * that decode tiles concurrently.
+ */
+public class BufferPool {
+
+  // -- Constants --
+
+  /** Default number of arrays retained by the pool. */
+  public static final int DEFAULT_MAX_BUFFERS = 4;
+
+  // -- Fields --
+
+  private final int maxBuffers;
+  private final Map<Integer, Deque<byte[]>> buffers =
+    new LinkedHashMap<Integer, Deque<byte[]>>();
+  private int bufferCount = 0;
+
+  // -- Constructors --
+
+  /** Constructs a pool that retains up to {@link #DEFAULT_MAX_BUFFERS}. */
+  public BufferPool() {
+    this(DEFAULT_MAX_BUFFERS);
+  }
+
+  /** Constructs a pool that retains up to the given number of arrays. */
+  public BufferPool(int maxBuffers) {
+    this.maxBuffers = maxBuffers;
+  }
+
+  // -- BufferPool API methods --
+
+  /**
+   * Retrieves an array of exactly the given length, allocating a new array
+   * only if no array of that length is available.
+   */
+  public synchronized byte[] borrow(int length) {
+    Deque<byte[]> queue = buffers.get(length);
+    boolean hit = queue != null && !queue.isEmpty();
+    if (Instrumentation.isEnabled()) {
+      Instrumentation.cacheAccessed("BufferPool", hit);
+      if (!hit) {
+        Instrumentation.allocated("BufferPool", length);
+      }
+    }
+    if (hit) {
+      bufferCount--;
+      return queue.pop();
+    }
+    return new byte[length];
+  }
+
+  /**
+   * Returns an array to the pool.  The caller must not use the array
+   * after it has been released.  If the pool is full, the least recently
+   * used length is discarded to make room.
+   */
+  public synchronized void release(byte[] buf) {
+    if (buf == null || maxBuffers <= 0) {
+      return;
+    }
+    Deque<byte[]> queue = buffers.get(buf.length);
+    if (queue == null) {
+      queue = new ArrayDeque<byte[]>();
+    }
+    else {
+      // re-insert so that iteration order reflects recent use
+      buffers.remove(buf.length);
+    }
+    for (byte[] b : queue) {
+      if (b == buf) {
+        buffers.put(buf.length, queue);
+        return;
+      }
+    }
+    queue.push(buf);
+    buffers.put(buf.length, queue);
+    bufferCount++;
+
+    Iterator<Map.Entry<Integer, Deque<byte[]>>> entries =
+      buffers.entrySet().iterator();
+    while (bufferCount > maxBuffers && entries.hasNext()) {
+      Deque<byte[]> oldest = entries.next().getValue();
+      if (oldest == queue) {
+        break;
+      }
+      bufferCount -= oldest.size();
+      entries.remove();
+    }
+    while (bufferCount > maxBuffers) {
+      queue.removeLast();
+      bufferCount--;
+    }
+  }
+
+  /** Discards all retained arrays. */
+  public synchronized void clear() {
+    buffers.clear();
+    bufferCount = 0;
+  }
+
+}
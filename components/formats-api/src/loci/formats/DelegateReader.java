@@ -34,9 +34,12 @@ package loci.formats;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Hashtable;
 import java.util.Set;
 
 import loci.common.RandomAccessInputStream;
+import loci.formats.codec.Codec;
+import loci.formats.codec.CodecOptions;
 import loci.formats.in.MetadataLevel;
 import loci.formats.in.MetadataOptions;
 import loci.formats.meta.MetadataStore;
@@ -238,6 +241,46 @@ public abstract class DelegateReader extends FormatReader {
     }
   }
 
+  /* @see IFormatReader#getMetadataValue(String) */
+  @Override
+  public Object getMetadataValue(String field) {
+    FormatTools.assertId(currentId, true, 1);
+    if (callLegacyReader()) {
+      return legacyReader.getMetadataValue(field);
+    }
+    return nativeReader.getMetadataValue(field);
+  }
+
+  /* @see IFormatReader#getSeriesMetadataValue(String) */
+  @Override
+  public Object getSeriesMetadataValue(String field) {
+    FormatTools.assertId(currentId, true, 1);
+    if (callLegacyReader()) {
+      return legacyReader.getSeriesMetadataValue(field);
+    }
+    return nativeReader.getSeriesMetadataValue(field);
+  }
+
+  /* @see IFormatReader#getGlobalMetadata() */
+  @Override
+  public Hashtable<String, Object> getGlobalMetadata() {
+    FormatTools.assertId(currentId, true, 1);
+    if (callLegacyReader()) {
+      return legacyReader.getGlobalMetadata();
+    }
+    return nativeReader.getGlobalMetadata();
+  }
+
+  /* @see IFormatReader#getSeriesMetadata() */
+  @Override
+  public Hashtable<String, Object> getSeriesMetadata() {
+    FormatTools.assertId(currentId, true, 1);
+    if (callLegacyReader()) {
+      return legacyReader.getSeriesMetadata();
+    }
+    return nativeReader.getSeriesMetadata();
+  }
+
   /* @see IFormatReader#getOptimalTileWidth() */
   @Override
   public int getOptimalTileWidth() {
@@ -267,6 +310,68 @@ public abstract class DelegateReader extends FormatReader {
     }
   }
 
+  // -- ICompressedTileReader API methods --
+
+  /* @see ICompressedTileReader#getTileRows(int) */
+  @Override
+  public int getTileRows(int no) {
+    if (callLegacyReader()) {
+      return legacyReader.getTileRows(no);
+    }
+    return nativeReader.getTileRows(no);
+  }
+
+  /* @see ICompressedTileReader#getTileColumns(int) */
+  @Override
+  public int getTileColumns(int no) {
+    if (callLegacyReader()) {
+      return legacyReader.getTileColumns(no);
+    }
+    return nativeReader.getTileColumns(no);
+  }
+
+  /* @see ICompressedTileReader#openCompressedBytes(int, int, int) */
+  @Override
+  public byte[] openCompressedBytes(int no, int x, int y)
+    throws FormatException, IOException
+  {
+    if (callLegacyReader()) {
+      return legacyReader.openCompressedBytes(no, x, y);
+    }
+    return nativeReader.openCompressedBytes(no, x, y);
+  }
+
+  /* @see ICompressedTileReader#openCompressedBytes(int, byte[], int, int) */
+  @Override
+  public byte[] openCompressedBytes(int no, byte[] buf, int x, int y)
+    throws FormatException, IOException
+  {
+    if (callLegacyReader()) {
+      return legacyReader.openCompressedBytes(no, buf, x, y);
+    }
+    return nativeReader.openCompressedBytes(no, buf, x, y);
+  }
+
+  /* @see ICompressedTileReader#getTileCodec(int) */
+  @Override
+  public Codec getTileCodec(int no) throws FormatException, IOException {
+    if (callLegacyReader()) {
+      return legacyReader.getTileCodec(no);
+    }
+    return nativeReader.getTileCodec(no);
+  }
+
+  /* @see ICompressedTileReader#getTileCodecOptions(int, int, int) */
+  @Override
+  public CodecOptions getTileCodecOptions(int no, int x, int y)
+    throws FormatException, IOException
+  {
+    if (callLegacyReader()) {
+      return legacyReader.getTileCodecOptions(no, x, y);
+    }
+    return nativeReader.getTileCodecOptions(no, x, y);
+  }
+
   // -- IFormatHandler API methods --
 
   /* @see IFormatHandler#setId(String) */
@@ -307,12 +412,10 @@ public abstract class DelegateReader extends FormatReader {
     }
     if (nativeReaderInitialized) {
       core = new ArrayList<CoreMetadata>(nativeReader.getCoreMetadataList());
-      metadata = nativeReader.getGlobalMetadata();
       metadataStore = nativeReader.getMetadataStore();
     }
     if (legacyReaderInitialized) {
       core = new ArrayList<CoreMetadata>(legacyReader.getCoreMetadataList());
-      metadata = legacyReader.getGlobalMetadata();
       metadataStore = legacyReader.getMetadataStore();
     }
   }
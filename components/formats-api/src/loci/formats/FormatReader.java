@@ -34,6 +34,7 @@ package loci.formats;
 
 import java.io.File;
 import java.io.IOException;
+import java.lang.reflect.Constructor;
 import java.util.ArrayList;
 import java.util.LinkedHashSet;
 import java.util.Hashtable;
@@ -124,6 +125,20 @@ public abstract class FormatReader extends FormatHandler
   /** Default thumbnail width and height. */
   protected static final int THUMBNAIL_DIMENSION = 128;
 
+  /** Maximum length of a filtered metadata key or string value. */
+  private static final int MAX_META_LENGTH = 8192;
+
+  /**
+   * Sequences removed from filtered metadata to prevent XML parsing errors,
+   * in the order in which they are removed.
+   */
+  private static final String[] INVALID_SEQUENCES = new String[] {
+    "&lt;", "&gt;", "&amp;", "<", ">", "&"
+  };
+
+  /** Guards creation of {@link #bufferPool}. */
+  private static final Object BUFFER_POOL_LOCK = new Object();
+
   // -- Fields --
 
   /** Current file. */
@@ -174,6 +189,18 @@ public abstract class FormatReader extends FormatHandler
   /** Whether or not to save proprietary metadata in the MetadataStore. */
   protected boolean saveOriginalMetadata = false;
 
+  /**
+   * Metadata options with which to read original metadata that was deferred
+   * during initialization, or null if no original metadata was deferred.
+   */
+  private DynamicMetadataOptions deferredMetadataOptions;
+
+  /**
+   * Failure from reading deferred original metadata, or null if the
+   * deferred metadata has not failed to load.
+   */
+  private transient IllegalStateException deferredMetadataFailure;
+
   /** Whether or not MetadataStore sets C = 3 for indexed color images. */
   protected boolean indexedAsRGB = false;
 
@@ -195,6 +222,16 @@ public abstract class FormatReader extends FormatHandler
   private ServiceFactory factory;
   private OMEXMLService service;
 
+  /**
+   * Scratch arrays reused across calls to openBytes. Created on first
+   * release; decoder threads may borrow and release concurrently.
+   */
+  private transient volatile BufferPool bufferPool;
+
+  /** Name and start time of the current initFile phase, if instrumented. */
+  private transient String currentPhase;
+  private transient long phaseStart;
+
   // -- Constructors --
 
   /** Constructs a format reader with the given name and default suffix. */
@@ -213,7 +250,7 @@ public abstract class FormatReader extends FormatHandler
     if (in != null) {
       in.close();
     }
-    in = new RandomAccessInputStream(currentId);
+    in = Instrumentation.openStream(getFormat(), currentId);
     in.order(isLittleEndian());
   }
 
@@ -263,8 +300,31 @@ public abstract class FormatReader extends FormatHandler
     ArrayList<String> optionsList = new ArrayList<String>();
     optionsList.add(DynamicMetadataOptions.METADATA_LEVEL_KEY);
     optionsList.add(DynamicMetadataOptions.READER_VALIDATE_KEY);
+    optionsList.add(DynamicMetadataOptions.METADATA_DEFERRED_KEY);
     return optionsList;
   }
+
+  /**
+   * Marks the start of a named phase of {@link #initFile(String)}, so that
+   * its duration can be reported to any {@link InstrumentationListener}s.
+   * The phase ends when the next phase starts, or when initFile returns.
+   */
+  protected void startPhase(String phase) {
+    endPhase();
+    if (Instrumentation.isEnabled()) {
+      currentPhase = phase;
+      phaseStart = System.nanoTime();
+    }
+  }
+
+  /** Reports the duration of the current initFile phase, if any. */
+  private void endPhase() {
+    if (currentPhase != null) {
+      Instrumentation.phaseCompleted(getFormat(), currentPhase,
+        System.nanoTime() - phaseStart);
+      currentPhase = null;
+    }
+  }
   
   /** Returns true if the given file name is in the used files list. */
   protected boolean isUsedFile(String file) {
@@ -304,33 +364,23 @@ public abstract class FormatReader extends FormatHandler
       if (!simple) return;
 
       // verify key & value are reasonable length
-      int maxLen = 8192;
-      if (key.length() > maxLen) return;
-      if (string && val.length() > maxLen) return;
+      if (key.length() > MAX_META_LENGTH) return;
+      if (string && val.length() > MAX_META_LENGTH) return;
 
       // remove all non-printable characters
-      key = DataTools.sanitize(key);
-      if (string) val = DataTools.sanitize(val);
+      key = sanitize(key);
+      if (string) val = sanitize(val);
 
       // verify key contains at least one alphabetic character
-      if (!key.matches(".*[a-zA-Z].*")) return;
+      if (!isValidKey(key)) return;
 
       // remove &lt;, &gt; and &amp; to prevent XML parsing errors
-      String[] invalidSequences = new String[] {
-        "&lt;", "&gt;", "&amp;", "<", ">", "&"
-      };
-      for (int i=0; i<invalidSequences.length; i++) {
-        if (key.indexOf(invalidSequences[i]) >= 0) {
-          key = key.replaceAll(invalidSequences[i], "");
-        }
-        if (string && val.indexOf(invalidSequences[i]) >= 0) {
-          val = val.replaceAll(invalidSequences[i], "");
-        }
-      }
+      key = removeInvalidSequences(key);
+      if (string) val = removeInvalidSequences(val);
 
       // verify key & value are not empty
       if (key.length() == 0) return;
-      if (string && val.trim().length() == 0) return;
+      if (string && isBlank(val)) return;
 
       if (string) value = val;
     }
@@ -617,6 +667,42 @@ public abstract class FormatReader extends FormatHandler
     return buf;
   }
 
+  /**
+   * Retrieves a scratch array of exactly the given length.
+   * The contents of the array are undefined; it should be passed to
+   * {@link #releaseBuffer(byte[])} once it is no longer needed, so that
+   * subsequent calls to openBytes do not need to allocate a new array.
+   * This method and {@link #releaseBuffer(byte[])} may be called from
+   * several threads at once, e.g. by a reader's own decoder threads.
+   */
+  protected byte[] borrowBuffer(int length) {
+    BufferPool pool = bufferPool;
+    if (pool == null) {
+      return new byte[length];
+    }
+    return pool.borrow(length);
+  }
+
+  /**
+   * Returns a scratch array obtained from {@link #borrowBuffer(int)}.
+   * The array must not be used or returned to the caller after release.
+   */
+  protected void releaseBuffer(byte[] buf) {
+    BufferPool pool = bufferPool;
+    if (pool == null) {
+      // not synchronized on this reader, as openBytes implementations may
+      // hold that lock while waiting for decoder threads to finish
+      synchronized (BUFFER_POOL_LOCK) {
+        pool = bufferPool;
+        if (pool == null) {
+          pool = new BufferPool();
+          bufferPool = pool;
+        }
+      }
+    }
+    pool.release(buf);
+  }
+
   /** Return a properly configured loci.formats.meta.FilterMetadata. */
   protected MetadataStore makeFilterMetadata() {
     return new FilterMetadata(getMetadataStore(), isMetadataFiltered());
@@ -919,6 +1005,9 @@ public abstract class FormatReader extends FormatHandler
         "https://docs.openmicroscopy.org/bio-formats/" + FormatTools.VERSION +
         "/about/bug-reporting.html#common-issues-to-check", e);
     }
+    if (Instrumentation.isEnabled()) {
+      Instrumentation.allocated(getFormat(), newBuffer.length);
+    }
     return openBytes(no, newBuffer, x, y, w, h);
   }
 
@@ -947,11 +1036,17 @@ public abstract class FormatReader extends FormatHandler
   @Override
   public void close(boolean fileOnly) throws IOException {
     if (in != null) in.close();
+    BufferPool pool = bufferPool;
+    if (pool != null) {
+      pool.clear();
+    }
     if (!fileOnly) {
       in = null;
       currentId = null;
       resolution = 0;
       core = null;
+      deferredMetadataOptions = null;
+      deferredMetadataFailure = null;
     }
   }
 
@@ -1173,6 +1268,7 @@ public abstract class FormatReader extends FormatHandler
   @Override
   public Object getMetadataValue(String field) {
     FormatTools.assertId(currentId, true, 1);
+    loadDeferredMetadata();
     flattenHashtables();
     return getGlobalMeta(field);
   }
@@ -1181,6 +1277,7 @@ public abstract class FormatReader extends FormatHandler
   @Override
   public Object getSeriesMetadataValue(String field) {
     FormatTools.assertId(currentId, true, 1);
+    loadDeferredMetadata();
     flattenHashtables();
     return getSeriesMeta(field);
   }
@@ -1189,6 +1286,7 @@ public abstract class FormatReader extends FormatHandler
   @Override
   public Hashtable<String, Object> getGlobalMetadata() {
     FormatTools.assertId(currentId, true, 1);
+    loadDeferredMetadata();
     flattenHashtables();
     return metadata;
   }
@@ -1197,6 +1295,7 @@ public abstract class FormatReader extends FormatHandler
   @Override
   public Hashtable<String, Object> getSeriesMetadata() {
     FormatTools.assertId(currentId, true, 1);
+    loadDeferredMetadata();
     if (getCurrentCore().seriesMetadata.size() > 0) {
       flattenHashtables();
     }
@@ -1477,7 +1576,41 @@ public abstract class FormatReader extends FormatHandler
     if (currentId == null || !new Location(id).getAbsolutePath().equals(
       new Location(currentId).getAbsolutePath()))
     {
-      initFile(id);
+      // System.nanoTime() may be negative, so it cannot mark a disabled timer
+      boolean timed = Instrumentation.isEnabled();
+      long initStart = timed ? System.nanoTime() : 0;
+      currentPhase = null;
+      MetadataOptions options = getMetadataOptions();
+      boolean deferMetadata = !saveOriginalMetadata &&
+        options instanceof DynamicMetadataOptions &&
+        ((DynamicMetadataOptions) options).isMetadataDeferred() &&
+        options.getMetadataLevel() != MetadataLevel.MINIMUM &&
+        getDefaultConstructor() != null;
+      if (deferMetadata) {
+        // initialize at the minimum metadata level; the original metadata
+        // is read by loadDeferredMetadata() when it is first requested
+        DynamicMetadataOptions minimum =
+          new DynamicMetadataOptions((DynamicMetadataOptions) options);
+        minimum.setMetadataLevel(MetadataLevel.MINIMUM);
+        metadataOptions = minimum;
+        try {
+          initFile(id);
+        }
+        finally {
+          metadataOptions = options;
+        }
+        deferredMetadataOptions =
+          new DynamicMetadataOptions((DynamicMetadataOptions) options);
+        deferredMetadataOptions.setMetadataDeferred(false);
+      }
+      else {
+        initFile(id);
+      }
+      endPhase();
+      if (timed) {
+        Instrumentation.phaseCompleted(getFormat(), "initFile",
+          System.nanoTime() - initStart);
+      }
 
       MetadataStore store = getMetadataStore();
       if (saveOriginalMetadata) {
@@ -1532,6 +1665,75 @@ public abstract class FormatReader extends FormatHandler
     }
   }
 
+  /**
+   * Reads any original metadata that was deferred by {@link #setId(String)}
+   * into the global and series metadata tables.  A second instance of this
+   * reader is initialized with the requested metadata options, and its
+   * metadata tables are merged into this reader's tables.
+   *
+   * @throws IllegalStateException if the deferred metadata could not be
+   *   read; the same failure is reported by every later request
+   */
+  private void loadDeferredMetadata() {
+    if (deferredMetadataFailure != null) {
+      throw deferredMetadataFailure;
+    }
+    if (deferredMetadataOptions == null) {
+      return;
+    }
+    DynamicMetadataOptions options = deferredMetadataOptions;
+    deferredMetadataOptions = null;
+
+    LOGGER.debug("Reading deferred original metadata for {}", currentId);
+    FormatReader r = null;
+    try {
+      r = getDefaultConstructor().newInstance();
+      r.setMetadataOptions(options);
+      r.setGroupFiles(isGroupFiles());
+      r.setMetadataFiltered(isMetadataFiltered());
+      r.setFlattenedResolutions(hasFlattenedResolutions());
+      r.setId(currentId);
+
+      metadata.putAll(r.metadata);
+      int coreCount = Math.min(core.size(), r.core.size());
+      for (int i=0; i<coreCount; i++) {
+        core.get(i).seriesMetadata.putAll(r.core.get(i).seriesMetadata);
+      }
+    }
+    catch (ReflectiveOperationException | FormatException | IOException e) {
+      deferredMetadataFailure = new IllegalStateException(
+        "Could not read deferred original metadata for " + currentId, e);
+      throw deferredMetadataFailure;
+    }
+    finally {
+      if (r != null) {
+        try {
+          r.close();
+        }
+        catch (IOException e) {
+          LOGGER.debug("Could not close reader", e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Gets the no-argument constructor used to create the reader that reads
+   * deferred original metadata, or null if this class does not have one.
+   * Original metadata is never deferred for readers without one.
+   */
+  private Constructor<? extends FormatReader> getDefaultConstructor() {
+    try {
+      Constructor<? extends FormatReader> c =
+        getClass().getDeclaredConstructor();
+      c.setAccessible(true);
+      return c;
+    }
+    catch (NoSuchMethodException | SecurityException e) {
+      return null;
+    }
+  }
+
   /** Initialize the OMEXMLService needed by {@link #setId(String)} */
   private void setupService() {
     try {
@@ -1894,4 +2096,84 @@ public abstract class FormatReader extends FormatHandler
     id.indexOf("\n") > 0;
   }
 
+  // -- Helper methods - metadata filtering --
+
+  /**
+   * Removes all non-printable characters from the given string.
+   * Equivalent to {@link DataTools#sanitize(String)}, but does not copy
+   * strings that are already printable.
+   */
+  private static String sanitize(String s) {
+    int len = s.length();
+    int first = 0;
+    while (first < len && isPrintable(s.charAt(first))) {
+      first++;
+    }
+    if (first == len) return s;
+
+    StringBuilder sb = new StringBuilder(len - 1);
+    sb.append(s, 0, first);
+    for (int i=first+1; i<len; i++) {
+      char c = s.charAt(i);
+      if (isPrintable(c)) sb.append(c);
+    }
+    return sb.toString();
+  }
+
+  /** Returns false if the character is removed by {@link #sanitize}. */
+  private static boolean isPrintable(char c) {
+    return c == '\t' || c == '\n' || !Character.isISOControl(c);
+  }
+
+  /**
+   * Returns true if the key contains at least one alphabetic character.
+   * Equivalent to <code>key.matches(".*[a-zA-Z].*")</code>, so keys that
+   * contain a line terminator are also rejected.
+   */
+  private static boolean isValidKey(String key) {
+    boolean alphabetic = false;
+    for (int i=0; i<key.length(); i++) {
+      char c = key.charAt(i);
+      if (c == '\n' || c == '\r' || c == '\u0085' ||
+        c == '\u2028' || c == '\u2029')
+      {
+        return false;
+      }
+      if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+        alphabetic = true;
+      }
+    }
+    return alphabetic;
+  }
+
+  /** Removes each of {@link #INVALID_SEQUENCES} in turn. */
+  private static String removeInvalidSequences(String s) {
+    // every invalid sequence contains one of these characters
+    if (s.indexOf('&') < 0 && s.indexOf('<') < 0 && s.indexOf('>') < 0) {
+      return s;
+    }
+    for (String sequence : INVALID_SEQUENCES) {
+      int index = s.indexOf(sequence);
+      if (index < 0) continue;
+      StringBuilder sb = new StringBuilder(s.length());
+      int start = 0;
+      while (index >= 0) {
+        sb.append(s, start, index);
+        start = index + sequence.length();
+        index = s.indexOf(sequence, start);
+      }
+      sb.append(s, start, s.length());
+      s = sb.toString();
+    }
+    return s;
+  }
+
+  /** Returns true if <code>s.trim()</code> would be empty. */
+  private static boolean isBlank(String s) {
+    for (int i=0; i<s.length(); i++) {
+      if (s.charAt(i) > ' ') return false;
+    }
+    return true;
+  }
+
 }
@@ -2154,31 +2154,40 @@ public final class FormatTools {
     writer.setSeries(series);
     writer.setResolution(resolution);
 
-    boolean sameTileWidth = reader.getOptimalTileWidth() == writer.getTileSizeX();
-    boolean sameTileHeight = reader.getOptimalTileHeight() == writer.getTileSizeY();
-
-    // reader and writer must use equivalent codecs
-    // the Codec objects are not expected to be strictly equal,
-    // but both should either be null, or non-null and instances of the same class
-    boolean sameCodec = true;
-    Codec writerCodec = ((ICompressedTileWriter) writer).getCodec();
-    for (int no=0; no<reader.getImageCount(); no++) {
-      Codec readerCodec = ((ICompressedTileReader) reader).getTileCodec(no);
-      if ((writerCodec == null && readerCodec != null) ||
-        (writerCodec != null && readerCodec == null) ||
-        !writerCodec.getClass().equals(readerCodec.getClass()))
-      {
-        sameCodec = false;
-        break;
+    try {
+      boolean sameTileWidth = reader.getOptimalTileWidth() == writer.getTileSizeX();
+      boolean sameTileHeight = reader.getOptimalTileHeight() == writer.getTileSizeY();
+
+      // reader and writer must use equivalent codecs
+      // the Codec objects are not expected to be strictly equal,
+      // but both should either be null, or non-null and instances of the same class
+      boolean sameCodec = true;
+      Codec writerCodec = ((ICompressedTileWriter) writer).getCodec();
+      for (int no=0; no<reader.getImageCount(); no++) {
+        Codec readerCodec = ((ICompressedTileReader) reader).getTileCodec(no);
+        if ((writerCodec == null && readerCodec != null) ||
+          (writerCodec != null && readerCodec == null) ||
+          (writerCodec != null &&
+          !writerCodec.getClass().equals(readerCodec.getClass())))
+        {
+          sameCodec = false;
+          break;
+        }
       }
-    }
-
-    reader.setSeries(readerSeries);
-    reader.setResolution(resolution);
-    writer.setSeries(series);
-    writer.setResolution(resolution);
 
-    return sameTileWidth && sameTileHeight && sameCodec;
+      return sameTileWidth && sameTileHeight && sameCodec;
+    }
+    catch (UnsupportedOperationException e) {
+      // the reader only supports pre-compressed tiles for some data,
+      // e.g. a TIFF reader with images that use a predictor
+      return false;
+    }
+    finally {
+      reader.setSeries(readerSeries);
+      reader.setResolution(readerRes);
+      writer.setSeries(writerSeries);
+      writer.setResolution(writerRes);
+    }
   }
 
 }
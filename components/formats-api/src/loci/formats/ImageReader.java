@@ -439,7 +439,17 @@ public class ImageReader implements IFormatReader {
   /* @see IFormatReader#openBytes(int) */
   @Override
   public byte[] openBytes(int no) throws FormatException, IOException {
-    return getReader().openBytes(no);
+    IFormatReader reader = getReader();
+    boolean timed = Instrumentation.isEnabled();
+    long start = timed ? System.nanoTime() : 0;
+    try {
+      return reader.openBytes(no);
+    }
+    finally {
+      if (timed) {
+        stopTimer(reader, start);
+      }
+    }
   }
 
   /* @see IFormatReader#openBytes(int, int, int, int, int) */
@@ -447,7 +457,17 @@ public class ImageReader implements IFormatReader {
   public byte[] openBytes(int no, int x, int y, int w, int h)
     throws FormatException, IOException
   {
-    return getReader().openBytes(no, x, y, w, h);
+    IFormatReader reader = getReader();
+    boolean timed = Instrumentation.isEnabled();
+    long start = timed ? System.nanoTime() : 0;
+    try {
+      return reader.openBytes(no, x, y, w, h);
+    }
+    finally {
+      if (timed) {
+        stopTimer(reader, start);
+      }
+    }
   }
 
   /* @see IFormatReader#openBytes(int, byte[]) */
@@ -455,7 +475,17 @@ public class ImageReader implements IFormatReader {
   public byte[] openBytes(int no, byte[] buf)
     throws FormatException, IOException
   {
-    return getReader().openBytes(no, buf);
+    IFormatReader reader = getReader();
+    boolean timed = Instrumentation.isEnabled();
+    long start = timed ? System.nanoTime() : 0;
+    try {
+      return reader.openBytes(no, buf);
+    }
+    finally {
+      if (timed) {
+        stopTimer(reader, start);
+      }
+    }
   }
 
   /* @see IFormatReader#openBytes(int, byte[], int, int, int, int) */
@@ -463,7 +493,17 @@ public class ImageReader implements IFormatReader {
   public byte[] openBytes(int no, byte[] buf, int x, int y, int w, int h)
     throws FormatException, IOException
   {
-    return getReader().openBytes(no, buf, x, y, w, h);
+    IFormatReader reader = getReader();
+    boolean timed = Instrumentation.isEnabled();
+    long start = timed ? System.nanoTime() : 0;
+    try {
+      return reader.openBytes(no, buf, x, y, w, h);
+    }
+    finally {
+      if (timed) {
+        stopTimer(reader, start);
+      }
+    }
   }
 
   /* @see IFormatReader#openPlane(int, int, int, int, int) */
@@ -945,4 +985,14 @@ public class ImageReader implements IFormatReader {
     }
   }
 
+  /**
+   * Reports the duration of an openBytes call started at the given time.
+   * The reader is looked up before the call rather than here, as an
+   * exception thrown from a finally block would hide the original one.
+   */
+  private void stopTimer(IFormatReader reader, long start) {
+    Instrumentation.phaseCompleted(reader.getFormat(), "openBytes",
+      System.nanoTime() - start);
+  }
+
 }
@@ -0,0 +1,215 @@
+/*
+ * #%L
+ * Top-level reader and writer APIs
+ * %%
+ * Copyright (C) 2018 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import loci.common.Location;
+import loci.common.RandomAccessInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Dispatches measurements to the registered {@link InstrumentationListener}s.
+ *
+ * Instrumentation is disabled until at least one listener is registered,
+ * so that readers only pay for a single volatile read per measurement
+ * point when nothing is listening.  Listeners listed in
+ * <code>META-INF/services/loci.formats.InstrumentationListener</code> are
+ * registered when this class is first used.  Setting the
+ * {@link #JMX_PROPERTY} system property to <code>true</code> registers a
+ * {@link ReaderMetrics} MBean.
+ */
+public final class Instrumentation {
+
+  // -- Constants --
+
+  private static final Logger LOGGER =
+    LoggerFactory.getLogger(Instrumentation.class);
+
+  /** System property that enables the {@link ReaderMetrics} MBean. */
+  public static final String JMX_PROPERTY = "bioformats.instrumentation.jmx";
+
+  // -- Static fields --
+
+  private static final List<InstrumentationListener> LISTENERS =
+    new CopyOnWriteArrayList<InstrumentationListener>();
+
+  private static volatile boolean enabled = false;
+
+  static {
+    try {
+      Iterator<InstrumentationListener> providers =
+        ServiceLoader.load(InstrumentationListener.class).iterator();
+      while (providers.hasNext()) {
+        addListener(providers.next());
+      }
+    }
+    catch (ServiceConfigurationError e) {
+      LOGGER.warn("Could not load instrumentation listeners", e);
+    }
+    if (Boolean.getBoolean(JMX_PROPERTY)) {
+      ReaderMetrics.register();
+    }
+  }
+
+  // -- Constructor --
+
+  private Instrumentation() { }
+
+  // -- Instrumentation API methods --
+
+  /** Returns true if any listeners are registered. */
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  /** Registers the given listener. */
+  public static void addListener(InstrumentationListener listener) {
+    if (listener != null && LISTENERS.add(listener)) {
+      enabled = true;
+    }
+  }
+
+  /** Removes the given listener, if it is registered. */
+  public static void removeListener(InstrumentationListener listener) {
+    LISTENERS.remove(listener);
+    enabled = !LISTENERS.isEmpty();
+  }
+
+  /** @see InstrumentationListener#phaseCompleted(String, String, long) */
+  public static void phaseCompleted(String format, String phase, long nanos) {
+    for (InstrumentationListener l : LISTENERS) {
+      try {
+        l.phaseCompleted(format, phase, nanos);
+      }
+      catch (RuntimeException e) {
+        LOGGER.debug("Instrumentation listener failed", e);
+      }
+    }
+  }
+
+  /** @see InstrumentationListener#bytesRead(String, long, long) */
+  public static void bytesRead(String source, long bytes, long seeks) {
+    for (InstrumentationListener l : LISTENERS) {
+      try {
+        l.bytesRead(source, bytes, seeks);
+      }
+      catch (RuntimeException e) {
+        LOGGER.debug("Instrumentation listener failed", e);
+      }
+    }
+  }
+
+  /** @see InstrumentationListener#decompressed(String, long, long, long) */
+  public static void decompressed(String codec, long compressedBytes,
+    long decompressedBytes, long nanos)
+  {
+    for (InstrumentationListener l : LISTENERS) {
+      try {
+        l.decompressed(codec, compressedBytes, decompressedBytes, nanos);
+      }
+      catch (RuntimeException e) {
+        LOGGER.debug("Instrumentation listener failed", e);
+      }
+    }
+  }
+
+  /** @see InstrumentationListener#cacheAccessed(String, boolean) */
+  public static void cacheAccessed(String cache, boolean hit) {
+    for (InstrumentationListener l : LISTENERS) {
+      try {
+        l.cacheAccessed(cache, hit);
+      }
+      catch (RuntimeException e) {
+        LOGGER.debug("Instrumentation listener failed", e);
+      }
+    }
+  }
+
+  /** @see InstrumentationListener#allocated(String, long) */
+  public static void allocated(String source, long bytes) {
+    for (InstrumentationListener l : LISTENERS) {
+      try {
+        l.allocated(source, bytes);
+      }
+      catch (RuntimeException e) {
+        LOGGER.debug("Instrumentation listener failed", e);
+      }
+    }
+  }
+
+  /**
+   * Opens a stream on the given file, equivalent to
+   * <code>new RandomAccessInputStream(id)</code>.
+   *
+   * @see #openStream(String, String, int)
+   */
+  public static RandomAccessInputStream openStream(String source, String id)
+    throws IOException
+  {
+    if (!isEnabled()) {
+      return new RandomAccessInputStream(id);
+    }
+    return new RandomAccessInputStream(
+      new InstrumentedRandomAccess(Location.getHandle(id), source), id);
+  }
+
+  /**
+   * Opens a stream on the given file, equivalent to
+   * <code>new RandomAccessInputStream(id, bufferSize)</code>.  If
+   * instrumentation is enabled, the number of bytes read and seeks
+   * performed are reported against the given source.
+   *
+   * @param source the name of the format opening the stream
+   * @param id the file to open
+   * @param bufferSize the stream's buffer size
+   */
+  public static RandomAccessInputStream openStream(String source, String id,
+    int bufferSize)
+    throws IOException
+  {
+    if (!isEnabled()) {
+      return new RandomAccessInputStream(id, bufferSize);
+    }
+    return new RandomAccessInputStream(new InstrumentedRandomAccess(
+      Location.getHandle(id, false, true, bufferSize), source), id);
+  }
+
+}
@@ -0,0 +1,104 @@
+/*
+ * #%L
+ * Top-level reader and writer APIs
+ * %%
+ * Copyright (C) 2018 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats;
+
+/**
+ * Receives measurements from readers, codecs and input streams.
+ *
+ * Listeners are registered with {@link Instrumentation#addListener}, or
+ * discovered with {@link java.util.ServiceLoader} by listing the
+ * implementing class in
+ * <code>META-INF/services/loci.formats.InstrumentationListener</code>.
+ * Each method has an empty default implementation, so a listener only
+ * needs to override the measurements that it is interested in.
+ *
+ * Methods may be called concurrently from multiple threads, and should
+ * return quickly.
+ */
+public interface InstrumentationListener {
+
+  /**
+   * Called when a reader completes a phase of work, such as
+   * <code>initFile</code> or <code>openBytes</code>.
+   *
+   * @param format the name of the reader's format
+   * @param phase the name of the phase
+   * @param nanos the elapsed time in nanoseconds
+   */
+  default void phaseCompleted(String format, String phase, long nanos) {
+  }
+
+  /**
+   * Called periodically with the amount of data read from a stream
+   * opened with {@link Instrumentation#openStream(String, String, int)}.
+   *
+   * @param source the name of the format that opened the stream
+   * @param bytes the number of bytes read since the last call
+   * @param seeks the number of seeks since the last call
+   */
+  default void bytesRead(String source, long bytes, long seeks) {
+  }
+
+  /**
+   * Called when a codec finishes decompressing a block of data.
+   *
+   * @param codec the name of the codec
+   * @param compressedBytes the number of compressed bytes consumed,
+   *   or -1 if unknown
+   * @param decompressedBytes the number of bytes produced
+   * @param nanos the elapsed time in nanoseconds
+   */
+  default void decompressed(String codec, long compressedBytes,
+    long decompressedBytes, long nanos)
+  {
+  }
+
+  /**
+   * Called when a cache is checked for an entry.
+   *
+   * @param cache the name of the cache
+   * @param hit true if the entry was found
+   */
+  default void cacheAccessed(String cache, boolean hit) {
+  }
+
+  /**
+   * Called when a large array is allocated for pixel data.
+   *
+   * @param source the name of the format or component that allocated it
+   * @param bytes the size of the allocation
+   */
+  default void allocated(String source, long bytes) {
+  }
+
+}
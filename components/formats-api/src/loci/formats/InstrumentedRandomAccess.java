@@ -0,0 +1,341 @@
+/*
+ * #%L
+ * Top-level reader and writer APIs
+ * %%
+ * Copyright (C) 2018 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import loci.common.IRandomAccess;
+
+/**
+ * An {@link IRandomAccess} that counts the bytes read from, and seeks
+ * performed on, another handle.  Counts are passed to
+ * {@link Instrumentation#bytesRead(String, long, long)} in batches, and
+ * when the handle is closed.
+ */
+class InstrumentedRandomAccess implements IRandomAccess {
+
+  // -- Constants --
+
+  /** Number of bytes to accumulate before reporting. */
+  private static final long REPORT_BYTES = 1 << 18;
+
+  /** Number of seeks to accumulate before reporting. */
+  private static final long REPORT_SEEKS = 256;
+
+  // -- Fields --
+
+  private final IRandomAccess handle;
+  private final String source;
+  private long bytes;
+  private long seeks;
+
+  // -- Constructor --
+
+  public InstrumentedRandomAccess(IRandomAccess handle, String source) {
+    this.handle = handle;
+    this.source = source;
+  }
+
+  // -- IRandomAccess API methods --
+
+  @Override
+  public void close() throws IOException {
+    report();
+    handle.close();
+  }
+
+  @Override
+  public long getFilePointer() throws IOException {
+    return handle.getFilePointer();
+  }
+
+  @Override
+  public boolean exists() throws IOException {
+    return handle.exists();
+  }
+
+  @Override
+  public long length() throws IOException {
+    return handle.length();
+  }
+
+  @Override
+  public ByteOrder getOrder() {
+    return handle.getOrder();
+  }
+
+  @Override
+  public void setOrder(ByteOrder order) {
+    handle.setOrder(order);
+  }
+
+  @Override
+  public int read(byte[] b) throws IOException {
+    return count(handle.read(b));
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    return count(handle.read(b, off, len));
+  }
+
+  @Override
+  public int read(ByteBuffer buffer) throws IOException {
+    return count(handle.read(buffer));
+  }
+
+  @Override
+  public int read(ByteBuffer buffer, int offset, int len) throws IOException {
+    return count(handle.read(buffer, offset, len));
+  }
+
+  @Override
+  public void seek(long pos) throws IOException {
+    if (pos != handle.getFilePointer()) {
+      seeks++;
+    }
+    handle.seek(pos);
+    checkReport();
+  }
+
+  @Override
+  public long skipBytes(long n) throws IOException {
+    seeks++;
+    return handle.skipBytes(n);
+  }
+
+  @Override
+  public void write(ByteBuffer buf) throws IOException {
+    handle.write(buf);
+  }
+
+  @Override
+  public void write(ByteBuffer buf, int off, int len) throws IOException {
+    handle.write(buf, off, len);
+  }
+
+  // -- DataInput API methods --
+
+  @Override
+  public void readFully(byte[] b) throws IOException {
+    handle.readFully(b);
+    count(b.length);
+  }
+
+  @Override
+  public void readFully(byte[] b, int off, int len) throws IOException {
+    handle.readFully(b, off, len);
+    count(len);
+  }
+
+  @Override
+  public int skipBytes(int n) throws IOException {
+    seeks++;
+    return handle.skipBytes(n);
+  }
+
+  @Override
+  public boolean readBoolean() throws IOException {
+    count(1);
+    return handle.readBoolean();
+  }
+
+  @Override
+  public byte readByte() throws IOException {
+    count(1);
+    return handle.readByte();
+  }
+
+  @Override
+  public int readUnsignedByte() throws IOException {
+    count(1);
+    return handle.readUnsignedByte();
+  }
+
+  @Override
+  public short readShort() throws IOException {
+    count(2);
+    return handle.readShort();
+  }
+
+  @Override
+  public int readUnsignedShort() throws IOException {
+    count(2);
+    return handle.readUnsignedShort();
+  }
+
+  @Override
+  public char readChar() throws IOException {
+    count(2);
+    return handle.readChar();
+  }
+
+  @Override
+  public int readInt() throws IOException {
+    count(4);
+    return handle.readInt();
+  }
+
+  @Override
+  public long readLong() throws IOException {
+    count(8);
+    return handle.readLong();
+  }
+
+  @Override
+  public float readFloat() throws IOException {
+    count(4);
+    return handle.readFloat();
+  }
+
+  @Override
+  public double readDouble() throws IOException {
+    count(8);
+    return handle.readDouble();
+  }
+
+  @Override
+  public String readLine() throws IOException {
+    long start = handle.getFilePointer();
+    String line = handle.readLine();
+    count((int) (handle.getFilePointer() - start));
+    return line;
+  }
+
+  @Override
+  public String readUTF() throws IOException {
+    long start = handle.getFilePointer();
+    String s = handle.readUTF();
+    count((int) (handle.getFilePointer() - start));
+    return s;
+  }
+
+  // -- DataOutput API methods --
+
+  @Override
+  public void write(int b) throws IOException {
+    handle.write(b);
+  }
+
+  @Override
+  public void write(byte[] b) throws IOException {
+    handle.write(b);
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    handle.write(b, off, len);
+  }
+
+  @Override
+  public void writeBoolean(boolean v) throws IOException {
+    handle.writeBoolean(v);
+  }
+
+  @Override
+  public void writeByte(int v) throws IOException {
+    handle.writeByte(v);
+  }
+
+  @Override
+  public void writeShort(int v) throws IOException {
+    handle.writeShort(v);
+  }
+
+  @Override
+  public void writeChar(int v) throws IOException {
+    handle.writeChar(v);
+  }
+
+  @Override
+  public void writeInt(int v) throws IOException {
+    handle.writeInt(v);
+  }
+
+  @Override
+  public void writeLong(long v) throws IOException {
+    handle.writeLong(v);
+  }
+
+  @Override
+  public void writeFloat(float v) throws IOException {
+    handle.writeFloat(v);
+  }
+
+  @Override
+  public void writeDouble(double v) throws IOException {
+    handle.writeDouble(v);
+  }
+
+  @Override
+  public void writeBytes(String s) throws IOException {
+    handle.writeBytes(s);
+  }
+
+  @Override
+  public void writeChars(String s) throws IOException {
+    handle.writeChars(s);
+  }
+
+  @Override
+  public void writeUTF(String str) throws IOException {
+    handle.writeUTF(str);
+  }
+
+  // -- Helper methods --
+
+  private int count(int n) {
+    if (n > 0) {
+      bytes += n;
+      checkReport();
+    }
+    return n;
+  }
+
+  private void checkReport() {
+    if (bytes >= REPORT_BYTES || seeks >= REPORT_SEEKS) {
+      report();
+    }
+  }
+
+  private void report() {
+    if (bytes > 0 || seeks > 0) {
+      Instrumentation.bytesRead(source, bytes, seeks);
+      bytes = 0;
+      seeks = 0;
+    }
+  }
+
+}
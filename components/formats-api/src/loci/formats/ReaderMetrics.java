@@ -0,0 +1,284 @@
+/*
+ * #%L
+ * Top-level reader and writer APIs
+ * %%
+ * Copyright (C) 2018 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An {@link InstrumentationListener} that keeps cumulative totals of
+ * all measurements, and can be exposed as a JMX MBean.
+ *
+ * Use {@link #register()} to start collecting and publish the totals
+ * under {@link #OBJECT_NAME}, or construct an instance and pass it to
+ * {@link Instrumentation#addListener} to collect without JMX.
+ */
+public class ReaderMetrics implements InstrumentationListener,
+  ReaderMetricsMXBean
+{
+
+  // -- Constants --
+
+  private static final Logger LOGGER =
+    LoggerFactory.getLogger(ReaderMetrics.class);
+
+  /** Name under which {@link #register()} publishes the MBean. */
+  public static final String OBJECT_NAME = "loci.formats:type=ReaderMetrics";
+
+  // -- Static fields --
+
+  private static ReaderMetrics registered;
+
+  // -- Fields --
+
+  private final ConcurrentMap<String, AtomicLong> bytesRead =
+    new ConcurrentHashMap<String, AtomicLong>();
+  private final ConcurrentMap<String, AtomicLong> seeks =
+    new ConcurrentHashMap<String, AtomicLong>();
+  private final ConcurrentMap<String, AtomicLong> phaseNanos =
+    new ConcurrentHashMap<String, AtomicLong>();
+  private final ConcurrentMap<String, AtomicLong> phaseCounts =
+    new ConcurrentHashMap<String, AtomicLong>();
+  private final ConcurrentMap<String, AtomicLong> decompressNanos =
+    new ConcurrentHashMap<String, AtomicLong>();
+  private final ConcurrentMap<String, AtomicLong> decompressCounts =
+    new ConcurrentHashMap<String, AtomicLong>();
+  private final ConcurrentMap<String, AtomicLong> compressedBytes =
+    new ConcurrentHashMap<String, AtomicLong>();
+  private final ConcurrentMap<String, AtomicLong> decompressedBytes =
+    new ConcurrentHashMap<String, AtomicLong>();
+  private final ConcurrentMap<String, AtomicLong> cacheHits =
+    new ConcurrentHashMap<String, AtomicLong>();
+  private final ConcurrentMap<String, AtomicLong> cacheMisses =
+    new ConcurrentHashMap<String, AtomicLong>();
+  private final ConcurrentMap<String, AtomicLong> allocatedBytes =
+    new ConcurrentHashMap<String, AtomicLong>();
+
+  // -- Static methods --
+
+  /**
+   * Registers a shared instance as an instrumentation listener and as a
+   * platform MBean, if that has not already been done.
+   *
+   * @return the shared instance
+   */
+  public static synchronized ReaderMetrics register() {
+    if (registered == null) {
+      registered = new ReaderMetrics();
+      try {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        server.registerMBean(registered, new ObjectName(OBJECT_NAME));
+      }
+      catch (JMException e) {
+        LOGGER.warn("Could not register {}", OBJECT_NAME, e);
+      }
+      Instrumentation.addListener(registered);
+    }
+    return registered;
+  }
+
+  /**
+   * Removes the shared instance created by {@link #register()}, if any,
+   * from the instrumentation listeners and the platform MBean server.
+   */
+  public static synchronized void unregister() {
+    if (registered == null) {
+      return;
+    }
+    Instrumentation.removeListener(registered);
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName name = new ObjectName(OBJECT_NAME);
+      if (server.isRegistered(name)) {
+        server.unregisterMBean(name);
+      }
+    }
+    catch (JMException e) {
+      LOGGER.warn("Could not unregister {}", OBJECT_NAME, e);
+    }
+    registered = null;
+  }
+
+  // -- InstrumentationListener API methods --
+
+  @Override
+  public void phaseCompleted(String format, String phase, long nanos) {
+    String key = format + "/" + phase;
+    add(phaseNanos, key, nanos);
+    add(phaseCounts, key, 1);
+  }
+
+  @Override
+  public void bytesRead(String source, long bytes, long seekCount) {
+    add(bytesRead, source, bytes);
+    add(seeks, source, seekCount);
+  }
+
+  @Override
+  public void decompressed(String codec, long compressed, long decompressed,
+    long nanos)
+  {
+    add(decompressNanos, codec, nanos);
+    add(decompressCounts, codec, 1);
+    if (compressed >= 0) {
+      add(compressedBytes, codec, compressed);
+    }
+    add(decompressedBytes, codec, decompressed);
+  }
+
+  @Override
+  public void cacheAccessed(String cache, boolean hit) {
+    add(hit ? cacheHits : cacheMisses, cache, 1);
+  }
+
+  @Override
+  public void allocated(String source, long bytes) {
+    add(allocatedBytes, source, bytes);
+  }
+
+  // -- ReaderMetricsMXBean API methods --
+
+  @Override
+  public Map<String, Long> getBytesRead() {
+    return snapshot(bytesRead, false);
+  }
+
+  @Override
+  public Map<String, Long> getSeeks() {
+    return snapshot(seeks, false);
+  }
+
+  @Override
+  public Map<String, Long> getPhaseMillis() {
+    return snapshot(phaseNanos, true);
+  }
+
+  @Override
+  public Map<String, Long> getPhaseCounts() {
+    return snapshot(phaseCounts, false);
+  }
+
+  @Override
+  public Map<String, Long> getDecompressMillis() {
+    return snapshot(decompressNanos, true);
+  }
+
+  @Override
+  public Map<String, Long> getDecompressCounts() {
+    return snapshot(decompressCounts, false);
+  }
+
+  @Override
+  public Map<String, Long> getCompressedBytes() {
+    return snapshot(compressedBytes, false);
+  }
+
+  @Override
+  public Map<String, Long> getDecompressedBytes() {
+    return snapshot(decompressedBytes, false);
+  }
+
+  @Override
+  public Map<String, Long> getCacheHits() {
+    return snapshot(cacheHits, false);
+  }
+
+  @Override
+  public Map<String, Long> getCacheMisses() {
+    return snapshot(cacheMisses, false);
+  }
+
+  @Override
+  public Map<String, Long> getAllocatedBytes() {
+    return snapshot(allocatedBytes, false);
+  }
+
+  @Override
+  public void reset() {
+    bytesRead.clear();
+    seeks.clear();
+    phaseNanos.clear();
+    phaseCounts.clear();
+    decompressNanos.clear();
+    decompressCounts.clear();
+    compressedBytes.clear();
+    decompressedBytes.clear();
+    cacheHits.clear();
+    cacheMisses.clear();
+    allocatedBytes.clear();
+  }
+
+  // -- Helper methods --
+
+  private static void add(ConcurrentMap<String, AtomicLong> totals,
+    String key, long value)
+  {
+    AtomicLong total = totals.get(key);
+    if (total == null) {
+      AtomicLong newTotal = new AtomicLong();
+      total = totals.putIfAbsent(key, newTotal);
+      if (total == null) {
+        total = newTotal;
+      }
+    }
+    total.addAndGet(value);
+  }
+
+  private static SortedMap<String, Long> snapshot(
+    ConcurrentMap<String, AtomicLong> totals, boolean nanosToMillis)
+  {
+    SortedMap<String, Long> copy = new TreeMap<String, Long>();
+    for (Map.Entry<String, AtomicLong> entry : totals.entrySet()) {
+      long value = entry.getValue().get();
+      if (nanosToMillis) {
+        value = TimeUnit.NANOSECONDS.toMillis(value);
+      }
+      copy.put(entry.getKey(), value);
+    }
+    return copy;
+  }
+
+}
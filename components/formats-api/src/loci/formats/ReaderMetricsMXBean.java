@@ -0,0 +1,80 @@
+/*
+ * #%L
+ * Top-level reader and writer APIs
+ * %%
+ * Copyright (C) 2018 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats;
+
+import java.util.Map;
+
+/**
+ * JMX management interface for {@link ReaderMetrics}.
+ * Each attribute maps a format, codec, cache or phase name to a
+ * cumulative total.
+ */
+public interface ReaderMetricsMXBean {
+
+  /** Bytes read from instrumented streams, by format. */
+  Map<String, Long> getBytesRead();
+
+  /** Seeks performed on instrumented streams, by format. */
+  Map<String, Long> getSeeks();
+
+  /** Time spent in each phase, in milliseconds, by "format/phase". */
+  Map<String, Long> getPhaseMillis();
+
+  /** Number of times each phase completed, by "format/phase". */
+  Map<String, Long> getPhaseCounts();
+
+  /** Time spent decompressing, in milliseconds, by codec. */
+  Map<String, Long> getDecompressMillis();
+
+  /** Number of decompressed blocks, by codec. */
+  Map<String, Long> getDecompressCounts();
+
+  /** Compressed bytes consumed, by codec. */
+  Map<String, Long> getCompressedBytes();
+
+  /** Decompressed bytes produced, by codec. */
+  Map<String, Long> getDecompressedBytes();
+
+  /** Cache hits, by cache. */
+  Map<String, Long> getCacheHits();
+
+  /** Cache misses, by cache. */
+  Map<String, Long> getCacheMisses();
+
+  /** Bytes allocated for pixel data, by format or component. */
+  Map<String, Long> getAllocatedBytes();
+
+  /** Resets all totals to zero. */
+  void reset();
+
+}
@@ -126,6 +126,8 @@ public abstract class ReaderWrapper implements IFormatReader {
    *   <li>{@link #isNormalized()}</li>
    *   <li>{@link #isMetadataFiltered()}</li>
    *   <li>{@link DelegateReader#isLegacy()}</li>
+   *   <li>the reader classes used by an {@link ImageReader}</li>
+   *   <li>any configuration copied by {@link #duplicateWrapper}</li>
    * </ul>
    *
    * @param imageReaderClass If non-null, any {@link ImageReader}s in the
@@ -145,6 +147,31 @@ public abstract class ReaderWrapper implements IFormatReader {
     return wrapperCopy;
   }
 
+  /**
+   * Constructs a wrapper of the same type around the given reader. This is
+   * used by {@link #duplicate(Class)} for each layer of the reader stack;
+   * wrappers with configuration that is not set by their
+   * {@link IFormatReader} constructor should override it to copy that
+   * configuration.
+   *
+   * @param r the duplicated reader that the new wrapper should wrap.
+   * @throws FormatException If the wrapper cannot be constructed.
+   */
+  protected ReaderWrapper duplicateWrapper(IFormatReader r)
+    throws FormatException
+  {
+    // use crazy reflection to instantiate a reader of the proper type
+    Class<? extends ReaderWrapper> wrapperClass = getClass();
+    try {
+      return wrapperClass.getConstructor(new Class[]
+        {IFormatReader.class}).newInstance(new Object[] {r});
+    }
+    catch (InstantiationException exc) { throw new FormatException(exc); }
+    catch (IllegalAccessException exc) { throw new FormatException(exc); }
+    catch (NoSuchMethodException exc) { throw new FormatException(exc); }
+    catch (InvocationTargetException exc) { throw new FormatException(exc); }
+  }
+
   // -- IMetadataConfigurable API methods --
 
   /* (non-Javadoc)
@@ -712,11 +739,20 @@ public abstract class ReaderWrapper implements IFormatReader {
       // found a nested reader layer; duplicate via recursion
       childCopy = ((ReaderWrapper) reader).duplicateRecurse(imageReaderClass);
     }
+    else if (reader instanceof ImageReader && imageReaderClass == null) {
+      // keep the same reader classes, as some may have been left out
+      ClassList<IFormatReader> classes =
+        new ClassList<IFormatReader>(IFormatReader.class);
+      for (IFormatReader r : ((ImageReader) reader).getReaders()) {
+        classes.addClass(r.getClass());
+      }
+      childCopy = new ImageReader(classes);
+    }
     else {
       Class<? extends IFormatReader> c = null;
       if (reader instanceof ImageReader) {
-        // found an image reader; if given, substitute the reader class
-        c = imageReaderClass == null ? ImageReader.class : imageReaderClass;
+        // found an image reader; substitute the given reader class
+        c = imageReaderClass;
       }
       else {
         // bottom of the reader stack; duplicate the core reader
@@ -735,18 +771,7 @@ public abstract class ReaderWrapper implements IFormatReader {
       }
     }
 
-    // use crazy reflection to instantiate a reader of the proper type
-    Class<? extends ReaderWrapper> wrapperClass = getClass();
-    ReaderWrapper wrapperCopy = null;
-    try {
-      wrapperCopy = wrapperClass.getConstructor(new Class[]
-        {IFormatReader.class}).newInstance(new Object[] {childCopy});
-    }
-    catch (InstantiationException exc) { throw new FormatException(exc); }
-    catch (IllegalAccessException exc) { throw new FormatException(exc); }
-    catch (NoSuchMethodException exc) { throw new FormatException(exc); }
-    catch (InvocationTargetException exc) { throw new FormatException(exc); }
-
+    ReaderWrapper wrapperCopy = duplicateWrapper(childCopy);
     return wrapperCopy;
   }
 
@@ -59,6 +59,17 @@ public class DynamicMetadataOptions implements MetadataOptions {
   public static final String READER_VALIDATE_KEY = "reader.validate.input";
   public static final boolean READER_VALIDATE_DEFAULT = false;
 
+  /**
+   * Whether or not original metadata should be read only when it is first
+   * requested.  Readers are then initialized as if the metadata level were
+   * {@link MetadataLevel#MINIMUM}, which also applies to the MetadataStore.
+   * Readers without a no-argument constructor always read original metadata
+   * during initialization.  If the deferred metadata cannot be read, the
+   * metadata getters throw an {@link IllegalStateException}.
+   */
+  public static final String METADATA_DEFERRED_KEY = "metadata.deferred";
+  public static final boolean METADATA_DEFERRED_DEFAULT = false;
+
   private Properties props;
 
   /**
@@ -83,6 +94,16 @@ public class DynamicMetadataOptions implements MetadataOptions {
     setBoolean(READER_VALIDATE_KEY, READER_VALIDATE_DEFAULT);
   }
 
+  /**
+   * Creates an options object with the same properties as the given one.
+   *
+   * @param options the options to copy.
+   */
+  public DynamicMetadataOptions(DynamicMetadataOptions options) {
+    props = new Properties();
+    props.putAll(options.props);
+  }
+
   // -- MetadataOptions API Methods --
 
   @Override
@@ -105,6 +126,26 @@ public class DynamicMetadataOptions implements MetadataOptions {
     setBoolean(READER_VALIDATE_KEY, validateMetadata);
   }
 
+  // -- DynamicMetadataOptions API Methods --
+
+  /**
+   * Returns whether or not reading original metadata is deferred until it
+   * is first requested.
+   * @see #METADATA_DEFERRED_KEY
+   */
+  public boolean isMetadataDeferred() {
+    return getBoolean(METADATA_DEFERRED_KEY, METADATA_DEFERRED_DEFAULT);
+  }
+
+  /**
+   * Sets whether or not reading original metadata is deferred until it
+   * is first requested.
+   * @see #METADATA_DEFERRED_KEY
+   */
+  public void setMetadataDeferred(boolean deferred) {
+    setBoolean(METADATA_DEFERRED_KEY, deferred);
+  }
+
   // -- key/value options --
 
   /**
@@ -34,22 +34,49 @@ package loci.formats.services;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import javax.xml.XMLConstants;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.transform.ErrorListener;
+import javax.xml.transform.Result;
 import javax.xml.transform.Templates;
 import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.sax.SAXResult;
+import javax.xml.transform.sax.SAXSource;
+import javax.xml.transform.sax.SAXTransformerFactory;
+import javax.xml.transform.sax.TransformerHandler;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+import javax.xml.validation.Validator;
 
 import loci.common.services.AbstractService;
 import loci.common.services.ServiceException;
+import loci.common.xml.LSInputI;
+import loci.common.xml.ValidationErrorHandler;
 import loci.common.xml.XMLTools;
 import loci.formats.CoreMetadata;
 import loci.formats.FormatTools;
@@ -88,7 +115,16 @@ import org.w3c.dom.Element;
 import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
+import org.w3c.dom.ls.LSInput;
+import org.w3c.dom.ls.LSResourceResolver;
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.DefaultHandler;
+import org.xml.sax.helpers.XMLFilterImpl;
 
 /**
  *
@@ -134,23 +170,57 @@ public class OMEXMLServiceImpl extends AbstractService implements OMEXMLService
   private static final String XSLT_201501 =
     XSLT_PATH + "2015-01-to-2016-06.xsl";
 
-  // -- Cached stylesheets --
+  /**
+   * Upgrade steps applied by {@link #transformToLatestVersion(String)}.
+   * Each stylesheet is applied to any document whose version is older than
+   * the version it is paired with.
+   */
+  private static final String[][] UPGRADE_STEPS = {
+    {"2009-09", XSLT_200809},
+    {"2010-04", XSLT_200909},
+    {"2010-06", XSLT_201004},
+    {"2011-06", XSLT_201006},
+    {"2012-06", XSLT_201106},
+    {"2013-06", XSLT_201206},
+    {"2015-01", XSLT_201306},
+    {"2016-06", XSLT_201501},
+  };
+
+  // -- Cached stylesheets and schemas --
+
+  /** Logs transformation problems without aborting the transformation. */
+  private static final ErrorListener TRANSFORM_LISTENER = new ErrorListener() {
+    @Override
+    public void warning(TransformerException e) {
+      LOGGER.debug("", e);
+    }
 
-  /** Reordering stylesheet. */
-  private static Templates reorderXSLT;
+    @Override
+    public void error(TransformerException e) {
+      LOGGER.debug("", e);
+    }
+
+    @Override
+    public void fatalError(TransformerException e) {
+      LOGGER.debug("", e);
+    }
+  };
 
-  /** Stylesheets for updating from previous schema releases. */
-  private static Templates update2003FC;
-  private static Templates update200706;
-  private static Templates update200802;
-  private static Templates update200809;
-  private static Templates update200909;
-  private static Templates update201004;
-  private static Templates update201006;
-  private static Templates update201106;
-  private static Templates update201206;
-  private static Templates update201306;
-  private static Templates update201501;
+  /** Factory used to compile and chain the upgrade stylesheets. */
+  private static final TransformerFactory TRANSFORM_FACTORY =
+    createTransformFactory();
+
+  /** Compiled upgrade stylesheets, keyed by resource path. */
+  private static final Map<String, Templates> STYLESHEETS =
+    new HashMap<String, Templates>();
+
+  /** Compiled schemas, keyed by schema URL. */
+  private static final ConcurrentMap<String, Schema> SCHEMAS =
+    new ConcurrentHashMap<String, Schema>();
+
+  /** Idle validators for each compiled schema, keyed by schema URL. */
+  private static final ConcurrentMap<String, Queue<Validator>> VALIDATORS =
+    new ConcurrentHashMap<String, Queue<Validator>>();
 
   private static final String SCHEMA_PATH =
     "http://www.openmicroscopy.org/Schemas/OME/";
@@ -183,6 +253,30 @@ public class OMEXMLServiceImpl extends AbstractService implements OMEXMLService
         }
       };
 
+  /**
+   * Resolves schemas imported by the OME-XML schema definitions from
+   * specifications.jar.
+   */
+  private static final LSResourceResolver SCHEMA_RESOLVER =
+    new LSResourceResolver() {
+      @Override
+      public LSInput resolveResource(String type, String namespaceURI,
+        String publicId, String systemId, String baseURI)
+      {
+        InputStream stream = SCHEMA_CLASSPATH_READER.getSchemaAsStream(systemId);
+        if (stream == null) {
+          return null;
+        }
+        LSInput input = new LSInputI();
+        input.setPublicId(publicId);
+        input.setSystemId(systemId);
+        input.setBaseURI(baseURI);
+        input.setCharacterStream(
+          new InputStreamReader(stream, StandardCharsets.UTF_8));
+        return input;
+      }
+    };
+
   /**
    * Default constructor.
    */
@@ -207,135 +301,29 @@ public class OMEXMLServiceImpl extends AbstractService implements OMEXMLService
     LOGGER.debug("Attempting to update XML with version: {}", version);
     LOGGER.trace("Initial dump: {}", xml);
 
-    String transformed = null;
     try {
-      if (version.equals("2003-FC")) {
-        xml = verifyOMENamespace(xml);
-        LOGGER.debug("Running UPDATE_2003FC stylesheet.");
-        if (update2003FC == null) {
-          update2003FC =
-            XMLTools.getStylesheet(XSLT_2003FC, OMEXMLServiceImpl.class);
-        }
-        transformed = XMLTools.transformXML(xml, update2003FC);
-      }
-      else if (version.equals("2007-06")) {
-        xml = verifyOMENamespace(xml);
-        LOGGER.debug("Running UPDATE_200706 stylesheet.");
-        if (update200706 == null) {
-          update200706 =
-            XMLTools.getStylesheet(XSLT_200706, OMEXMLServiceImpl.class);
+      List<String> stylesheets = getUpgradeStylesheets(version);
+      LOGGER.debug("Running upgrade stylesheets: {}", stylesheets);
+      String transformed = null;
+      if (stylesheets.size() > 0 && canChainStylesheets()) {
+        try {
+          transformed = transformChained(xml, stylesheets);
         }
-        transformed = XMLTools.transformXML(xml, update200706);
-      }
-      else if (version.equals("2008-02")) {
-        xml = verifyOMENamespace(xml);
-        LOGGER.debug("Running UPDATE_200802 stylesheet.");
-        if (update200802 == null) {
-          update200802 =
-            XMLTools.getStylesheet(XSLT_200802, OMEXMLServiceImpl.class);
+        catch (IOException e) {
+          // e.g. undeclared namespace prefixes, which are only
+          // tolerated when applying one stylesheet at a time
+          LOGGER.debug("Could not run chained upgrade stylesheets", e);
         }
-        transformed = XMLTools.transformXML(xml, update200802);
       }
-      else transformed = xml;
-      LOGGER.debug("XML updated to at least 2008-09");
-      LOGGER.trace("At least 2008-09 dump: {}", transformed);
-
-      if (version.compareTo("2009-09") < 0) {
-        transformed = verifyOMENamespace(transformed);
-        LOGGER.debug("Running UPDATE_200809 stylesheet.");
-        if (update200809 == null) {
-          update200809 =
-            XMLTools.getStylesheet(XSLT_200809, OMEXMLServiceImpl.class);
+      if (transformed == null) {
+        transformed = xml;
+        for (String stylesheet : stylesheets) {
+          transformed = verifyOMENamespace(transformed);
+          transformed =
+            XMLTools.transformXML(transformed, getStylesheet(stylesheet));
         }
-        transformed = XMLTools.transformXML(transformed, update200809);
       }
-      LOGGER.debug("XML updated to at least 2009-09");
-      LOGGER.trace("At least 2009-09 dump: {}", transformed);
-
-      if (version.compareTo("2010-04") < 0) {
-        transformed = verifyOMENamespace(transformed);
-        LOGGER.debug("Running UPDATE_200909 stylesheet.");
-        if (update200909 == null) {
-          update200909 =
-            XMLTools.getStylesheet(XSLT_200909, OMEXMLServiceImpl.class);
-        }
-        transformed = XMLTools.transformXML(transformed, update200909);
-      }
-      else transformed = xml;
-      LOGGER.debug("XML updated to at least 2010-04");
-      LOGGER.trace("At least 2010-04 dump: {}", transformed);
-
-      if (version.compareTo("2010-06") < 0) {
-        transformed = verifyOMENamespace(transformed);
-        LOGGER.debug("Running UPDATE_201004 stylesheet.");
-        if (update201004 == null) {
-          update201004 =
-            XMLTools.getStylesheet(XSLT_201004, OMEXMLServiceImpl.class);
-        }
-        transformed = XMLTools.transformXML(transformed, update201004);
-      }
-      else transformed = xml;
-      LOGGER.debug("XML updated to at least 2010-06");
-
-      if (version.compareTo("2011-06") < 0) {
-        transformed = verifyOMENamespace(transformed);
-        LOGGER.debug("Running UPDATE_201006 stylesheet.");
-        if (update201006 == null) {
-          update201006 =
-            XMLTools.getStylesheet(XSLT_201006, OMEXMLServiceImpl.class);
-        }
-        transformed = XMLTools.transformXML(transformed, update201006);
-      }
-      else transformed = xml;
-      LOGGER.debug("XML updated to at least 2011-06");
-
-      if (version.compareTo("2012-06") < 0) {
-        transformed = verifyOMENamespace(transformed);
-        LOGGER.debug("Running UPDATE_201106 stylesheet.");
-        if (update201106 == null) {
-          update201106 =
-            XMLTools.getStylesheet(XSLT_201106, OMEXMLServiceImpl.class);
-        }
-        transformed = XMLTools.transformXML(transformed, update201106);
-      }
-      else transformed = xml;
-      LOGGER.debug("XML updated to at least 2012-06");
-
-      if (version.compareTo("2013-06") < 0) {
-        transformed = verifyOMENamespace(transformed);
-        LOGGER.debug("Running UPDATE_201206 stylesheet.");
-        if (update201206 == null) {
-          update201206 =
-            XMLTools.getStylesheet(XSLT_201206, OMEXMLServiceImpl.class);
-        }
-        transformed = XMLTools.transformXML(transformed, update201206);
-      }
-      else transformed = xml;
-      LOGGER.debug("XML updated to at least 2013-06");
-
-      if (version.compareTo("2015-01") < 0) {
-        transformed = verifyOMENamespace(transformed);
-        LOGGER.debug("Running UPDATE_201306 stylesheet.");
-        if (update201306 == null) {
-          update201306 =
-            XMLTools.getStylesheet(XSLT_201306, OMEXMLServiceImpl.class);
-        }
-        transformed = XMLTools.transformXML(transformed, update201306);
-      }
-      else transformed = xml;
-      LOGGER.debug("XML updated to at least 2015-01");
-
-      if (version.compareTo("2016-06") < 0) {
-        transformed = verifyOMENamespace(transformed);
-        LOGGER.debug("Running UPDATE_201501 stylesheet.");
-        if (update201501 == null) {
-          update201501 =
-            XMLTools.getStylesheet(XSLT_201501, OMEXMLServiceImpl.class);
-        }
-        transformed = XMLTools.transformXML(transformed, update201501);
-      }
-      else transformed = xml;
-      LOGGER.debug("XML updated to at least 2016-06");
+      LOGGER.debug("XML updated to at least {}", getLatestVersion());
 
       // fix namespaces
       transformed = transformed.replaceAll("<ns.*?:", "<");
@@ -345,11 +333,119 @@ public class OMEXMLServiceImpl extends AbstractService implements OMEXMLService
       return transformed;
     }
     catch (IOException e) {
-      LOGGER.warn("Could not transform version " + version + " OME-XML.");
+      LOGGER.warn("Could not transform version " + version + " OME-XML.", e);
     }
     return null;
   }
 
+  /**
+   * Returns the paths of the stylesheets needed to upgrade a document of
+   * the given version to {@link #LATEST_VERSION}, in the order in which
+   * they must be applied.
+   */
+  static List<String> getUpgradeStylesheets(String version) {
+    List<String> stylesheets = new ArrayList<String>();
+    if (version.equals("2003-FC")) {
+      stylesheets.add(XSLT_2003FC);
+    }
+    else if (version.equals("2007-06")) {
+      stylesheets.add(XSLT_200706);
+    }
+    else if (version.equals("2008-02")) {
+      stylesheets.add(XSLT_200802);
+    }
+    for (String[] step : UPGRADE_STEPS) {
+      if (version.compareTo(step[0]) < 0) {
+        stylesheets.add(step[1]);
+      }
+    }
+    return stylesheets;
+  }
+
+  /**
+   * Applies the given stylesheets in a single pass. The document is parsed
+   * once and the SAX events flow through one {@link TransformerHandler} per
+   * stylesheet; only the output of the last stylesheet is serialized.
+   */
+  private static String transformChained(String xml, List<String> stylesheets)
+    throws IOException
+  {
+    SAXTransformerFactory factory = (SAXTransformerFactory) TRANSFORM_FACTORY;
+    StringWriter writer = new StringWriter();
+    Result result = new StreamResult(writer);
+    ContentHandler head = null;
+    try {
+      for (int i=stylesheets.size()-1; i>=0; i--) {
+        TransformerHandler handler =
+          factory.newTransformerHandler(getStylesheet(stylesheets.get(i)));
+        handler.getTransformer().setErrorListener(TRANSFORM_LISTENER);
+        handler.setResult(result);
+        head = new OMENamespaceFilter(handler);
+        result = new SAXResult(head);
+      }
+
+      SAXParserFactory parserFactory = SAXParserFactory.newInstance();
+      parserFactory.setNamespaceAware(true);
+      XMLReader reader = parserFactory.newSAXParser().getXMLReader();
+      reader.setContentHandler(head);
+      reader.parse(new InputSource(new StringReader(xml)));
+    }
+    catch (TransformerConfigurationException e) {
+      throw new IOException(e);
+    }
+    catch (ParserConfigurationException e) {
+      throw new IOException(e);
+    }
+    catch (SAXException e) {
+      throw new IOException(e);
+    }
+    return writer.toString();
+  }
+
+  /**
+   * Returns the compiled form of the given stylesheet. Each stylesheet is
+   * compiled once; the resulting {@link Templates} are thread-safe and are
+   * shared by all service instances.
+   */
+  private static Templates getStylesheet(String path) throws IOException {
+    synchronized (STYLESHEETS) {
+      Templates templates = STYLESHEETS.get(path);
+      if (templates == null) {
+        InputStream stream = OMEXMLServiceImpl.class.getResourceAsStream(path);
+        if (stream == null) {
+          throw new IOException("Could not find stylesheet " + path);
+        }
+        try {
+          templates = TRANSFORM_FACTORY.newTemplates(new StreamSource(stream));
+        }
+        catch (TransformerConfigurationException e) {
+          throw new IOException("Could not compile stylesheet " + path, e);
+        }
+        finally {
+          stream.close();
+        }
+        STYLESHEETS.put(path, templates);
+      }
+      return templates;
+    }
+  }
+
+  /**
+   * Returns true if the transformer factory can feed the output of one
+   * stylesheet directly into the next.
+   */
+  private static boolean canChainStylesheets() {
+    return TRANSFORM_FACTORY instanceof SAXTransformerFactory &&
+      TRANSFORM_FACTORY.getFeature(SAXTransformerFactory.FEATURE) &&
+      TRANSFORM_FACTORY.getFeature(SAXResult.FEATURE);
+  }
+
+  private static TransformerFactory createTransformFactory() {
+    TransformerFactory factory = TransformerFactory.newInstance();
+    factory.setErrorListener(TRANSFORM_LISTENER);
+    return factory;
+  }
+
   /** @see OMEXMLService#createOMEXMLMetadata() */
   @Override
   public OMEXMLMetadata createOMEXMLMetadata() throws ServiceException {
@@ -429,23 +525,24 @@ public class OMEXMLServiceImpl extends AbstractService implements OMEXMLService
       return LATEST_VERSION;
     }
     else if (o instanceof String) {
-      String xml = (String) o;
-      try {
-        Element e = XMLTools.parseDOM(xml).getDocumentElement();
-        String namespace = e.getAttribute("xmlns");
-        if (namespace == null || namespace.equals("")) {
-          namespace = e.getAttribute("xmlns:ome");
-        }
-        if (namespace == null || namespace.equals("")) {
-          namespace = e.getAttribute("xmlns:OME");
-        }
-
-        return namespace.endsWith("ome.xsd") ? "2003-FC" :
-          namespace.substring(namespace.lastIndexOf("/") + 1);
+      // only the root element's namespace declarations are needed
+      Attributes root = getRootAttributes((String) o);
+      if (root == null) {
+        return null;
+      }
+      String namespace = root.getValue("xmlns");
+      if (namespace == null || namespace.equals("")) {
+        namespace = root.getValue("xmlns:ome");
+      }
+      if (namespace == null || namespace.equals("")) {
+        namespace = root.getValue("xmlns:OME");
       }
-      catch (ParserConfigurationException pce) { }
-      catch (SAXException se) { }
-      catch (IOException ioe) { }
+      if (namespace == null) {
+        namespace = "";
+      }
+
+      return namespace.endsWith("ome.xsd") ? "2003-FC" :
+        namespace.substring(namespace.lastIndexOf("/") + 1);
     }
     return null;
   }
@@ -602,7 +699,142 @@ public class OMEXMLServiceImpl extends AbstractService implements OMEXMLService
       LOGGER.warn("Could not remove Modulo annotations", e);
     }
 
-    return XMLTools.validateXML(xml, "OME-XML", SCHEMA_CLASSPATH_READER);
+    return validate(xml);
+  }
+
+  /**
+   * Validates the given XML against its schema. Schemas found in
+   * specifications.jar are compiled once and validated against using a
+   * pool of {@link Validator}s, so that concurrent callers do not need to
+   * reload the schema; other schemas are handled by
+   * {@link XMLTools#validateXML(String, String, XMLTools.SchemaReader)}.
+   */
+  private static boolean validate(String xml) {
+    String location = getSchemaLocation(getRootAttributes(xml));
+    Schema schema = location == null ? null : getSchema(location);
+    if (schema == null) {
+      return XMLTools.validateXML(xml, "OME-XML", SCHEMA_CLASSPATH_READER);
+    }
+
+    LOGGER.info("Validating OME-XML");
+    Queue<Validator> pool = VALIDATORS.get(location);
+    Validator validator = pool.poll();
+    if (validator == null) {
+      validator = schema.newValidator();
+    }
+    ValidationErrorHandler errorHandler = new ValidationErrorHandler();
+    validator.setErrorHandler(errorHandler);
+    try {
+      validator.validate(
+        new SAXSource(new InputSource(new StringReader(xml))));
+    }
+    catch (IOException e) {
+      LOGGER.debug("Could not validate OME-XML", e);
+    }
+    catch (SAXException e) {
+      LOGGER.debug("Could not validate OME-XML", e);
+    }
+    finally {
+      validator.reset();
+      pool.offer(validator);
+    }
+
+    int errors = errorHandler.getErrorCount();
+    if (errors > 0) {
+      LOGGER.info("Error validating document: {} errors found", errors);
+      return false;
+    }
+    LOGGER.info("No validation errors found.");
+    return errorHandler.ok();
+  }
+
+  /**
+   * Returns the compiled schema for the given URL, or null if the schema is
+   * not in specifications.jar or cannot be compiled.
+   */
+  private static Schema getSchema(String location) {
+    Schema schema = SCHEMAS.get(location);
+    if (schema != null) {
+      return schema;
+    }
+    InputStream stream = SCHEMA_CLASSPATH_READER.getSchemaAsStream(location);
+    if (stream == null) {
+      return null;
+    }
+    try {
+      SchemaFactory factory =
+        SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+      factory.setResourceResolver(SCHEMA_RESOLVER);
+      schema = factory.newSchema(new StreamSource(stream, location));
+    }
+    catch (SAXException e) {
+      LOGGER.info("Error parsing schema at {}", location, e);
+      return null;
+    }
+    finally {
+      try {
+        stream.close();
+      }
+      catch (IOException e) {
+        LOGGER.debug("Could not close schema stream", e);
+      }
+    }
+    VALIDATORS.putIfAbsent(location, new ConcurrentLinkedQueue<Validator>());
+    Schema existing = SCHEMAS.putIfAbsent(location, schema);
+    return existing == null ? schema : existing;
+  }
+
+  /**
+   * Returns the schema URL that the given root element attributes associate
+   * with the root element's namespace, or null if none is declared.
+   */
+  private static String getSchemaLocation(Attributes root) {
+    if (root == null) {
+      return null;
+    }
+    String namespace = root.getValue("xmlns");
+    String schemaLocation = null;
+    for (int i=0; i<root.getLength(); i++) {
+      String name = root.getQName(i);
+      if (name.equals("schemaLocation") || name.endsWith(":schemaLocation")) {
+        schemaLocation = root.getValue(i);
+      }
+    }
+    if (schemaLocation == null) {
+      return null;
+    }
+    String[] tokens = schemaLocation.trim().split("\\s+");
+    for (int i=0; i<tokens.length - 1; i+=2) {
+      if (tokens[i].equals(namespace)) {
+        return tokens[i + 1];
+      }
+    }
+    return tokens.length > 1 ? tokens[1] : null;
+  }
+
+  /**
+   * Parses the given XML only as far as the root element and returns the
+   * root element's attributes, including namespace declarations.
+   * Returns null if no root element could be read.
+   */
+  private static Attributes getRootAttributes(String xml) {
+    RootElementHandler handler = new RootElementHandler();
+    try {
+      SAXParserFactory.newInstance().newSAXParser().parse(
+        new InputSource(new StringReader(xml)), handler);
+    }
+    catch (ParserConfigurationException e) {
+      LOGGER.debug("Could not create XML parser", e);
+    }
+    catch (SAXException e) {
+      if (handler.getAttributes() == null) {
+        LOGGER.debug("Could not parse XML", e);
+      }
+    }
+    catch (IOException e) {
+      LOGGER.debug("Could not parse XML", e);
+    }
+    return handler.getAttributes();
   }
 
   /**
@@ -1326,4 +1558,79 @@ public class OMEXMLServiceImpl extends AbstractService implements OMEXMLService
     return null;
   }
 
+  // -- Helper classes --
+
+  /** Records the attributes of the root element and stops parsing. */
+  private static class RootElementHandler extends DefaultHandler {
+    private Attributes attributes;
+
+    public Attributes getAttributes() {
+      return attributes;
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName,
+      Attributes attrs) throws SAXException
+    {
+      attributes = new AttributesImpl(attrs);
+      throw new SAXException("Root element found");
+    }
+  }
+
+  /**
+   * Declares the "ome" prefix on the root element if it is missing,
+   * in the same way as {@link #verifyOMENamespace(String)}, for documents
+   * passed between chained stylesheets.
+   */
+  private static class OMENamespaceFilter extends XMLFilterImpl {
+    private String defaultNamespace;
+    private boolean hasOMEPrefix;
+    private boolean addedOMEPrefix;
+    private int depth;
+
+    public OMENamespaceFilter(ContentHandler handler) {
+      setContentHandler(handler);
+    }
+
+    @Override
+    public void startPrefixMapping(String prefix, String uri)
+      throws SAXException
+    {
+      if (depth == 0) {
+        if (prefix.equals("")) {
+          defaultNamespace = uri;
+        }
+        else if (prefix.equals("ome")) {
+          hasOMEPrefix = true;
+        }
+      }
+      super.startPrefixMapping(prefix, uri);
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName,
+      Attributes atts) throws SAXException
+    {
+      if (depth == 0 && !hasOMEPrefix && atts.getIndex("xmlns:ome") < 0 &&
+        defaultNamespace != null && !defaultNamespace.equals(""))
+      {
+        super.startPrefixMapping("ome", defaultNamespace);
+        addedOMEPrefix = true;
+      }
+      depth++;
+      super.startElement(uri, localName, qName, atts);
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName)
+      throws SAXException
+    {
+      super.endElement(uri, localName, qName);
+      depth--;
+      if (depth == 0 && addedOMEPrefix) {
+        super.endPrefixMapping("ome");
+      }
+    }
+  }
+
 }
@@ -0,0 +1,155 @@
+/*
+ * #%L
+ * Top-level reader and writer APIs
+ * %%
+ * Copyright (C) 2016 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats.benchmarks;
+
+import java.util.Hashtable;
+import java.util.concurrent.TimeUnit;
+
+import loci.formats.FormatReader;
+import loci.formats.utests.LegacyMetadataFilter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmark for filtered original metadata ingestion, comparing
+ * {@link FormatReader#addGlobalMeta(String, Object)} with the regular
+ * expression based implementation that it replaced.
+ *
+ * To run:
+ * <pre>
+ * mvn test-compile dependency:build-classpath \
+ *   -Dmdep.includeScope=test -Dmdep.outputFile=target/cp.txt
+ * java -cp target/classes:target/test-classes:$(cat target/cp.txt) \
+ *   org.openjdk.jmh.Main AddMetaBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AddMetaBenchmark {
+
+  /** Number of entries added per benchmark invocation. */
+  private static final int ENTRIES = 10000;
+
+  private String[] keys;
+  private Object[] values;
+  private BenchmarkReader reader;
+
+  @Setup
+  public void setup() {
+    keys = new String[ENTRIES];
+    values = new Object[ENTRIES];
+    for (int i=0; i<ENTRIES; i++) {
+      // a mix of typical keys and values, as pushed by e.g. TIFF, CZI and
+      // DICOM readers
+      int channel = i % 16;
+      switch (i % 5) {
+        case 0:
+          keys[i] = "Information|Image|Channel #" + channel + "|Name ";
+          values[i] = "Channel " + channel;
+          break;
+        case 1:
+          keys[i] = "Experiment|AcquisitionBlock|Laser Power #" + i;
+          values[i] = Double.valueOf(i * 0.25);
+          break;
+        case 2:
+          keys[i] = "(0008,0070) Manufacturer #" + i;
+          values[i] = "Vendor &amp; Co. <Imaging>";
+          break;
+        case 3:
+          keys[i] = "Tag " + i;
+          values[i] = Integer.valueOf(i);
+          break;
+        default:
+          keys[i] = "  Description " + i + "\u0000";
+          values[i] = "Line one\r\nLine two\tand more text";
+          break;
+      }
+    }
+    reader = new BenchmarkReader();
+    reader.setMetadataFiltered(true);
+  }
+
+  @Benchmark
+  public Hashtable<String, Object> addMeta() {
+    Hashtable<String, Object> meta = reader.clearMetadata();
+    for (int i=0; i<ENTRIES; i++) {
+      reader.addGlobalMeta(keys[i], values[i]);
+    }
+    return meta;
+  }
+
+  @Benchmark
+  public Hashtable<String, Object> legacyAddMeta() {
+    Hashtable<String, Object> meta = reader.clearMetadata();
+    for (int i=0; i<ENTRIES; i++) {
+      LegacyMetadataFilter.addMeta(keys[i], values[i], meta);
+    }
+    return meta;
+  }
+
+  private static class BenchmarkReader extends FormatReader {
+
+    public BenchmarkReader() {
+      super("Benchmark", "benchmark");
+    }
+
+    @Override
+    public byte[] openBytes(int no, byte[] buf, int x, int y, int w, int h) {
+      return buf;
+    }
+
+    @Override
+    public void addGlobalMeta(String key, Object value) {
+      super.addGlobalMeta(key, value);
+    }
+
+    Hashtable<String, Object> clearMetadata() {
+      metadata = new Hashtable<String, Object>();
+      return metadata;
+    }
+  }
+
+}
@@ -0,0 +1,148 @@
+/*
+ * #%L
+ * Top-level reader and writer APIs
+ * %%
+ * Copyright (C) 2018 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats.utests;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import loci.formats.BufferPool;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNotSame;
+import static org.testng.AssertJUnit.assertSame;
+
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link loci.formats.BufferPool}.
+ */
+public class BufferPoolTest {
+
+  @Test
+  public void testBorrowExactLength() {
+    BufferPool pool = new BufferPool();
+    byte[] a = pool.borrow(16);
+    assertEquals(16, a.length);
+    pool.release(a);
+    assertNotSame(a, pool.borrow(15));
+    assertSame(a, pool.borrow(16));
+    assertNotSame(a, pool.borrow(16));
+  }
+
+  @Test
+  public void testReleaseTwice() {
+    BufferPool pool = new BufferPool();
+    byte[] a = pool.borrow(8);
+    pool.release(a);
+    pool.release(a);
+    assertSame(a, pool.borrow(8));
+    assertNotSame(a, pool.borrow(8));
+  }
+
+  @Test
+  public void testBounded() {
+    BufferPool pool = new BufferPool(2);
+    byte[] a = new byte[1];
+    byte[] b = new byte[2];
+    byte[] c = new byte[3];
+    pool.release(a);
+    pool.release(b);
+    pool.release(c);
+    // the least recently released length is discarded first
+    assertNotSame(a, pool.borrow(1));
+    assertSame(b, pool.borrow(2));
+    assertSame(c, pool.borrow(3));
+  }
+
+  @Test
+  public void testClear() {
+    BufferPool pool = new BufferPool();
+    byte[] a = pool.borrow(4);
+    pool.release(a);
+    pool.clear();
+    assertNotSame(a, pool.borrow(4));
+  }
+
+  /**
+   * Threads that share a pool must never be given the same array at the
+   * same time.
+   */
+  @Test
+  public void testConcurrentBorrow() throws Exception {
+    final BufferPool pool = new BufferPool();
+    ExecutorService threads = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+      for (int t=0; t<8; t++) {
+        final byte value = (byte) t;
+        results.add(threads.submit(new Callable<Boolean>() {
+          @Override
+          public Boolean call() {
+            for (int i=0; i<2000; i++) {
+              byte[] buf = pool.borrow(64 + i % 3);
+              Arrays.fill(buf, value);
+              Thread.yield();
+              for (byte b : buf) {
+                if (b != value) {
+                  return false;
+                }
+              }
+              pool.release(buf);
+            }
+            return true;
+          }
+        }));
+      }
+      for (Future<Boolean> result : results) {
+        assertEquals(Boolean.TRUE, result.get());
+      }
+    }
+    finally {
+      threads.shutdown();
+    }
+  }
+
+  @Test
+  public void testDisabled() {
+    BufferPool pool = new BufferPool(0);
+    byte[] a = pool.borrow(4);
+    pool.release(a);
+    assertNotSame(a, pool.borrow(4));
+  }
+
+}
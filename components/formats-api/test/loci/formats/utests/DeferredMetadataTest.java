@@ -0,0 +1,213 @@
+/*
+ * #%L
+ * Top-level reader and writer APIs
+ * %%
+ * Copyright (C) 2016 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats.utests;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.IOException;
+
+import loci.formats.FormatException;
+import loci.formats.FormatReader;
+import loci.formats.in.DynamicMetadataOptions;
+import loci.formats.in.MetadataLevel;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for deferred original metadata in
+ * {@link loci.formats.FormatReader}.
+ */
+public class DeferredMetadataTest {
+
+  private static int initCount;
+
+  /** Initialization fails once initCount exceeds this, if positive. */
+  private static int maxInitCount;
+
+  private TestReader reader;
+
+  private DynamicMetadataOptions options;
+
+  @BeforeMethod
+  public void setUp() {
+    initCount = 0;
+    maxInitCount = 0;
+    reader = new TestReader();
+    options = new DynamicMetadataOptions();
+    reader.setMetadataOptions(options);
+  }
+
+  @Test
+  public void testNotDeferred() throws FormatException, IOException {
+    reader.setId("test.test");
+    assertEquals(initCount, 1);
+    assertEquals(reader.getGlobalMetaCount(), 1);
+    assertEquals(reader.getGlobalMetadata().get("Key"), "value");
+    assertEquals(reader.getSeriesMetadata().get("Series key"), "series value");
+    assertEquals(initCount, 1);
+    reader.close();
+  }
+
+  @Test
+  public void testDeferred() throws FormatException, IOException {
+    options.setMetadataDeferred(true);
+    reader.setId("test.test");
+    assertEquals(initCount, 1);
+    assertEquals(reader.getGlobalMetaCount(), 0);
+    assertTrue(reader.getMetadataOptions() == options);
+    assertEquals(options.getMetadataLevel(), MetadataLevel.ALL);
+
+    assertEquals(reader.getSeriesMetadata().get("Series key"), "series value");
+    assertEquals(reader.getGlobalMetadata().get("Key"), "value");
+    assertEquals(reader.getMetadataValue("Key"), "value");
+    assertEquals(initCount, 2);
+    reader.close();
+  }
+
+  @Test
+  public void testDeferredMinimum() throws FormatException, IOException {
+    options.setMetadataDeferred(true);
+    options.setMetadataLevel(MetadataLevel.MINIMUM);
+    reader.setId("test.test");
+    assertEquals(reader.getGlobalMetadata().size(), 0);
+    assertEquals(initCount, 1);
+    reader.close();
+  }
+
+  @Test
+  public void testDeferredFailure() throws FormatException, IOException {
+    options.setMetadataDeferred(true);
+    maxInitCount = 1;
+    reader.setId("test.test");
+    for (int i=0; i<2; i++) {
+      try {
+        reader.getGlobalMetadata();
+        fail("Expected IllegalStateException");
+      }
+      catch (IllegalStateException e) {
+        assertTrue(e.getCause() instanceof FormatException);
+      }
+    }
+    // the failure is recorded, so initialization is not attempted again
+    assertEquals(initCount, 2);
+    reader.close();
+
+    // closing the reader clears the failure
+    maxInitCount = 0;
+    options.setMetadataDeferred(false);
+    reader.setId("test.test");
+    assertEquals(reader.getGlobalMetadata().get("Key"), "value");
+    reader.close();
+  }
+
+  @Test
+  public void testNoDefaultConstructor() throws FormatException, IOException {
+    options.setMetadataDeferred(true);
+    FormatReader r = new NamedReader("Named");
+    r.setMetadataOptions(options);
+    r.setId("test.test");
+    assertEquals(initCount, 1);
+    assertEquals(((TestReader) r).getGlobalMetaCount(), 1);
+    assertEquals(r.getGlobalMetadata().get("Key"), "value");
+    assertEquals(initCount, 1);
+    r.close();
+  }
+
+  @Test
+  public void testPrivateConstructor() throws FormatException, IOException {
+    options.setMetadataDeferred(true);
+    FormatReader r = PrivateReader.create();
+    r.setMetadataOptions(options);
+    r.setId("test.test");
+    assertEquals(((TestReader) r).getGlobalMetaCount(), 0);
+    assertEquals(r.getGlobalMetadata().get("Key"), "value");
+    assertEquals(initCount, 2);
+    r.close();
+  }
+
+  /** Reader that can only be constructed with a name. */
+  public static class NamedReader extends TestReader {
+    public NamedReader(String name) {
+      super();
+    }
+  }
+
+  /** Reader whose no-argument constructor is private. */
+  public static class PrivateReader extends TestReader {
+    private PrivateReader() {
+      super();
+    }
+
+    static PrivateReader create() {
+      return new PrivateReader();
+    }
+  }
+
+  public static class TestReader extends FormatReader {
+
+    public TestReader() {
+      super("Test", "test");
+    }
+
+    @Override
+    public byte[] openBytes(int no, byte[] buf, int x, int y, int w, int h) {
+      return buf;
+    }
+
+    @Override
+    protected void initFile(String id) throws FormatException, IOException {
+      super.initFile(id);
+      initCount++;
+      if (maxInitCount > 0 && initCount > maxInitCount) {
+        throw new FormatException("Initialization failed");
+      }
+      core.get(0).sizeX = 1;
+      core.get(0).sizeY = 1;
+      core.get(0).sizeZ = 1;
+      core.get(0).sizeC = 1;
+      core.get(0).sizeT = 1;
+      core.get(0).imageCount = 1;
+      core.get(0).dimensionOrder = "XYZCT";
+      addGlobalMeta("Key", "value");
+      addSeriesMeta("Series key", "series value");
+    }
+
+    int getGlobalMetaCount() {
+      return metadata.size();
+    }
+  }
+
+}
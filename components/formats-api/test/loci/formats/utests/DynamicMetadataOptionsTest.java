@@ -371,6 +371,27 @@ public class DynamicMetadataOptionsTest {
     assertFalse(opt.isValidate());
   }
 
+  @Test
+  public void testIsMetadataDeferred() {
+    assertEquals(opt.isMetadataDeferred(),
+                 DynamicMetadataOptions.METADATA_DEFERRED_DEFAULT);
+    opt.setMetadataDeferred(true);
+    assertTrue(opt.isMetadataDeferred());
+    opt.setMetadataDeferred(false);
+    assertFalse(opt.isMetadataDeferred());
+  }
+
+  @Test
+  public void testCopy() {
+    opt.set(KEY, "value");
+    opt.setMetadataLevel(MetadataLevel.NO_OVERLAYS);
+    DynamicMetadataOptions copy = new DynamicMetadataOptions(opt);
+    assertEquals(copy.get(KEY), "value");
+    assertEquals(copy.getMetadataLevel(), MetadataLevel.NO_OVERLAYS);
+    copy.set(KEY, "other");
+    assertEquals(opt.get(KEY), "value");
+  }
+
   @Test(dataProvider = "optionFiles")
   public void testGetMetadataOptionsFile(String source, String target) {
     source = source.replace('/', File.separatorChar);
@@ -0,0 +1,147 @@
+/*
+ * #%L
+ * Top-level reader and writer APIs
+ * %%
+ * Copyright (C) 2016 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats.utests;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Hashtable;
+import java.util.Random;
+
+import loci.formats.FormatReader;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for metadata filtering in
+ * {@link loci.formats.FormatReader#addGlobalMeta(String, Object)}.
+ */
+public class FormatReaderMetadataTest {
+
+  private static final String CHARACTERS =
+    "aZ9 &<>;ltgmp#\t\n\r\u0000\u0007\u007f\u0085\u009fé  ";
+
+  private TestReader reader;
+
+  @BeforeMethod
+  public void setUp() {
+    reader = new TestReader();
+    reader.setMetadataFiltered(true);
+  }
+
+  @Test
+  public void testFiltering() {
+    String[][] entries = {
+      {"  Key  ", "value"},
+      {"A&lt;B&gt;", "1 &amp; 2"},
+      {"&&lt;lt;", "x<y>z"},
+      {"12345", "no letters in key"},
+      {"Line\nbreak", "rejected"},
+      {"Tab\tKey", "\u0000\u0001printable\u007f"},
+      {"Blank", " \t\n"},
+      {"&<>", "key is empty after filtering"},
+      {"Unicode é", " "},
+    };
+    Hashtable<String, Object> expected = new Hashtable<String, Object>();
+    for (String[] entry : entries) {
+      reader.addGlobalMeta(entry[0], entry[1]);
+      LegacyMetadataFilter.addMeta(entry[0], entry[1], expected);
+    }
+    assertEquals(reader.getGlobalMetadata(), expected);
+    assertEquals(reader.getGlobalMetadata().get("Key"), "value");
+    assertEquals(reader.getGlobalMetadata().get("AB"), "1  2");
+    assertEquals(reader.getGlobalMetadata().get("lt;"), "xyz");
+    assertFalse(reader.getGlobalMetadata().containsKey("12345"));
+    assertFalse(reader.getGlobalMetadata().containsKey("Blank"));
+  }
+
+  @Test
+  public void testMatchesLegacyFiltering() {
+    Random random = new Random(42);
+    Hashtable<String, Object> expected = new Hashtable<String, Object>();
+    for (int i=0; i<20000; i++) {
+      String key = randomString(random);
+      Object value = random.nextInt(4) == 0 ?
+        Integer.valueOf(i) : randomString(random);
+      reader.addGlobalMeta(key, value);
+      LegacyMetadataFilter.addMeta(key, value, expected);
+    }
+    assertTrue(expected.size() > 0);
+    assertEquals(reader.getGlobalMetadata(), expected);
+  }
+
+  @Test
+  public void testLongValues() {
+    char[] c = new char[8193];
+    Arrays.fill(c, 'a');
+    reader.addGlobalMeta("Long", new String(c));
+    reader.addGlobalMeta(new String(c), "long key");
+    assertEquals(reader.getGlobalMetadata().size(), 0);
+  }
+
+  private String randomString(Random random) {
+    int length = random.nextInt(12);
+    StringBuilder sb = new StringBuilder(length);
+    for (int i=0; i<length; i++) {
+      sb.append(CHARACTERS.charAt(random.nextInt(CHARACTERS.length())));
+    }
+    return sb.toString();
+  }
+
+  private static class TestReader extends FormatReader {
+
+    public TestReader() {
+      super("Test", "test");
+      metadata = new Hashtable<String, Object>();
+    }
+
+    @Override
+    public byte[] openBytes(int no, byte[] buf, int x, int y, int w, int h) {
+      return buf;
+    }
+
+    @Override
+    public void addGlobalMeta(String key, Object value) {
+      super.addGlobalMeta(key, value);
+    }
+
+    @Override
+    public Hashtable<String, Object> getGlobalMetadata() {
+      return metadata;
+    }
+  }
+
+}
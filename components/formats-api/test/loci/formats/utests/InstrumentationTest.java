@@ -0,0 +1,169 @@
+/*
+ * #%L
+ * Top-level reader and writer APIs
+ * %%
+ * Copyright (C) 2026 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats.utests;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import loci.common.RandomAccessInputStream;
+import loci.formats.BufferPool;
+import loci.formats.Instrumentation;
+import loci.formats.ReaderMetrics;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertSame;
+import static org.testng.AssertJUnit.assertTrue;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link loci.formats.Instrumentation} and
+ * {@link loci.formats.ReaderMetrics}.
+ */
+public class InstrumentationTest {
+
+  private ReaderMetrics metrics;
+
+  @BeforeMethod
+  public void setUp() {
+    metrics = new ReaderMetrics();
+    Instrumentation.addListener(metrics);
+  }
+
+  @AfterMethod
+  public void tearDown() {
+    Instrumentation.removeListener(metrics);
+  }
+
+  @Test
+  public void testDisabledWithoutListeners() {
+    Instrumentation.removeListener(metrics);
+    assertFalse(Instrumentation.isEnabled());
+    Instrumentation.bytesRead("test", 10, 1);
+    assertTrue(metrics.getBytesRead().isEmpty());
+    Instrumentation.addListener(metrics);
+    assertTrue(Instrumentation.isEnabled());
+  }
+
+  @Test
+  public void testBufferPool() {
+    BufferPool pool = new BufferPool();
+    byte[] a = pool.borrow(32);
+    pool.release(a);
+    assertSame(a, pool.borrow(32));
+
+    assertEquals(Long.valueOf(1), metrics.getCacheHits().get("BufferPool"));
+    assertEquals(Long.valueOf(1), metrics.getCacheMisses().get("BufferPool"));
+    assertEquals(Long.valueOf(32),
+      metrics.getAllocatedBytes().get("BufferPool"));
+  }
+
+  @Test
+  public void testOpenStream() throws IOException {
+    File file = File.createTempFile("instrumentation", ".bin");
+    file.deleteOnExit();
+    FileOutputStream out = new FileOutputStream(file);
+    try {
+      out.write(new byte[1024]);
+    }
+    finally {
+      out.close();
+    }
+
+    RandomAccessInputStream s =
+      Instrumentation.openStream("test", file.getAbsolutePath());
+    try {
+      s.seek(512);
+      s.readFully(new byte[256]);
+      s.seek(0);
+      s.readFully(new byte[100]);
+    }
+    finally {
+      s.close();
+    }
+
+    assertEquals(Long.valueOf(356), metrics.getBytesRead().get("test"));
+    assertEquals(Long.valueOf(2), metrics.getSeeks().get("test"));
+  }
+
+  @Test
+  public void testPhasesAndCodecs() {
+    Instrumentation.phaseCompleted("Test", "initFile", 3000000L);
+    Instrumentation.phaseCompleted("Test", "initFile", 2000000L);
+    Instrumentation.decompressed("TestCodec", 10, 40, 1000000L);
+
+    Map<String, Long> millis = metrics.getPhaseMillis();
+    assertEquals(Long.valueOf(5), millis.get("Test/initFile"));
+    assertEquals(Long.valueOf(2), metrics.getPhaseCounts().get("Test/initFile"));
+    assertEquals(Long.valueOf(10),
+      metrics.getCompressedBytes().get("TestCodec"));
+    assertEquals(Long.valueOf(40),
+      metrics.getDecompressedBytes().get("TestCodec"));
+    assertEquals(Long.valueOf(1),
+      metrics.getDecompressCounts().get("TestCodec"));
+
+    metrics.reset();
+    assertTrue(metrics.getPhaseMillis().isEmpty());
+    assertTrue(metrics.getDecompressCounts().isEmpty());
+  }
+
+  @Test
+  public void testRegister() throws Exception {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName(ReaderMetrics.OBJECT_NAME);
+    ReaderMetrics shared = ReaderMetrics.register();
+    try {
+      assertSame(shared, ReaderMetrics.register());
+      assertTrue(server.isRegistered(name));
+      Instrumentation.cacheAccessed("test", true);
+      assertEquals(Long.valueOf(1), shared.getCacheHits().get("test"));
+      assertTrue(server.getAttribute(name, "CacheHits") != null);
+    }
+    finally {
+      ReaderMetrics.unregister();
+    }
+    assertFalse(server.isRegistered(name));
+    Instrumentation.cacheAccessed("test", true);
+    assertEquals(Long.valueOf(1), shared.getCacheHits().get("test"));
+  }
+
+}
@@ -0,0 +1,93 @@
+/*
+ * #%L
+ * Top-level reader and writer APIs
+ * %%
+ * Copyright (C) 2016 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package loci.formats.utests;
+
+import java.util.Hashtable;
+
+import loci.common.DataTools;
+
+/**
+ * The regular expression based original metadata filtering that
+ * {@link loci.formats.FormatReader#addGlobalMeta(String, Object)} used
+ * before the fast path was added.  Tests and benchmarks compare the
+ * current implementation against this one.
+ */
+public final class LegacyMetadataFilter {
+
+  private LegacyMetadataFilter() { }
+
+  /**
+   * Filter the given key and value as the original implementation did,
+   * and store them in the given table if they are accepted.
+   */
+  public static void addMeta(String key, Object value,
+    Hashtable<String, Object> meta)
+  {
+    key = key.trim();
+    boolean string = value instanceof String || value instanceof Character;
+    String val = string ? String.valueOf(value) : null;
+
+    boolean simple = string ||
+      value instanceof Number ||
+      value instanceof Boolean;
+    if (!simple) return;
+
+    int maxLen = 8192;
+    if (key.length() > maxLen) return;
+    if (string && val.length() > maxLen) return;
+
+    key = DataTools.sanitize(key);
+    if (string) val = DataTools.sanitize(val);
+
+    if (!key.matches(".*[a-zA-Z].*")) return;
+
+    String[] invalidSequences = new String[] {
+      "&lt;", "&gt;", "&amp;", "<", ">", "&"
+    };
+    for (int i=0; i<invalidSequences.length; i++) {
+      if (key.indexOf(invalidSequences[i]) >= 0) {
+        key = key.replaceAll(invalidSequences[i], "");
+      }
+      if (string && val.indexOf(invalidSequences[i]) >= 0) {
+        val = val.replaceAll(invalidSequences[i], "");
+      }
+    }
+
+    if (key.length() == 0) return;
+    if (string && val.trim().length() == 0) return;
+
+    meta.put(key, val == null ? value : val);
+  }
+
+}
@@ -0,0 +1,493 @@
+/*
+ * #%L
+ * BSD implementations of Bio-Formats readers and writers
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads pixel data from a single dataset without blocking the caller.
+ *
+ * Each request is queued and later run on a worker thread using one of
+ * a fixed number of reader instances, each of which is initialized
+ * on the same file.  If a memo directory is given, the default readers
+ * are wrapped in a {@link Memoizer}, so that only the first reader needs
+ * to parse the original metadata; the remaining readers are restored from
+ * the memo file.
+ *
+ * The number of queued requests is limited.  Once the limit is reached,
+ * new requests fail immediately with a {@link RejectedExecutionException}
+ * instead of waiting, so that callers can shed load.  A request that is
+ * cancelled before it starts is removed from the queue and never read.
+ *
+ * Metadata should be retrieved from {@link #getMetadataReader()}; the
+ * readers used for pixel data are never exposed to the caller.
+ */
+public class AsyncFormatReader implements Closeable {
+
+  // -- Constants --
+
+  private static final Logger LOGGER =
+    LoggerFactory.getLogger(AsyncFormatReader.class);
+
+  /** Default number of requests per reader that may be queued. */
+  public static final int DEFAULT_QUEUE_FACTOR = 16;
+
+  // -- Fields --
+
+  private final ReaderFactory factory;
+  private final String id;
+  private final int maxReaders;
+  private final IFormatReader metadataReader;
+
+  private final ExecutorService executor;
+  private final boolean ownsExecutor;
+  private final Semaphore pending;
+  private final int maxPending;
+
+  /** Readers that are initialized and not in use. */
+  private final BlockingQueue<IFormatReader> idleReaders =
+    new LinkedBlockingQueue<IFormatReader>();
+
+  /** All readers that have been created, so that they can be closed. */
+  private final List<IFormatReader> readers = new ArrayList<IFormatReader>();
+
+  private volatile boolean closed = false;
+
+  // -- Constructors --
+
+  /**
+   * Constructs an asynchronous reader for the given file, using
+   * up to the given number of {@link ImageReader}s.  No memo files are
+   * created, so each reader parses the file's metadata.
+   */
+  public AsyncFormatReader(String id, int readers)
+    throws FormatException, IOException
+  {
+    this(id, readers, null);
+  }
+
+  /**
+   * Constructs an asynchronous reader for the given file, using
+   * up to the given number of {@link ImageReader}s.  If memoDirectory
+   * is not null, the readers are wrapped in a {@link Memoizer} that
+   * creates memo files under that directory.
+   */
+  public AsyncFormatReader(String id, int readers, final File memoDirectory)
+    throws FormatException, IOException
+  {
+    this(new ReaderFactory() {
+      @Override
+      public IFormatReader createReader() {
+        if (memoDirectory == null) {
+          return new ImageReader();
+        }
+        return new Memoizer(new ImageReader(), 0, memoDirectory);
+      }
+    }, id, readers, readers * DEFAULT_QUEUE_FACTOR);
+  }
+
+  /**
+   * Constructs an asynchronous reader using readers from the given factory,
+   * and an internal pool of worker threads (one per reader).
+   *
+   * @param factory creates uninitialized reader instances
+   * @param id the file to read
+   * @param readers the maximum number of readers (and worker threads)
+   * @param maxPending the maximum number of queued or running requests
+   */
+  public AsyncFormatReader(ReaderFactory factory, String id, int readers,
+    int maxPending)
+    throws FormatException, IOException
+  {
+    this(factory, id, readers, maxPending, null);
+  }
+
+  /**
+   * Constructs an asynchronous reader using readers from the given factory.
+   * Requests are run on the given executor, which is not shut down when
+   * this reader is closed; this allows e.g. a shared executor or a
+   * virtual thread executor to be used.  Regardless of the number of
+   * threads in the executor, at most 'readers' requests are read
+   * at once.
+   *
+   * @param factory creates uninitialized reader instances
+   * @param id the file to read
+   * @param readers the maximum number of readers
+   * @param maxPending the maximum number of queued or running requests
+   * @param executor the executor on which to run requests, or null to
+   *   create an internal pool with one thread per reader
+   */
+  public AsyncFormatReader(ReaderFactory factory, String id, int readers,
+    int maxPending, ExecutorService executor)
+    throws FormatException, IOException
+  {
+    if (readers < 1) {
+      throw new IllegalArgumentException("At least one reader is required");
+    }
+    if (maxPending < 1) {
+      throw new IllegalArgumentException(
+        "At least one pending request must be allowed");
+    }
+    this.factory = factory;
+    this.id = id;
+    this.maxReaders = readers;
+    this.maxPending = maxPending;
+    this.pending = new Semaphore(maxPending);
+
+    // initialize one reader immediately, so that any problems with the file
+    // are reported here and the memo file (if any) is ready for the others
+    metadataReader = initializeReader();
+
+    if (executor == null) {
+      this.executor = Executors.newFixedThreadPool(readers,
+        new WorkerThreadFactory());
+      this.ownsExecutor = true;
+    }
+    else {
+      this.executor = executor;
+      this.ownsExecutor = false;
+    }
+  }
+
+  // -- AsyncFormatReader API methods --
+
+  /**
+   * @return an initialized reader from which metadata can be retrieved.
+   *   The reader is not used for any asynchronous requests, but must not
+   *   be closed by the caller.
+   */
+  public IFormatReader getMetadataReader() {
+    return metadataReader;
+  }
+
+  /** @return the file being read */
+  public String getCurrentFile() {
+    return id;
+  }
+
+  /** @return the number of requests that are queued or running */
+  public int getPendingCount() {
+    return maxPending - pending.availablePermits();
+  }
+
+  /** @return the maximum number of requests that may be pending */
+  public int getMaxPending() {
+    return maxPending;
+  }
+
+  /**
+   * Asynchronously reads an entire plane.
+   *
+   * @see #openBytesAsync(int, int, int, int, int, int, int)
+   */
+  public CompletableFuture<byte[]> openBytesAsync(int series, int resolution,
+    int no)
+  {
+    return openBytesAsync(series, resolution, no, 0, 0, -1, -1);
+  }
+
+  /**
+   * Asynchronously reads a tile.  The returned future is completed with
+   * the tile's pixel data as returned by
+   * {@link IFormatReader#openBytes(int, int, int, int, int)}, or
+   * exceptionally if the tile could not be read.
+   *
+   * If too many requests are already pending, the returned future will
+   * have already failed with a {@link RejectedExecutionException}.
+   *
+   * @param series the series index (resolutions are not flattened)
+   * @param resolution the resolution index within the series
+   * @param no the plane index
+   * @param x the X coordinate of the upper-left corner of the tile
+   * @param y the Y coordinate of the upper-left corner of the tile
+   * @param w the width of the tile, or -1 to read the full width
+   * @param h the height of the tile, or -1 to read the full height
+   */
+  public CompletableFuture<byte[]> openBytesAsync(int series, int resolution,
+    int no, int x, int y, int w, int h)
+  {
+    final CompletableFuture<byte[]> future = new CompletableFuture<byte[]>();
+    if (closed) {
+      future.completeExceptionally(
+        new RejectedExecutionException("Reader is closed"));
+      return future;
+    }
+    if (!pending.tryAcquire()) {
+      future.completeExceptionally(new RejectedExecutionException(
+        "Too many pending requests (" + maxPending + ")"));
+      return future;
+    }
+
+    final ReadTask task =
+      new ReadTask(future, series, resolution, no, x, y, w, h);
+    try {
+      executor.execute(task);
+    }
+    catch (RejectedExecutionException e) {
+      task.finish();
+      future.completeExceptionally(e);
+      return future;
+    }
+
+    // remove cancelled requests from the queue, so that they
+    // do not count against the pending request limit
+    future.whenComplete(new BiConsumer<byte[], Throwable>() {
+      @Override
+      public void accept(byte[] result, Throwable t) {
+        if (future.isCancelled() && executor instanceof ThreadPoolExecutor &&
+          ((ThreadPoolExecutor) executor).remove(task))
+        {
+          task.finish();
+        }
+      }
+    });
+    return future;
+  }
+
+  // -- Closeable API methods --
+
+  /**
+   * Cancels all requests that have not yet started, waits for running
+   * requests to finish, and closes all readers.
+   */
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    if (ownsExecutor) {
+      for (Runnable r : executor.shutdownNow()) {
+        if (r instanceof ReadTask) {
+          ((ReadTask) r).cancel();
+        }
+      }
+      try {
+        while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+          LOGGER.debug("Waiting for pending reads to finish");
+        }
+      }
+      catch (InterruptedException e) {
+        throw new IOException("Interrupted while waiting for reads", e);
+      }
+    }
+    else {
+      // wait for any running requests that have already acquired a reader
+      try {
+        pending.acquire(maxPending);
+        pending.release(maxPending);
+      }
+      catch (InterruptedException e) {
+        throw new IOException("Interrupted while waiting for reads", e);
+      }
+    }
+
+    metadataReader.close();
+    synchronized (readers) {
+      for (IFormatReader reader : readers) {
+        reader.close();
+      }
+      readers.clear();
+    }
+    idleReaders.clear();
+  }
+
+  // -- Helper methods --
+
+  private IFormatReader initializeReader() throws FormatException, IOException {
+    IFormatReader reader = factory.createReader();
+    reader.setFlattenedResolutions(false);
+    reader.setId(id);
+    return reader;
+  }
+
+  /**
+   * Retrieve an idle reader, creating a new reader if fewer than the
+   * maximum number exist, and otherwise waiting for a reader to be released.
+   */
+  private IFormatReader acquireReader()
+    throws FormatException, IOException, InterruptedException
+  {
+    IFormatReader reader = idleReaders.poll();
+    if (reader != null) {
+      return reader;
+    }
+    boolean create = false;
+    synchronized (readers) {
+      if (readers.size() < maxReaders) {
+        // reserve a slot before initializing outside of the lock
+        readers.add(null);
+        create = true;
+      }
+    }
+    if (!create) {
+      return idleReaders.take();
+    }
+    try {
+      reader = initializeReader();
+    }
+    finally {
+      synchronized (readers) {
+        readers.remove(null);
+        if (reader != null) {
+          readers.add(reader);
+        }
+      }
+    }
+    return reader;
+  }
+
+  private void releaseReader(IFormatReader reader) {
+    idleReaders.add(reader);
+  }
+
+  // -- Helper classes --
+
+  /** Creates reader instances for an {@link AsyncFormatReader}. */
+  public interface ReaderFactory {
+    /**
+     * @return a new reader on which setId has not been called
+     */
+    IFormatReader createReader();
+  }
+
+  /** Reads a single tile on a worker thread. */
+  class ReadTask implements Runnable {
+    private final CompletableFuture<byte[]> future;
+    private final int series, resolution, no, x, y, w, h;
+    private final AtomicBoolean finished = new AtomicBoolean(false);
+
+    ReadTask(CompletableFuture<byte[]> future, int series, int resolution,
+      int no, int x, int y, int w, int h)
+    {
+      this.future = future;
+      this.series = series;
+      this.resolution = resolution;
+      this.no = no;
+      this.x = x;
+      this.y = y;
+      this.w = w;
+      this.h = h;
+    }
+
+    @Override
+    public void run() {
+      if (future.isDone()) {
+        finish();
+        return;
+      }
+      byte[] result = null;
+      Throwable error = null;
+      try {
+        IFormatReader reader = acquireReader();
+        try {
+          reader.setSeries(series);
+          reader.setResolution(resolution);
+          int width = w < 0 ? reader.getSizeX() - x : w;
+          int height = h < 0 ? reader.getSizeY() - y : h;
+          result = reader.openBytes(no, x, y, width, height);
+        }
+        finally {
+          releaseReader(reader);
+        }
+      }
+      catch (FormatException | IOException | RuntimeException e) {
+        error = e;
+      }
+      catch (InterruptedException e) {
+        error = e;
+        Thread.currentThread().interrupt();
+      }
+
+      // free the slot before completing, so that dependent
+      // stages can immediately submit another request
+      finish();
+      if (error == null) {
+        future.complete(result);
+      }
+      else {
+        future.completeExceptionally(error);
+      }
+    }
+
+    /** Fail the request without reading. */
+    void cancel() {
+      future.completeExceptionally(
+        new RejectedExecutionException("Reader was closed"));
+      finish();
+    }
+
+    /** Release this request's slot in the queue, exactly once. */
+    void finish() {
+      if (finished.compareAndSet(false, true)) {
+        pending.release();
+      }
+    }
+  }
+
+  /** Names the internal worker threads and marks them as daemons. */
+  static class WorkerThreadFactory implements ThreadFactory {
+    private static final AtomicInteger POOL = new AtomicInteger();
+    private final int pool = POOL.incrementAndGet();
+    private final AtomicInteger thread = new AtomicInteger();
+
+    @Override
+    public Thread newThread(Runnable r) {
+      Thread t = new Thread(r,
+        "AsyncFormatReader-" + pool + "-" + thread.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    }
+  }
+
+}
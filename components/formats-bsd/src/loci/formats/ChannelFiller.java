@@ -67,6 +67,9 @@ public class ChannelFiller extends ReaderWrapper {
   /** Number of LUT components. */
   protected int lutLength;
 
+  /** Scratch arrays used to hold the unfilled indices. */
+  private transient BufferPool bufferPool;
+
   // -- Constructors --
 
   /** Constructs a ChannelFiller around a new image reader. */
@@ -174,50 +177,22 @@ public class ChannelFiller extends ReaderWrapper {
     // uint16 but we are filling with an 8-bit color table, the pixel type
     // should change to uint8.
 
-    // TODO: This logic below is opaque and could use some comments.
-
-    byte[] pix = reader.openBytes(no, x, y, w, h);
-    if (getPixelType() == FormatTools.UINT8) {
-      byte[][] b = ImageTools.indexedToRGB(reader.get8BitLookupTable(), pix);
-      if (isInterleaved()) {
-        int pt = 0;
-        for (int i=0; i<b[0].length; i++) {
-          for (int j=0; j<b.length; j++) {
-            buf[pt++] = b[j][i];
-          }
-        }
+    int bpp = FormatTools.getBytesPerPixel(getPixelType());
+    byte[] pix = getBufferPool().borrow(
+      w * h * reader.getRGBChannelCount() * bpp);
+    try {
+      byte[] indices = reader.openBytes(no, pix, x, y, w, h);
+      if (getPixelType() == FormatTools.UINT8) {
+        ImageTools.applyLookupTable(reader.get8BitLookupTable(), indices,
+          buf, isInterleaved());
       }
       else {
-        for (int i=0; i<b.length; i++) {
-          System.arraycopy(b[i], 0, buf, i*b[i].length, b[i].length);
-        }
-      }
-      return buf;
-    }
-    short[][] s = ImageTools.indexedToRGB(reader.get16BitLookupTable(),
-      pix, isLittleEndian());
-
-    if (isInterleaved()) {
-      int pt = 0;
-      for (int i=0; i<s[0].length; i++) {
-        for (int j=0; j<s.length; j++) {
-          buf[pt++] = (byte) (isLittleEndian() ?
-            (s[j][i] & 0xff) : (s[j][i] >> 8));
-          buf[pt++] = (byte) (isLittleEndian() ?
-            (s[j][i] >> 8) : (s[j][i] & 0xff));
-        }
+        ImageTools.applyLookupTable(reader.get16BitLookupTable(), indices,
+          buf, isInterleaved(), isLittleEndian());
       }
     }
-    else {
-      int pt = 0;
-      for (int i=0; i<s.length; i++) {
-        for (int j=0; j<s[i].length; j++) {
-          buf[pt++] = (byte) (isLittleEndian() ?
-            (s[i][j] & 0xff) : (s[i][j] >> 8));
-          buf[pt++] = (byte) (isLittleEndian() ?
-            (s[i][j] >> 8) : (s[i][j] & 0xff));
-        }
-      }
+    finally {
+      getBufferPool().release(pix);
     }
     return buf;
   }
@@ -262,8 +237,24 @@ public class ChannelFiller extends ReaderWrapper {
     MetadataTools.populatePixelsOnly(store, this);
   }
 
+  /* @see IFormatReader#close(boolean) */
+  @Override
+  public void close(boolean fileOnly) throws IOException {
+    super.close(fileOnly);
+    if (bufferPool != null) {
+      bufferPool.clear();
+    }
+  }
+
   // -- Helper methods --
 
+  private BufferPool getBufferPool() {
+    if (bufferPool == null) {
+      bufferPool = new BufferPool();
+    }
+    return bufferPool;
+  }
+
   /** Gets the number of color components in the lookup table. */
   private int getLookupTableComponentCount()
     throws FormatException, IOException
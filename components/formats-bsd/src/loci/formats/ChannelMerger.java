@@ -51,6 +51,11 @@ public class ChannelMerger extends ReaderWrapper {
     return new ChannelMerger(r);
   }
 
+  // -- Fields --
+
+  /** Scratch arrays used to hold each unmerged channel. */
+  private transient BufferPool bufferPool;
+
   // -- Constructor --
 
   /** Constructs a ChannelMerger around a new image reader. */
@@ -170,9 +175,23 @@ public class ChannelMerger extends ReaderWrapper {
     int sizeC = getSizeC();
     int[] nos = getZCTCoords(no);
     int z = nos[0], t = nos[2];
-    for (int c=0; c<sizeC; c++) {
-      byte[] b = reader.openBytes(reader.getIndex(z, c, t), x, y, w, h);
-      System.arraycopy(b, 0, buf, c * b.length, b.length);
+    int planeSize = w * h * FormatTools.getBytesPerPixel(getPixelType());
+
+    // the first channel can be read directly into the output buffer;
+    // the remaining channels are read into a single reusable buffer
+    byte[] b = reader.openBytes(reader.getIndex(z, 0, t), buf, x, y, w, h);
+    if (b != buf) {
+      System.arraycopy(b, 0, buf, 0, planeSize);
+    }
+    byte[] channel = getBufferPool().borrow(planeSize);
+    try {
+      for (int c=1; c<sizeC; c++) {
+        b = reader.openBytes(reader.getIndex(z, c, t), channel, x, y, w, h);
+        System.arraycopy(b, 0, buf, c * planeSize, planeSize);
+      }
+    }
+    finally {
+      getBufferPool().release(channel);
     }
     return buf;
   }
@@ -227,4 +246,22 @@ public class ChannelMerger extends ReaderWrapper {
     return byte[].class;
   }
 
+  /* @see IFormatReader#close(boolean) */
+  @Override
+  public void close(boolean fileOnly) throws IOException {
+    super.close(fileOnly);
+    if (bufferPool != null) {
+      bufferPool.clear();
+    }
+  }
+
+  // -- Helper methods --
+
+  private BufferPool getBufferPool() {
+    if (bufferPool == null) {
+      bufferPool = new BufferPool();
+    }
+    return bufferPool;
+  }
+
 }
@@ -0,0 +1,177 @@
+/*
+ * #%L
+ * BSD implementations of Bio-Formats readers and writers
+ * %%
+ * Copyright (C) 2026 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import loci.common.Location;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Shared cache of directory listings, used when expanding and detecting
+ * file patterns. A cached listing is reused for as long as the directory's
+ * modification time is unchanged, so adding or removing files invalidates
+ * the entry. Listings are sorted, so that names sharing a prefix can be
+ * found with a binary search.
+ */
+public final class DirectoryListingCache {
+
+  // -- Constants --
+
+  private static final Logger LOGGER =
+    LoggerFactory.getLogger(DirectoryListingCache.class);
+
+  /** Maximum number of directory listings to keep. */
+  public static final int MAX_ENTRIES = 64;
+
+  /**
+   * Listings of directories modified less than this many milliseconds
+   * before they were read are not cached, as further changes within the
+   * file system's timestamp resolution would not update the modification
+   * time.
+   */
+  private static final long RACY_INTERVAL = 2000;
+
+  private static final Map<String, Listing> CACHE =
+    new LinkedHashMap<String, Listing>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Listing> eldest) {
+        return size() > MAX_ENTRIES;
+      }
+    };
+
+  // -- Constructor --
+
+  private DirectoryListingCache() { }
+
+  // -- Utility methods --
+
+  /**
+   * Lists the given directory, including hidden files.
+   *
+   * @param dir the directory path
+   * @return the sorted names of the directory's children, or null if the
+   *   directory could not be listed
+   * @see #list(String, boolean)
+   */
+  public static String[] list(String dir) {
+    return list(dir, false);
+  }
+
+  /**
+   * Lists the given directory, reusing a previous listing if the directory
+   * has not been modified since.
+   *
+   * @param dir the directory path
+   * @param noHiddenFiles true if hidden files should be excluded
+   * @return the sorted names of the directory's children, or null if the
+   *   directory could not be listed
+   */
+  public static String[] list(String dir, boolean noHiddenFiles) {
+    Location location = new Location(dir);
+    String key = location.getAbsolutePath() + (noHiddenFiles ? "\0" : "");
+    long modified = location.lastModified();
+
+    synchronized (CACHE) {
+      Listing listing = CACHE.get(key);
+      if (listing != null && listing.modified == modified) {
+        LOGGER.trace("Using cached listing of {}", key);
+        return listing.names.clone();
+      }
+    }
+
+    String[] names = location.list(noHiddenFiles);
+    if (names == null) {
+      return null;
+    }
+    Arrays.sort(names);
+
+    // directories that cannot report a modification time, and directories
+    // that were modified very recently, are listed again on the next call
+    if (modified > 0 &&
+      System.currentTimeMillis() - modified >= RACY_INTERVAL)
+    {
+      synchronized (CACHE) {
+        CACHE.put(key, new Listing(modified, names.clone()));
+      }
+    }
+    return names;
+  }
+
+  /** Discards all cached directory listings. */
+  public static void clear() {
+    synchronized (CACHE) {
+      CACHE.clear();
+    }
+  }
+
+  /**
+   * Finds the range of names that start with the given prefix.
+   *
+   * @param names a sorted array of names
+   * @param prefix the prefix to search for
+   * @return the index of the first name with the given prefix, and the
+   *   index after the last such name; both are equal if no name matches
+   */
+  public static int[] findPrefixRange(String[] names, String prefix) {
+    int start = 0;
+    int end = names.length;
+    while (start < end) {
+      int mid = (start + end) >>> 1;
+      if (names[mid].compareTo(prefix) < 0) start = mid + 1;
+      else end = mid;
+    }
+    end = start;
+    while (end < names.length && names[end].startsWith(prefix)) {
+      end++;
+    }
+    return new int[] {start, end};
+  }
+
+  // -- Helper classes --
+
+  private static class Listing {
+    private final long modified;
+    private final String[] names;
+
+    Listing(long modified, String[] names) {
+      this.modified = modified;
+      this.names = names;
+    }
+  }
+
+}
@@ -36,7 +36,11 @@ import java.io.File;
 import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
@@ -404,15 +408,13 @@ public class FilePattern {
     else if (!dir.equals("") && !dir.endsWith(File.separator)) {
       dir += File.separator;
     }
-    Location dirFile = new Location(dir.equals("") ? "." : dir);
 
     // list files in the given directory
-    Location[] f = dirFile.listFiles();
-    if (f == null) return null;
-    String[] nameList = new String[f.length];
-    for (int i=0; i<nameList.length; i++) nameList[i] = f[i].getName();
+    String[] nameList =
+      DirectoryListingCache.list(dir.equals("") ? "." : dir);
+    if (nameList == null) return null;
 
-    return findPattern(name, dir, nameList);
+    return findSortedPattern(name, dir, nameList, null);
   }
 
   /**
@@ -441,6 +443,16 @@ public class FilePattern {
    */
   public static String findPattern(String name, String dir, String[] nameList,
     int[] excludeAxes)
+  {
+    return findSortedPattern(name, dir, sortNames(nameList), excludeAxes);
+  }
+
+  /**
+   * Works like {@link #findPattern(String, String, String[], int[])}, but
+   * assumes that the list of names is already sorted.
+   */
+  private static String findSortedPattern(String name, String dir,
+    String[] nameList, int[] excludeAxes)
   {
     if (excludeAxes == null) excludeAxes = new int[0];
 
@@ -498,7 +510,7 @@ public class FilePattern {
       String pre = name.substring(0, indexList[i]);
       String post = name.substring(endList[i]);
       NumberFilter filter = new NumberFilter(pre, post);
-      String[] list = matchFiles(nameList, filter);
+      String[] list = matchFiles(nameList, filter, pre);
       if (list == null || list.length == 0) return null;
       if (list.length == 1) {
         // false alarm; this number block is constant
@@ -613,7 +625,7 @@ public class FilePattern {
   public static String[] findSeriesPatterns(String base) {
     Location file = new Location(base).getAbsoluteFile();
     Location parent = file.getParentFile();
-    String[] list = parent.list(true);
+    String[] list = DirectoryListingCache.list(parent.getAbsolutePath(), true);
     if (list == null) {
       list = new String[0];
     }
@@ -647,31 +659,46 @@ public class FilePattern {
 
     String absoluteBase = new Location(base).getAbsolutePath();
 
+    String[] sortedNames = sortNames(nameList);
     ArrayList<String> patterns = new ArrayList<String>();
     int[] exclude = new int[] {AxisGuesser.S_AXIS};
+
+    // names that belong to a pattern which has already been considered;
+    // each of these would be matched to the same pattern again
+    Set<String> covered = new HashSet<String>();
+    Map<String, Boolean> containsBase = new HashMap<String, Boolean>();
     for (String name : nameList) {
-      String pattern = findPattern(name, dir, nameList, exclude);
+      if (covered.contains(name)) continue;
+      String pattern = findSortedPattern(name, dir, sortedNames, exclude);
       if (pattern == null) continue;
+      coverNames(pattern, covered);
+      if (patterns.contains(pattern)) continue;
+
       int start = pattern.lastIndexOf(File.separator) + 1;
       if (start < 0) start = 0;
       String patternSuffix = pattern.substring(start);
       dot = patternSuffix.indexOf('.');
       if (dot < 0) patternSuffix = "";
       else patternSuffix = patternSuffix.substring(dot + 1);
-
-      String checkPattern = findPattern(name, dir, nameList);
-      String[] checkFiles = new FilePattern(checkPattern).getFiles();
-
-      // ensure that escaping is consistent with the base file
-      // this is needed to make sure that file grouping works correctly
-      // on Windows
-      for (int q=0; q<checkFiles.length; q++) {
-        checkFiles[q] = new Location(checkFiles[q]).getAbsolutePath();
+      if (!patternSuffix.equals(baseSuffix)) continue;
+
+      String checkPattern = findSortedPattern(name, dir, sortedNames, null);
+      Boolean hasBase = containsBase.get(checkPattern);
+      if (hasBase == null) {
+        String[] checkFiles = new FilePattern(checkPattern).getFiles();
+
+        // ensure that escaping is consistent with the base file
+        // this is needed to make sure that file grouping works correctly
+        // on Windows
+        for (int q=0; q<checkFiles.length; q++) {
+          checkFiles[q] = new Location(checkFiles[q]).getAbsolutePath();
+        }
+        hasBase = DataTools.indexOf(checkFiles, absoluteBase) >= 0;
+        containsBase.put(checkPattern, hasBase);
       }
 
-      if (!patterns.contains(pattern) && (!new Location(pattern).exists() ||
-        absoluteBase.equals(pattern)) && patternSuffix.equals(baseSuffix) &&
-        DataTools.indexOf(checkFiles, absoluteBase) >= 0)
+      if ((!new Location(pattern).exists() || absoluteBase.equals(pattern)) &&
+        hasBase)
       {
         patterns.add(pattern);
       }
@@ -688,9 +715,9 @@ public class FilePattern {
       String[] nameList, int ndx, int end, String p) {
     if (ndx == end) return p;
     for (int i=end-ndx; i>=1; i--) {
-      NumberFilter filter = new NumberFilter(
-        name.substring(0, ndx), name.substring(ndx + i));
-      String[] list = matchFiles(nameList, filter);
+      String pre = name.substring(0, ndx);
+      NumberFilter filter = new NumberFilter(pre, name.substring(ndx + i));
+      String[] list = matchFiles(nameList, filter, pre);
       BigInteger[] numbers = new BigInteger[list.length];
       for (int j=0; j<list.length; j++) {
         numbers[j] = new BigInteger(list[j].substring(ndx, ndx + i));
@@ -746,15 +773,44 @@ public class FilePattern {
     return bounds.toString();
   }
 
-  // filters the given list of filenames according to the specified filter
-  private static String[] matchFiles(String[] inFiles, NumberFilter filter) {
+  // filters the given sorted list of filenames according to the specified
+  // filter, only checking names that start with the filter's prefix
+  private static String[] matchFiles(String[] inFiles, NumberFilter filter,
+    String prefix)
+  {
+    int[] range = DirectoryListingCache.findPrefixRange(inFiles, prefix);
     List<String> list = new ArrayList<String>();
-    for (int i=0; i<inFiles.length; i++) {
+    for (int i=range[0]; i<range[1]; i++) {
       if (filter.accept(inFiles[i])) list.add(inFiles[i]);
     }
     return list.toArray(new String[0]);
   }
 
+  // returns a sorted copy of the given names, or the names themselves
+  // if they are already sorted
+  private static String[] sortNames(String[] names) {
+    for (int i=1; i<names.length; i++) {
+      if (names[i - 1].compareTo(names[i]) > 0) {
+        String[] sorted = names.clone();
+        Arrays.sort(sorted);
+        return sorted;
+      }
+    }
+    return names;
+  }
+
+  // adds the names of the files matching the given pattern to the set
+  private static void coverNames(String pattern, Set<String> names) {
+    if (pattern.indexOf(FilePatternBlock.BLOCK_START) < 0) {
+      // a pattern without blocks is a single file name
+      names.add(new Location(pattern).getName());
+      return;
+    }
+    for (String file : new FilePattern(pattern).getFiles()) {
+      names.add(new Location(file).getName());
+    }
+  }
+
   // -- Helper methods --
 
   // recursive method for building the list of matching filenames
@@ -838,7 +894,10 @@ public class FilePattern {
     ArrayList<String> files = new ArrayList<String>();
 
     Location root = new Location(dir);
-    String[] children = root.list();
+    String[] children = DirectoryListingCache.list(dir);
+    if (children == null) {
+      return new String[0];
+    }
 
     for (String child : children) {
       Location file = new Location(root, child);
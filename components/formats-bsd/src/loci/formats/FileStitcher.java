@@ -38,9 +38,12 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.Hashtable;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import loci.common.DataTools;
@@ -66,6 +69,9 @@ public class FileStitcher extends ReaderWrapper {
 
   private static final int MAX_READERS = 1000;
 
+  /** Default number of per-file readers to keep initialized. */
+  public static final int DEFAULT_MAX_OPEN_READERS = 64;
+
   // -- Fields --
 
   /**
@@ -99,6 +105,15 @@ public class FileStitcher extends ReaderWrapper {
   private ExternalSeries[] externals;
   private ClassList<IFormatReader> classList;
 
+  /**
+   * Initialized readers for files other than the first file in each pattern,
+   * keyed by external series and file index, in least-recently-used order.
+   */
+  private final LinkedHashMap<Long, DimensionSwapper> openReaders =
+    new LinkedHashMap<Long, DimensionSwapper>(16, 0.75f, true);
+  private int maxOpenReaders = DEFAULT_MAX_OPEN_READERS;
+  private int externalCount;
+
   // -- Constructors --
 
   /** Constructs a FileStitcher around a new image reader. */
@@ -187,9 +202,28 @@ public class FileStitcher extends ReaderWrapper {
    */
   public DimensionSwapper getReader(int series, int no) {
     if (noStitch) return (DimensionSwapper) reader;
-    DimensionSwapper r = externals[getExternalSeries(series)].getReader(no);
     initReader(series, no);
-    return r;
+    return externals[getExternalSeries(series)].getReader(no);
+  }
+
+  /**
+   * Sets the maximum number of initialized per-file readers that are kept
+   * open, in addition to the reader for the first file of each pattern.
+   * When the limit is reached, the least recently used reader is closed,
+   * so that file is only parsed again if it is accessed after eviction.
+   */
+  public void setMaxOpenReaders(int maxOpenReaders) {
+    if (maxOpenReaders < 1) {
+      throw new IllegalArgumentException(
+        "At least one reader must be kept open: " + maxOpenReaders);
+    }
+    this.maxOpenReaders = maxOpenReaders;
+    evictReaders(maxOpenReaders);
+  }
+
+  /** Gets the maximum number of initialized per-file readers kept open. */
+  public int getMaxOpenReaders() {
+    return maxOpenReaders;
   }
 
   /** Gets the local reader index for use with the given image plane. */
@@ -490,13 +524,9 @@ public class FileStitcher extends ReaderWrapper {
     IFormatReader r = getReader(getCoreIndex(), pos[0]);
     int ino = pos[1];
 
-    if (ino < r.getImageCount()) {
-      byte[] b = r.openBytes(ino, buf, x, y, w, h);
-      if (!noStitch && ino == r.getImageCount() - 1) {
-        r.close();
-      }
-      return b;
-    }
+    // the reader stays open until it is evicted from the pool of open
+    // readers, so that returning to this file does not parse it again
+    if (ino < r.getImageCount()) return r.openBytes(ino, buf, x, y, w, h);
 
     // return a blank image to cover for the fact that
     // this file does not contain enough image planes
@@ -552,6 +582,7 @@ public class FileStitcher extends ReaderWrapper {
     if (!fileOnly) {
       noStitch = false;
       externals = null;
+      openReaders.clear();
       sizeZ = sizeC = sizeT = null;
       lenZ = lenC = lenT = null;
       core.clear();
@@ -735,16 +766,14 @@ public class FileStitcher extends ReaderWrapper {
         files.add(path);
       }
 
-      DimensionSwapper[] readers = s.getReaders();
-      for (int i=0; i<readers.length; i++) {
+      int nFiles = f.length > MAX_READERS ? 1 : f.length;
+      for (int i=0; i<nFiles; i++) {
         try {
-          readers[i].setId(f[i]);
-          String[] used = readers[i].getUsedFiles();
+          String[] used = s.getUsedFiles(i);
           for (String file : used) {
             String path = new Location(file).getAbsolutePath();
             files.add(path);
           }
-          readers[i].close();
         }
         catch (FormatException e) {
           LOGGER.debug("", e);
@@ -1221,6 +1250,36 @@ public class FileStitcher extends ReaderWrapper {
 
   // -- Helper methods --
 
+  private DimensionSwapper createReader(ClassList<IFormatReader> classes) {
+    DimensionSwapper r = classes == null ? new DimensionSwapper() :
+      new DimensionSwapper(new ImageReader(classes));
+    r.setMetadataOptions(getMetadataOptions());
+    r.setGroupFiles(false);
+    return r;
+  }
+
+  /** Closes least recently used readers until at most n remain open. */
+  private void evictReaders(int n) {
+    Iterator<DimensionSwapper> it = openReaders.values().iterator();
+    while (openReaders.size() > n && it.hasNext()) {
+      DimensionSwapper r = it.next();
+      it.remove();
+      closeReader(r);
+    }
+  }
+
+  private void closeReader(DimensionSwapper r) {
+    if (r == null) {
+      return;
+    }
+    try {
+      r.close();
+    }
+    catch (IOException e) {
+      LOGGER.debug("Close failed", e);
+    }
+  }
+
   private int getExternalSeries() {
     return getExternalSeries(getCoreIndex());
   }
@@ -1381,7 +1440,17 @@ public class FileStitcher extends ReaderWrapper {
       if (r.getCurrentFile() == null) {
         r.setGroupFiles(false);
       }
-      r.setId(externals[external].getFiles()[fno]);
+      String file = externals[external].getFiles()[fno];
+      try {
+        r.setId(file);
+      }
+      catch (UnknownFormatException e) {
+        // the file is not the same type as the first file in the pattern,
+        // so fall back to full format detection
+        LOGGER.debug("Could not reuse reader type for {}", file, e);
+        r = externals[external].resetReader(fno);
+        r.setId(file);
+      }
       r.setCoreIndex(reader.getCoreMetadataList().size() > 1 ? sno : 0);
       String newOrder = ((DimensionSwapper) reader).getInputOrder();
       if ((externals[external].getFiles().length > 1 || !r.isOrderCertain()) &&
@@ -1402,8 +1471,14 @@ public class FileStitcher extends ReaderWrapper {
 
   // -- Helper classes --
 
+  /**
+   * The files matching a single pattern. The reader for the first file is
+   * kept for the lifetime of the series; readers for the remaining files are
+   * held in the shared, bounded pool of open readers.
+   */
   class ExternalSeries {
-    private DimensionSwapper[] readers;
+    private final long id;
+    private DimensionSwapper first;
     private String[] files;
     private FilePattern pattern;
     private byte[] blankThumbBytes;
@@ -1411,44 +1486,122 @@ public class FileStitcher extends ReaderWrapper {
     private AxisGuesser ag;
     private int imagesPerFile;
 
+    /**
+     * Reader classes used for files other than the first one. Files in a
+     * pattern are assumed to be the same type as the first file, so format
+     * detection only needs to consider that file's reader.
+     */
+    private ClassList<IFormatReader> fileClasses;
+
     public ExternalSeries(FilePattern pattern)
       throws FormatException, IOException
     {
       this.pattern = pattern;
+      id = externalCount++;
       files = this.pattern.getFiles();
 
-      int nReaders = files.length > MAX_READERS ? 1 : files.length;
-      readers = new DimensionSwapper[nReaders];
-      for (int i=0; i<readers.length; i++) {
-        if (classList != null) {
-          readers[i] = new DimensionSwapper(new ImageReader(classList));
-        }
-        else readers[i] = new DimensionSwapper();
-        readers[i].setMetadataOptions(getMetadataOptions());
-        readers[i].setGroupFiles(false);
+      first = createReader(classList);
+      first.setId(files[0]);
+
+      IFormatReader base = first.unwrap();
+      if (base instanceof ImageReader) {
+        base = ((ImageReader) base).getReader();
       }
-      readers[0].setId(files[0]);
+      fileClasses = new ClassList<IFormatReader>(IFormatReader.class);
+      fileClasses.addClass(base.getClass());
 
-      ag = new AxisGuesser(this.pattern, readers[0].getDimensionOrder(),
-        readers[0].getSizeZ(), readers[0].getSizeT(),
-        readers[0].getSizeC(), readers[0].isOrderCertain());
+      ag = new AxisGuesser(this.pattern, first.getDimensionOrder(),
+        first.getSizeZ(), first.getSizeT(),
+        first.getSizeC(), first.isOrderCertain());
 
-      blankThumbBytes = new byte[FormatTools.getPlaneSize(readers[0],
-        readers[0].getThumbSizeX(), readers[0].getThumbSizeY())];
+      blankThumbBytes = new byte[FormatTools.getPlaneSize(first,
+        first.getThumbSizeX(), first.getThumbSizeY())];
 
-      originalOrder = readers[0].getDimensionOrder();
-      imagesPerFile = readers[0].getImageCount();
+      originalOrder = first.getDimensionOrder();
+      imagesPerFile = first.getImageCount();
     }
 
+    /**
+     * Gets the reader for the given file, creating it if the file does not
+     * have an open reader. Creating a reader may close the least recently
+     * used reader of any series.
+     */
     public DimensionSwapper getReader(int fno) {
-      if (fno < readers.length) {
-        return readers[fno];
+      if (fno <= 0 || fno >= files.length) {
+        return first;
+      }
+      Long key = getKey(fno);
+      DimensionSwapper r = openReaders.get(key);
+      if (r == null) {
+        evictReaders(maxOpenReaders - 1);
+        r = createReader(fileClasses);
+        openReaders.put(key, r);
       }
-      return readers[0];
+      return r;
     }
 
+    /**
+     * Gets the files used by the given file.  If the file does not have an
+     * open reader, a temporary reader is used and closed again, so that the
+     * pool of open readers is not changed.
+     */
+    public String[] getUsedFiles(int fno) throws FormatException, IOException {
+      if (fno <= 0 || fno >= files.length) {
+        return first.getUsedFiles();
+      }
+      // pooled readers are only ever initialized with their own file
+      DimensionSwapper r = openReaders.get(getKey(fno));
+      if (r != null && r.getCurrentFile() != null) {
+        return r.getUsedFiles();
+      }
+      r = createReader(fileClasses);
+      try {
+        try {
+          r.setId(files[fno]);
+        }
+        catch (UnknownFormatException e) {
+          LOGGER.debug("Could not reuse reader type for {}", files[fno], e);
+          closeReader(r);
+          r = createReader(classList);
+          r.setId(files[fno]);
+        }
+        return r.getUsedFiles();
+      }
+      finally {
+        closeReader(r);
+      }
+    }
+
+    /**
+     * Replaces the reader for the given file with one that is not restricted
+     * to the first file's reader type.
+     */
+    public DimensionSwapper resetReader(int fno) {
+      DimensionSwapper r = createReader(classList);
+      if (fno <= 0 || fno >= files.length) {
+        closeReader(first);
+        first = r;
+      }
+      else {
+        closeReader(openReaders.put(getKey(fno), r));
+      }
+      return r;
+    }
+
+    /** Gets the first file's reader and any open readers for other files. */
     public DimensionSwapper[] getReaders() {
-      return readers;
+      List<DimensionSwapper> readers = new ArrayList<DimensionSwapper>();
+      readers.add(first);
+      for (Map.Entry<Long, DimensionSwapper> entry : openReaders.entrySet()) {
+        if ((entry.getKey() >>> 32) == id) {
+          readers.add(entry.getValue());
+        }
+      }
+      return readers.toArray(new DimensionSwapper[readers.size()]);
+    }
+
+    private Long getKey(int fno) {
+      return (id << 32) | fno;
     }
 
     public FilePattern getFilePattern() {
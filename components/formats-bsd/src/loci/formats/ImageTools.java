@@ -223,6 +223,12 @@ public final class ImageTools {
     if (!interleaved) {
       System.arraycopy(array, channelLength * index, rtn, 0, channelLength);
     }
+    else if (bytes == 1) {
+      int n = Math.min(rtn.length, (array.length - index + c - 1) / c);
+      for (int i=0, src=index; i<n; i++, src+=c) {
+        rtn[i] = array[src];
+      }
+    }
     else {
       int next = 0;
       for (int i=0; i<array.length; i+=c*bytes) {
@@ -235,6 +241,140 @@ public final class ImageTools {
     return rtn;
   }
 
+  /**
+   * Converts interleaved channels (e.g. RGBRGBRGB...) to planar channels
+   * (e.g. RRR...GGG...BBB...).  The number of pixels is determined by the
+   * length of 'src'; 'src' and 'dest' must not be the same array.
+   *
+   * @param src the interleaved samples
+   * @param dest the array in which to store the planar samples
+   * @param c the number of channels
+   * @param bytes the number of bytes per sample
+   */
+  public static void deinterleave(byte[] src, byte[] dest, int c, int bytes) {
+    int count = src.length / (c * bytes);
+    deinterleave(src, 0, dest, 0, c, bytes, count, count);
+  }
+
+  /**
+   * Converts interleaved channels to planar channels.
+   * Sample k of channel j is read from
+   * src[srcOffset + (k * c + j) * bytes] and written to
+   * dest[destOffset + (j * planeLength + k) * bytes].
+   *
+   * @param src the interleaved samples
+   * @param srcOffset the index of the first byte to read from 'src'
+   * @param dest the array in which to store the planar samples
+   * @param destOffset the index at which to store the first sample of
+   *   the first channel
+   * @param c the number of channels
+   * @param bytes the number of bytes per sample
+   * @param count the number of pixels to convert
+   * @param planeLength the number of samples in each output channel
+   */
+  public static void deinterleave(byte[] src, int srcOffset, byte[] dest,
+    int destOffset, int c, int bytes, int count, int planeLength)
+  {
+    if (c == 1) {
+      System.arraycopy(src, srcOffset, dest, destOffset, count * bytes);
+      return;
+    }
+    int plane = planeLength * bytes;
+    if (bytes == 1 && c == 3) {
+      int r = destOffset, g = r + plane, b = g + plane;
+      int s = srcOffset;
+      for (int i=0; i<count; i++) {
+        dest[r++] = src[s++];
+        dest[g++] = src[s++];
+        dest[b++] = src[s++];
+      }
+    }
+    else if (bytes == 1 && c == 4) {
+      int r = destOffset, g = r + plane, b = g + plane, a = b + plane;
+      int s = srcOffset;
+      for (int i=0; i<count; i++) {
+        dest[r++] = src[s++];
+        dest[g++] = src[s++];
+        dest[b++] = src[s++];
+        dest[a++] = src[s++];
+      }
+    }
+    else if (bytes == 1) {
+      for (int ch=0; ch<c; ch++) {
+        int d = destOffset + ch * plane;
+        for (int i=0, s=srcOffset + ch; i<count; i++, s+=c) {
+          dest[d++] = src[s];
+        }
+      }
+    }
+    else if (bytes == 2) {
+      int step = c * 2;
+      for (int ch=0; ch<c; ch++) {
+        int d = destOffset + ch * plane;
+        for (int i=0, s=srcOffset + ch * 2; i<count; i++, s+=step) {
+          dest[d++] = src[s];
+          dest[d++] = src[s + 1];
+        }
+      }
+    }
+    else {
+      int step = c * bytes;
+      for (int ch=0; ch<c; ch++) {
+        int d = destOffset + ch * plane;
+        for (int i=0, s=srcOffset + ch * bytes; i<count; i++, s+=step) {
+          System.arraycopy(src, s, dest, d, bytes);
+          d += bytes;
+        }
+      }
+    }
+  }
+
+  /**
+   * Converts planar channels (e.g. RRR...GGG...BBB...) to interleaved
+   * channels (e.g. RGBRGBRGB...).  The number of pixels is determined by the
+   * length of 'src'; 'src' and 'dest' must not be the same array.
+   *
+   * @param src the planar samples
+   * @param dest the array in which to store the interleaved samples
+   * @param c the number of channels
+   * @param bytes the number of bytes per sample
+   */
+  public static void interleave(byte[] src, byte[] dest, int c, int bytes) {
+    if (c == 1) {
+      System.arraycopy(src, 0, dest, 0, src.length);
+      return;
+    }
+    int count = src.length / (c * bytes);
+    int plane = count * bytes;
+    if (bytes == 1 && c == 3) {
+      int r = 0, g = plane, b = 2 * plane;
+      int d = 0;
+      for (int i=0; i<count; i++) {
+        dest[d++] = src[r++];
+        dest[d++] = src[g++];
+        dest[d++] = src[b++];
+      }
+    }
+    else if (bytes == 1) {
+      for (int ch=0; ch<c; ch++) {
+        int s = ch * plane;
+        for (int i=0, d=ch; i<count; i++, d+=c) {
+          dest[d] = src[s++];
+        }
+      }
+    }
+    else {
+      int step = c * bytes;
+      for (int ch=0; ch<c; ch++) {
+        int s = ch * plane;
+        for (int i=0, d=ch * bytes; i<count; i++, d+=step) {
+          System.arraycopy(src, s, dest, d, bytes);
+          s += bytes;
+        }
+      }
+    }
+  }
+
   /**
    * Pads (or crops) the byte array to the given width and height.
    * The image will be centered within the new bounds.
@@ -552,9 +692,11 @@ public final class ImageTools {
   public static byte[][] indexedToRGB(byte[][] lut, byte[] b) {
     byte[][] rtn = new byte[lut.length][b.length];
 
-    for (int i=0; i<b.length; i++) {
-      for (int j=0; j<lut.length; j++) {
-        rtn[j][i] = lut[j][b[i] & 0xff];
+    for (int j=0; j<lut.length; j++) {
+      byte[] table = lut[j];
+      byte[] channel = rtn[j];
+      for (int i=0; i<b.length; i++) {
+        channel[i] = table[b[i] & 0xff];
       }
     }
     return rtn;
@@ -562,16 +704,205 @@ public final class ImageTools {
 
   /** Converts a LUT and an array of indices into an array of RGB tuples. */
   public static short[][] indexedToRGB(short[][] lut, byte[] b, boolean le) {
-    short[][] rtn = new short[lut.length][b.length / 2];
-    for (int i=0; i<b.length/2; i++) {
-      for (int j=0; j<lut.length; j++) {
-        int index = DataTools.bytesToInt(b, i*2, 2, le);
-        rtn[j][i] = lut[j][index];
+    int n = b.length / 2;
+    short[][] rtn = new short[lut.length][n];
+    int lo = le ? 0 : 1;
+    int hi = le ? 1 : 0;
+    for (int j=0; j<lut.length; j++) {
+      short[] table = lut[j];
+      short[] channel = rtn[j];
+      for (int i=0, s=0; i<n; i++, s+=2) {
+        channel[i] = table[(b[s + lo] & 0xff) | ((b[s + hi] & 0xff) << 8)];
       }
     }
     return rtn;
   }
 
+  /**
+   * Replaces each 8-bit index in 'indices' with the corresponding
+   * LUT entries, storing the result directly in 'dest'.
+   *
+   * @param lut the lookup table, indexed by channel and then by value
+   * @param indices the pixel values
+   * @param dest the array in which to store lut.length * indices.length
+   *   bytes of color data
+   * @param interleaved true if the channels should be interleaved in 'dest'
+   */
+  public static void applyLookupTable(byte[][] lut, byte[] indices,
+    byte[] dest, boolean interleaved)
+  {
+    int n = indices.length;
+    int c = lut.length;
+    if (interleaved && c == 3) {
+      byte[] r = lut[0], g = lut[1], b = lut[2];
+      int d = 0;
+      for (int i=0; i<n; i++) {
+        int index = indices[i] & 0xff;
+        dest[d++] = r[index];
+        dest[d++] = g[index];
+        dest[d++] = b[index];
+      }
+    }
+    else if (interleaved) {
+      for (int j=0; j<c; j++) {
+        byte[] table = lut[j];
+        for (int i=0, d=j; i<n; i++, d+=c) {
+          dest[d] = table[indices[i] & 0xff];
+        }
+      }
+    }
+    else {
+      for (int j=0; j<c; j++) {
+        byte[] table = lut[j];
+        int d = j * n;
+        for (int i=0; i<n; i++) {
+          dest[d++] = table[indices[i] & 0xff];
+        }
+      }
+    }
+  }
+
+  /**
+   * Replaces each 16-bit index in 'indices' with the corresponding
+   * LUT entries, storing the result directly in 'dest'.
+   *
+   * @param lut the lookup table, indexed by channel and then by value
+   * @param indices the pixel values, 2 bytes per pixel
+   * @param dest the array in which to store lut.length * indices.length
+   *   bytes of color data
+   * @param interleaved true if the channels should be interleaved in 'dest'
+   * @param le true if 'indices' and 'dest' are little-endian
+   */
+  public static void applyLookupTable(short[][] lut, byte[] indices,
+    byte[] dest, boolean interleaved, boolean le)
+  {
+    int n = indices.length / 2;
+    int c = lut.length;
+    int step = interleaved ? c * 2 : 2;
+    int lo = le ? 0 : 1;
+    int hi = le ? 1 : 0;
+    for (int j=0; j<c; j++) {
+      short[] table = lut[j];
+      int d = interleaved ? j * 2 : j * n * 2;
+      for (int i=0, s=0; i<n; i++, s+=2, d+=step) {
+        int index = (indices[s + lo] & 0xff) | ((indices[s + hi] & 0xff) << 8);
+        short v = table[index];
+        dest[d + lo] = (byte) (v & 0xff);
+        dest[d + hi] = (byte) (v >> 8);
+      }
+    }
+  }
+
+  /**
+   * Reverses the byte order of each sample in place.
+   *
+   * @param buf the samples
+   * @param offset the index of the first byte of the first sample
+   * @param length the number of bytes to swap; any trailing partial
+   *   sample is left unchanged
+   * @param bytes the number of bytes per sample
+   */
+  public static void swapBytes(byte[] buf, int offset, int length,
+    int bytes)
+  {
+    int end = offset + (length / bytes) * bytes;
+    if (bytes == 2) {
+      for (int i=offset; i<end; i+=2) {
+        byte b0 = buf[i];
+        buf[i] = buf[i + 1];
+        buf[i + 1] = b0;
+      }
+    }
+    else if (bytes == 4) {
+      for (int i=offset; i<end; i+=4) {
+        byte b0 = buf[i];
+        byte b1 = buf[i + 1];
+        buf[i] = buf[i + 3];
+        buf[i + 1] = buf[i + 2];
+        buf[i + 2] = b1;
+        buf[i + 3] = b0;
+      }
+    }
+    else if (bytes > 1) {
+      for (int i=offset; i<end; i+=bytes) {
+        for (int lo=i, hi=i + bytes - 1; lo<hi; lo++, hi--) {
+          byte b = buf[lo];
+          buf[lo] = buf[hi];
+          buf[hi] = b;
+        }
+      }
+    }
+  }
+
+  /**
+   * Unpacks samples that are stored as consecutive fields of 'bits' bits,
+   * most significant bit first, into samples of 'bytes' bytes each.
+   * Samples that extend past the end of 'src' are unpacked as 0.
+   *
+   * @param src the packed samples
+   * @param bitOffset the index of the first bit to read from 'src'
+   * @param bits the number of bits per packed sample, from 1 to 32
+   * @param invert true if each sample should be subtracted from the
+   *   maximum value for the bit depth (e.g. for WhiteIsZero data)
+   * @param dest the array in which to store the unpacked samples
+   * @param destOffset the index at which to store the first sample
+   * @param bytes the number of bytes per unpacked sample
+   * @param le true if the unpacked samples should be little-endian
+   * @param count the number of samples to unpack
+   * @return the index of the bit following the last sample read
+   */
+  public static long unpackBits(byte[] src, long bitOffset, int bits,
+    boolean invert, byte[] dest, int destOffset, int bytes, boolean le,
+    int count)
+  {
+    long max = (1L << bits) - 1;
+    long limit = (long) src.length * 8;
+    long pos = bitOffset;
+    int d = destOffset;
+
+    if (bits == 1 && bytes == 1) {
+      int mask = invert ? 1 : 0;
+      for (int i=0; i<count; i++, pos++) {
+        int value = 0;
+        if (pos < limit) {
+          value = (src[(int) (pos >>> 3)] >> (7 - (int) (pos & 7))) & 1;
+        }
+        dest[d++] = (byte) (value ^ mask);
+      }
+      return pos;
+    }
+
+    for (int i=0; i<count; i++, pos+=bits) {
+      long value = 0;
+      if (pos + bits <= limit) {
+        int index = (int) (pos >>> 3);
+        int need = bits + (int) (pos & 7);
+        int n = (need + 7) >>> 3;
+        long acc = 0;
+        for (int k=0; k<n; k++) {
+          acc = (acc << 8) | (src[index + k] & 0xff);
+        }
+        value = (acc >>> (n * 8 - need)) & max;
+      }
+      if (invert) {
+        value = max - value;
+      }
+
+      if (bytes == 1) {
+        dest[d] = (byte) value;
+      }
+      else if (bytes == 2) {
+        dest[d + (le ? 0 : 1)] = (byte) value;
+        dest[d + (le ? 1 : 0)] = (byte) (value >> 8);
+      }
+      else {
+        DataTools.unpackBytes(value, dest, d, bytes, le);
+      }
+      d += bytes;
+    }
+    return pos;
+  }
+
   public static byte[] interpolate(short[] s, byte[] buf, int[] bayerPattern,
     int width, int height, boolean littleEndian)
   {
@@ -50,6 +50,7 @@ import loci.formats.meta.MetadataRetrieve;
 import loci.formats.meta.MetadataStore;
 import loci.formats.services.OMEXMLService;
 import loci.formats.services.OMEXMLServiceImpl;
+import loci.formats.tiff.LazyIFDList;
 
 import org.perf4j.StopWatch;
 import org.perf4j.slf4j.Slf4JStopWatch;
@@ -58,6 +59,7 @@ import org.slf4j.LoggerFactory;
 
 import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.Serializer;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
 import com.esotericsoftware.kryo.util.DefaultInstantiatorStrategy;
@@ -117,6 +119,32 @@ public class Memoizer extends ReaderWrapper {
     void close();
   }
 
+  /**
+   * Kryo serializer for {@link LazyIFDList} that writes only the IFD offsets
+   * and cache size.  The parser must be set again after deserialization,
+   * which is normally done by the reader's reopenFile() implementation.
+   */
+  static class LazyIFDListSerializer extends Serializer<LazyIFDList> {
+
+    @Override
+    public void write(Kryo kryo, Output output, LazyIFDList list) {
+      long[] offsets = list.getOffsets();
+      output.writeInt(list.getCacheSize(), true);
+      output.writeInt(offsets.length, true);
+      output.writeLongs(offsets, 0, offsets.length, true);
+    }
+
+    @Override
+    public LazyIFDList read(Kryo kryo, Input input,
+      Class<? extends LazyIFDList> type)
+    {
+      int cacheSize = input.readInt(true);
+      int count = input.readInt(true);
+      long[] offsets = input.readLongs(count, true);
+      return new LazyIFDList(null, offsets, cacheSize);
+    }
+  }
+
   public static class KryoDeser implements Deser {
 
     final public Kryo kryo = new Kryo();
@@ -128,6 +156,9 @@ public class Memoizer extends ReaderWrapper {
       // see https://github.com/EsotericSoftware/kryo/wiki/Migration-to-v5#configuration-changes
       kryo.setRegistrationRequired(false);
       kryo.setReferences(true);
+
+      // store only the IFD offsets, so that IFDs are parsed lazily on reopen
+      kryo.addDefaultSerializer(LazyIFDList.class, new LazyIFDListSerializer());
     }
 
     FileInputStream fis;
@@ -683,8 +714,31 @@ public class Memoizer extends ReaderWrapper {
 
   // -- ReaderWrapper API methods --
 
+  /**
+   * Constructs a memoizer around the given reader that uses the same memo
+   * file location and settings as this one.
+   */
+  @Override
+  protected ReaderWrapper duplicateWrapper(IFormatReader r) {
+    Memoizer copy = new Memoizer(r, minimumElapsed, directory);
+    copy.doInPlaceCaching = doInPlaceCaching;
+    copy.versionChecking = versionChecking;
+    copy.skipLoad = skipLoad;
+    copy.skipSave = skipSave;
+    return copy;
+  }
+
   @Override
   public void setId(String id) throws FormatException, IOException {
+    String currentId = reader.getCurrentFile();
+    if (currentId != null && new Location(id).getAbsolutePath().equals(
+      new Location(currentId).getAbsolutePath()))
+    {
+      // already initialized this file; reloading the memo would replace
+      // the open reader and refill the metadata store
+      return;
+    }
+
     StopWatch sw = stopWatch();
     try {
       realFile = new Location(id);
@@ -700,6 +754,9 @@ public class Memoizer extends ReaderWrapper {
       }
 
       IFormatReader memo = loadMemo(); // Should never throw kryo exceptions
+      if (Instrumentation.isEnabled()) {
+        Instrumentation.cacheAccessed("Memoizer", memo != null);
+      }
 
       loadedFromMemo = false;
       savedToMemo = false;
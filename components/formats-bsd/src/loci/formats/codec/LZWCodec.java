@@ -77,7 +77,212 @@ import loci.formats.FormatException;
  * @author Mikhail Kovtun mikhail.kovtun at duke.edu
  */
 public class LZWCodec extends WrappedCodec {
+
+  // LZW compression codes
+  private static final int CLEAR_CODE = 256;
+  private static final int EOI_CODE = 257;
+  private static final int FIRST_CODE = 258;
+  private static final int MAX_CODES = 4096;
+
   public LZWCodec() {
     super(new ome.codecs.LZWCodec());
   }
+
+  /**
+   * Creates a decoder that decompresses the given range of LZW data
+   * incrementally, so that decoding can stop once enough bytes have
+   * been produced.
+   * @param in the stream containing the compressed data
+   * @param offset the offset to the first compressed byte
+   * @param length the number of compressed bytes
+   */
+  public StreamingDecoder getStreamingDecoder(RandomAccessInputStream in,
+    long offset, long length)
+  {
+    return new Decoder(in, offset, length);
+  }
+
+  // -- Helper classes --
+
+  /**
+   * Incremental TIFF LZW decoder.  The output produced since the last
+   * <code>CLEAR</code> code is kept in a history buffer, and each table entry
+   * refers to a range of that buffer, so that the decoder does not need
+   * access to the caller's earlier output and can discard skipped bytes.
+   */
+  private static class Decoder extends StreamingDecoder {
+
+    private final int[] offset = new int[MAX_CODES];
+    private final int[] length = new int[MAX_CODES];
+
+    private int nextCode = FIRST_CODE;
+    private int codeLength = 9;
+    private int oldCode = -1;
+    private int oldOffset;
+
+    private byte[] history = new byte[8192];
+    private int historyLength;
+
+    private byte[] input;
+    private int inputLength;
+    private int inputIndex;
+    private int bitBuffer;
+    private int bitCount;
+
+    /** Decoded bytes that have not yet been returned. */
+    private byte[] pending;
+    private int pendingIndex;
+    private int pendingEnd;
+    private final byte[] literal = new byte[1];
+
+    private boolean finished;
+
+    Decoder(RandomAccessInputStream in, long offset, long length) {
+      super(in, offset, length);
+      Arrays.fill(this.length, 0, 256, 1);
+    }
+
+    @Override
+    protected int decode(byte[] buf, int off, int len) throws IOException {
+      int total = 0;
+      while (total < len) {
+        if (pendingIndex < pendingEnd) {
+          int n = Math.min(len - total, pendingEnd - pendingIndex);
+          System.arraycopy(pending, pendingIndex, buf, off + total, n);
+          pendingIndex += n;
+          total += n;
+          continue;
+        }
+        if (finished || !nextString()) {
+          finished = true;
+          break;
+        }
+      }
+      return total == 0 && finished ? -1 : total;
+    }
+
+    /**
+     * Decodes the next code and sets the pending bytes to its string.
+     * @return false if the end of the data was reached
+     */
+    private boolean nextString() throws IOException {
+      int code = nextCode();
+      if (code == CLEAR_CODE) {
+        nextCode = FIRST_CODE;
+        codeLength = 9;
+        oldCode = -1;
+        historyLength = 0;
+        code = nextCode();
+        if (code == CLEAR_CODE) {
+          return true;
+        }
+      }
+      if (code < 0 || code == EOI_CODE) {
+        return false;
+      }
+
+      if (nextCode >= MAX_CODES) {
+        // the table is full, so no entries will be added until the next
+        // CLEAR code and the output does not need to be kept
+        if (code >= nextCode) {
+          return false;
+        }
+        if (code < 256) {
+          literal[0] = (byte) code;
+          setPending(literal, 0, 1);
+        }
+        else {
+          setPending(history, offset[code], length[code]);
+        }
+        return true;
+      }
+
+      int start = historyLength;
+      if (code < nextCode) {
+        append(code);
+        if (oldCode >= 0) {
+          // the previous string followed by the first byte of this one
+          addCode(oldOffset, length[oldCode] + 1);
+        }
+      }
+      else if (code == nextCode && oldCode >= 0) {
+        append(oldCode);
+        ensureCapacity(1);
+        history[historyLength++] = history[start];
+        addCode(start, length[oldCode] + 1);
+      }
+      else {
+        // invalid code; treat as the end of the data
+        return false;
+      }
+      setPending(history, start, historyLength - start);
+      oldCode = code;
+      oldOffset = start;
+      return true;
+    }
+
+    /** Appends the string for the given code to the history buffer. */
+    private void append(int code) {
+      int len = length[code];
+      ensureCapacity(len);
+      if (code < 256) {
+        history[historyLength] = (byte) code;
+      }
+      else {
+        System.arraycopy(history, offset[code], history, historyLength, len);
+      }
+      historyLength += len;
+    }
+
+    private void ensureCapacity(int len) {
+      if (historyLength + len > history.length) {
+        history = Arrays.copyOf(history,
+          Math.max(history.length * 2, historyLength + len));
+      }
+    }
+
+    private void addCode(int start, int len) {
+      offset[nextCode] = start;
+      length[nextCode] = len;
+      nextCode++;
+      if (nextCode == 511) {
+        codeLength = 10;
+      }
+      else if (nextCode == 1023) {
+        codeLength = 11;
+      }
+      else if (nextCode == 2047) {
+        codeLength = 12;
+      }
+    }
+
+    private void setPending(byte[] source, int start, int len) {
+      pending = source;
+      pendingIndex = start;
+      pendingEnd = start + len;
+    }
+
+    /** @return the next code, or -1 if the input is exhausted */
+    private int nextCode() throws IOException {
+      while (bitCount < codeLength) {
+        if (inputIndex >= inputLength) {
+          if (input == null) {
+            input = createInputBuffer();
+          }
+          inputLength = readInput(input);
+          inputIndex = 0;
+          if (inputLength <= 0) {
+            inputLength = 0;
+            return -1;
+          }
+        }
+        bitBuffer = (bitBuffer << 8) | (input[inputIndex++] & 0xff);
+        bitCount += 8;
+      }
+      bitCount -= codeLength;
+      return (bitBuffer >>> bitCount) & ((1 << codeLength) - 1);
+    }
+
+  }
+
 }
@@ -0,0 +1,195 @@
+/*
+ * #%L
+ * BSD implementations of Bio-Formats readers and writers
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import loci.common.RandomAccessInputStream;
+import loci.formats.Instrumentation;
+
+/**
+ * Decompresses a single block of compressed data on demand.  Only as much
+ * of the compressed input is decoded as is needed to satisfy each read,
+ * so callers that need only the start of a large strip can stop early.
+ * The decoder keeps its state between reads, so that a later read of the
+ * same block can resume where the previous one stopped instead of
+ * decoding from the beginning again.
+ * <p>
+ * The compressed data is read from a shared stream; the stream is
+ * repositioned before each read, so other users of the stream may seek
+ * freely between calls.
+ */
+public abstract class StreamingDecoder extends InputStream {
+
+  // -- Constants --
+
+  /** Number of compressed bytes to read from the source at once. */
+  private static final int INPUT_BUFFER_SIZE = 65536;
+
+  // -- Fields --
+
+  /** Stream from which compressed data is read. */
+  private final RandomAccessInputStream in;
+
+  /** Offset of the next compressed byte to read. */
+  private long inputPosition;
+
+  /** Offset of the end of the compressed data. */
+  private final long inputEnd;
+
+  /** Number of decompressed bytes returned so far. */
+  private long position;
+
+  private final byte[] singleByte = new byte[1];
+
+  // -- Constructor --
+
+  /**
+   * Constructs a decoder for the given range of compressed data.
+   * @param in the stream containing the compressed data
+   * @param offset the offset to the first compressed byte
+   * @param length the number of compressed bytes
+   */
+  protected StreamingDecoder(RandomAccessInputStream in, long offset,
+    long length)
+  {
+    this.in = in;
+    this.inputPosition = offset;
+    this.inputEnd = offset + length;
+  }
+
+  // -- StreamingDecoder API methods --
+
+  /**
+   * @return the number of decompressed bytes that have been read or
+   *   skipped so far
+   */
+  public long getPosition() {
+    return position;
+  }
+
+  /**
+   * Reads decompressed bytes until the buffer is full or the compressed
+   * data ends.
+   * @return the number of bytes read, which is less than <code>len</code>
+   *   only if the end of the data was reached
+   */
+  public int readFully(byte[] buf, int off, int len) throws IOException {
+    int total = 0;
+    while (total < len) {
+      int n = read(buf, off + total, len - total);
+      if (n < 0) {
+        break;
+      }
+      total += n;
+    }
+    return total;
+  }
+
+  // -- InputStream API methods --
+
+  @Override
+  public int read() throws IOException {
+    int n = read(singleByte, 0, 1);
+    return n < 0 ? -1 : singleByte[0] & 0xff;
+  }
+
+  @Override
+  public int read(byte[] buf, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    long start = Instrumentation.isEnabled() ? System.nanoTime() : -1;
+    long inputStart = inputPosition;
+    int n = decode(buf, off, len);
+    if (n > 0) {
+      position += n;
+    }
+    if (start >= 0) {
+      Class<?> codec = getClass().getEnclosingClass();
+      Instrumentation.decompressed(
+        codec == null ? getClass().getSimpleName() : codec.getSimpleName(),
+        inputPosition - inputStart, Math.max(n, 0), System.nanoTime() - start);
+    }
+    return n;
+  }
+
+  @Override
+  public long skip(long n) throws IOException {
+    byte[] discard = new byte[(int) Math.min(n, INPUT_BUFFER_SIZE)];
+    long skipped = 0;
+    while (skipped < n) {
+      int len = read(discard, 0, (int) Math.min(n - skipped, discard.length));
+      if (len < 0) {
+        break;
+      }
+      skipped += len;
+    }
+    return skipped;
+  }
+
+  // -- Internal StreamingDecoder API methods --
+
+  /**
+   * Decompresses up to <code>len</code> bytes into the given buffer.
+   * @return the number of bytes decompressed, or -1 if the end of the
+   *   data has been reached
+   */
+  protected abstract int decode(byte[] buf, int off, int len)
+    throws IOException;
+
+  /**
+   * Reads the next chunk of compressed data into the given buffer.
+   * @return the number of compressed bytes read, or -1 if all of the
+   *   compressed data has already been read
+   */
+  protected int readInput(byte[] chunk) throws IOException {
+    long remaining = Math.min(inputEnd, in.length()) - inputPosition;
+    if (remaining <= 0) {
+      return -1;
+    }
+    int len = (int) Math.min(remaining, chunk.length);
+    in.seek(inputPosition);
+    in.readFully(chunk, 0, len);
+    inputPosition += len;
+    return len;
+  }
+
+  /** @return a new buffer for use with {@link #readInput(byte[])} */
+  protected byte[] createInputBuffer() {
+    long length = Math.max(inputEnd - inputPosition, 1);
+    return new byte[(int) Math.min(length, INPUT_BUFFER_SIZE)];
+  }
+
+}
@@ -36,6 +36,7 @@ import java.io.IOException;
 
 import loci.common.RandomAccessInputStream;
 import loci.formats.FormatException;
+import loci.formats.Instrumentation;
 
 /**
  * Generic wrapper for codecs from ome-codecs.  Individual wrapper
@@ -82,8 +83,10 @@ class WrappedCodec extends BaseCodec {
   /* @see Codec#decompress(byte[], CodecOptions) */
   public byte[] decompress(byte[] data, CodecOptions options) throws FormatException
   {
+    long start = startTimer();
     try {
-      return codec.decompress(data, getOptions(options));
+      return stopTimer(start, data == null ? 0 : data.length,
+        codec.decompress(data, getOptions(options)));
     }
     catch (ome.codecs.CodecException e) {
       throw unwrapCodecException(e);
@@ -93,8 +96,10 @@ class WrappedCodec extends BaseCodec {
   /* @see Codec#decompress(byte[][], CodecOptions) */
   public byte[] decompress(byte[][] data, CodecOptions options) throws FormatException
   {
+    long start = startTimer();
     try {
-      return codec.decompress(data, getOptions(options));
+      return stopTimer(start, getLength(data),
+        codec.decompress(data, getOptions(options)));
     }
     catch (ome.codecs.CodecException e) {
       throw unwrapCodecException(e);
@@ -104,8 +109,10 @@ class WrappedCodec extends BaseCodec {
   /* @see Codec#decompress(byte[]) */
   public byte[] decompress(byte[] data) throws FormatException
   {
+    long start = startTimer();
     try {
-      return codec.decompress(data);
+      return stopTimer(start, data == null ? 0 : data.length,
+        codec.decompress(data));
     }
     catch (ome.codecs.CodecException e) {
       throw unwrapCodecException(e);
@@ -115,8 +122,9 @@ class WrappedCodec extends BaseCodec {
   /* @see Codec#decompress(byte[][]) */
   public byte[] decompress(byte[][] data) throws FormatException
   {
+    long start = startTimer();
     try {
-      return codec.decompress(data);
+      return stopTimer(start, getLength(data), codec.decompress(data));
     }
     catch (ome.codecs.CodecException e) {
       throw unwrapCodecException(e);
@@ -128,14 +136,46 @@ class WrappedCodec extends BaseCodec {
   public byte[] decompress(RandomAccessInputStream in, CodecOptions options)
     throws FormatException, IOException
   {
+    long start = startTimer();
+    long offset = start >= 0 ? in.getFilePointer() : 0;
     try {
-      return codec.decompress(in, getOptions(options));
+      byte[] b = codec.decompress(in, getOptions(options));
+      return stopTimer(start, start >= 0 ? in.getFilePointer() - offset : -1, b);
     }
     catch (ome.codecs.CodecException e) {
       throw unwrapCodecException(e);
     }
   }
 
+  /** Returns the start time of a decompression, if instrumented. */
+  private static long startTimer() {
+    return Instrumentation.isEnabled() ? System.nanoTime() : -1;
+  }
+
+  /**
+   * Reports a decompression started at the given time, and returns
+   * the decompressed data.
+   */
+  private byte[] stopTimer(long start, long compressedBytes, byte[] result) {
+    if (start >= 0) {
+      Instrumentation.decompressed(getClass().getSimpleName(),
+        compressedBytes, result == null ? 0 : result.length,
+        System.nanoTime() - start);
+    }
+    return result;
+  }
+
+  private static long getLength(byte[][] data) {
+    long length = 0;
+    if (data == null) {
+      return length;
+    }
+    for (byte[] b : data) {
+      length += b == null ? 0 : b.length;
+    }
+    return length;
+  }
+
   private static void copyOptions(CodecOptions src, ome.codecs.CodecOptions dest)
     throws FormatException
   {
@@ -34,7 +34,9 @@ package loci.formats.codec;
 
 import java.io.EOFException;
 import java.io.IOException;
+import java.util.zip.DataFormatException;
 import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 import java.util.zip.InflaterInputStream;
 
 import loci.common.RandomAccessInputStream;
@@ -49,4 +51,68 @@ public class ZlibCodec extends WrappedCodec {
   public ZlibCodec() {
     super(new ome.codecs.ZlibCodec());
   }
+
+  /**
+   * Creates a decoder that decompresses the given range of zlib data
+   * incrementally, so that decoding can stop once enough bytes have
+   * been produced.
+   * @param in the stream containing the compressed data
+   * @param offset the offset to the first compressed byte
+   * @param length the number of compressed bytes
+   */
+  public StreamingDecoder getStreamingDecoder(RandomAccessInputStream in,
+    long offset, long length)
+  {
+    return new Decoder(in, offset, length);
+  }
+
+  // -- Helper classes --
+
+  private static class Decoder extends StreamingDecoder {
+
+    private final Inflater inflater = new Inflater();
+    private byte[] input;
+
+    Decoder(RandomAccessInputStream in, long offset, long length) {
+      super(in, offset, length);
+    }
+
+    @Override
+    protected int decode(byte[] buf, int off, int len) throws IOException {
+      try {
+        while (true) {
+          if (inflater.finished()) {
+            return -1;
+          }
+          if (inflater.needsInput()) {
+            if (input == null) {
+              input = createInputBuffer();
+            }
+            int n = readInput(input);
+            if (n < 0) {
+              return -1;
+            }
+            inflater.setInput(input, 0, n);
+          }
+          int n = inflater.inflate(buf, off, len);
+          if (n > 0) {
+            return n;
+          }
+          if (inflater.needsDictionary()) {
+            throw new IOException("Preset zlib dictionaries are not supported");
+          }
+        }
+      }
+      catch (DataFormatException e) {
+        throw new IOException(e);
+      }
+    }
+
+    @Override
+    public void close() {
+      inflater.end();
+    }
+
+  }
+
 }
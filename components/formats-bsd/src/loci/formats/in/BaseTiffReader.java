@@ -47,6 +47,7 @@ import loci.formats.MetadataTools;
 import loci.formats.meta.MetadataStore;
 import loci.formats.tiff.IFD;
 import loci.formats.tiff.IFDList;
+import loci.formats.tiff.LazyIFDList;
 import loci.formats.tiff.PhotoInterp;
 import loci.formats.tiff.TiffCompression;
 import loci.formats.tiff.TiffRational;
@@ -111,7 +112,9 @@ public abstract class BaseTiffReader extends MinimalTiffReader {
       return;
     }
 
-    for (int i=0; i<ifds.size(); i++) {
+    // don't parse every IFD just to find the page names
+    int pages = ifds instanceof LazyIFDList ? 1 : ifds.size();
+    for (int i=0; i<pages; i++) {
       put("PageName #" + i, ifds.get(i), IFD.PAGE_NAME);
     }
 
@@ -123,9 +126,8 @@ public abstract class BaseTiffReader extends MinimalTiffReader {
     // retrieve EXIF values, if available
 
     if (ifds.get(0).containsKey(IFD.EXIF)) {
-      IFDList exifIFDs = tiffParser.getExifIFDs();
-      if (exifIFDs.size() > 0) {
-        IFD exif = exifIFDs.get(0);
+      IFD exif = getFirstExifIFD();
+      if (exif != null) {
         tiffParser.fillInIFD(exif);
         for (Integer key : exif.keySet()) {
           int k = key.intValue();
@@ -403,6 +405,7 @@ public abstract class BaseTiffReader extends MinimalTiffReader {
    */
   protected void initMetadataStore() throws FormatException {
     LOGGER.info("Populating OME metadata");
+    startPhase("Populating OME metadata");
 
     // the metadata store we're working with
     MetadataStore store = makeFilterMetadata();
@@ -412,10 +415,7 @@ public abstract class BaseTiffReader extends MinimalTiffReader {
 
     if (ifds.get(0).containsKey(IFD.EXIF)) {
       try {
-        IFDList exifIFDs = tiffParser.getExifIFDs();
-        if (exifIFDs.size() > 0) {
-          exif = exifIFDs.get(0);
-        }
+        exif = getFirstExifIFD();
         tiffParser.fillInIFD(exif);
       }
       catch (IOException e) {
@@ -616,4 +616,16 @@ public abstract class BaseTiffReader extends MinimalTiffReader {
     return IFD.getIFDTagName(tag);
   }
 
+  /** Returns the first EXIF IFD in the file, or null if there is none. */
+  private IFD getFirstExifIFD() throws FormatException, IOException {
+    if (ifds instanceof LazyIFDList) {
+      // the first IFD is also the first in the chain, so this avoids
+      // parsing every IFD in order to find it
+      long offset = ifds.get(0).getIFDLongValue(IFD.EXIF, 0);
+      return offset == 0 ? null : tiffParser.getIFD(offset);
+    }
+    IFDList exifIFDs = tiffParser.getExifIFDs();
+    return exifIFDs.size() > 0 ? exifIFDs.get(0) : null;
+  }
+
 }
@@ -98,6 +98,8 @@ import ome.units.UNITS;
  *  <li>showinf 'Plate&amp;screens=0&amp;plates=1&amp;plateRows=3&amp;plateCols=3&amp;fields=8&amp;plateAcqs=5.fake'</li>
  *  <li>showinf 'regions&amp;points=10&amp;ellipses=5&amp;rectangles=10.fake'</li>
  *  <li>showinf 'pyramid&amp;sizeX=10000&amp;sizeY=10000&amp;resolutions=5&amp;resolutionScale=2.fake' -noflat -resolution 4</li>
+ *  <li>showinf 'tiled&amp;sizeX=8192&amp;sizeY=8192&amp;tileSizeX=512&amp;tileSizeY=512.fake' -benchmark</li>
+ *  <li>mkfake tiled.ome.tiff -image 'tiled&amp;sizeX=8192&amp;sizeY=8192&amp;tileSizeX=512&amp;tileSizeY=512&amp;compression=LZW.fake'</li>
  * </ul></p>
  */
 public class FakeReader extends FormatReader {
@@ -182,6 +184,15 @@ public class FakeReader extends FormatReader {
   private int rectangles = 0;
   private int roiCount = 0;
 
+  /** Optimal tile size, or 0 to use the default tile size. */
+  private int tileSizeX = 0, tileSizeY = 0;
+
+  /**
+   * Compression type to use when the data is written to disk,
+   * e.g. by the mkfake command line tool.
+   */
+  private String compression = null;
+
   /** Scale factor for gradient, if any. */
   private double scaleFactor = 1;
 
@@ -417,6 +428,22 @@ public class FakeReader extends FormatReader {
 
   // -- Internal FormatReader API methods --
 
+  /* @see loci.formats.IFormatReader#getOptimalTileWidth() */
+  @Override
+  public int getOptimalTileWidth() {
+    FormatTools.assertId(currentId, true, 1);
+    if (tileSizeX > 0) return Math.min(tileSizeX, getSizeX());
+    return super.getOptimalTileWidth();
+  }
+
+  /* @see loci.formats.IFormatReader#getOptimalTileHeight() */
+  @Override
+  public int getOptimalTileHeight() {
+    FormatTools.assertId(currentId, true, 1);
+    if (tileSizeY > 0) return Math.min(tileSizeY, getSizeY());
+    return super.getOptimalTileHeight();
+  }
+
   @Override
   public boolean isSingleFile(String id) throws FormatException, IOException {
     if (new Location(id).isDirectory() && checkSuffix(id, "fake")) {
@@ -501,6 +528,9 @@ public class FakeReader extends FormatReader {
     rectangles = 0;
     roiCount = 0;
     scaleFactor = 1;
+    tileSizeX = 0;
+    tileSizeY = 0;
+    compression = null;
     lut8 = null;
     lut16 = null;
     screens = 0;
@@ -512,6 +542,15 @@ public class FakeReader extends FormatReader {
     super.close(fileOnly);
   }
 
+  /**
+   * Returns the compression type given by the "compression" key,
+   * or null if the key was not set.
+   */
+  public String getCompression() {
+    FormatTools.assertId(currentId, true, 1);
+    return compression;
+  }
+
   public OMEXMLMetadata getOmeXmlMetadata() {
     if (omeXmlMetadata == null) {
       try {
@@ -689,6 +728,9 @@ public class FakeReader extends FormatReader {
       else if (key.equals("sizeT")) sizeT = intValue;
       else if (key.equals("thumbSizeX")) thumbSizeX = intValue;
       else if (key.equals("thumbSizeY")) thumbSizeY = intValue;
+      else if (key.equals("tileSizeX")) tileSizeX = intValue;
+      else if (key.equals("tileSizeY")) tileSizeY = intValue;
+      else if (key.equals("compression")) compression = value;
       else if (key.equals("pixelType")) {
         pixelType = FormatTools.pixelTypeFromString(value);
       }
@@ -774,6 +816,12 @@ public class FakeReader extends FormatReader {
     if (thumbSizeY < 0) {
       throw new FormatException("Invalid thumbSizeY: " + thumbSizeY);
     }
+    if (tileSizeX < 0) {
+      throw new FormatException("Invalid tileSizeX: " + tileSizeX);
+    }
+    if (tileSizeY < 0) {
+      throw new FormatException("Invalid tileSizeY: " + tileSizeY);
+    }
     if (rgb < 1 || rgb > sizeC || sizeC % rgb != 0) {
       throw new FormatException("Invalid sizeC/rgb combination: " +
         sizeC + "/" + rgb);
@@ -39,6 +39,7 @@ import java.util.List;
 import loci.formats.CoreMetadata;
 import loci.formats.FormatException;
 import loci.formats.FormatTools;
+import loci.formats.Instrumentation;
 import loci.formats.MetadataTools;
 import loci.formats.SubResolutionFormatReader;
 import org.slf4j.Logger;
@@ -46,10 +47,13 @@ import org.slf4j.LoggerFactory;
 
 import loci.common.DataTools;
 import loci.common.RandomAccessInputStream;
+import loci.formats.codec.Codec;
+import loci.formats.codec.CodecOptions;
 import loci.formats.codec.JPEG2000CodecOptions;
 import loci.formats.meta.MetadataStore;
 import loci.formats.tiff.IFD;
 import loci.formats.tiff.IFDList;
+import loci.formats.tiff.LazyIFDList;
 import loci.formats.tiff.PhotoInterp;
 import loci.formats.tiff.TiffCompression;
 import loci.formats.tiff.TiffParser;
@@ -68,6 +72,15 @@ public class MinimalTiffReader extends SubResolutionFormatReader {
   private static final Logger LOGGER =
     LoggerFactory.getLogger(MinimalTiffReader.class);
 
+  /**
+   * Whether or not IFDs should be parsed on demand instead of when the file
+   * is initialized.  This makes initialization of files with many pages
+   * much faster, but assumes that every page has the same dimensions and
+   * pixel type as the first page.
+   */
+  public static final String LAZY_IFDS_KEY = "tiff.lazy_ifds";
+  public static final boolean LAZY_IFDS_DEFAULT = false;
+
   // -- Fields --
 
   /** List of IFDs for the current TIFF. */
@@ -103,6 +116,21 @@ public class MinimalTiffReader extends SubResolutionFormatReader {
    */
   protected transient boolean canSeparateSeries = true;
 
+  /**
+   * Whether or not IFDs may be parsed on demand when
+   * {@link #LAZY_IFDS_KEY} is set.  Subclasses that inspect or modify
+   * every IFD during initialization should leave this unset.
+   */
+  protected transient boolean canParseIFDsLazily = false;
+
+  /**
+   * Whether or not tiles may be copied without decompression via
+   * {@link #openCompressedBytes(int, int, int)}.  Only readers whose planes
+   * are stored unmodified in the IFDs returned by
+   * {@link #getCompressedTileIFD(int)} should set this.
+   */
+  protected transient boolean canReadCompressedTiles = false;
+
   /** Number of JPEG 2000 resolution levels. */
   private Integer resolutionLevels;
 
@@ -114,6 +142,8 @@ public class MinimalTiffReader extends SubResolutionFormatReader {
   /** Constructs a new MinimalTiffReader. */
   public MinimalTiffReader() {
     this("Minimal TIFF", new String[] {"tif", "tiff", "tf2", "tf8", "btf"});
+    canParseIFDsLazily = true;
+    canReadCompressedTiles = true;
   }
 
   /** Constructs a new MinimalTiffReader. */
@@ -140,8 +170,34 @@ public class MinimalTiffReader extends SubResolutionFormatReader {
     return thumbnailIFDs;
   }
 
+  /**
+   * Returns whether or not IFDs will be parsed on demand.
+   * @see #LAZY_IFDS_KEY
+   */
+  public boolean useLazyIFDs() {
+    if (!canParseIFDsLazily) {
+      return false;
+    }
+    MetadataOptions options = getMetadataOptions();
+    if (options instanceof DynamicMetadataOptions) {
+      return ((DynamicMetadataOptions) options).getBoolean(
+        LAZY_IFDS_KEY, LAZY_IFDS_DEFAULT);
+    }
+    return LAZY_IFDS_DEFAULT;
+  }
+
   // -- IFormatReader API methods --
 
+  /* @see loci.formats.FormatReader#getAvailableOptions() */
+  @Override
+  protected ArrayList<String> getAvailableOptions() {
+    ArrayList<String> optionsList = super.getAvailableOptions();
+    if (canParseIFDsLazily) {
+      optionsList.add(LAZY_IFDS_KEY);
+    }
+    return optionsList;
+  }
+
   /* @see loci.formats.IFormatReader#isThisType(RandomAccessInputStream) */
   @Override
   public boolean isThisType(RandomAccessInputStream stream) throws IOException {
@@ -288,6 +344,10 @@ public class MinimalTiffReader extends SubResolutionFormatReader {
   {
     FormatTools.checkPlaneParameters(this, no, buf.length, x, y, w, h);
 
+    if (tiffParser == null) {
+      initTiffParser();
+    }
+
     IFD firstIFD = ifds.get(0);
     lastPlane = no;
     IFD ifd;
@@ -305,10 +365,6 @@ public class MinimalTiffReader extends SubResolutionFormatReader {
       setResolutionLevel(ifd);
     }
 
-    if (tiffParser == null) {
-      initTiffParser();
-    }
-
     tiffParser.getSamples(ifd, buf, x, y, w, h);
 
     boolean float16 = getPixelType() == FormatTools.FLOAT &&
@@ -374,7 +430,10 @@ public class MinimalTiffReader extends SubResolutionFormatReader {
     super.close(fileOnly);
     if (!fileOnly) {
       if (ifds != null) {
-        for (IFD ifd : ifds) {
+        // only IFDs that have actually been parsed need to be closed
+        List<IFD> openIFDs = ifds instanceof LazyIFDList ?
+          ((LazyIFDList) ifds).getCachedIFDs() : ifds;
+        for (IFD ifd : openIFDs) {
           try {
             if (ifd.getOnDemandStripOffsets() != null) {
               ifd.getOnDemandStripOffsets().close();
@@ -437,13 +496,92 @@ public class MinimalTiffReader extends SubResolutionFormatReader {
     return super.getOptimalTileHeight();
   }
 
+
+  // -- ICompressedTileReader API methods --
+
+  @Override
+  public int getTileRows(int no) {
+    FormatTools.assertId(currentId, true, 1);
+    try {
+      IFD ifd = getCompressedTileIFD(no);
+      if (ifd != null) {
+        return (int) ifd.getTilesPerColumn();
+      }
+    }
+    catch (FormatException e) {
+      LOGGER.debug("Could not get tile row count", e);
+    }
+    return super.getTileRows(no);
+  }
+
+  @Override
+  public int getTileColumns(int no) {
+    FormatTools.assertId(currentId, true, 1);
+    try {
+      IFD ifd = getCompressedTileIFD(no);
+      if (ifd != null) {
+        return (int) ifd.getTilesPerRow();
+      }
+    }
+    catch (FormatException e) {
+      LOGGER.debug("Could not get tile column count", e);
+    }
+    return super.getTileColumns(no);
+  }
+
+  @Override
+  public byte[] openCompressedBytes(int no, int x, int y)
+    throws FormatException, IOException
+  {
+    FormatTools.assertId(currentId, true, 1);
+    IFD ifd = getCompressedTileIFD(no);
+    if (ifd == null) {
+      return super.openCompressedBytes(no, x, y);
+    }
+    byte[] buf = new byte[(int) getCompressedByteCount(ifd, x, y)];
+    return copyTile(ifd, buf, x, y);
+  }
+
+  @Override
+  public byte[] openCompressedBytes(int no, byte[] buf, int x, int y)
+    throws FormatException, IOException
+  {
+    FormatTools.assertId(currentId, true, 1);
+    IFD ifd = getCompressedTileIFD(no);
+    if (ifd == null) {
+      return super.openCompressedBytes(no, buf, x, y);
+    }
+    return copyTile(ifd, buf, x, y);
+  }
+
+  @Override
+  public Codec getTileCodec(int no) throws FormatException, IOException {
+    FormatTools.assertId(currentId, true, 1);
+    IFD ifd = getCompressedTileIFD(no);
+    if (ifd == null) {
+      return super.getTileCodec(no);
+    }
+    return ifd.getCompression().getCodec();
+  }
+
+  @Override
+  public CodecOptions getTileCodecOptions(int no, int x, int y)
+    throws FormatException, IOException
+  {
+    FormatTools.assertId(currentId, true, 1);
+    IFD ifd = getCompressedTileIFD(no);
+    if (ifd == null) {
+      return super.getTileCodecOptions(no, x, y);
+    }
+    return TiffParser.getCompressedTileCodecOptions(ifd);
+  }
   // -- Internal FormatReader API methods --
 
   /* @see loci.formats.FormatReader#initFile(String) */
   @Override
   protected void initFile(String id) throws FormatException, IOException {
     super.initFile(id);
-    in = new RandomAccessInputStream(id, 16);
+    in = Instrumentation.openStream(getFormat(), id, 16);
     initTiffParser();
     Boolean littleEndian = tiffParser.checkHeader();
     if (littleEndian == null) {
@@ -453,16 +591,28 @@ public class MinimalTiffReader extends SubResolutionFormatReader {
     in.order(little);
 
     LOGGER.info("Reading IFDs");
+    startPhase("Reading IFDs");
 
     IFDList allIFDs = null;
-    if (!mergeSubIFDs) {
-      allIFDs = tiffParser.getMainIFDs();
+    boolean lazy = false;
+    if (useLazyIFDs() && !mergeSubIFDs) {
+      allIFDs = tiffParser.getLazyMainIFDs();
+      lazy = allIFDs.size() > 0 && isUniformPage(allIFDs.get(0));
+      if (!lazy) {
+        LOGGER.debug("First IFD cannot be used to describe all pages; " +
+          "parsing all IFDs");
+      }
     }
-    else {
-      allIFDs = new IFDList();
-      for (IFD ifd : tiffParser.getMainIFDs()) {
-        allIFDs.add(ifd);
-        allIFDs.addAll(tiffParser.getSubIFDs(ifd));
+    if (!lazy) {
+      if (!mergeSubIFDs) {
+        allIFDs = tiffParser.getMainIFDs();
+      }
+      else {
+        allIFDs = new IFDList();
+        for (IFD ifd : tiffParser.getMainIFDs()) {
+          allIFDs.add(ifd);
+          allIFDs.addAll(tiffParser.getSubIFDs(ifd));
+        }
       }
     }
 
@@ -470,7 +620,7 @@ public class MinimalTiffReader extends SubResolutionFormatReader {
       throw new FormatException("No IFDs found");
     }
 
-    ifds = new IFDList();
+    ifds = lazy ? allIFDs : new IFDList();
     thumbnailIFDs = new IFDList();
 
     Integer x = null;
@@ -479,33 +629,36 @@ public class MinimalTiffReader extends SubResolutionFormatReader {
     boolean separateSeries = false;
 
     subResolutionIFDs = new ArrayList<IFDList>();
-    for (IFD ifd : allIFDs) {
-      tiffParser.fillInIFD(ifd);
-      Number subfile = (Number) ifd.getIFDValue(IFD.NEW_SUBFILE_TYPE, Number.class);
-      int subfileType = subfile == null ? 0 : subfile.intValue();
-      if (subfileType != 1 || allIFDs.size() <= 1) {
-        ifds.add(ifd);
-
-        if (x == null && y == null && type == null) {
-          x = (int) ifd.getImageWidth();
-          y = (int) ifd.getImageLength();
-          type = ifd.getPixelType();
-        }
-        else {
-          if ((int) ifd.getImageWidth() != x ||
-            (int) ifd.getImageLength() != y ||
-            ifd.getPixelType() != type)
-          {
-            separateSeries = canSeparateSeries;
+    if (!lazy) {
+      for (IFD ifd : allIFDs) {
+        tiffParser.fillInIFD(ifd);
+        Number subfile = (Number) ifd.getIFDValue(IFD.NEW_SUBFILE_TYPE, Number.class);
+        int subfileType = subfile == null ? 0 : subfile.intValue();
+        if (subfileType != 1 || allIFDs.size() <= 1) {
+          ifds.add(ifd);
+
+          if (x == null && y == null && type == null) {
+            x = (int) ifd.getImageWidth();
+            y = (int) ifd.getImageLength();
+            type = ifd.getPixelType();
+          }
+          else {
+            if ((int) ifd.getImageWidth() != x ||
+              (int) ifd.getImageLength() != y ||
+              ifd.getPixelType() != type)
+            {
+              separateSeries = canSeparateSeries;
+            }
           }
         }
-      }
-      else if (subfileType == 1) {
-        thumbnailIFDs.add(ifd);
+        else if (subfileType == 1) {
+          thumbnailIFDs.add(ifd);
+        }
       }
     }
 
     LOGGER.info("Populating metadata");
+    startPhase("Populating metadata");
 
     CoreMetadata ms0 = core.get(0, 0);
 
@@ -524,75 +677,78 @@ public class MinimalTiffReader extends SubResolutionFormatReader {
     }
 
     tiffParser.setAssumeEqualStrips(equalStrips);
-    for (IFD ifd : ifds) {
-      if ((ifd.getCompression() == TiffCompression.JPEG_2000
-          || ifd.getCompression() == TiffCompression.JPEG_2000_LOSSY) &&
-          ifd.getImageWidth() == ifds.get(0).getImageWidth()) {
-        LOGGER.debug("Found IFD with JPEG 2000 compression");
-        long[] stripOffsets = ifd.getStripOffsets();
-        long[] stripByteCounts = ifd.getStripByteCounts();
-
-        if (stripOffsets.length > 0) {
-          long stripOffset = stripOffsets[0];
-          in.seek(stripOffset);
-          JPEG2000MetadataParser metadataParser =
-            new JPEG2000MetadataParser(in, stripOffset + stripByteCounts[0]);
-          resolutionLevels = metadataParser.getResolutionLevels();
-          if (resolutionLevels != null && !noSubresolutions) {
-            if (LOGGER.isDebugEnabled()) {
-              LOGGER.debug(String.format(
-                  "Original resolution IFD Levels %d %dx%d Tile %dx%d",
-                  resolutionLevels, ifd.getImageWidth(), ifd.getImageLength(),
-                  ifd.getTileWidth(), ifd.getTileLength()));
-            }
-            IFDList theseSubResolutionIFDs = new IFDList();
-            subResolutionIFDs.add(theseSubResolutionIFDs);
-            for (int level = 1; level <= resolutionLevels; level++) {
-              IFD newIFD = new IFD(ifd);
-              long imageWidth = ifd.getImageWidth();
-              long imageLength = ifd.getImageLength();
-              long tileWidth = ifd.getTileWidth();
-              long tileLength = ifd.getTileLength();
-              long factor = (long) Math.pow(2, level);
-              long newTileWidth = Math.round((double) tileWidth / factor);
-              newTileWidth = newTileWidth < 1? 1 : newTileWidth;
-              long newTileLength = Math.round((double) tileLength / factor);
-              newTileLength = newTileLength < 1? 1 : newTileLength;
-              long evenTilesPerRow = imageWidth / tileWidth;
-              long evenTilesPerColumn = imageLength / tileLength;
-              double remainingWidth =
-                  ((double) (imageWidth - (evenTilesPerRow * tileWidth))) /
-                  factor;
-              remainingWidth = remainingWidth < 1? Math.ceil(remainingWidth) :
-                  Math.round(remainingWidth);
-              double remainingLength =
-                  ((double) (imageLength - (evenTilesPerColumn * tileLength))) /
-                  factor;
-              remainingLength =
-                remainingLength < 1? Math.ceil(remainingLength) :
-                Math.round(remainingLength);
-              long newImageWidth = (long) ((evenTilesPerRow * newTileWidth) +
-                  remainingWidth);
-              long newImageLength =
-                (long) ((evenTilesPerColumn * newTileLength) + remainingLength);
-
-              int resolutionLevel = Math.abs(level - resolutionLevels);
-              newIFD.put(IFD.IMAGE_WIDTH, newImageWidth);
-              newIFD.put(IFD.IMAGE_LENGTH, newImageLength);
-              newIFD.put(IFD.TILE_WIDTH, newTileWidth);
-              newIFD.put(IFD.TILE_LENGTH, newTileLength);
+    // lazily parsed files never use JPEG 2000 compression; see isUniformPage
+    if (!lazy) {
+      for (IFD ifd : ifds) {
+        if ((ifd.getCompression() == TiffCompression.JPEG_2000
+            || ifd.getCompression() == TiffCompression.JPEG_2000_LOSSY) &&
+            ifd.getImageWidth() == ifds.get(0).getImageWidth()) {
+          LOGGER.debug("Found IFD with JPEG 2000 compression");
+          long[] stripOffsets = ifd.getStripOffsets();
+          long[] stripByteCounts = ifd.getStripByteCounts();
+
+          if (stripOffsets.length > 0) {
+            long stripOffset = stripOffsets[0];
+            in.seek(stripOffset);
+            JPEG2000MetadataParser metadataParser =
+              new JPEG2000MetadataParser(in, stripOffset + stripByteCounts[0]);
+            resolutionLevels = metadataParser.getResolutionLevels();
+            if (resolutionLevels != null && !noSubresolutions) {
               if (LOGGER.isDebugEnabled()) {
                 LOGGER.debug(String.format(
-                    "Added JPEG 2000 sub-resolution IFD Level %d %dx%d " +
-                    "Tile %dx%d", resolutionLevel, newImageWidth,
-                    newImageLength, newTileWidth, newTileLength));
+                    "Original resolution IFD Levels %d %dx%d Tile %dx%d",
+                    resolutionLevels, ifd.getImageWidth(), ifd.getImageLength(),
+                    ifd.getTileWidth(), ifd.getTileLength()));
+              }
+              IFDList theseSubResolutionIFDs = new IFDList();
+              subResolutionIFDs.add(theseSubResolutionIFDs);
+              for (int level = 1; level <= resolutionLevels; level++) {
+                IFD newIFD = new IFD(ifd);
+                long imageWidth = ifd.getImageWidth();
+                long imageLength = ifd.getImageLength();
+                long tileWidth = ifd.getTileWidth();
+                long tileLength = ifd.getTileLength();
+                long factor = (long) Math.pow(2, level);
+                long newTileWidth = Math.round((double) tileWidth / factor);
+                newTileWidth = newTileWidth < 1? 1 : newTileWidth;
+                long newTileLength = Math.round((double) tileLength / factor);
+                newTileLength = newTileLength < 1? 1 : newTileLength;
+                long evenTilesPerRow = imageWidth / tileWidth;
+                long evenTilesPerColumn = imageLength / tileLength;
+                double remainingWidth =
+                    ((double) (imageWidth - (evenTilesPerRow * tileWidth))) /
+                    factor;
+                remainingWidth = remainingWidth < 1? Math.ceil(remainingWidth) :
+                    Math.round(remainingWidth);
+                double remainingLength =
+                    ((double) (imageLength - (evenTilesPerColumn * tileLength))) /
+                    factor;
+                remainingLength =
+                  remainingLength < 1? Math.ceil(remainingLength) :
+                  Math.round(remainingLength);
+                long newImageWidth = (long) ((evenTilesPerRow * newTileWidth) +
+                    remainingWidth);
+                long newImageLength =
+                  (long) ((evenTilesPerColumn * newTileLength) + remainingLength);
+
+                int resolutionLevel = Math.abs(level - resolutionLevels);
+                newIFD.put(IFD.IMAGE_WIDTH, newImageWidth);
+                newIFD.put(IFD.IMAGE_LENGTH, newImageLength);
+                newIFD.put(IFD.TILE_WIDTH, newTileWidth);
+                newIFD.put(IFD.TILE_LENGTH, newTileLength);
+                if (LOGGER.isDebugEnabled()) {
+                  LOGGER.debug(String.format(
+                      "Added JPEG 2000 sub-resolution IFD Level %d %dx%d " +
+                      "Tile %dx%d", resolutionLevel, newImageWidth,
+                      newImageLength, newTileWidth, newTileLength));
+                }
+                theseSubResolutionIFDs.add(newIFD);
               }
-              theseSubResolutionIFDs.add(newIFD);
             }
           }
-        }
-        else {
-          LOGGER.warn("IFD has no strip offsets!");
+          else {
+            LOGGER.warn("IFD has no strip offsets!");
+          }
         }
       }
     }
@@ -694,7 +850,7 @@ public class MinimalTiffReader extends SubResolutionFormatReader {
   protected void initTiffParser() {
     if (in == null) {
       try {
-        in = new RandomAccessInputStream(getCurrentFile(), 16);
+        in = Instrumentation.openStream(getFormat(), getCurrentFile(), 16);
       }
       catch (IOException e) {
         LOGGER.error("Could not initialize stream", e);
@@ -703,6 +859,23 @@ public class MinimalTiffReader extends SubResolutionFormatReader {
     tiffParser = new TiffParser(in);
     tiffParser.setDoCaching(false);
     tiffParser.setUse64BitOffsets(use64Bit);
+    if (ifds instanceof LazyIFDList) {
+      ((LazyIFDList) ifds).setParser(tiffParser);
+    }
+  }
+
+  /**
+   * Returns whether or not the given IFD can be used to describe every page
+   * of a file whose IFDs are parsed on demand.  Thumbnail, palette and
+   * JPEG 2000 compressed pages require all IFDs to be parsed up front.
+   */
+  private boolean isUniformPage(IFD ifd) throws FormatException {
+    Number subfile = (Number) ifd.getIFDValue(IFD.NEW_SUBFILE_TYPE, Number.class);
+    TiffCompression compression = ifd.getCompression();
+    return (subfile == null || subfile.intValue() == 0) &&
+      ifd.getPhotometricInterpretation() != PhotoInterp.RGB_PALETTE &&
+      compression != TiffCompression.JPEG_2000 &&
+      compression != TiffCompression.JPEG_2000_LOSSY;
   }
 
   /**
@@ -729,49 +902,39 @@ public class MinimalTiffReader extends SubResolutionFormatReader {
   }
 
   protected long getCompressedByteCount(IFD ifd, int x, int y) throws FormatException, IOException {
-    long[] byteCounts = ifd.getStripByteCounts();
-    int tileIndex = getTileIndex(ifd, x, y);
-    byte[] jpegTable = (byte[]) ifd.getIFDValue(IFD.JPEG_TABLES);
-    int jpegTableBytes = jpegTable == null ? 0 : jpegTable.length - 2;
-    long expectedBytes = byteCounts[tileIndex];
-    if (expectedBytes > 0) {
-      expectedBytes += jpegTableBytes;
-    }
-    if (expectedBytes < 0 || expectedBytes > Integer.MAX_VALUE) {
-      throw new IOException("Invalid compressed tile size: " + expectedBytes);
+    getTileIndex(ifd, x, y);
+    if (tiffParser == null) {
+      initTiffParser();
     }
-    return expectedBytes;
+    return tiffParser.getCompressedTileSize(ifd, y, x);
   }
 
   protected byte[] copyTile(IFD ifd, byte[] buf, int x, int y) throws FormatException, IOException {
-    long[] offsets = ifd.getStripOffsets();
-    long[] byteCounts = ifd.getStripByteCounts();
-
-    int tileIndex = getTileIndex(ifd, x, y);
-
-    byte[] jpegTable = (byte[]) ifd.getIFDValue(IFD.JPEG_TABLES);
-    int jpegTableBytes = jpegTable == null ? 0 : jpegTable.length - 2;
-    long expectedBytes = getCompressedByteCount(ifd, x, y);
-
-    if (buf.length < expectedBytes) {
-      throw new IllegalArgumentException("Tile buffer too small: expected >=" +
-        expectedBytes + ", got " + buf.length);
-    }
-    else if (expectedBytes < 0 || expectedBytes > Integer.MAX_VALUE) {
-      throw new IOException("Invalid compressed tile size: " + expectedBytes);
+    getTileIndex(ifd, x, y);
+    if (tiffParser == null) {
+      initTiffParser();
     }
+    return tiffParser.getCompressedTile(ifd, buf, y, x);
+  }
 
-    if (jpegTable != null && expectedBytes > 0) {
-      System.arraycopy(jpegTable, 0, buf, 0, jpegTable.length - 2);
-      // skip over the duplicate SOI marker
-      tiffParser.getStream().seek(offsets[tileIndex] + 2);
-      tiffParser.getStream().readFully(buf, jpegTable.length - 2, (int) byteCounts[tileIndex]);
-    }
-    else if (byteCounts[tileIndex] > 0) {
-      tiffParser.getStream().seek(offsets[tileIndex]);
-      tiffParser.getStream().readFully(buf, 0, (int) byteCounts[tileIndex]);
+  /**
+   * Get the IFD containing the tiles of the given plane in the current
+   * series and resolution, if those tiles can be copied without
+   * decompression.
+   *
+   * @param no plane index
+   * @return the plane's IFD, or null if pre-compressed tile access is not
+   *   supported for the plane
+   * @see #canReadCompressedTiles
+   */
+  protected IFD getCompressedTileIFD(int no) throws FormatException {
+    if (!canReadCompressedTiles ||
+      (resolutionLevels != null && getCoreIndex() > 0))
+    {
+      return null;
     }
-    return buf;
+    IFD ifd = seriesToIFD ? ifds.get(getSeries()) : ifds.get(no);
+    return TiffParser.canCopyCompressedTiles(ifd) ? ifd : null;
   }
 
 }
@@ -54,10 +54,13 @@ import loci.formats.CoreMetadataList;
 import loci.formats.FormatException;
 import loci.formats.FormatTools;
 import loci.formats.IFormatReader;
+import loci.formats.Instrumentation;
 import loci.formats.MetadataTools;
 import loci.formats.MissingLibraryException;
 import loci.formats.Modulo;
 import loci.formats.SubResolutionFormatReader;
+import loci.formats.codec.Codec;
+import loci.formats.codec.CodecOptions;
 import loci.formats.meta.MetadataStore;
 import loci.formats.ome.OMEPyramidStore;
 import loci.formats.ome.OMEXMLMetadata;
@@ -109,6 +112,12 @@ public class OMETiffReader extends SubResolutionFormatReader {
 
   private String metadataFile;
 
+  /** Most recently used IFD for pre-compressed tile access. */
+  private transient IFD tileIFD;
+  private transient int tileIFDSeries;
+  private transient int tileIFDResolution;
+  private transient int tileIFDPlane;
+
   // -- Constructor --
 
   /** Constructs a new OME-TIFF reader. */
@@ -356,7 +365,6 @@ public class OMETiffReader extends SubResolutionFormatReader {
   {
     FormatTools.checkPlaneParameters(this, no, buf.length, x, y, w, h);
     lastPlane = no;
-    int i = info[series][no].ifd;
 
     if (!info[series][no].exists ||
       info[series][no].reader == null ||
@@ -367,28 +375,16 @@ public class OMETiffReader extends SubResolutionFormatReader {
     }
 
     MinimalTiffReader r = (MinimalTiffReader) info[series][no].reader;
-    if (r.getCurrentFile() == null) {
-      initializeReader(r, info[series][no].id);
-    }
-    r.lastPlane = i;
-    IFDList ifdList = r.getIFDs();
-    if (i >= ifdList.size()) {
-      LOGGER.warn("Error untangling IFDs; the OME-TIFF file may be malformed (IFD #{} missing).", i);
+    IFD ifd = getPlaneIFD(no);
+    if (ifd == null) {
       return buf;
     }
-    IFD ifd = ifdList.get(i);
-    try (RandomAccessInputStream s = new RandomAccessInputStream(info[series][no].id, 16)) {
+    try (RandomAccessInputStream s =
+      Instrumentation.openStream(getFormat(), info[series][no].id, 16))
+    {
       TiffParser p = new TiffParser(s);
       if (resolution > 0) {
-        // read the required SubIFD, but don't attempt to read the ImageDescription
-        // the ImageDescription will be completely ignored anyway
-        // it may be quite large (> 10 MB) in which case this has a significant
-        // impact on read time and memory usage
-        p.setDoCaching(false);
-        long offset = ifd.getIFDLongArray(IFD.SUB_IFD)[((OMETiffCoreMetadata)core.get(series, resolution)).subresolutionOffset];
-        ifd = p.getIFD(offset);
-        ifd.remove(IFD.IMAGE_DESCRIPTION);
-        p.fillInIFD(ifd);
+        ifd = getSubResolutionIFD(p, ifd);
       }
       p.getSamples(ifd, buf, x, y, w, h);
     }
@@ -401,6 +397,83 @@ public class OMETiffReader extends SubResolutionFormatReader {
     return buf;
   }
 
+  // -- ICompressedTileReader API methods --
+
+  @Override
+  public int getTileRows(int no) {
+    FormatTools.assertId(currentId, true, 1);
+    try {
+      IFD ifd = getCompressedTileIFD(no);
+      if (ifd != null) {
+        return (int) ifd.getTilesPerColumn();
+      }
+    }
+    catch (FormatException | IOException e) {
+      LOGGER.debug("Could not get tile row count", e);
+    }
+    return super.getTileRows(no);
+  }
+
+  @Override
+  public int getTileColumns(int no) {
+    FormatTools.assertId(currentId, true, 1);
+    try {
+      IFD ifd = getCompressedTileIFD(no);
+      if (ifd != null) {
+        return (int) ifd.getTilesPerRow();
+      }
+    }
+    catch (FormatException | IOException e) {
+      LOGGER.debug("Could not get tile column count", e);
+    }
+    return super.getTileColumns(no);
+  }
+
+  @Override
+  public byte[] openCompressedBytes(int no, int x, int y)
+    throws FormatException, IOException
+  {
+    return openCompressedBytes(no, null, x, y);
+  }
+
+  @Override
+  public byte[] openCompressedBytes(int no, byte[] buf, int x, int y)
+    throws FormatException, IOException
+  {
+    FormatTools.assertId(currentId, true, 1);
+    IFD ifd = getCompressedTileIFD(no);
+    if (ifd == null) {
+      return super.openCompressedBytes(no, buf, x, y);
+    }
+    try (RandomAccessInputStream s =
+      Instrumentation.openStream(getFormat(), info[series][no].id, 16))
+    {
+      return new TiffParser(s).getCompressedTile(ifd, buf, y, x);
+    }
+  }
+
+  @Override
+  public Codec getTileCodec(int no) throws FormatException, IOException {
+    FormatTools.assertId(currentId, true, 1);
+    IFD ifd = getCompressedTileIFD(no);
+    if (ifd == null) {
+      return super.getTileCodec(no);
+    }
+    return ifd.getCompression().getCodec();
+  }
+
+  @Override
+  public CodecOptions getTileCodecOptions(int no, int x, int y)
+    throws FormatException, IOException
+  {
+    FormatTools.assertId(currentId, true, 1);
+    IFD ifd = getCompressedTileIFD(no);
+    if (ifd == null) {
+      return super.getTileCodecOptions(no, x, y);
+    }
+    return TiffParser.getCompressedTileCodecOptions(ifd);
+  }
+
   /* @see loci.formats.SubResolutionFormatReader#getSeriesUsedFiles(boolean) */
   @Override
   public String[] getSeriesUsedFiles(boolean noPixels) {
@@ -460,6 +533,7 @@ public class OMETiffReader extends SubResolutionFormatReader {
       used = null;
       lastPlane = 0;
       metadataFile = null;
+      tileIFD = null;
     }
   }
 
@@ -1503,6 +1577,82 @@ public class OMETiffReader extends SubResolutionFormatReader {
     return firstIFD;
   }
 
+  /**
+   * Retrieves the full resolution IFD for the given plane in the current
+   * series, or null if the plane's IFD is missing.
+   */
+  private IFD getPlaneIFD(int no) throws FormatException, IOException {
+    int i = info[series][no].ifd;
+    MinimalTiffReader r = (MinimalTiffReader) info[series][no].reader;
+    if (r.getCurrentFile() == null) {
+      initializeReader(r, info[series][no].id);
+    }
+    r.lastPlane = i;
+    IFDList ifdList = r.getIFDs();
+    if (i >= ifdList.size()) {
+      LOGGER.warn("Error untangling IFDs; the OME-TIFF file may be malformed (IFD #{} missing).", i);
+      return null;
+    }
+    return ifdList.get(i);
+  }
+
+  /**
+   * Reads the SubIFD for the current resolution of the given full
+   * resolution IFD.
+   */
+  private IFD getSubResolutionIFD(TiffParser p, IFD ifd)
+    throws FormatException, IOException
+  {
+    // read the required SubIFD, but don't attempt to read the ImageDescription
+    // the ImageDescription will be completely ignored anyway
+    // it may be quite large (> 10 MB) in which case this has a significant
+    // impact on read time and memory usage
+    p.setDoCaching(false);
+    long offset = ifd.getIFDLongArray(IFD.SUB_IFD)[((OMETiffCoreMetadata)core.get(series, resolution)).subresolutionOffset];
+    IFD subIFD = p.getIFD(offset);
+    subIFD.remove(IFD.IMAGE_DESCRIPTION);
+    p.fillInIFD(subIFD);
+    return subIFD;
+  }
+
+  /**
+   * Retrieves the IFD for the given plane in the current series and
+   * resolution, if its tiles can be copied without decompression.
+   * The most recently used IFD is cached, as tiles are typically
+   * copied one plane at a time.
+   *
+   * @return the IFD, or null if pre-compressed tile access is not
+   *   supported for the plane
+   */
+  private IFD getCompressedTileIFD(int no) throws FormatException, IOException {
+    if (tileIFD != null && tileIFDSeries == series &&
+      tileIFDResolution == resolution && tileIFDPlane == no)
+    {
+      return tileIFD;
+    }
+    OMETiffPlane plane = info[series][no];
+    if (!plane.exists || plane.reader == null || plane.id == null) {
+      return null;
+    }
+    IFD ifd = getPlaneIFD(no);
+    if (ifd == null) {
+      return null;
+    }
+    if (resolution > 0) {
+      try (RandomAccessInputStream s = new RandomAccessInputStream(plane.id, 16)) {
+        ifd = getSubResolutionIFD(new TiffParser(s), ifd);
+      }
+    }
+    if (!TiffParser.canCopyCompressedTiles(ifd)) {
+      return null;
+    }
+    tileIFD = ifd;
+    tileIFDSeries = series;
+    tileIFDResolution = resolution;
+    tileIFDPlane = no;
+    return ifd;
+  }
+
   private void initializeReader(IFormatReader r, String file)
     throws FormatException, IOException
   {
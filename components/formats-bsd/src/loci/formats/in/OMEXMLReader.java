@@ -32,11 +32,17 @@
 
 package loci.formats.in;
 
-import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Hashtable;
 import java.util.List;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 import loci.common.CBZip2InputStream;
 import loci.common.RandomAccessInputStream;
@@ -54,16 +60,13 @@ import loci.formats.MissingLibraryException;
 import loci.formats.codec.CodecOptions;
 import loci.formats.codec.JPEG2000Codec;
 import loci.formats.codec.JPEGCodec;
-import loci.formats.codec.ZlibCodec;
 import loci.formats.meta.MetadataStore;
 import loci.formats.ome.OMEXMLMetadata;
 import loci.formats.services.OMEXMLService;
 import loci.formats.services.OMEXMLServiceImpl;
 
 import org.xml.sax.Attributes;
-import org.xml.sax.Locator;
 import org.xml.sax.helpers.DefaultHandler;
-import com.google.common.io.BaseEncoding;
 
 
 /**
@@ -75,11 +78,27 @@ public class OMEXMLReader extends FormatReader {
 
   // -- Fields --
 
+  /** Size of the blocks read while scanning the file or decoding BinData. */
+  private static final int BUFFER_SIZE = 65536;
+
+  /** Lookup table mapping base64 characters to 6-bit values. */
+  private static final int[] BASE64_VALUES = new int[128];
+  static {
+    Arrays.fill(BASE64_VALUES, -1);
+    String alphabet =
+      "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+    for (int i=0; i<alphabet.length(); i++) {
+      BASE64_VALUES[alphabet.charAt(i)] = i;
+    }
+  }
+
   // compression value and offset for each BinData element
   private List<BinData> binData;
-  private List<Long> binDataOffsets;
   private List<String> compression;
 
+  /** Buffer reused for reading base64-encoded pixel data. */
+  private transient byte[] encodedBuffer;
+
   private String omexml;
   private boolean hasSPW = false;
 
@@ -127,7 +146,7 @@ public class OMEXMLReader extends FormatReader {
   public byte[] openBytes(int no, byte[] buf, int x, int y, int w, int h)
     throws FormatException, IOException
   {
-    if (binDataOffsets.size() == 0) return buf;
+    if (binData.size() == 0) return buf;
     FormatTools.checkPlaneParameters(this, no, buf.length, x, y, w, h);
 
     int index = no;
@@ -135,74 +154,81 @@ public class OMEXMLReader extends FormatReader {
     for (int i=0; i<series; i++) {
       index += core.get(i).imageCount;
     }
-    if (index >= binDataOffsets.size()) {
-      index = binDataOffsets.size() - 1;
+    if (index >= binData.size()) {
+      index = binData.size() - 1;
     }
 
-    long offset = binDataOffsets.get(index).longValue();
+    BinData bin = binData.get(index);
     String compress = compression.get(index);
 
-    in.seek(offset);
-
     int depth = FormatTools.getBytesPerPixel(getPixelType());
     int planeSize = getSizeX() * getSizeY() * depth;
+    int rowLen = getSizeX() * depth;
 
-    CodecOptions options = new CodecOptions();
-    options.width = getSizeX();
-    options.height = getSizeY();
-    options.bitsPerSample = depth * 8;
-    options.channels = getRGBChannelCount();
-    options.maxBytes = planeSize;
-    options.littleEndian = isLittleEndian();
-    options.interleaved = isInterleaved();
-
-    String encoded = in.readString("<");
-    encoded = encoded.trim();
-    if (encoded.length() == 0 || encoded.equals("<")) {
-      LOGGER.debug("No pixel data for plane #{}", no);
-      return buf;
-    }
-    encoded = encoded.substring(0, encoded.length() - 1);
-    byte[] pixels =  BaseEncoding.base64().decode(encoded);
-    // return a blank plane if no pixel data was stored
-    if (pixels.length == 0) {
-      LOGGER.debug("No pixel data for plane #{}", no);
-      return buf;
-    }
+    InputStream pixels = new Base64Stream(bin.getOffset(), bin.getLength());
+    Inflater inflater = null;
+    try {
+      if (compress.equals("J2K") || compress.equals("JPEG")) {
+        CodecOptions options = new CodecOptions();
+        options.width = getSizeX();
+        options.height = getSizeY();
+        options.bitsPerSample = depth * 8;
+        options.channels = getRGBChannelCount();
+        options.maxBytes = planeSize;
+        options.littleEndian = isLittleEndian();
+        options.interleaved = isInterleaved();
+
+        byte[] encoded = readAll(pixels, (int) (bin.getLength() * 3 / 4));
+        if (encoded.length == 0) {
+          LOGGER.debug("No pixel data for plane #{}", no);
+          return buf;
+        }
+        byte[] plane = compress.equals("J2K") ?
+          new JPEG2000Codec().decompress(encoded, options) :
+          new JPEGCodec().decompress(encoded, options);
+        for (int row=0; row<h; row++) {
+          int off = (row + y) * rowLen + x * depth;
+          System.arraycopy(plane, off, buf, row * w * depth, w * depth);
+        }
+        return buf;
+      }
 
-    // TODO: Create a method uncompress to handle all compression methods
-    if (compress.equals("bzip2")) {
-      byte[] tempPixels = pixels;
-      pixels = new byte[tempPixels.length - 2];
-      System.arraycopy(tempPixels, 2, pixels, 0, pixels.length);
+      if (compress.equals("bzip2")) {
+        // the "BZ" signature is not expected by CBZip2InputStream
+        if (pixels.read() < 0 || pixels.read() < 0) {
+          LOGGER.debug("No pixel data for plane #{}", no);
+          return buf;
+        }
+        pixels = new CBZip2InputStream(pixels);
+      }
+      else if (compress.equals("zlib")) {
+        inflater = new Inflater();
+        pixels = new InflaterInputStream(pixels, inflater);
+      }
 
-      ByteArrayInputStream bais = new ByteArrayInputStream(pixels);
-      CBZip2InputStream bzip = new CBZip2InputStream(bais);
-      pixels = new byte[planeSize];
-      bzip.read(pixels, 0, pixels.length);
-      tempPixels = null;
-      bais.close();
-      bzip.close();
-      bais = null;
-      bzip = null;
-    }
-    else if (compress.equals("zlib")) {
-      pixels = new ZlibCodec().decompress(pixels, options);
-    }
-    else if (compress.equals("J2K")) {
-      pixels = new JPEG2000Codec().decompress(pixels, options);
-    }
-    else if (compress.equals("JPEG")) {
-      pixels = new JPEGCodec().decompress(pixels, options);
+      // decode only as far as the last requested row
+      try {
+        skipFully(pixels, (long) y * rowLen);
+        for (int row=0; row<h; row++) {
+          skipFully(pixels, x * depth);
+          readFully(pixels, buf, row * w * depth, w * depth);
+          if (row < h - 1) {
+            skipFully(pixels, rowLen - (x + w) * depth);
+          }
+        }
+      }
+      catch (EOFException e) {
+        // return a blank or partial plane if not all pixel data was stored
+        LOGGER.debug("Incomplete pixel data for plane #{}", no);
+      }
     }
-
-    for (int row=0; row<h; row++) {
-      int off = (row + y) * getSizeX() * depth + x * depth;
-      System.arraycopy(pixels, off, buf, row * w * depth, w * depth);
+    finally {
+      pixels.close();
+      if (inflater != null) {
+        inflater.end();
+      }
     }
 
-    pixels = null;
-
     return buf;
   }
 
@@ -212,8 +238,8 @@ public class OMEXMLReader extends FormatReader {
     super.close(fileOnly);
     if (!fileOnly) {
       compression = null;
-      binDataOffsets = null;
       binData = null;
+      encodedBuffer = null;
       omexml = null;
       hasSPW = false;
     }
@@ -229,27 +255,22 @@ public class OMEXMLReader extends FormatReader {
     in = new RandomAccessInputStream(id);
     in.setEncoding("ASCII");
     binData = new ArrayList<BinData>();
-    binDataOffsets = new ArrayList<Long>();
     compression = new ArrayList<String>();
 
+    // record the location of each BinData element, so that SAX does not
+    // need to parse the (potentially very large) base64-encoded pixel data
+    byte[] xml = scanBinData();
+
     DefaultHandler handler = new OMEXMLHandler();
-    try (RandomAccessInputStream s = new RandomAccessInputStream(id)) {
-      XMLTools.parseXML(s, handler);
+    try {
+      XMLTools.parseXML(xml, handler);
     }
     catch (IOException e) {
       throw new FormatException("Malformed OME-XML", e);
     }
-
-    int lineNumber = 1;
-    for (BinData bin : binData) {
-      int line = bin.getRow();
-      int col = bin.getColumn();
-
-      while (lineNumber < line) {
-        in.readLine();
-        lineNumber++;
-      }
-      binDataOffsets.add(in.getFilePointer() + col - 1);
+    if (compression.size() != binData.size()) {
+      throw new FormatException("Malformed OME-XML: found " +
+        binData.size() + " BinData elements, expected " + compression.size());
     }
 
     LOGGER.info("Populating metadata");
@@ -332,12 +353,186 @@ public class OMEXMLReader extends FormatReader {
     MetadataTools.populatePixels(store, this, false, false);
   }
 
+  // -- Helper methods --
+
+  /**
+   * Scans the current file for BinData elements within Pixels, recording
+   * the byte offset and length of the encoded pixel data in each.
+   *
+   * @return the document with the contents of the BinData elements removed
+   */
+  private byte[] scanBinData() throws IOException {
+    ByteArrayOutputStream xml = new ByteArrayOutputStream();
+    byte[] block = new byte[BUFFER_SIZE];
+    byte[] tag = new byte[256];
+    int tagLength = 0;
+    boolean inTag = false;
+    boolean inPixels = false;
+    long binDataStart = -1;
+    byte quote = 0;
+
+    long length = in.length();
+    long position = 0;
+    in.seek(0);
+    while (position < length) {
+      int len = (int) Math.min(block.length, length - position);
+      in.readFully(block, 0, len);
+      int textStart = 0;
+      for (int i=0; i<len; i++) {
+        byte b = block[i];
+        if (!inTag) {
+          if (b == '<') {
+            if (binDataStart >= 0) {
+              binData.add(
+                new BinData(binDataStart, position + i - binDataStart));
+              binDataStart = -1;
+            }
+            else {
+              xml.write(block, textStart, i - textStart);
+            }
+            inTag = true;
+            tag[0] = b;
+            tagLength = 1;
+          }
+          continue;
+        }
+
+        if (tagLength == tag.length) {
+          tag = Arrays.copyOf(tag, tag.length * 2);
+        }
+        tag[tagLength++] = b;
+        if (quote != 0) {
+          if (b == quote) {
+            quote = 0;
+          }
+          continue;
+        }
+        boolean markup = tag[1] == '!' || tag[1] == '?';
+        if ((b == '"' || b == '\'') && !markup) {
+          quote = b;
+          continue;
+        }
+        if (b != '>' || !isTagEnd(tag, tagLength)) {
+          continue;
+        }
+
+        // a complete tag, comment or declaration
+        xml.write(tag, 0, tagLength);
+        inTag = false;
+        textStart = i + 1;
+        if (markup) {
+          continue;
+        }
+        boolean endTag = tag[1] == '/';
+        boolean emptyTag = tag[tagLength - 2] == '/';
+        String name = getTagName(tag, endTag ? 2 : 1, tagLength);
+        if (name.indexOf("Pixels") != -1) {
+          inPixels = !endTag && !emptyTag;
+        }
+        else if (inPixels && !endTag && name.indexOf("BinData") != -1) {
+          if (emptyTag) {
+            binData.add(new BinData(position + i + 1, 0));
+          }
+          else {
+            binDataStart = position + i + 1;
+          }
+        }
+      }
+      if (binDataStart < 0 && !inTag) {
+        xml.write(block, textStart, len - textStart);
+      }
+      position += len;
+    }
+    if (inTag) {
+      xml.write(tag, 0, tagLength);
+    }
+    return xml.toByteArray();
+  }
+
+  /**
+   * Returns true if the '&gt;' at the end of the given tag closes it,
+   * taking into account comments and CDATA sections.
+   */
+  private static boolean isTagEnd(byte[] tag, int length) {
+    if (startsWith(tag, length, "<!--")) {
+      return length >= 7 && tag[length - 2] == '-' && tag[length - 3] == '-';
+    }
+    if (startsWith(tag, length, "<![CDATA[")) {
+      return length >= 12 && tag[length - 2] == ']' && tag[length - 3] == ']';
+    }
+    return true;
+  }
+
+  private static boolean startsWith(byte[] tag, int length, String prefix) {
+    if (length < prefix.length()) {
+      return false;
+    }
+    for (int i=0; i<prefix.length(); i++) {
+      if (tag[i] != prefix.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Gets the element name from the given tag. */
+  private static String getTagName(byte[] tag, int start, int length) {
+    int end = start;
+    while (end < length && tag[end] != '>' && tag[end] != '/' &&
+      !Character.isWhitespace(tag[end]))
+    {
+      end++;
+    }
+    return new String(tag, start, end - start, StandardCharsets.UTF_8);
+  }
+
+  /** Reads the given stream to the end. */
+  private static byte[] readAll(InputStream s, int expectedLength)
+    throws IOException
+  {
+    ByteArrayOutputStream out =
+      new ByteArrayOutputStream(Math.max(expectedLength, 32));
+    byte[] b = new byte[8192];
+    int n = s.read(b, 0, b.length);
+    while (n > 0) {
+      out.write(b, 0, n);
+      n = s.read(b, 0, b.length);
+    }
+    return out.toByteArray();
+  }
+
+  private static void readFully(InputStream s, byte[] b, int off, int len)
+    throws IOException
+  {
+    while (len > 0) {
+      int n = s.read(b, off, len);
+      if (n < 0) {
+        throw new EOFException();
+      }
+      off += n;
+      len -= n;
+    }
+  }
+
+  private static void skipFully(InputStream s, long len) throws IOException {
+    if (len <= 0) {
+      return;
+    }
+    byte[] skip = new byte[(int) Math.min(len, 8192)];
+    while (len > 0) {
+      int n = s.read(skip, 0, (int) Math.min(len, skip.length));
+      if (n < 0) {
+        throw new EOFException();
+      }
+      len -= n;
+    }
+  }
+
   // -- Helper class --
 
   class OMEXMLHandler extends BaseHandler {
     private final StringBuilder xmlBuffer;
     private String currentQName;
-    private Locator locator;
     private boolean inPixels;
 
     public OMEXMLHandler() {
@@ -374,8 +569,6 @@ public class OMEXMLReader extends FormatReader {
       }
 
       if (inPixels && qName.indexOf("BinData") != -1) {
-        binData.add(
-          new BinData(locator.getLineNumber(), locator.getColumnNumber()));
         String compress = attributes.getValue("Compression");
         compression.add(compress == null ? "" : compress);
 
@@ -422,24 +615,115 @@ public class OMEXMLReader extends FormatReader {
     public void endDocument() {
       omexml = xmlBuffer.toString();
     }
+  }
 
-    @Override
-    public void setDocumentLocator(Locator locator) {
-      this.locator = locator;
+  class BinData {
+    private long offset;
+    private long length;
+
+    public BinData(long offset, long length) {
+      this.offset = offset;
+      this.length = length;
     }
+
+    public long getOffset() { return offset; }
+    public long getLength() { return length; }
   }
 
-  class BinData {
-    private int row;
-    private int column;
+  /**
+   * Decodes base64 text directly from the current file, without first
+   * reading the text into a String.  Whitespace is ignored, and decoding
+   * stops at the first padding character.
+   */
+  class Base64Stream extends InputStream {
+    private long position;
+    private final long end;
+    private int encodedLength;
+    private int encodedIndex;
+    private final byte[] decoded = new byte[3];
+    private int decodedLength;
+    private int decodedIndex;
+    private boolean done;
+
+    public Base64Stream(long offset, long length) {
+      position = offset;
+      end = offset + length;
+      if (encodedBuffer == null) {
+        encodedBuffer = new byte[BUFFER_SIZE];
+      }
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (decodedIndex == decodedLength && !decodeQuantum()) {
+        return -1;
+      }
+      return decoded[decodedIndex++] & 0xff;
+    }
 
-    public BinData(int row, int column) {
-      this.row = row;
-      this.column = column;
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      int total = 0;
+      while (total < len) {
+        if (decodedIndex == decodedLength && !decodeQuantum()) {
+          break;
+        }
+        int n = Math.min(len - total, decodedLength - decodedIndex);
+        System.arraycopy(decoded, decodedIndex, b, off + total, n);
+        decodedIndex += n;
+        total += n;
+      }
+      return total == 0 ? -1 : total;
+    }
+
+    /** Decodes the next four base64 characters. */
+    private boolean decodeQuantum() throws IOException {
+      if (done) {
+        return false;
+      }
+      int bits = 0;
+      int count = 0;
+      while (count < 4) {
+        int c = nextCharacter();
+        if (c < 0 || c == '=') {
+          done = true;
+          break;
+        }
+        int value = c < BASE64_VALUES.length ? BASE64_VALUES[c] : -1;
+        if (value < 0) {
+          if (Character.isWhitespace(c)) {
+            continue;
+          }
+          throw new IOException("Invalid base64 character: " + (char) c);
+        }
+        bits = (bits << 6) | value;
+        count++;
+      }
+      decodedIndex = 0;
+      decodedLength = count == 4 ? 3 : Math.max(count - 1, 0);
+      bits <<= 6 * (4 - count);
+      decoded[0] = (byte) (bits >> 16);
+      decoded[1] = (byte) (bits >> 8);
+      decoded[2] = (byte) bits;
+      return decodedLength > 0;
     }
 
-    public int getRow() { return row; }
-    public int getColumn() { return column; }
+    private int nextCharacter() throws IOException {
+      if (encodedIndex == encodedLength) {
+        if (position >= end) {
+          return -1;
+        }
+        encodedLength = (int) Math.min(encodedBuffer.length, end - position);
+        in.seek(position);
+        in.readFully(encodedBuffer, 0, encodedLength);
+        position += encodedLength;
+        encodedIndex = 0;
+      }
+      return encodedBuffer[encodedIndex++] & 0xff;
+    }
   }
 
 }
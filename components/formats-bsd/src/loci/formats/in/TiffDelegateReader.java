@@ -93,7 +93,6 @@ public class TiffDelegateReader extends DelegateReader {
     nativeReaderInitialized = true;
     currentId = nativeReader.getCurrentFile();
     core = new ArrayList<CoreMetadata>(nativeReader.getCoreMetadataList());
-    metadata = nativeReader.getGlobalMetadata();
     metadataStore = nativeReader.getMetadataStore();
   }
 
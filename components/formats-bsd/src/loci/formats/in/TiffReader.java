@@ -91,6 +91,8 @@ public class TiffReader extends BaseTiffReader {
   /** Constructs a new Tiff reader. */
   public TiffReader() {
     super("Tagged Image File Format", TIFF_SUFFIXES);
+    canParseIFDsLazily = true;
+    canReadCompressedTiles = true;
   }
 
   // -- IFormatReader API methods --
@@ -130,6 +132,7 @@ public class TiffReader extends BaseTiffReader {
     String lastComment = ifds.get(ifds.size() - 1).getComment();
 
     LOGGER.info("Checking comment style");
+    startPhase("Checking comment style");
 
     CoreMetadata m = core.get(0, 0);
 
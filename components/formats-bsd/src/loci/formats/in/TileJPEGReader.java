@@ -33,6 +33,7 @@
 package loci.formats.in;
 
 import java.io.IOException;
+import java.util.ArrayList;
 
 import loci.common.RandomAccessInputStream;
 import loci.common.services.ServiceException;
@@ -56,6 +57,21 @@ import loci.formats.services.JPEGTurboServiceImpl;
 
 public class TileJPEGReader extends FormatReader {
 
+  // -- Constants --
+
+  /**
+   * Number of resolutions to expose, including the full resolution image.
+   * Each sub-resolution is half the size of the previous one, and is
+   * decoded directly at the reduced scale.  At most 4 resolutions
+   * (down to 1/8 scale) are supported; defaults to 1.
+   */
+  public static final String SCALED_RESOLUTIONS_KEY =
+    "tilejpeg.scaled_resolutions";
+  public static final int SCALED_RESOLUTIONS_DEFAULT = 1;
+
+  /** Maximum number of resolutions supported by scaled decoding. */
+  private static final int MAX_RESOLUTIONS = 4;
+
   // -- Fields --
 
   private transient JPEGTurboService service;
@@ -78,7 +94,8 @@ public class TileJPEGReader extends FormatReader {
   {
     FormatTools.checkPlaneParameters(this, no, buf.length, x, y, w, h);
 
-    service.getTile(buf, x, y, w, h);
+    // each resolution is half the size of the previous one
+    service.getTile(buf, x, y, w, h, 1 << getCoreIndex());
 
     return buf;
   }
@@ -95,8 +112,34 @@ public class TileJPEGReader extends FormatReader {
     }
   }
 
+  // -- TileJPEGReader API methods --
+
+  /**
+   * @return the number of resolutions to expose, as set by
+   *   {@link #SCALED_RESOLUTIONS_KEY}
+   */
+  public int getScaledResolutionCount() {
+    MetadataOptions options = getMetadataOptions();
+    if (options instanceof DynamicMetadataOptions) {
+      Integer count = ((DynamicMetadataOptions) options).getInteger(
+        SCALED_RESOLUTIONS_KEY, SCALED_RESOLUTIONS_DEFAULT);
+      if (count != null) {
+        return Math.max(1, Math.min(count, MAX_RESOLUTIONS));
+      }
+    }
+    return SCALED_RESOLUTIONS_DEFAULT;
+  }
+
   // -- Internal FormatReader API methods --
 
+  /* @see loci.formats.FormatReader#getAvailableOptions() */
+  @Override
+  protected ArrayList<String> getAvailableOptions() {
+    ArrayList<String> optionsList = super.getAvailableOptions();
+    optionsList.add(SCALED_RESOLUTIONS_KEY);
+    return optionsList;
+  }
+
   /* @see loci.formats.FormatReader#initFile(String) */
   @Override
   public void initFile(String id) throws FormatException, IOException {
@@ -128,6 +171,17 @@ public class TileJPEGReader extends FormatReader {
     m.metadataComplete = true;
     m.indexed = false;
 
+    // add sub-resolutions that are decoded at a reduced scale
+    m.resolutionCount = getScaledResolutionCount();
+    for (int r=1; r<m.resolutionCount; r++) {
+      CoreMetadata resolution = new CoreMetadata(m);
+      resolution.resolutionCount = 1;
+      int scale = 1 << r;
+      resolution.sizeX = (m.sizeX + scale - 1) / scale;
+      resolution.sizeY = (m.sizeY + scale - 1) / scale;
+      core.add(resolution);
+    }
+
     MetadataStore store = makeFilterMetadata();
     MetadataTools.populatePixels(store, this);
   }
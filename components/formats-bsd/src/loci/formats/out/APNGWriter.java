@@ -44,6 +44,7 @@ import loci.common.RandomAccessInputStream;
 import loci.formats.FormatException;
 import loci.formats.FormatTools;
 import loci.formats.FormatWriter;
+import loci.formats.ImageTools;
 import loci.formats.meta.MetadataRetrieve;
 
 /**
@@ -298,16 +299,11 @@ public class APNGWriter extends FormatWriter {
     for (int i=0; i<height; i++) {
       deflater.write(0);
       if (interleaved) {
+        System.arraycopy(stream, i * rowLen, rowBuf, 0, rowLen);
         if (littleEndian) {
-          for (int col=0; col<width*sizeC; col++) {
-            int offset = (i * sizeC * width + col) * bytesPerPixel;
-            int pixel = DataTools.bytesToInt(stream, offset,
-              bytesPerPixel, littleEndian);
-            DataTools.unpackBytes(pixel, rowBuf, col * bytesPerPixel,
-              bytesPerPixel, false);
-          }
+          // PNG samples are always big-endian
+          ImageTools.swapBytes(rowBuf, 0, rowLen, bytesPerPixel);
         }
-        else System.arraycopy(stream, i * rowLen, rowBuf, 0, rowLen);
       }
       else {
         int max = (int) Math.pow(2, bytesPerPixel * 8 - 1);
@@ -44,6 +44,13 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 import loci.common.Constants;
 import loci.common.DataTools;
@@ -97,9 +104,16 @@ public class DicomWriter extends FormatWriter implements IExtraMetadataWriter {
   /** Option for turning off TIFF metadata. */
   public static final String TIFF_KEY = "dicom.dual_personality";
 
+  /** Option for setting the number of threads used to compress tiles. */
+  public static final String ENCODE_THREADS_KEY = "dicom.encode_threads";
+
   // see http://dicom.nema.org/medical/dicom/current/output/chtml/part06/chapter_A.html
   private static final String SOP_CLASS_UID_VALUE = "1.2.840.10008.5.1.4.1.1.77.1.6";
 
+  // the Basic Offset Table can only store 32-bit offsets, so is only
+  // written if the uncompressed pixel data is comfortably smaller than 4 GB
+  private static final long MAX_OFFSET_TABLE_BYTES = 0x7fffffffL;
+
   // -- Fields --
 
   private long[] pixelDataLengthPointer;
@@ -127,7 +141,18 @@ public class DicomWriter extends FormatWriter implements IExtraMetadataWriter {
   private boolean bigTiff = false;
   private TiffSaver tiffSaver;
 
-  private Boolean validPixelCount = null;
+  /**
+   * Whether the uncompressed pixel data fits in 4GB. Computed once in
+   * setId, before any tiles are written, so that concurrent tile writes
+   * only read it.
+   */
+  private boolean validPixelCount = true;
+
+  private FileState[] files;
+  private ExecutorService encoder;
+  private Semaphore encodePermits;
+  private int maxPendingFrames;
+  private volatile Throwable encodeError;
 
   // -- Constructor --
 
@@ -191,6 +216,25 @@ public class DicomWriter extends FormatWriter implements IExtraMetadataWriter {
     return true;
   }
 
+  /**
+   * Checks the writer's associated MetadataOptions to see how many
+   * threads should be used to compress tiles.  If the option is not set,
+   * tiles are compressed on the thread that calls saveBytes.
+   * With more than one thread, saveBytes may return before the tile
+   * has been written; any error is reported by a subsequent call to
+   * saveBytes or close.
+   */
+  public int getEncodeThreads() {
+    MetadataOptions options = getMetadataOptions();
+    if (options instanceof DynamicMetadataOptions) {
+      Integer threads = ((DynamicMetadataOptions) options).getInteger(ENCODE_THREADS_KEY, 1);
+      if (threads != null) {
+        return threads;
+      }
+    }
+    return 1;
+  }
+
   // -- IFormatWriter API methods --
 
   @Override
@@ -230,150 +274,68 @@ public class DicomWriter extends FormatWriter implements IExtraMetadataWriter {
   public void saveCompressedBytes(int no, byte[] buf, int x, int y, int w, int h)
     throws FormatException, IOException
   {
-    checkPrecompressedSupport();
+    saveCompressedBytes(series, resolution, no, buf, x, y, w, h);
+  }
+
+  /**
+   * Save a pre-compressed tile to the given series and resolution,
+   * without changing the current series or resolution.
+   * Calls for different tiles, series, or resolutions may be made
+   * from multiple threads concurrently.
+   *
+   * @see #saveCompressedBytes(int, byte[], int, int, int, int)
+   */
+  public void saveCompressedBytes(int pyramid, int res, int no, byte[] buf,
+    int x, int y, int w, int h)
+    throws FormatException, IOException
+  {
+    checkPrecompressedSupport(pyramid);
+    checkEncodeError();
 
     LOGGER.debug("savePrecompressedBytes(series={}, resolution={}, no={}, x={}, y={})",
-      series, resolution, no, x, y);
+      pyramid, res, no, x, y);
 
     MetadataRetrieve r = getMetadataRetrieve();
 
     int bytesPerPixel = FormatTools.getBytesPerPixel(
       FormatTools.pixelTypeFromString(
-      r.getPixelsType(series).toString()));
-    int resolutionIndex = getIndex(series, resolution);
+      r.getPixelsType(pyramid).toString()));
+    if (files == null) {
+      throw new FormatException("Writer not initialized");
+    }
+    int resolutionIndex = getIndex(pyramid, res);
+    FileState file = files[resolutionIndex];
+    checkTile(file, no, x, y, w, h);
 
+    boolean shared = true;
     if (buf.length == 0) {
       LOGGER.warn("Zero-length tile encountered (series={}, resolution={}, no={}, x={}, y={}; creating blank tile",
-        series, resolution, no, x, y);
+        pyramid, res, no, x, y);
       int thisTileWidth = tileWidth[resolutionIndex];
       int thisTileHeight = tileHeight[resolutionIndex];
-      byte[] emptyTile = new byte[thisTileWidth * thisTileHeight * bytesPerPixel * getSamplesPerPixel()];
-
-      if (compression == null || compression.equals(CompressionType.UNCOMPRESSED.getCompression())) {
-        buf = emptyTile;
-      }
-      else {
-        Codec codec = getCodec();
-        CodecOptions options = new CodecOptions();
-        options.width = w;
-        options.height = h;
-        options.channels = getSamplesPerPixel();
-        options.bitsPerSample = bytesPerPixel * 8;
-        options.littleEndian = out.isLittleEndian();
-        options.interleaved = true;
-
-        if (codec instanceof JPEG2000Codec) {
-          options = JPEG2000CodecOptions.getDefaultOptions(options);
-          ((JPEG2000CodecOptions) options).numDecompositionLevels = 0;
-        }
-        buf = codec.compress(emptyTile, options);
-      }
-    }
-
-    // TODO: refactor code shared with saveBytes, e.g. IFD handling?
-
-    boolean first = x == 0 && y == 0;
-    boolean last = x + w == getSizeX() && y + h == getSizeY();
-
-    int width = getSizeX();
-    int height = getSizeY();
-    int sizeZ = r.getPixelsSizeZ(series).getValue().intValue();
+      byte[] emptyTile = new byte[thisTileWidth * thisTileHeight * bytesPerPixel * getSamplesPerPixel(pyramid)];
 
-    int tileCountX = (int) Math.ceil((double) width / tileWidth[resolutionIndex]);
-    int tileCountY = (int) Math.ceil((double) height / tileHeight[resolutionIndex]);
-
-    // the compression type isn't supplied to the writer until
-    // after setId is called, so metadata that indicates or
-    // depends on the compression type needs to be set in
-    // the first call to saveBytes for each file
-    if (first) {
-      out.seek(transferSyntaxPointer[resolutionIndex]);
-      out.writeBytes(getTransferSyntax());
-
-      out.seek(compressionMethodPointer[resolutionIndex]);
-      out.writeBytes(getCompressionMethod());
-
-      ifds[resolutionIndex][no].put(IFD.COMPRESSION, getTIFFCompression().getCode());
-
-      // see https://github.com/ome/bioformats/issues/3856
-      if (getTIFFCompression() == TiffCompression.JPEG) {
-        ifds[resolutionIndex][no].put(IFD.PHOTOMETRIC_INTERPRETATION, PhotoInterp.Y_CB_CR.getCode());
-      }
-
-      out.seek(tileWidthPointer[resolutionIndex]);
-      out.writeShort((short) getTileSizeX());
-      out.seek(tileHeightPointer[resolutionIndex]);
-      out.writeShort((short) getTileSizeY());
-      out.seek(tileCountPointer[resolutionIndex]);
-
-      out.writeBytes(padString(String.valueOf(
-          tileCountX * tileCountY * sizeZ * r.getChannelCount(series))));
-    }
-
-    out.seek(out.length());
-    long start = out.getFilePointer();
-
-    // now write the compressed pixel data
-
-    boolean pad = buf.length % 2 == 1;
-
-    if (first) {
-      DicomTag bot = new DicomTag(ITEM, IMPLICIT);
-      bot.elementLength = 0;
-      writeTag(bot);
-    }
-
-    DicomTag item = new DicomTag(ITEM, IMPLICIT);
-    item.elementLength = buf.length;
-    if (pad) {
-      item.elementLength++;
-    }
-    item.value = buf;
-    writeTag(item);
-    if (pad) {
-      out.writeByte(0);
-    }
-
-    // update the IFD to include this tile
-    int xTiles = (int) Math.ceil((double) getSizeX() / tileWidth[resolutionIndex]);
-    int xTile = x / tileWidth[resolutionIndex];
-    int yTile = y / tileHeight[resolutionIndex];
-    int tileIndex = (yTile * xTiles) + xTile;
-    long[] tileByteCounts = null;
-    long[] tileOffsets = null;
-
-    // IFD is expected to be null if dual personality writing was turned off
-    if (ifds[resolutionIndex][no] != null) {
-      tileByteCounts = (long[]) ifds[resolutionIndex][no].getIFDValue(IFD.TILE_BYTE_COUNTS);
-      tileOffsets = (long[]) ifds[resolutionIndex][no].getIFDValue(IFD.TILE_OFFSETS);
-
-      if (tileByteCounts.length < tileCountX * tileCountY) {
-        long[] newTileByteCounts = new long[tileCountX * tileCountY];
-        long[] newTileOffsets = new long[tileCountX * tileCountY];
-        System.arraycopy(tileByteCounts, 0, newTileByteCounts, 0, tileByteCounts.length);
-        System.arraycopy(tileOffsets, 0, newTileOffsets, 0, tileOffsets.length);
-        tileByteCounts = newTileByteCounts;
-        tileOffsets = newTileOffsets;
-        ifds[resolutionIndex][no].put(IFD.TILE_BYTE_COUNTS, tileByteCounts);
-        ifds[resolutionIndex][no].put(IFD.TILE_OFFSETS, tileOffsets);
-      }
-    }
+      CodecOptions options = new CodecOptions();
+      options.width = w;
+      options.height = h;
+      options.channels = getSamplesPerPixel(pyramid);
+      options.bitsPerSample = bytesPerPixel * 8;
+      options.littleEndian = file.littleEndian;
+      options.interleaved = true;
 
-    if (tileByteCounts != null) {
-      tileByteCounts[tileIndex] = buf.length;
-    }
-    if (tileOffsets != null) {
-      tileOffsets[tileIndex] = out.getFilePointer() - buf.length;
-      if (pad) {
-        tileOffsets[tileIndex]--;
+      Codec codec = getCodec();
+      if (codec instanceof JPEG2000Codec) {
+        options = JPEG2000CodecOptions.getDefaultOptions(options);
+        ((JPEG2000CodecOptions) options).numDecompositionLevels = 0;
       }
+      buf = codec.compress(emptyTile, options);
+      shared = false;
     }
 
-    if (last) {
-      DicomTag end = new DicomTag(SEQUENCE_DELIMITATION_ITEM, IMPLICIT);
-      end.elementLength = 0;
-      writeTag(end);
-    }
+    Frame frame = makeFrame(file, pyramid, no, x, y);
+    frame.data = buf;
+    frame.shared = shared;
+    writeFrame(file, frame);
   }
 
   /**
@@ -384,240 +346,30 @@ public class DicomWriter extends FormatWriter implements IExtraMetadataWriter {
     throws FormatException, IOException
   {
     checkParams(no, buf, x, y, w, h);
+    saveTile(series, resolution, no, buf, x, y, w, h);
+  }
 
-    int resolutionIndex = getIndex(series, resolution);
-    int thisTileWidth = tileWidth[resolutionIndex];
-    int thisTileHeight = tileHeight[resolutionIndex];
-
-    MetadataRetrieve r = getMetadataRetrieve();
-    if (x % thisTileWidth != 0 || y % thisTileHeight != 0 ||
-      (w != thisTileWidth && x + w != getSizeX()) ||
-      (h != thisTileHeight && y + h != getSizeY()))
-    {
-      throw new FormatException("Tile too small, expected " + thisTileWidth + "x" + thisTileHeight +
-        ". Setting the tile size to " + getSizeX() + "x" + getSizeY() + " or smaller may work.");
-    }
-    checkPixelCount(false);
-
-    boolean first = x == 0 && y == 0;
-    boolean last = x + w == getSizeX() && y + h == getSizeY();
-
-    int xTiles = (int) Math.ceil((double) getSizeX() / thisTileWidth);
-    int yTiles = (int) Math.ceil((double) getSizeY() / thisTileHeight);
-    int sizeZ = r.getPixelsSizeZ(series).getValue().intValue();
-
-    // the compression type isn't supplied to the writer until
-    // after setId is called, so metadata that indicates or
-    // depends on the compression type needs to be set in
-    // the first call to saveBytes for each file
-    if (first) {
-      out.seek(transferSyntaxPointer[resolutionIndex]);
-      out.writeBytes(getTransferSyntax());
-
-      out.seek(compressionMethodPointer[resolutionIndex]);
-      out.writeBytes(getCompressionMethod());
-
-      // the corresponding IFD is expected to be null
-      // if dual personality writing is turned off
-      if (writeDualPersonality()) {
-        ifds[resolutionIndex][no].put(IFD.COMPRESSION, getTIFFCompression().getCode());
-
-        // see https://github.com/ome/bioformats/issues/3856
-        if (getTIFFCompression() == TiffCompression.JPEG) {
-          ifds[resolutionIndex][no].put(IFD.PHOTOMETRIC_INTERPRETATION, PhotoInterp.Y_CB_CR.getCode());
-        }
-      }
-
-      out.seek(tileWidthPointer[resolutionIndex]);
-      out.writeShort((short) getTileSizeX());
-      out.seek(tileHeightPointer[resolutionIndex]);
-      out.writeShort((short) getTileSizeY());
-      out.seek(tileCountPointer[resolutionIndex]);
-
-      out.writeBytes(padString(String.valueOf(
-          xTiles * yTiles * sizeZ * r.getChannelCount(series))));
-    }
-
-    // TILED_SPARSE, so the tile coordinates must be written
-    if (!isReallySequential()) {
-      Length physicalX = r.getPixelsPhysicalSizeX(series);
-      Length physicalY = r.getPixelsPhysicalSizeY(series);
-
-      for (int p=0; p<planeOffsets[resolutionIndex].length; p++) {
-        if (!planeOffsets[resolutionIndex][p].written) {
-          PlaneOffset offset = planeOffsets[resolutionIndex][p];
-          offset.written = true;
-
-          int[] zct = getZCTCoords(no);
-
-          out.seek(offset.cOffset);
-          out.writeBytes(padString(String.valueOf(zct[1])));
-          out.seek(offset.xOffset);
-          out.writeInt(x + 1);
-          out.seek(offset.yOffset);
-          out.writeInt(y + 1);
-
-          out.seek(offset.dimensionIndex);
-          out.writeInt(x + 1);
-          out.writeInt(y + 1);
-
-          out.seek(offset.zOffset);
-          out.writeBytes(padString(String.valueOf(zct[0])));
-          break;
-        }
-      }
-    }
-
-    int bytesPerPixel = FormatTools.getBytesPerPixel(
-      FormatTools.pixelTypeFromString(
-      r.getPixelsType(series).toString()));
-
-    out.seek(out.length());
-    long start = out.getFilePointer();
-
-    byte[] paddedBuf = null;
-
-    int thisTilePixels = thisTileWidth * thisTileHeight;
-
-    // pad the last row and column of tiles to match specified tile size
-    if ((x + w == getSizeX() && w < thisTileWidth) ||
-      (y + h == getSizeY() && h < thisTileHeight))
-    {
-      if (interleaved || getSamplesPerPixel() == 1) {
-        int srcRowLen = w * bytesPerPixel * getSamplesPerPixel();
-        int destRowLen = thisTileWidth * bytesPerPixel * getSamplesPerPixel();
-        paddedBuf = new byte[thisTileHeight * destRowLen];
-
-        for (int row=0; row<h; row++) {
-          System.arraycopy(buf, row * srcRowLen, paddedBuf, row * destRowLen, srcRowLen);
-        }
-      }
-      else {
-        int srcRowLen = w * bytesPerPixel;
-        int destRowLen = thisTileWidth * bytesPerPixel;
-        paddedBuf = new byte[thisTileHeight * destRowLen * getSamplesPerPixel()];
-
-        for (int c=0; c<getSamplesPerPixel(); c++) {
-          for (int row=0; row<h; row++) {
-            int src = srcRowLen * ((c * h) + row);
-            int dest = destRowLen * ((c * thisTileHeight) + row);
-            System.arraycopy(buf, src, paddedBuf, dest, srcRowLen);
-          }
-        }
-      }
-    }
-    else {
-      paddedBuf = buf;
-    }
-    if (!isInterleaved()) {
-      byte[] interleavedBuf = new byte[paddedBuf.length];
-      for (int c=0; c<getSamplesPerPixel(); c++) {
-        for (int px=0; px<thisTilePixels; px++) {
-          for (int b=0; b<bytesPerPixel; b++) {
-            interleavedBuf[px * getSamplesPerPixel() * bytesPerPixel + c * bytesPerPixel + b] = paddedBuf[c * thisTilePixels * bytesPerPixel + px * bytesPerPixel + b];
-          }
-        }
-      }
-
-      paddedBuf = interleavedBuf;
-    }
-
-    // now we actually compress and write the pixel data
-
-    // we need to know the tile index to write save the tile offset
-    // in the IFD
-    // this tries to calculate the index without assuming sequential tile
-    // writing, but maybe there is a better way to calculate this?
-    int xTile = x / tileWidth[resolutionIndex];
-    int yTile = y / tileHeight[resolutionIndex];
-    int tileIndex = (yTile * xTiles) + xTile;
-    long[] tileByteCounts = null;
-    long[] tileOffsets = null;
-    // IFD is expected to be null if dual personality writing was turned off
-    if (ifds[resolutionIndex][no] != null) {
-      tileByteCounts = (long[]) ifds[resolutionIndex][no].getIFDValue(IFD.TILE_BYTE_COUNTS);
-      tileOffsets = (long[]) ifds[resolutionIndex][no].getIFDValue(IFD.TILE_OFFSETS);
-
-      if (tileByteCounts.length < xTiles * yTiles) {
-        long[] newTileByteCounts = new long[xTiles * yTiles];
-        long[] newTileOffsets = new long[xTiles * yTiles];
-        System.arraycopy(tileByteCounts, 0, newTileByteCounts, 0, tileByteCounts.length);
-        System.arraycopy(tileOffsets, 0, newTileOffsets, 0, tileOffsets.length);
-        tileByteCounts = newTileByteCounts;
-        tileOffsets = newTileOffsets;
-        ifds[resolutionIndex][no].put(IFD.TILE_BYTE_COUNTS, tileByteCounts);
-        ifds[resolutionIndex][no].put(IFD.TILE_OFFSETS, tileOffsets);
-      }
-    }
-
-    if (compression == null || compression.equals(CompressionType.UNCOMPRESSED.getCompression())) {
-      long tileOffset = out.getFilePointer();
-      out.write(paddedBuf);
-      if (paddedBuf.length % 2 == 1) {
-        out.writeByte(0);
-      }
-
-      long length = out.getFilePointer() - start;
-      pixelDataSize[resolutionIndex] += (int) length;
-
-      out.seek(pixelDataLengthPointer[resolutionIndex]);
-      out.writeInt(pixelDataSize[resolutionIndex]);
-
-      if (tileByteCounts != null) {
-        tileByteCounts[tileIndex] = length;
-      }
-      if (tileOffsets != null) {
-        tileOffsets[tileIndex] = tileOffset;
-      }
+  /**
+   * Save a tile to the given series and resolution, without changing
+   * the current series or resolution.
+   * Calls for different tiles, series, or resolutions may be made
+   * from multiple threads concurrently.
+   *
+   * @see #saveBytes(int, byte[], int, int, int, int)
+   */
+  public void saveBytes(int pyramid, int res, int no, byte[] buf,
+    int x, int y, int w, int h)
+    throws FormatException, IOException
+  {
+    if (buf == null) {
+      throw new FormatException("Buffer cannot be null.");
     }
-    else {
-      Codec codec = getCodec();
-      CodecOptions options = new CodecOptions(getCodecOptions());
-      options.width = tileWidth[resolutionIndex];
-      options.height = tileHeight[resolutionIndex];
-      options.channels = getSamplesPerPixel();
-      options.bitsPerSample = bytesPerPixel * 8;
-      options.littleEndian = out.isLittleEndian();
-      options.interleaved = true;
-
-      if (codec instanceof JPEG2000Codec) {
-        options = JPEG2000CodecOptions.getDefaultOptions(options);
-        ((JPEG2000CodecOptions) options).numDecompositionLevels = 0;
-      }
-      byte[] compressed = codec.compress(paddedBuf, options);
-      boolean pad = compressed.length % 2 == 1;
-
-      if (first) {
-        DicomTag bot = new DicomTag(ITEM, IMPLICIT);
-        bot.elementLength = 0;
-        writeTag(bot);
-      }
-
-      if (tileByteCounts != null) {
-        tileByteCounts[tileIndex] = compressed.length;
-      }
-
-      DicomTag item = new DicomTag(ITEM, IMPLICIT);
-      item.elementLength = compressed.length;
-      if (pad) {
-        item.elementLength++;
-      }
-      item.value = compressed;
-      writeTag(item);
-      if (tileOffsets != null) {
-        tileOffsets[tileIndex] = out.getFilePointer() - compressed.length;
-      }
-      if (pad) {
-        out.writeByte(0);
-      }
-
-      if (last) {
-        DicomTag end = new DicomTag(SEQUENCE_DELIMITATION_ITEM, IMPLICIT);
-        end.elementLength = 0;
-        writeTag(end);
-      }
+    if (files == null) {
+      throw new FormatException("Writer not initialized");
     }
-
+    FileState file = files[getIndex(pyramid, res)];
+    checkTile(file, no, x, y, w, h);
+    saveTile(pyramid, res, no, buf, x, y, w, h);
   }
 
   /* @see loci.formats.IFormatWriter#canDoStacks() */
@@ -676,6 +428,7 @@ public class DicomWriter extends FormatWriter implements IExtraMetadataWriter {
     compressionMethodPointer = new long[totalFiles];
     nextIFDPointer = new long[totalFiles];
     ifds = new IFD[totalFiles][];
+    files = new FileState[totalFiles];
 
     planeOffsets = new PlaneOffset[totalFiles][];
     tileWidth = new int[totalFiles];
@@ -747,6 +500,14 @@ public class DicomWriter extends FormatWriter implements IExtraMetadataWriter {
 
         openFile(series, resolution);
 
+        FileState file = files[resolutionIndex];
+        file.pyramid = pyramid;
+        file.resolution = res;
+        file.sizeX = width;
+        file.sizeY = height;
+        file.planeCount = getPlaneCount(pyramid);
+        file.rawPixelBytes = (long) width * height * bytesPerPixel * nChannels * file.planeCount;
+
         tileWidth[resolutionIndex] = getTileSizeX();
         if (fullImage || tileWidth[resolutionIndex] <= 0) {
           tileWidth[resolutionIndex] = width;
@@ -1365,13 +1126,25 @@ public class DicomWriter extends FormatWriter implements IExtraMetadataWriter {
         }
       }
     }
+    encodeError = null;
+
     setSeries(0);
   }
 
   /* @see loci.formats.FormatWriter#close() */
   @Override
   public void close() throws IOException {
-    if (writeDualPersonality()) {
+    shutdownEncoder();
+    if (files != null) {
+      for (FileState file : files) {
+        if (file != null && file.stream != null) {
+          finishFrames(file);
+        }
+      }
+    }
+    Throwable error = encodeError;
+
+    if (writeDualPersonality() && files != null) {
       // write IFDs to the end of each file
 
       MetadataRetrieve r = getMetadataRetrieve();
@@ -1406,9 +1179,20 @@ public class DicomWriter extends FormatWriter implements IExtraMetadataWriter {
       }
     }
 
+    if (files != null) {
+      for (FileState file : files) {
+        if (file != null && file.stream != null) {
+          file.stream.close();
+        }
+      }
+    }
+    out = null;
+
     super.close();
 
     uids = null;
+    files = null;
+    encodeError = null;
     pixelDataSize = null;
     pixelDataLengthPointer = null;
     transferSyntaxPointer = null;
@@ -1417,7 +1201,7 @@ public class DicomWriter extends FormatWriter implements IExtraMetadataWriter {
     nextIFDPointer = null;
     ifds = null;
     tiffSaver = null;
-    validPixelCount = null;
+    validPixelCount = true;
     tileWidthPointer = null;
     tileHeightPointer = null;
     tileCountPointer = null;
@@ -1425,6 +1209,10 @@ public class DicomWriter extends FormatWriter implements IExtraMetadataWriter {
     tagProviders.clear();
 
     // intentionally don't reset tile dimensions
+
+    if (error != null) {
+      throw new IOException("Failed to encode tile", error);
+    }
   }
 
   @Override
@@ -1482,6 +1270,520 @@ public class DicomWriter extends FormatWriter implements IExtraMetadataWriter {
   }
 
   // -- Helper methods --
+  /**
+   * Pad and interleave the given tile, then either compress and write it
+   * immediately or hand it off to the encoder pool.
+   */
+  private void saveTile(int pyramid, int res, int no, byte[] buf,
+    int x, int y, int w, int h)
+    throws FormatException, IOException
+  {
+    checkEncodeError();
+
+    int resolutionIndex = getIndex(pyramid, res);
+    FileState file = files[resolutionIndex];
+    int thisTileWidth = tileWidth[resolutionIndex];
+    int thisTileHeight = tileHeight[resolutionIndex];
+
+    if (x % thisTileWidth != 0 || y % thisTileHeight != 0 ||
+      (w != thisTileWidth && x + w != file.sizeX) ||
+      (h != thisTileHeight && y + h != file.sizeY))
+    {
+      throw new FormatException("Tile too small, expected " + thisTileWidth + "x" + thisTileHeight +
+        ". Setting the tile size to " + file.sizeX + "x" + file.sizeY + " or smaller may work.");
+    }
+    checkPixelCount(false);
+
+    MetadataRetrieve r = getMetadataRetrieve();
+    int samples = getSamplesPerPixel(pyramid);
+    int bytesPerPixel = FormatTools.getBytesPerPixel(
+      FormatTools.pixelTypeFromString(
+      r.getPixelsType(pyramid).toString()));
+
+    byte[] paddedBuf = null;
+
+    int thisTilePixels = thisTileWidth * thisTileHeight;
+
+    // pad the last row and column of tiles to match specified tile size
+    if ((x + w == file.sizeX && w < thisTileWidth) ||
+      (y + h == file.sizeY && h < thisTileHeight))
+    {
+      if (interleaved || samples == 1) {
+        int srcRowLen = w * bytesPerPixel * samples;
+        int destRowLen = thisTileWidth * bytesPerPixel * samples;
+        paddedBuf = new byte[thisTileHeight * destRowLen];
+
+        for (int row=0; row<h; row++) {
+          System.arraycopy(buf, row * srcRowLen, paddedBuf, row * destRowLen, srcRowLen);
+        }
+      }
+      else {
+        int srcRowLen = w * bytesPerPixel;
+        int destRowLen = thisTileWidth * bytesPerPixel;
+        paddedBuf = new byte[thisTileHeight * destRowLen * samples];
+
+        for (int c=0; c<samples; c++) {
+          for (int row=0; row<h; row++) {
+            int src = srcRowLen * ((c * h) + row);
+            int dest = destRowLen * ((c * thisTileHeight) + row);
+            System.arraycopy(buf, src, paddedBuf, dest, srcRowLen);
+          }
+        }
+      }
+    }
+    else {
+      paddedBuf = buf;
+    }
+    if (!isInterleaved()) {
+      byte[] interleavedBuf = new byte[paddedBuf.length];
+      for (int c=0; c<samples; c++) {
+        for (int px=0; px<thisTilePixels; px++) {
+          for (int b=0; b<bytesPerPixel; b++) {
+            interleavedBuf[px * samples * bytesPerPixel + c * bytesPerPixel + b] = paddedBuf[c * thisTilePixels * bytesPerPixel + px * bytesPerPixel + b];
+          }
+        }
+      }
+
+      paddedBuf = interleavedBuf;
+    }
+
+    Frame frame = makeFrame(file, pyramid, no, x, y);
+
+    if (!isEncapsulated()) {
+      frame.data = paddedBuf;
+      frame.shared = paddedBuf == buf;
+      writeFrame(file, frame);
+      return;
+    }
+
+    // now we actually compress and write the pixel data
+
+    Codec codec = getCodec();
+    CodecOptions options = new CodecOptions(getCodecOptions());
+    options.width = thisTileWidth;
+    options.height = thisTileHeight;
+    options.channels = samples;
+    options.bitsPerSample = bytesPerPixel * 8;
+    options.littleEndian = file.littleEndian;
+    options.interleaved = true;
+
+    if (codec instanceof JPEG2000Codec) {
+      options = JPEG2000CodecOptions.getDefaultOptions(options);
+      ((JPEG2000CodecOptions) options).numDecompositionLevels = 0;
+    }
+
+    ExecutorService pool = getEncoder();
+    Semaphore permits = encodePermits;
+    if (pool == null) {
+      frame.data = codec.compress(paddedBuf, options);
+      writeFrame(file, frame);
+      return;
+    }
+
+    // the caller is free to reuse its buffer as soon as we return
+    if (paddedBuf == buf) {
+      paddedBuf = buf.clone();
+    }
+    waitForPendingFrames(file);
+    try {
+      permits.acquire();
+    }
+    catch (InterruptedException e) {
+      throw new IOException("Interrupted while waiting for tile encoder", e);
+    }
+    synchronized (file) {
+      file.encoding++;
+    }
+    try {
+      pool.execute(new EncodeTask(file, frame, codec, paddedBuf, options, permits));
+    }
+    catch (RejectedExecutionException e) {
+      encodeFinished(file, permits);
+      throw new IOException("Could not schedule tile encoding", e);
+    }
+  }
+
+  /**
+   * Wait while too many TILED_FULL frames are held for reordering and tiles
+   * that may fill the gap are still being encoded.  Frames that are held
+   * because the caller wrote them out of order are not waited for, as only
+   * the caller can supply the missing tiles.
+   */
+  private void waitForPendingFrames(FileState file) throws IOException {
+    synchronized (file) {
+      while (file.pending.size() >= maxPendingFrames && file.encoding > 0) {
+        try {
+          file.wait();
+        }
+        catch (InterruptedException e) {
+          throw new IOException("Interrupted while waiting for tile encoder", e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Record that a tile handed to the encoder pool is done, and wake any
+   * caller waiting on held frames.
+   */
+  private void encodeFinished(FileState file, Semaphore permits) {
+    synchronized (file) {
+      file.encoding--;
+      file.notifyAll();
+    }
+    permits.release();
+  }
+
+  /**
+   * Check that the given tile lies within the given file.
+   */
+  private void checkTile(FileState file, int no, int x, int y, int w, int h)
+    throws FormatException
+  {
+    if (file == null) {
+      throw new FormatException("Writer not initialized");
+    }
+    if (no < 0 || no >= file.planeCount) {
+      throw new FormatException(String.format(
+        "Plane index:%d must be >= 0 and < %d", no, file.planeCount));
+    }
+    if (x < 0 || y < 0 || w <= 0 || h <= 0 ||
+      x + w > file.sizeX || y + h > file.sizeY)
+    {
+      throw new FormatException(String.format(
+        "Tile (x=%d, y=%d, w=%d, h=%d) is outside the %dx%d image",
+        x, y, w, h, file.sizeX, file.sizeY));
+    }
+  }
+
+  /**
+   * Create a Frame representing the given tile.  If tiles are being written
+   * as TILED_FULL, the frame index is the position of the tile within
+   * the file; otherwise, frames are written in the order they are received.
+   */
+  private Frame makeFrame(FileState file, int pyramid, int no, int x, int y) {
+    Frame frame = new Frame();
+    frame.no = no;
+    frame.x = x;
+    frame.y = y;
+    int xTiles = (int) Math.ceil((double) file.sizeX / tileWidth[file.index]);
+    int yTiles = (int) Math.ceil((double) file.sizeY / tileHeight[file.index]);
+    frame.tileIndex = (y / tileHeight[file.index]) * xTiles + (x / tileWidth[file.index]);
+    frame.index = -1;
+    if (isReallySequential(pyramid)) {
+      frame.index = no * xTiles * yTiles + frame.tileIndex;
+    }
+    return frame;
+  }
+
+  /**
+   * Write the given frame to its file.
+   * TILED_FULL frames must be stored in order, so a frame that arrives
+   * before its predecessors is held until the gap has been filled.
+   * When tiles are compressed by the encoder pool, callers wait in
+   * {@link #waitForPendingFrames} so that the number of held frames stays
+   * bounded; a caller that writes tiles out of order still has every early
+   * tile held in memory until the missing tiles are written.
+   */
+  private void writeFrame(FileState file, Frame frame)
+    throws FormatException, IOException
+  {
+    synchronized (file) {
+      if (frame.index < 0) {
+        writeFrameData(file, frame);
+        return;
+      }
+      if (frame.index != file.nextFrame) {
+        if (frame.shared) {
+          frame.data = frame.data.clone();
+          frame.shared = false;
+        }
+        file.pending.put(frame.index, frame);
+        return;
+      }
+      writeFrameData(file, frame);
+      file.nextFrame++;
+
+      Frame next = file.pending.remove(file.nextFrame);
+      while (next != null) {
+        writeFrameData(file, next);
+        file.nextFrame++;
+        next = file.pending.remove(file.nextFrame);
+      }
+    }
+  }
+
+  /**
+   * Write the given frame at the end of the pixel data, and record its
+   * position in the offset table and IFD.
+   * Must be called while holding the lock on the file.
+   */
+  private void writeFrameData(FileState file, Frame frame)
+    throws FormatException, IOException
+  {
+    RandomAccessOutputStream stream = file.stream;
+    int resolutionIndex = file.index;
+    MetadataRetrieve r = getMetadataRetrieve();
+
+    int xTiles = (int) Math.ceil((double) file.sizeX / tileWidth[resolutionIndex]);
+    int yTiles = (int) Math.ceil((double) file.sizeY / tileHeight[resolutionIndex]);
+
+    // the compression type isn't supplied to the writer until
+    // after setId is called, so metadata that indicates or
+    // depends on the compression type needs to be set when
+    // the first tile in each file is written
+    if (file.framesWritten == 0) {
+      stream.seek(transferSyntaxPointer[resolutionIndex]);
+      stream.writeBytes(getTransferSyntax());
+
+      stream.seek(compressionMethodPointer[resolutionIndex]);
+      stream.writeBytes(getCompressionMethod());
+
+      // the corresponding IFDs are expected to be null
+      // if dual personality writing is turned off
+      for (IFD ifd : ifds[resolutionIndex]) {
+        if (ifd == null) {
+          continue;
+        }
+        ifd.put(IFD.COMPRESSION, getTIFFCompression().getCode());
+
+        // see https://github.com/ome/bioformats/issues/3856
+        if (getTIFFCompression() == TiffCompression.JPEG) {
+          ifd.put(IFD.PHOTOMETRIC_INTERPRETATION, PhotoInterp.Y_CB_CR.getCode());
+        }
+      }
+
+      stream.seek(tileWidthPointer[resolutionIndex]);
+      stream.writeShort((short) tileWidth[resolutionIndex]);
+      stream.seek(tileHeightPointer[resolutionIndex]);
+      stream.writeShort((short) tileHeight[resolutionIndex]);
+      stream.seek(tileCountPointer[resolutionIndex]);
+
+      file.frameCount = xTiles * yTiles * file.planeCount;
+      stream.writeBytes(padString(String.valueOf(
+          xTiles * yTiles * r.getPixelsSizeZ(file.pyramid).getValue().intValue() *
+          r.getChannelCount(file.pyramid))));
+    }
+
+    // TILED_SPARSE, so the tile coordinates must be written
+    if (frame.index < 0) {
+      for (int p=0; p<planeOffsets[resolutionIndex].length; p++) {
+        if (!planeOffsets[resolutionIndex][p].written) {
+          PlaneOffset offset = planeOffsets[resolutionIndex][p];
+          offset.written = true;
+
+          int[] zct = getZCTCoords(file.pyramid, frame.no);
+
+          stream.seek(offset.cOffset);
+          stream.writeBytes(padString(String.valueOf(zct[1])));
+          stream.seek(offset.xOffset);
+          stream.writeInt(frame.x + 1);
+          stream.seek(offset.yOffset);
+          stream.writeInt(frame.y + 1);
+
+          stream.seek(offset.dimensionIndex);
+          stream.writeInt(frame.x + 1);
+          stream.writeInt(frame.y + 1);
+
+          stream.seek(offset.zOffset);
+          stream.writeBytes(padString(String.valueOf(zct[0])));
+          break;
+        }
+      }
+    }
+
+    stream.seek(stream.length());
+
+    byte[] data = frame.data;
+    boolean pad = data.length % 2 == 1;
+    long tileOffset = 0;
+    long tileLength = data.length;
+
+    if (!isEncapsulated()) {
+      tileOffset = stream.getFilePointer();
+      stream.write(data);
+      if (pad) {
+        stream.writeByte(0);
+        tileLength++;
+      }
+
+      pixelDataSize[resolutionIndex] += (int) tileLength;
+
+      stream.seek(pixelDataLengthPointer[resolutionIndex]);
+      stream.writeInt(pixelDataSize[resolutionIndex]);
+    }
+    else {
+      if (file.framesWritten == 0) {
+        // reserve space for the Basic Offset Table if we can be reasonably
+        // sure that all offsets will fit in 32 bits
+        // the table is filled in when the writer is closed
+        int tableLength = 0;
+        if (frame.index >= 0 && file.rawPixelBytes < MAX_OFFSET_TABLE_BYTES) {
+          tableLength = file.frameCount * 4;
+          file.frameOffsets = new long[file.frameCount];
+        }
+        writeItemTag(stream, ITEM, tableLength);
+        file.offsetTablePointer = stream.getFilePointer();
+        stream.write(new byte[tableLength]);
+        file.firstFragment = stream.getFilePointer();
+      }
+
+      if (file.frameOffsets != null && file.framesWritten < file.frameOffsets.length) {
+        file.frameOffsets[file.framesWritten] = stream.getFilePointer() - file.firstFragment;
+      }
+
+      writeItemTag(stream, ITEM, pad ? data.length + 1 : data.length);
+      tileOffset = stream.getFilePointer();
+      stream.write(data);
+      if (pad) {
+        stream.writeByte(0);
+      }
+    }
+    file.framesWritten++;
+
+    // update the IFD to include this tile
+    // IFD is expected to be null if dual personality writing was turned off
+    IFD ifd = ifds[resolutionIndex][frame.no];
+    if (ifd != null) {
+      long[] tileByteCounts = (long[]) ifd.getIFDValue(IFD.TILE_BYTE_COUNTS);
+      long[] tileOffsets = (long[]) ifd.getIFDValue(IFD.TILE_OFFSETS);
+
+      if (tileByteCounts.length < xTiles * yTiles) {
+        long[] newTileByteCounts = new long[xTiles * yTiles];
+        long[] newTileOffsets = new long[xTiles * yTiles];
+        System.arraycopy(tileByteCounts, 0, newTileByteCounts, 0, tileByteCounts.length);
+        System.arraycopy(tileOffsets, 0, newTileOffsets, 0, tileOffsets.length);
+        tileByteCounts = newTileByteCounts;
+        tileOffsets = newTileOffsets;
+        ifd.put(IFD.TILE_BYTE_COUNTS, tileByteCounts);
+        ifd.put(IFD.TILE_OFFSETS, tileOffsets);
+      }
+
+      tileByteCounts[frame.tileIndex] = tileLength;
+      tileOffsets[frame.tileIndex] = tileOffset;
+    }
+
+    if (isEncapsulated() && file.framesWritten == file.frameCount) {
+      writeItemTag(stream, SEQUENCE_DELIMITATION_ITEM, 0);
+      file.sequenceEnded = true;
+    }
+  }
+
+  /**
+   * Write any frames that are still pending, terminate the pixel data,
+   * and fill in the Basic Offset Table.
+   */
+  private void finishFrames(FileState file) throws IOException {
+    synchronized (file) {
+      try {
+        if (!file.pending.isEmpty()) {
+          LOGGER.warn("{} tile(s) missing from series={}, resolution={}; " +
+            "writing {} remaining tile(s) out of order",
+            file.frameCount - file.framesWritten - file.pending.size(),
+            file.pyramid, file.resolution, file.pending.size());
+          // tiles that were never written are not in the offset table
+          file.frameOffsets = null;
+          for (Frame frame : file.pending.values()) {
+            writeFrameData(file, frame);
+          }
+          file.pending.clear();
+        }
+      }
+      catch (FormatException e) {
+        throw new IOException(e);
+      }
+
+      RandomAccessOutputStream stream = file.stream;
+      if (isEncapsulated() && file.framesWritten > 0 && !file.sequenceEnded) {
+        stream.seek(stream.length());
+        writeItemTag(stream, SEQUENCE_DELIMITATION_ITEM, 0);
+        file.sequenceEnded = true;
+      }
+
+      if (file.frameOffsets != null) {
+        if (file.framesWritten == file.frameOffsets.length &&
+          file.frameOffsets[file.frameOffsets.length - 1] <= 0xffffffffL)
+        {
+          stream.seek(file.offsetTablePointer);
+          for (long offset : file.frameOffsets) {
+            stream.writeInt((int) offset);
+          }
+        }
+        else {
+          LOGGER.warn("Could not fill in Basic Offset Table for series={}, resolution={}",
+            file.pyramid, file.resolution);
+        }
+      }
+    }
+  }
+
+  /**
+   * Write an item or delimitation tag header directly to the given stream.
+   */
+  private void writeItemTag(RandomAccessOutputStream stream,
+    DicomAttribute attribute, int length)
+    throws IOException
+  {
+    int tagCode = attribute.getTag();
+    stream.writeShort((short) ((tagCode & 0xffff0000) >> 16));
+    stream.writeShort((short) (tagCode & 0xffff));
+    stream.writeInt(length);
+  }
+
+  private boolean isEncapsulated() {
+    return compression != null &&
+      !compression.equals(CompressionType.UNCOMPRESSED.getCompression());
+  }
+
+  /**
+   * @throws IOException if a tile previously handed to the encoder pool
+   *  could not be compressed or written
+   */
+  private void checkEncodeError() throws IOException {
+    Throwable t = encodeError;
+    if (t != null) {
+      throw new IOException("Failed to encode tile", t);
+    }
+  }
+
+  /**
+   * @return the pool used to compress tiles, or null if tiles should be
+   *  compressed on the calling thread
+   */
+  private synchronized ExecutorService getEncoder() {
+    if (encoder == null) {
+      int threads = getEncodeThreads();
+      if (threads > 1) {
+        encoder = Executors.newFixedThreadPool(threads);
+        encodePermits = new Semaphore(threads * 2);
+        maxPendingFrames = threads * 2;
+      }
+    }
+    return encoder;
+  }
+
+  /**
+   * Wait for all tiles handed to the encoder pool to be written.
+   */
+  private void shutdownEncoder() throws IOException {
+    if (encoder == null) {
+      return;
+    }
+    encoder.shutdown();
+    try {
+      while (!encoder.awaitTermination(1, TimeUnit.MINUTES)) {
+        LOGGER.debug("Waiting for tile encoding to finish");
+      }
+    }
+    catch (InterruptedException e) {
+      throw new IOException("Interrupted while waiting for tile encoding", e);
+    }
+    finally {
+      encoder = null;
+      encodePermits = null;
+    }
+  }
+
 
   private int getStoredLength(DicomTag tag) {
     if (tag.vr == SQ) {
@@ -1791,11 +2093,22 @@ public class DicomWriter extends FormatWriter implements IExtraMetadataWriter {
       // filename for this series/resolution
       return;
     }
-    if (out != null) {
-      out.close();
+    // keep every file open, so that tiles can be written to
+    // any series and resolution without reopening
+    int index = getIndex(pyramid, res);
+    if (files[index] == null) {
+      files[index] = new FileState();
+      files[index].index = index;
     }
     String filename = getFilename(pyramid, res);
+    if (files[index].stream != null) {
+      out = files[index].stream;
+      tiffSaver = new TiffSaver(out, filename);
+      tiffSaver.setBigTiff(bigTiff);
+      return;
+    }
     out = new RandomAccessOutputStream(filename);
+    files[index].stream = out;
     tiffSaver = new TiffSaver(out, filename);
     tiffSaver.setBigTiff(bigTiff);
 
@@ -1809,6 +2122,7 @@ public class DicomWriter extends FormatWriter implements IExtraMetadataWriter {
     }
 
     out.order(littleEndian);
+    files[index].littleEndian = littleEndian;
     if (out.length() == 0) {
       writeHeader();
     }
@@ -1922,6 +2236,10 @@ public class DicomWriter extends FormatWriter implements IExtraMetadataWriter {
   }
 
   private int[] getZCTCoords(int no) {
+    return getZCTCoords(series, no);
+  }
+
+  private int[] getZCTCoords(int series, int no) {
     MetadataRetrieve retrieve = getMetadataRetrieve();
     DimensionOrder order = retrieve.getPixelsDimensionOrder(series);
     int sizeC = retrieve.getChannelCount(series);
@@ -1931,6 +2249,10 @@ public class DicomWriter extends FormatWriter implements IExtraMetadataWriter {
   }
 
   private boolean isReallySequential() {
+    return isReallySequential(series);
+  }
+
+  private boolean isReallySequential(int series) {
     MetadataRetrieve retrieve = getMetadataRetrieve();
     int sizeC = retrieve.getChannelCount(series);
     int sizeT = retrieve.getPixelsSizeT(series).getValue();
@@ -2089,20 +2411,33 @@ public class DicomWriter extends FormatWriter implements IExtraMetadataWriter {
    *
    * @throws UnsupportedOperationException if pre-compressed tiles are not supported
    */
-  private void checkPrecompressedSupport() {
+  private void checkPrecompressedSupport(int series) {
     // allows both JPEG and JPEG-2000
     if (compression == null || compression.equals(CompressionType.UNCOMPRESSED.getCompression())) {
       throw new UnsupportedOperationException("Pre-compressed tiles not supported for compression: " + compression);
     }
-    if (!isReallySequential()) {
+    if (!isReallySequential(series)) {
       throw new UnsupportedOperationException("Pre-compressed tiles not supported for TILED_SPARSE");
     }
   }
 
   private void checkPixelCount(boolean warn) throws FormatException {
-    if ((validPixelCount != null && validPixelCount) || getCodec() != null) {
+    if (warn) {
+      validPixelCount = computePixelCountValid();
+    }
+    if (validPixelCount || getCodec() != null) {
       return;
     }
+    if (warn) {
+      LOGGER.warn("More than 4GB of pixel data, compression will need to be used");
+    }
+    else {
+      throw new FormatException("Cannot write more than 4GB of uncompressed pixel data. " +
+        "Specify a compression type instead.");
+    }
+  }
+
+  private boolean computePixelCountValid() {
     MetadataRetrieve r = getMetadataRetrieve();
     for (int pyramid=0; pyramid<r.getImageCount(); pyramid++) {
       long pixels = (long) getPlaneCount(pyramid) * getSamplesPerPixel(pyramid);
@@ -2113,18 +2448,98 @@ public class DicomWriter extends FormatWriter implements IExtraMetadataWriter {
       pixels *= bpp;
 
       if (pixels > Math.pow(2, 32)) {
-        validPixelCount = false;
-        if (warn) {
-          LOGGER.warn("More than 4GB of pixel data, compression will need to be used");
-        }
-        else {
-          throw new FormatException("Cannot write more than 4GB of uncompressed pixel data. " +
-            "Specify a compression type instead.");
-        }
+        return false;
       }
     }
-    if (validPixelCount == null) {
-      validPixelCount = true;
+    return true;
+  }
+
+  /**
+   * State for a single output file (one series and resolution).
+   * Access to the stream and to all mutable fields must be synchronized
+   * on the FileState object.
+   */
+  class FileState {
+    public RandomAccessOutputStream stream;
+    public boolean littleEndian;
+    public int index;
+    public int pyramid;
+    public int resolution;
+    public int sizeX;
+    public int sizeY;
+    public int planeCount;
+    public long rawPixelBytes;
+
+    public int frameCount;
+    public int framesWritten = 0;
+    public int nextFrame = 0;
+    public boolean sequenceEnded = false;
+
+    /** TILED_FULL frames that are waiting for preceding frames. */
+    public SortedMap<Integer, Frame> pending = new TreeMap<Integer, Frame>();
+
+    /** Tiles handed to the encoder pool that have not been written yet. */
+    public int encoding = 0;
+
+    public long offsetTablePointer;
+    public long firstFragment;
+    public long[] frameOffsets;
+  }
+
+  /**
+   * A single tile, as it will be stored in the pixel data.
+   */
+  class Frame {
+    public int no;
+    public int x;
+    public int y;
+    public int tileIndex;
+    /** Position of this frame in the file, or -1 for TILED_SPARSE. */
+    public int index;
+    public byte[] data;
+    /** Whether or not data is owned by the caller of saveBytes. */
+    public boolean shared;
+  }
+
+  /**
+   * Compresses a single tile on the encoder pool, then writes it.
+   */
+  class EncodeTask implements Runnable {
+    private FileState file;
+    private Frame frame;
+    private Codec codec;
+    private byte[] tile;
+    private CodecOptions options;
+    private Semaphore permits;
+
+    public EncodeTask(FileState file, Frame frame, Codec codec, byte[] tile,
+      CodecOptions options, Semaphore permits)
+    {
+      this.file = file;
+      this.frame = frame;
+      this.codec = codec;
+      this.tile = tile;
+      this.options = options;
+      this.permits = permits;
+    }
+
+    @Override
+    public void run() {
+      try {
+        if (encodeError == null) {
+          frame.data = codec.compress(tile, options);
+          tile = null;
+          writeFrame(file, frame);
+        }
+      }
+      catch (FormatException | IOException | RuntimeException e) {
+        LOGGER.debug("Failed to encode tile (no={}, x={}, y={})",
+          frame.no, frame.x, frame.y, e);
+        encodeError = e;
+      }
+      finally {
+        encodeFinished(file, permits);
+      }
     }
   }
 
@@ -33,21 +33,98 @@
 package loci.formats.out;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import loci.common.DataTools;
 import loci.formats.FormatException;
 import loci.formats.FormatTools;
 import loci.formats.FormatWriter;
 import loci.formats.codec.CompressionType;
 import loci.formats.codec.JPEG2000Codec;
 import loci.formats.codec.JPEG2000CodecOptions;
+import loci.formats.in.DynamicMetadataOptions;
+import loci.formats.in.MetadataOptions;
 import loci.formats.meta.MetadataRetrieve;
 
 /**
  * JPEG2000Writer is the file format writer for JPEG2000 files.
+ *
+ * If a tile size is set, or if planes are saved in several pieces,
+ * each tile is compressed independently and written as a separate
+ * tile-part of a single codestream.  Tiles can be saved in any order;
+ * a TLM marker segment records the position of each tile-part.
  */
 public class JPEG2000Writer extends FormatWriter {
 
+  // -- Constants --
+
+  /** Number of threads used to compress tiles; defaults to 1. */
+  public static final String ENCODE_THREADS_KEY = "jpeg2000.encode_threads";
+
+  // codestream markers; see ITU-T T.800 Annex A
+  private static final int SIZ = 0xff51;
+  private static final int COD = 0xff52;
+  private static final int COC = 0xff53;
+  private static final int TLM = 0xff55;
+  private static final int QCD = 0xff5c;
+  private static final int QCC = 0xff5d;
+  private static final int RGN = 0xff5e;
+  private static final int POC = 0xff5f;
+  private static final int SOC = 0xff4f;
+  private static final int SOT = 0xff90;
+  private static final int EOC = 0xffd9;
+
+  // JP2 box types
+  private static final int JP2H = 0x6a703268;
+  private static final int IHDR = 0x69686472;
+  private static final int JP2C = 0x6a703263;
+
+  /** Length of an SOT marker segment, including the marker. */
+  private static final int SOT_LENGTH = 12;
+
+  /** Number of tile-parts that fit in one TLM marker segment. */
+  private static final int TLM_ENTRIES = (0xffff - 4) / 6;
+
+  /** The maximum number of tiles allowed by the SOT marker segment. */
+  private static final int MAX_TILES = 0xffff;
+
+  /** Number of wavelet decomposition levels used by the JAI encoder. */
+  private static final int DEFAULT_DECOMPOSITION_LEVELS = 5;
+
   // -- Fields --
 
+  private int tileSizeX;
+  private int tileSizeY;
+
+  /** Tile dimensions for the current file, or 0 if not yet known. */
+  private int tileWidth;
+  private int tileHeight;
+  private int tilesPerRow;
+  private int tileCount;
+
+  /** Whether each tile has been submitted for writing. */
+  private boolean[] tileSubmitted;
+
+  /** Tile indexes and tile-part lengths, in the order they were written. */
+  private int[] tileOrder;
+  private int[] tilePartLength;
+  private int tilesWritten;
+
+  /** Coding style and quantization segments from the main header. */
+  private byte[] mainHeaderSegments;
+
+  /** Position of the reserved TLM marker segments, or -1. */
+  private long tlmPointer = -1;
+
+  private ExecutorService encoder;
+  private Semaphore encodePermits;
+  private volatile Throwable encodeError;
+
   // -- Constructor --
 
   /** Creates a new instance. */
@@ -59,6 +136,23 @@ public class JPEG2000Writer extends FormatWriter {
     options = JPEG2000CodecOptions.getDefaultOptions();
   }
 
+  // -- JPEG2000Writer API methods --
+
+  /**
+   * @return the number of threads used to compress tiles
+   */
+  public int getEncodeThreads() {
+    MetadataOptions options = getMetadataOptions();
+    if (options instanceof DynamicMetadataOptions) {
+      Integer threads =
+        ((DynamicMetadataOptions) options).getInteger(ENCODE_THREADS_KEY, 1);
+      if (threads != null) {
+        return threads;
+      }
+    }
+    return 1;
+  }
+
   // -- IFormatWriter API methods --
 
   /**
@@ -69,18 +163,40 @@ public class JPEG2000Writer extends FormatWriter {
     throws FormatException, IOException
   {
     checkParams(no, buf, x, y, w, h);
-    
-    /*
-    if (!isFullPlane(x, y, w, h)) {
-      throw new FormatException(
-        "JPEG2000Writer does not yet support saving image tiles.");
+    checkEncodeError();
+
+    setupTiles(w, h);
+    if (tileCount == 1) {
+      out.write(compressBuffer(no, buf, x, y, w, h));
+      return;
+    }
+
+    int width = getSizeX();
+    int height = getSizeY();
+    if (x % tileWidth != 0 || y % tileHeight != 0 ||
+      (w % tileWidth != 0 && x + w != width) ||
+      (h % tileHeight != 0 && y + h != height))
+    {
+      throw new FormatException("Tile (x=" + x + ", y=" + y + ", w=" + w +
+        ", h=" + h + ") is not aligned to the " + tileWidth + "x" +
+        tileHeight + " tile grid");
+    }
+
+    for (int ty=y; ty<y+h; ty+=tileHeight) {
+      for (int tx=x; tx<x+w; tx+=tileWidth) {
+        int tw = Math.min(tileWidth, width - tx);
+        int th = Math.min(tileHeight, height - ty);
+        int index = (ty / tileHeight) * tilesPerRow + (tx / tileWidth);
+        synchronized (this) {
+          if (tileSubmitted[index]) {
+            throw new FormatException("Tile " + index + " was already saved");
+          }
+          tileSubmitted[index] = true;
+        }
+        byte[] tile = getTile(buf, x, y, w, h, tx, ty, tw, th);
+        encodeTile(no, index, tile, tx, ty, tw, th);
+      }
     }
-    */
-    //MetadataRetrieve retrieve = getMetadataRetrieve();
-    //int width = retrieve.getPixelsSizeX(series).getValue().intValue();
-    //int height = retrieve.getPixelsSizeY(series).getValue().intValue();
-   
-    out.write(compressBuffer(no, buf, x, y, w, h));
   }
 
   /**
@@ -114,18 +230,18 @@ public class JPEG2000Writer extends FormatWriter {
 
     //To be on the save-side
     if (options == null) options = JPEG2000CodecOptions.getDefaultOptions();
-    options = new JPEG2000CodecOptions(options);
-    options.width = w;
-    options.height = h;
-    options.channels = nChannels;
-    options.bitsPerSample = bytesPerPixel * 8;
-    options.littleEndian = littleEndian;
-    options.interleaved = interleaved;
-    options.lossless = compression == null || 
+    JPEG2000CodecOptions codecOptions = new JPEG2000CodecOptions(options);
+    codecOptions.width = w;
+    codecOptions.height = h;
+    codecOptions.channels = nChannels;
+    codecOptions.bitsPerSample = bytesPerPixel * 8;
+    codecOptions.littleEndian = littleEndian;
+    codecOptions.interleaved = interleaved;
+    codecOptions.lossless = compression == null || 
     compression.equals(CompressionType.J2K.getCompression());
-    options.colorModel = getColorModel();
+    codecOptions.colorModel = getColorModel();
 
-    return new JPEG2000Codec().compress(buf, options);
+    return new JPEG2000Codec().compress(buf, codecOptions);
   }
     
   /**
@@ -145,4 +261,486 @@ public class JPEG2000Writer extends FormatWriter {
       FormatTools.UINT16, FormatTools.INT32, FormatTools.UINT32};
   }
 
+  @Override
+  public int getTileSizeX() throws FormatException {
+    if (tileSizeX == 0) {
+      return super.getTileSizeX();
+    }
+    return tileSizeX;
+  }
+
+  @Override
+  public int setTileSizeX(int tileSize) throws FormatException {
+    int width = super.setTileSizeX(tileSize);
+    tileSizeX = alignTileSize(Math.min(tileSize, width), width, 0);
+    return tileSizeX == 0 ? width : tileSizeX;
+  }
+
+  @Override
+  public int getTileSizeY() throws FormatException {
+    if (tileSizeY == 0) {
+      return super.getTileSizeY();
+    }
+    return tileSizeY;
+  }
+
+  @Override
+  public int setTileSizeY(int tileSize) throws FormatException {
+    int height = super.setTileSizeY(tileSize);
+    tileSizeY = alignTileSize(Math.min(tileSize, height), height, 1);
+    return tileSizeY == 0 ? height : tileSizeY;
+  }
+
+  // -- IFormatHandler API methods --
+
+  /* @see loci.formats.IFormatHandler#close() */
+  @Override
+  public void close() throws IOException {
+    Throwable error = null;
+    try {
+      shutdownEncoder();
+      error = encodeError;
+      if (out != null && tileCount > 1 && error == null) {
+        finishTiles();
+      }
+    }
+    catch (FormatException e) {
+      error = e;
+    }
+    finally {
+      super.close();
+      tileWidth = 0;
+      tileHeight = 0;
+      tilesPerRow = 0;
+      tileCount = 0;
+      tileSubmitted = null;
+      tileOrder = null;
+      tilePartLength = null;
+      tilesWritten = 0;
+      mainHeaderSegments = null;
+      tlmPointer = -1;
+      encodeError = null;
+    }
+    if (error != null) {
+      throw new IOException("Failed to write JPEG-2000 tiles", error);
+    }
+  }
+
+  // -- Helper methods --
+
+  /**
+   * Choose the tile grid for the current file, if not already chosen.
+   * If no tile size was set, the size of the first tile that is saved is
+   * used.  Synchronized so that concurrent calls to saveBytes all see the
+   * same grid.
+   */
+  private synchronized void setupTiles(int w, int h) throws FormatException {
+    if (tileWidth != 0) {
+      return;
+    }
+    int width = getSizeX();
+    int height = getSizeY();
+    int tw = tileSizeX;
+    int th = tileSizeY;
+    if (tw <= 0 || th <= 0) {
+      tw = w;
+      th = h;
+    }
+    else {
+      // the codec options may have changed since the tile size was set
+      tw = alignTileSize(tw, width, 0);
+      th = alignTileSize(th, height, 1);
+    }
+    if (alignTileSize(tw, width, 0) != tw ||
+      alignTileSize(th, height, 1) != th)
+    {
+      throw new FormatException("Tile size " + tw + "x" + th + " does not " +
+        "align with the wavelet decomposition; use setTileSizeX and " +
+        "setTileSizeY to choose a supported tile size");
+    }
+    tileWidth = tw;
+    tileHeight = th;
+    tilesPerRow = (width + tileWidth - 1) / tileWidth;
+    long count = (long) tilesPerRow * ((height + tileHeight - 1) / tileHeight);
+    if (count > MAX_TILES) {
+      throw new FormatException("Too many tiles (" + count + "); " +
+        "a larger tile size is needed");
+    }
+    tileCount = (int) count;
+    tileSubmitted = new boolean[tileCount];
+    tileOrder = new int[tileCount];
+    tilePartLength = new int[tileCount];
+    tilesWritten = 0;
+  }
+
+  /**
+   * Round a tile size down so that every tile is coded exactly as it would
+   * be at the image origin.  The wavelet transform and the code-block
+   * partition of each subband are anchored to the image grid, so a tile
+   * compressed on its own can only be placed where its origin is a
+   * multiple of 2^levels at every resolution, and where its subbands split
+   * into code-blocks the same way.  That holds for power-of-two sizes of
+   * at least 2^levels, and for multiples of the code-block size * 2^levels.
+   *
+   * @param size the requested tile size
+   * @param imageSize the image size in the same dimension
+   * @param axis 0 for the tile width, 1 for the tile height
+   * @return the aligned tile size, or 0 if size is 0
+   */
+  private int alignTileSize(int size, int imageSize, int axis) {
+    if (size <= 0 || size >= imageSize) {
+      return size;
+    }
+    JPEG2000CodecOptions j2k = options instanceof JPEG2000CodecOptions ?
+      (JPEG2000CodecOptions) options : JPEG2000CodecOptions.getDefaultOptions();
+    int levels = j2k.numDecompositionLevels == null ?
+      DEFAULT_DECOMPOSITION_LEVELS : j2k.numDecompositionLevels;
+    int codeBlock = j2k.codeBlockSize == null ? 64 : j2k.codeBlockSize[axis];
+
+    long grid = (long) codeBlock << levels;
+    if (size >= grid) {
+      return (int) (size - size % grid);
+    }
+    int aligned = Math.max(Integer.highestOneBit(size), 1 << levels);
+    return Math.min(aligned, imageSize);
+  }
+
+  /** Copy a single tile from a larger region. */
+  private byte[] getTile(byte[] buf, int x, int y, int w, int h,
+    int tx, int ty, int tw, int th)
+  {
+    if (tx == x && ty == y && tw == w && th == h) {
+      return getEncoder() == null ? buf : buf.clone();
+    }
+    int bpp = getBytesPerPixel();
+    int c = getSamplesPerPixel();
+    byte[] tile = new byte[tw * th * bpp * c];
+    if (interleaved) {
+      int rowLen = tw * bpp * c;
+      for (int row=0; row<th; row++) {
+        int src = ((ty - y + row) * w + (tx - x)) * bpp * c;
+        System.arraycopy(buf, src, tile, row * rowLen, rowLen);
+      }
+    }
+    else {
+      int rowLen = tw * bpp;
+      for (int ch=0; ch<c; ch++) {
+        int srcPlane = ch * w * h * bpp;
+        int destPlane = ch * tw * th * bpp;
+        for (int row=0; row<th; row++) {
+          int src = srcPlane + ((ty - y + row) * w + (tx - x)) * bpp;
+          System.arraycopy(buf, src, tile, destPlane + row * rowLen, rowLen);
+        }
+      }
+    }
+    return tile;
+  }
+
+  /**
+   * Compress a tile, either on the calling thread or on the encoder pool,
+   * and then write it to the file.
+   */
+  private void encodeTile(int no, int index, byte[] tile,
+    int x, int y, int w, int h)
+    throws FormatException, IOException
+  {
+    ExecutorService pool = getEncoder();
+    if (pool == null) {
+      writeTile(index, compressBuffer(no, tile, x, y, w, h));
+      return;
+    }
+    Semaphore permits = encodePermits;
+    try {
+      permits.acquire();
+    }
+    catch (InterruptedException e) {
+      throw new IOException("Interrupted while waiting for tile encoder", e);
+    }
+    try {
+      pool.execute(new EncodeTask(no, index, tile, x, y, w, h, permits));
+    }
+    catch (RejectedExecutionException e) {
+      permits.release();
+      throw new IOException("Could not queue tile for encoding", e);
+    }
+  }
+
+  /**
+   * Append a compressed tile to the codestream.  The main header is
+   * written along with the first tile.
+   *
+   * @param index the index of the tile in raster order
+   * @param jp2 the compressed tile, as a complete JP2 file
+   */
+  private synchronized void writeTile(int index, byte[] jp2)
+    throws FormatException, IOException
+  {
+    int codestream = findCodestream(jp2);
+    int sot = codestream + 2;
+    while (DataTools.bytesToShort(jp2, sot, 2, false) != (short) SOT) {
+      sot += 2 + DataTools.bytesToInt(jp2, sot + 2, 2, false);
+    }
+    int tileEnd = jp2.length - 2;
+    if (DataTools.bytesToShort(jp2, tileEnd, 2, false) != (short) EOC) {
+      throw new FormatException("Missing EOC marker in compressed tile");
+    }
+    int psot = DataTools.bytesToInt(jp2, sot + 6, 4, false);
+    if (psot != 0 && sot + psot != tileEnd) {
+      throw new FormatException("Compressed tile has more than one tile-part");
+    }
+
+    byte[] segments = getCodingSegments(jp2, codestream + 2, sot);
+    if (tlmPointer < 0) {
+      writeMainHeader(jp2, codestream, sot);
+      mainHeaderSegments = segments;
+    }
+
+    // any coding style or quantization differences from the main header
+    // are moved to the tile-part header
+    byte[] tileHeader = Arrays.equals(segments, mainHeaderSegments) ?
+      new byte[0] : segments;
+
+    int length = SOT_LENGTH + tileHeader.length + tileEnd - sot - SOT_LENGTH;
+    out.writeShort(SOT);
+    out.writeShort(SOT_LENGTH - 2);
+    out.writeShort(index);
+    out.writeInt(length);
+    out.writeByte(0);
+    out.writeByte(1);
+    out.write(tileHeader);
+    out.write(jp2, sot + SOT_LENGTH, tileEnd - sot - SOT_LENGTH);
+
+    tileOrder[tilesWritten] = index;
+    tilePartLength[tilesWritten] = length;
+    tilesWritten++;
+  }
+
+  /**
+   * Write the JP2 boxes and the codestream main header, using the boxes
+   * and markers from the first compressed tile.
+   * Space is reserved for the TLM marker segments.
+   */
+  private void writeMainHeader(byte[] jp2, int codestream, int sot)
+    throws FormatException, IOException
+  {
+    int width = getSizeX();
+    int height = getSizeY();
+
+    // everything before the contiguous codestream box,
+    // with the image dimensions updated in the image header box
+    int boxStart = codestream - 8;
+    byte[] boxes = Arrays.copyOf(jp2, boxStart);
+    int box = 0;
+    while (box < boxes.length) {
+      int length = DataTools.bytesToInt(boxes, box, 4, false);
+      int type = DataTools.bytesToInt(boxes, box + 4, 4, false);
+      if (type == JP2H) {
+        box += 8;
+        continue;
+      }
+      if (type == IHDR) {
+        DataTools.unpackBytes(height, boxes, box + 8, 4, false);
+        DataTools.unpackBytes(width, boxes, box + 12, 4, false);
+      }
+      box += length;
+    }
+    out.write(boxes);
+    // a length of 0 indicates that the box extends to the end of the file
+    out.writeInt(0);
+    out.writeInt(JP2C);
+
+    out.writeShort(SOC);
+    int segment = codestream + 2;
+    while (segment < sot) {
+      int marker = DataTools.bytesToShort(jp2, segment, 2, false) & 0xffff;
+      int length = DataTools.bytesToInt(jp2, segment + 2, 2, false) + 2;
+      byte[] b = Arrays.copyOfRange(jp2, segment, segment + length);
+      if (marker == SIZ) {
+        DataTools.unpackBytes(width, b, 6, 4, false);
+        DataTools.unpackBytes(height, b, 10, 4, false);
+        DataTools.unpackBytes(0, b, 14, 4, false);
+        DataTools.unpackBytes(0, b, 18, 4, false);
+        DataTools.unpackBytes(tileWidth, b, 22, 4, false);
+        DataTools.unpackBytes(tileHeight, b, 26, 4, false);
+        DataTools.unpackBytes(0, b, 30, 4, false);
+        DataTools.unpackBytes(0, b, 34, 4, false);
+      }
+      out.write(b);
+      segment += length;
+    }
+
+    tlmPointer = out.getFilePointer();
+    for (int i=0; i<tileCount; i+=TLM_ENTRIES) {
+      int entries = Math.min(TLM_ENTRIES, tileCount - i);
+      out.write(new byte[6 + entries * 6]);
+    }
+  }
+
+  /** Write the EOC marker and fill in the TLM marker segments. */
+  private void finishTiles() throws FormatException, IOException {
+    for (int i=0; i<tileCount; i++) {
+      if (!tileSubmitted[i]) {
+        LOGGER.warn("Tile {} was not saved; writing blank tile", i);
+        int x = (i % tilesPerRow) * tileWidth;
+        int y = (i / tilesPerRow) * tileHeight;
+        int w = Math.min(tileWidth, getSizeX() - x);
+        int h = Math.min(tileHeight, getSizeY() - y);
+        byte[] blank = new byte[w * h * getSamplesPerPixel() *
+          getBytesPerPixel()];
+        tileSubmitted[i] = true;
+        writeTile(i, compressBuffer(0, blank, x, y, w, h));
+      }
+    }
+    out.writeShort(EOC);
+
+    out.seek(tlmPointer);
+    for (int i=0; i<tileCount; i+=TLM_ENTRIES) {
+      int entries = Math.min(TLM_ENTRIES, tileCount - i);
+      out.writeShort(TLM);
+      out.writeShort(4 + entries * 6);
+      out.writeByte(i / TLM_ENTRIES);
+      // 16-bit tile indexes, 32-bit tile-part lengths
+      out.writeByte(0x60);
+      for (int t=i; t<i+entries; t++) {
+        out.writeShort(tileOrder[t]);
+        out.writeInt(tilePartLength[t]);
+      }
+    }
+  }
+
+  /**
+   * @return the offset of the SOC marker within a JP2 file
+   */
+  private int findCodestream(byte[] jp2) throws FormatException {
+    int box = 0;
+    while (box + 8 <= jp2.length) {
+      int length = DataTools.bytesToInt(jp2, box, 4, false);
+      int type = DataTools.bytesToInt(jp2, box + 4, 4, false);
+      if (type == JP2C) {
+        return box + 8;
+      }
+      if (length <= 0) {
+        break;
+      }
+      box += length;
+    }
+    if (DataTools.bytesToShort(jp2, 0, 2, false) == (short) SOC) {
+      throw new FormatException("Compressed tile is missing JP2 boxes");
+    }
+    throw new FormatException("Could not find codestream in compressed tile");
+  }
+
+  /**
+   * @return the main header marker segments that may be repeated
+   *  in a tile-part header
+   */
+  private byte[] getCodingSegments(byte[] jp2, int start, int end) {
+    byte[] segments = new byte[end - start];
+    int length = 0;
+    int segment = start;
+    while (segment < end) {
+      int marker = DataTools.bytesToShort(jp2, segment, 2, false) & 0xffff;
+      int segmentLength = DataTools.bytesToInt(jp2, segment + 2, 2, false) + 2;
+      if (marker == COD || marker == COC || marker == QCD || marker == QCC ||
+        marker == RGN || marker == POC)
+      {
+        System.arraycopy(jp2, segment, segments, length, segmentLength);
+        length += segmentLength;
+      }
+      segment += segmentLength;
+    }
+    return Arrays.copyOf(segments, length);
+  }
+
+  private int getBytesPerPixel() {
+    return FormatTools.getBytesPerPixel(FormatTools.pixelTypeFromString(
+      getMetadataRetrieve().getPixelsType(series).toString()));
+  }
+
+  private void checkEncodeError() throws IOException {
+    Throwable t = encodeError;
+    if (t != null) {
+      throw new IOException("Failed to encode tile", t);
+    }
+  }
+
+  /**
+   * @return the pool used to compress tiles, or null if tiles should be
+   *  compressed on the calling thread
+   */
+  private synchronized ExecutorService getEncoder() {
+    if (encoder == null) {
+      int threads = getEncodeThreads();
+      if (threads > 1) {
+        encoder = Executors.newFixedThreadPool(threads);
+        encodePermits = new Semaphore(threads * 2);
+      }
+    }
+    return encoder;
+  }
+
+  /**
+   * Wait for all tiles handed to the encoder pool to be written.
+   */
+  private void shutdownEncoder() throws IOException {
+    if (encoder == null) {
+      return;
+    }
+    encoder.shutdown();
+    try {
+      while (!encoder.awaitTermination(1, TimeUnit.MINUTES)) {
+        LOGGER.debug("Waiting for tile encoding to finish");
+      }
+    }
+    catch (InterruptedException e) {
+      throw new IOException("Interrupted while waiting for tile encoding", e);
+    }
+    finally {
+      encoder = null;
+      encodePermits = null;
+    }
+  }
+
+  /**
+   * Compresses a single tile on the encoder pool, then writes it.
+   */
+  class EncodeTask implements Runnable {
+    private int no;
+    private int index;
+    private byte[] tile;
+    private int x, y, w, h;
+    private Semaphore permits;
+
+    public EncodeTask(int no, int index, byte[] tile,
+      int x, int y, int w, int h, Semaphore permits)
+    {
+      this.no = no;
+      this.index = index;
+      this.tile = tile;
+      this.x = x;
+      this.y = y;
+      this.w = w;
+      this.h = h;
+      this.permits = permits;
+    }
+
+    @Override
+    public void run() {
+      try {
+        if (encodeError == null) {
+          byte[] jp2 = compressBuffer(no, tile, x, y, w, h);
+          tile = null;
+          writeTile(index, jp2);
+        }
+      }
+      catch (FormatException | IOException | RuntimeException e) {
+        LOGGER.debug("Failed to encode tile {}", index, e);
+        encodeError = e;
+      }
+      finally {
+        permits.release();
+      }
+    }
+  }
+
 }
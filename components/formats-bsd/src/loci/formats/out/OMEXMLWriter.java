@@ -32,11 +32,16 @@
 
 package loci.formats.out;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
 
-import loci.common.Constants;
 import loci.common.services.DependencyException;
 import loci.common.services.ServiceException;
 import loci.common.services.ServiceFactory;
@@ -47,12 +52,10 @@ import loci.formats.FormatTools;
 import loci.formats.FormatWriter;
 import loci.formats.ImageTools;
 import loci.formats.MissingLibraryException;
-import loci.formats.codec.Base64Codec;
 import loci.formats.codec.CodecOptions;
 import loci.formats.codec.CompressionType;
 import loci.formats.codec.JPEG2000Codec;
 import loci.formats.codec.JPEGCodec;
-import loci.formats.codec.ZlibCodec;
 import loci.formats.in.MetadataOptions;
 import loci.formats.in.DynamicMetadataOptions;
 import loci.formats.meta.MetadataRetrieve;
@@ -73,10 +76,20 @@ public class OMEXMLWriter extends FormatWriter {
 
   public static final String CREATOR_KEY = "omexml.preserve_creator";
 
+  /** Size of the buffers used when encoding BinData. */
+  private static final int BUFFER_SIZE = 8192;
+
+  private static final byte[] BASE64_ALPHABET =
+    "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/"
+    .getBytes(StandardCharsets.US_ASCII);
+
   private List<String> xmlFragments;
-  private String currentFragment;
+  private StringBuilder currentFragment;
   private OMEXMLService service;
 
+  /** The plane currently being written, if it is not yet complete. */
+  private transient PendingPlane pendingPlane;
+
   // -- Constructor --
 
   public OMEXMLWriter() {
@@ -125,15 +138,29 @@ public class OMEXMLWriter extends FormatWriter {
     }
 
     xmlFragments = new ArrayList<String>();
-    currentFragment = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>";
+    currentFragment =
+      new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
     XMLTools.parseXML(xml, new OMEHandler());
 
-    xmlFragments.add(currentFragment);
+    xmlFragments.add(currentFragment.toString());
+    currentFragment = null;
   }
 
   /* @see loci.formats.IFormatHandler#close() */
   @Override
   public void close() throws IOException {
+    if (pendingPlane != null) {
+      LOGGER.warn("Plane #{} in series {} is incomplete; " +
+        "missing pixels will be written as 0", pendingPlane.no,
+        pendingPlane.series);
+      try {
+        pendingPlane.fillMissingRows();
+      }
+      catch (FormatException e) {
+        throw new IOException(e);
+      }
+      pendingPlane = null;
+    }
     if (out != null) {
       out.writeBytes(xmlFragments.get(xmlFragments.size() - 1));
     }
@@ -161,57 +188,25 @@ public class OMEXMLWriter extends FormatWriter {
     throws FormatException, IOException
   {
     checkParams(no, buf, x, y, w, h);
-    if (!isFullPlane(x, y, w, h)) {
-      throw new FormatException(
-        "OMEXMLWriter does not yet support saving image tiles.");
-    }
-    MetadataRetrieve retrieve = getMetadataRetrieve();
-
-    if (no == 0) {
-      out.writeBytes(xmlFragments.get(series));
-    }
 
-    String type = retrieve.getPixelsType(series).toString();
-    int pixelType = FormatTools.pixelTypeFromString(type);
-    int bytes = FormatTools.getBytesPerPixel(pixelType);
-    int nChannels = getSamplesPerPixel();
-    int sizeX = retrieve.getPixelsSizeX(series).getValue().intValue();
-    int sizeY = retrieve.getPixelsSizeY(series).getValue().intValue();
-    int planeSize = sizeX * sizeY * bytes;
-    boolean bigEndian = false;
-    if (retrieve.getPixelsBigEndian(series) != null) {
-      bigEndian = retrieve.getPixelsBigEndian(series).booleanValue();
-    }
-    else if (retrieve.getPixelsBinDataCount(series) == 0) {
-      bigEndian = retrieve.getPixelsBinDataBigEndian(series, 0).booleanValue();
+    // BinData must be written in plane order, so tiles can only be
+    // accepted for one plane at a time
+    if (pendingPlane != null &&
+      (pendingPlane.series != series || pendingPlane.no != no))
+    {
+      throw new FormatException("Plane #" + pendingPlane.no +
+        " in series " + pendingPlane.series + " is incomplete");
     }
 
-    String namespace =
-      "xmlns=\"http://www.openmicroscopy.org/Schemas/OME/" +
-      service.getLatestVersion() + "\"";
-
-    for (int i=0; i<nChannels; i++) {
-      byte[] b = ImageTools.splitChannels(buf, i, nChannels, bytes, false,
-        interleaved);
-      byte[] encodedPix = compress(b);
-
-      final StringBuilder plane = new StringBuilder("\n<BinData ");
-      plane.append(namespace);
-      plane.append(" Length=\"");
-      plane.append(planeSize);
-      plane.append("\"");
-      plane.append(" BigEndian=\"");
-      plane.append(bigEndian);
-      plane.append("\"");
-      if (compression != null && !compression.equals("Uncompressed")) {
-        plane.append(" Compression=\"");
-        plane.append(compression);
-        plane.append("\"");
+    if (pendingPlane == null) {
+      if (no == 0) {
+        out.writeBytes(xmlFragments.get(series));
       }
-      plane.append(">");
-      plane.append(new String(encodedPix, Constants.ENCODING));
-      plane.append("</BinData>");
-      out.writeBytes(plane.toString());
+      pendingPlane = new PendingPlane(no);
+    }
+    pendingPlane.addTile(buf, x, y, w, h);
+    if (pendingPlane.isComplete()) {
+      pendingPlane = null;
     }
   }
 
@@ -254,7 +249,7 @@ public class OMEXMLWriter extends FormatWriter {
 
   /**
    * Compress the given byte array using the current codec.
-   * The compressed data is then base64-encoded.
+   * This is only used for codecs that must compress the whole plane at once.
    */
   private byte[] compress(byte[] b) throws FormatException, IOException {
     MetadataRetrieve r = getMetadataRetrieve();
@@ -284,10 +279,7 @@ public class OMEXMLWriter extends FormatWriter {
     else if (compression.equals("JPEG")) {
       b = new JPEGCodec().compress(b, options);
     }
-    else if (compression.equals("zlib")) {
-      b = new ZlibCodec().compress(b, options);
-    }
-    return new Base64Codec().compress(b, options);
+    return b;
   }
 
   // -- Helper class --
@@ -295,7 +287,7 @@ public class OMEXMLWriter extends FormatWriter {
   class OMEHandler extends BaseHandler {
     @Override
     public void characters(char[] ch, int start, int length) {
-      currentFragment += new String(ch, start, length);
+      currentFragment.append(ch, start, length);
     }
 
     @Override
@@ -312,18 +304,287 @@ public class OMEXMLWriter extends FormatWriter {
         toAppend.append("\"");
       }
       toAppend.append(">");
-      currentFragment += toAppend.toString();
+      currentFragment.append(toAppend);
     }
 
     @Override
     public void endElement(String uri, String localName, String qName) {
       if (qName.equals("Pixels")) {
-        xmlFragments.add(currentFragment);
-        currentFragment = "";
+        xmlFragments.add(currentFragment.toString());
+        currentFragment.setLength(0);
+      }
+      currentFragment.append("</");
+      currentFragment.append(qName);
+      currentFragment.append(">");
+    }
+
+  }
+
+  /**
+   * Buffers the rows of a plane that cannot be encoded yet, and streams
+   * each channel to a BinData element once its rows are available in order.
+   */
+  class PendingPlane {
+    private final int series;
+    private final int no;
+    private final int sizeX;
+    private final int sizeY;
+    private final int bytes;
+    private final int nChannels;
+    private final int rowLength;
+    private final boolean bigEndian;
+
+    /** Rows waiting to be encoded, indexed by channel and row. */
+    private final byte[][][] rows;
+    /**
+     * Columns stored in each waiting row.  Tiles may overlap, so the
+     * columns themselves are tracked rather than a count of bytes.
+     */
+    private final BitSet[][] filled;
+
+    private int channel = 0;
+    private int nextRow = 0;
+
+    private Base64OutputStream base64;
+    private OutputStream encoder;
+    private Deflater deflater;
+    private ByteArrayOutputStream planeBuffer;
+
+    public PendingPlane(int no) throws FormatException {
+      MetadataRetrieve retrieve = getMetadataRetrieve();
+      String type = retrieve.getPixelsType(OMEXMLWriter.this.series).toString();
+      int pixelType = FormatTools.pixelTypeFromString(type);
+
+      this.series = OMEXMLWriter.this.series;
+      this.no = no;
+      bytes = FormatTools.getBytesPerPixel(pixelType);
+      nChannels = getSamplesPerPixel();
+      sizeX = retrieve.getPixelsSizeX(series).getValue().intValue();
+      sizeY = retrieve.getPixelsSizeY(series).getValue().intValue();
+      rowLength = sizeX * bytes;
+
+      boolean endian = false;
+      if (retrieve.getPixelsBigEndian(series) != null) {
+        endian = retrieve.getPixelsBigEndian(series).booleanValue();
+      }
+      else if (retrieve.getPixelsBinDataCount(series) == 0) {
+        endian = retrieve.getPixelsBinDataBigEndian(series, 0).booleanValue();
       }
-      currentFragment += "</" + qName + ">";
+      bigEndian = endian;
+
+      rows = new byte[nChannels][sizeY][];
+      filled = new BitSet[nChannels][sizeY];
+    }
+
+    public boolean isComplete() {
+      return channel == nChannels;
     }
 
+    /** Store the given tile, and encode any rows that are now complete. */
+    public void addTile(byte[] buf, int x, int y, int w, int h)
+      throws FormatException, IOException
+    {
+      int tileRowLength = w * bytes;
+      boolean planar = !interleaved || nChannels == 1;
+      for (int c=0; c<nChannels; c++) {
+        for (int r=0; r<h; r++) {
+          int row = y + r;
+          if (isEncoded(c, row)) {
+            throw new FormatException("Row " + row + " of plane #" + no +
+              " has already been written");
+          }
+
+          // rows that can be encoded immediately are not copied
+          if (planar && c == channel && row == nextRow && w == sizeX) {
+            startBinData();
+            encoder.write(buf, (c * h + r) * tileRowLength, rowLength);
+            rows[c][row] = null;
+            filled[c][row] = null;
+            nextRow++;
+            continue;
+          }
+
+          if (rows[c][row] == null) {
+            rows[c][row] = new byte[rowLength];
+          }
+          if (planar) {
+            System.arraycopy(buf, (c * h + r) * tileRowLength,
+              rows[c][row], x * bytes, tileRowLength);
+          }
+          else {
+            for (int col=0; col<w; col++) {
+              int src = ((r * w + col) * nChannels + c) * bytes;
+              System.arraycopy(buf, src, rows[c][row], (x + col) * bytes, bytes);
+            }
+          }
+          if (filled[c][row] == null) {
+            filled[c][row] = new BitSet(sizeX);
+          }
+          filled[c][row].set(x, x + w);
+        }
+        flush();
+      }
+    }
+
+    /** Fill any rows that were never written with zeros, and encode them. */
+    public void fillMissingRows() throws FormatException, IOException {
+      for (int c=channel; c<nChannels; c++) {
+        for (int row=0; row<sizeY; row++) {
+          if (!isEncoded(c, row)) {
+            if (rows[c][row] == null) {
+              rows[c][row] = new byte[rowLength];
+            }
+            filled[c][row] = new BitSet(sizeX);
+            filled[c][row].set(0, sizeX);
+          }
+        }
+      }
+      flush();
+    }
+
+    private boolean isEncoded(int c, int row) {
+      return c < channel || (c == channel && row < nextRow);
+    }
+
+    /** Encode rows of the current channel for as long as they are complete. */
+    private void flush() throws FormatException, IOException {
+      while (channel < nChannels) {
+        startBinData();
+        while (nextRow < sizeY && filled[channel][nextRow] != null &&
+          filled[channel][nextRow].cardinality() == sizeX)
+        {
+          encoder.write(rows[channel][nextRow], 0, rowLength);
+          rows[channel][nextRow] = null;
+          filled[channel][nextRow] = null;
+          nextRow++;
+        }
+        if (nextRow < sizeY) {
+          return;
+        }
+        endBinData();
+        channel++;
+        nextRow = 0;
+      }
+    }
+
+    private void startBinData() throws IOException {
+      if (encoder != null) {
+        return;
+      }
+      String namespace =
+        "xmlns=\"http://www.openmicroscopy.org/Schemas/OME/" +
+        service.getLatestVersion() + "\"";
+
+      final StringBuilder plane = new StringBuilder("\n<BinData ");
+      plane.append(namespace);
+      plane.append(" Length=\"");
+      plane.append(sizeX * sizeY * bytes);
+      plane.append("\"");
+      plane.append(" BigEndian=\"");
+      plane.append(bigEndian);
+      plane.append("\"");
+      if (compression != null && !compression.equals("Uncompressed")) {
+        plane.append(" Compression=\"");
+        plane.append(compression);
+        plane.append("\"");
+      }
+      plane.append(">");
+      out.writeBytes(plane.toString());
+
+      base64 = new Base64OutputStream(out);
+      if (compression.equals("zlib")) {
+        deflater = new Deflater();
+        encoder = new DeflaterOutputStream(base64, deflater, BUFFER_SIZE);
+      }
+      else if (compression.equals("J2K") || compression.equals("JPEG")) {
+        planeBuffer = new ByteArrayOutputStream(sizeX * sizeY * bytes);
+        encoder = planeBuffer;
+      }
+      else {
+        encoder = base64;
+      }
+    }
+
+    private void endBinData() throws FormatException, IOException {
+      if (deflater != null) {
+        ((DeflaterOutputStream) encoder).finish();
+        deflater.end();
+        deflater = null;
+      }
+      else if (planeBuffer != null) {
+        byte[] b = compress(planeBuffer.toByteArray());
+        planeBuffer = null;
+        base64.write(b, 0, b.length);
+      }
+      base64.finish();
+      base64 = null;
+      encoder = null;
+      out.writeBytes("</BinData>");
+    }
+  }
+
+  /**
+   * Base64-encodes data into a fixed-size buffer, which is written to the
+   * underlying stream as it fills.  The underlying stream is not closed.
+   */
+  static class Base64OutputStream extends OutputStream {
+    private final OutputStream out;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int length = 0;
+    private final byte[] quantum = new byte[3];
+    private int quantumLength = 0;
+
+    public Base64OutputStream(OutputStream out) {
+      this.out = out;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      quantum[quantumLength++] = (byte) b;
+      if (quantumLength == 3) {
+        encode(quantum, 0, 3);
+        quantumLength = 0;
+      }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      while (quantumLength > 0 && len > 0) {
+        write(b[off++]);
+        len--;
+      }
+      int end = off + len - (len % 3);
+      for (; off<end; off+=3) {
+        encode(b, off, 3);
+      }
+      while (off < end + (len % 3)) {
+        write(b[off++]);
+      }
+    }
+
+    /** Write any remaining bytes with padding, and flush the buffer. */
+    public void finish() throws IOException {
+      if (quantumLength > 0) {
+        encode(quantum, 0, quantumLength);
+        quantumLength = 0;
+      }
+      out.write(buffer, 0, length);
+      length = 0;
+    }
+
+    private void encode(byte[] b, int off, int len) throws IOException {
+      if (length + 4 > buffer.length) {
+        out.write(buffer, 0, length);
+        length = 0;
+      }
+      int bits = (b[off] & 0xff) << 16;
+      if (len > 1) bits |= (b[off + 1] & 0xff) << 8;
+      if (len > 2) bits |= b[off + 2] & 0xff;
+      buffer[length++] = BASE64_ALPHABET[(bits >> 18) & 0x3f];
+      buffer[length++] = BASE64_ALPHABET[(bits >> 12) & 0x3f];
+      buffer[length++] = len > 1 ? BASE64_ALPHABET[(bits >> 6) & 0x3f] : (byte) '=';
+      buffer[length++] = len > 2 ? BASE64_ALPHABET[bits & 0x3f] : (byte) '=';
+    }
   }
 
 }
@@ -49,6 +49,15 @@ public interface JPEGTurboService extends Service {
    */
   long[] getRestartMarkers();
 
+  /**
+   * @return true if every restart marker in the current JPEG stream has
+   *         already been found, so that {@link #getRestartMarkers()} does
+   *         not need to scan the rest of the stream
+   */
+  default boolean isRestartMarkerScanComplete() {
+    return true;
+  }
+
   /**
    * @param markers precalculated restart markers associated with
    *                the current JPEG stream
@@ -102,6 +111,25 @@ public interface JPEGTurboService extends Service {
     int height)
     throws IOException;
 
+  /**
+   * Get the uncompressed bytes representing the given bounding box,
+   * decoded at a reduced scale.  Scaling is performed during decoding,
+   * which is much faster than decoding at full size and downsampling.
+   *
+   * @param buf array in which to store uncompressed bytes
+   * @param xCoordinate upper-left X coordinate of bounding box,
+   *                    in scaled coordinates
+   * @param yCoordinate upper-left Y coordinate of bounding box,
+   *                    in scaled coordinates
+   * @param width width of bounding box
+   * @param height height of bounding box
+   * @param scale reduction factor; one of 1, 2, 4, or 8
+   * @return uncompressed bytes
+   */
+  byte[] getTile(byte[] buf, int xCoordinate, int yCoordinate, int width,
+    int height, int scale)
+    throws IOException;
+
   /**
    * Get the uncompressed bytes representing the given tile index.
    *
@@ -34,6 +34,14 @@ package loci.formats.services;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -76,6 +84,9 @@ public class JPEGTurboServiceImpl implements JPEGTurboService {
 
   private static final int EOI = 0xffd9;
 
+  /** Number of bytes read at once when scanning for restart markers. */
+  private static final int SCAN_BUFFER_SIZE = 1024 * 1024;
+
   // -- Fields --
 
   private transient Logger logger;
@@ -95,10 +106,29 @@ public class JPEGTurboServiceImpl implements JPEGTurboService {
   private int xTiles;
   private int yTiles;
 
-  private ArrayList<Long> restartMarkers = new ArrayList<Long>();
+  /**
+   * Offsets of the restart markers found so far; only the first
+   * markerCount entries are valid.  Markers are found lazily, so the
+   * scan only covers as much of the stream as has been requested.
+   */
+  private long[] restartMarkers = new long[0];
+  private int markerCount;
+  private boolean markersComplete;
+  private long scanPointer;
+  private transient byte[] scanBuffer;
 
   private byte[] header;
 
+  /**
+   * Decompressors are expensive to create, so each thread reuses one.
+   * All decompressors and the decoding pool are released by close().
+   */
+  private transient ThreadLocal<TJDecompressor> threadDecompressor;
+  private transient List<TJDecompressor> decompressors;
+
+  /** Pool used to decode the tiles in a region concurrently. */
+  private transient ExecutorService decodePool;
+
   private static boolean libraryLoaded = false;
 
   // -- Constructor --
@@ -115,21 +145,36 @@ public class JPEGTurboServiceImpl implements JPEGTurboService {
 
   @Override
   public void setRestartMarkers(long[] markers) {
-    restartMarkers.clear();
-    if (markers != null) {
-      for (long marker : markers) {
-        restartMarkers.add(marker);
-      }
+    if (markers == null) {
+      restartMarkers = new long[0];
     }
+    else {
+      restartMarkers = markers.clone();
+    }
+    markerCount = restartMarkers.length;
+    markersComplete = markerCount > 0;
+  }
+
+  /**
+   * Returns the complete restart marker table.  If the stream has not yet
+   * been fully scanned, the remainder of the stream is scanned first.
+   */
+  @Override
+  public boolean isRestartMarkerScanComplete() {
+    return markersComplete;
   }
 
   @Override
   public long[] getRestartMarkers() {
-    long[] markers = new long[restartMarkers.size()];
-    for (int i=0; i<markers.length; i++) {
-      markers[i] = restartMarkers.get(i);
+    if (in != null) {
+      try {
+        hasMarker(Integer.MAX_VALUE);
+      }
+      catch (IOException e) {
+        LOGGER.warn("Could not scan for restart markers", e);
+      }
     }
-    return markers;
+    return Arrays.copyOf(restartMarkers, markerCount);
   }
 
   @Override
@@ -165,16 +210,18 @@ public class JPEGTurboServiceImpl implements JPEGTurboService {
       else if (marker == SOS) {
         sos = end;
         inImage = true;
-        if (restartMarkers.size() == 0) {
-          restartMarkers.add(sos);
+        if (markerCount == 0) {
+          // the remaining markers are found as they are needed
+          addMarker(sos);
+          scanPointer = sos;
+          markersComplete = false;
         }
         else {
-          long diff = sos - restartMarkers.get(0);
-          for (int i=0; i<restartMarkers.size(); i++) {
-            long original = restartMarkers.get(i);
-            original += diff;
-            restartMarkers.set(i, original);
+          long diff = sos - restartMarkers[0];
+          for (int i=0; i<markerCount; i++) {
+            restartMarkers[i] += diff;
           }
+          markersComplete = true;
           break;
         }
       }
@@ -185,32 +232,6 @@ public class JPEGTurboServiceImpl implements JPEGTurboService {
       }
     }
 
-    if (restartMarkers.size() == 1) {
-      in.seek(restartMarkers.get(0));
-
-      byte[] buf = new byte[10 * 1024 * 1024];
-      in.read(buf, 0, 4);
-
-      while (in.getFilePointer() < in.length()) {
-        int n = in.read(buf, 4,
-          (int) Math.min(buf.length - 4, in.length() - in.getFilePointer()));
-        n += 4;
-
-        for (int i=0; i<n-1; i++) {
-          marker = DataTools.bytesToShort(buf, i, 2, false) & 0xffff;
-          if (marker >= RST0 && marker <= RST7) {
-            restartMarkers.add(in.getFilePointer() - n + i + 2);
-            LOGGER.debug("adding RST marker at {}", restartMarkers.get(restartMarkers.size() - 1));
-            i += restartInterval;
-          }
-        }
-
-        // refill buffer
-
-        System.arraycopy(buf, n - 4, buf, 0, 4);
-      }
-    }
-
     tileWidth = restartInterval * mcuWidth;
     tileHeight = (int) Math.min(tileWidth, 512);
 
@@ -224,7 +245,7 @@ public class JPEGTurboServiceImpl implements JPEGTurboService {
       yTiles++;
     }
 
-    if (restartInterval == 1 && restartMarkers.size() <= 1) {
+    if (restartInterval == 1 && !hasMarker(1)) {
       throw new IOException("The tiled-JPEG reader only supports images encoded with restart markers");
     }
   }
@@ -254,51 +275,67 @@ public class JPEGTurboServiceImpl implements JPEGTurboService {
     int width, int height)
     throws IOException
   {
+    return getTile(buf, xCoordinate, yCoordinate, width, height, 1);
+  }
+
+  @Override
+  public byte[] getTile(byte[] buf, int xCoordinate, int yCoordinate,
+    int width, int height, int scale)
+    throws IOException
+  {
+    if (scale != 1 && scale != 2 && scale != 4 && scale != 8) {
+      throw new IllegalArgumentException("Unsupported scale: " + scale);
+    }
     Region image = new Region(xCoordinate, yCoordinate, width, height);
 
-    int bufX = 0;
-    int bufY = 0;
+    // tile dimensions are a multiple of the MCU size, so always divisible
+    int scaledTileWidth = tileWidth / scale;
+    int scaledTileHeight = tileHeight / scale;
+    int scaledWidth = (imageWidth + scale - 1) / scale;
+    int scaledHeight = (imageHeight + scale - 1) / scale;
 
     int outputRowLen = width * 3;
 
-    Region intersection = null;
-    Region tileBoundary = new Region(0, 0, 0, 0);
-    byte[] tile = null;
+    // read all of the intersecting tiles first, as the stream
+    // cannot be shared between threads
+    List<Region> tileBoundaries = new ArrayList<Region>();
+    List<byte[]> compressedTiles = new ArrayList<byte[]>();
     for (int row=0; row<yTiles; row++) {
-      tileBoundary.height = row < yTiles - 1 ? tileHeight : imageHeight - (tileHeight*row);
-      tileBoundary.y = row * tileHeight;
+      int y = row * scaledTileHeight;
+      if (y >= image.y + image.height) {
+        break;
+      }
+      int h = row < yTiles - 1 ? scaledTileHeight :
+        scaledHeight - (scaledTileHeight*row);
       for (int col=0; col<xTiles; col++) {
-        tileBoundary.x = col * tileWidth;
-        tileBoundary.width = col < xTiles - 1 ? tileWidth : imageWidth - (tileWidth*col);
+        int x = col * scaledTileWidth;
+        int w = col < xTiles - 1 ? scaledTileWidth :
+          scaledWidth - (scaledTileWidth*col);
+        Region tileBoundary = new Region(x, y, w, h);
         if (tileBoundary.intersects(image)) {
-          intersection = image.intersection(tileBoundary);
-          tile = getTile(col, row);
+          tileBoundaries.add(tileBoundary);
+          compressedTiles.add(getCompressedTile(col, row));
+        }
+      }
+    }
 
-          int rowLen =
-            3 * (int) Math.min(tileBoundary.width, intersection.width);
-          int outputOffset = bufY * outputRowLen + bufX;
-          int intersectionX = 0;
+    List<byte[]> tiles = decompress(compressedTiles, scale);
 
-          if (tileBoundary.x < image.x) {
-            intersectionX = image.x - tileBoundary.x;
-          }
+    for (int i=0; i<tiles.size(); i++) {
+      Region tileBoundary = tileBoundaries.get(i);
+      Region intersection = image.intersection(tileBoundary);
+      byte[] tile = tiles.get(i);
 
-          for (int trow=0; trow<intersection.height; trow++) {
-            int realRow = trow + intersection.y - tileBoundary.y;
-            int inputOffset =
-              3 * (realRow * tileWidth + intersectionX);
-            System.arraycopy(tile, inputOffset, buf, outputOffset, rowLen);
-            outputOffset += outputRowLen;
-          }
-          bufX += rowLen;
-        }
-      }
-      if (intersection != null) {
-        bufX = 0;
-        bufY += intersection.height;
-      }
-      if (bufY >= height) {
-        break;
+      int rowLen = 3 * intersection.width;
+      int outputOffset = (intersection.y - image.y) * outputRowLen +
+        3 * (intersection.x - image.x);
+      int intersectionX = intersection.x - tileBoundary.x;
+
+      for (int trow=0; trow<intersection.height; trow++) {
+        int realRow = trow + intersection.y - tileBoundary.y;
+        int inputOffset = 3 * (realRow * scaledTileWidth + intersectionX);
+        System.arraycopy(tile, inputOffset, buf, outputOffset, rowLen);
+        outputOffset += outputRowLen;
       }
     }
 
@@ -307,26 +344,7 @@ public class JPEGTurboServiceImpl implements JPEGTurboService {
 
   @Override
   public byte[] getTile(int tileX, int tileY) throws IOException {
-    byte[] compressedData = getCompressedTile(tileX, tileY);
-
-    // and here we actually decompress it...
-
-    try {
-      int pixelType = TJ.PF_RGB;
-      int pixelSize = TJ.getPixelSize(pixelType);
-
-      TJDecompressor decoder = new TJDecompressor(compressedData);
-      byte[] decompressed = decoder.decompress(tileWidth, tileWidth * pixelSize,
-        tileHeight, pixelType, pixelType);
-      compressedData = null;
-      decoder.close();
-      return decompressed;
-    }
-    catch (Exception e) {
-      IOException ioe = new IOException(e.getMessage());
-      ioe.initCause(e);
-      throw ioe;
-    }
+    return decompress(getCompressedTile(tileX, tileY), 1);
   }
 
   @Override
@@ -342,15 +360,16 @@ public class JPEGTurboServiceImpl implements JPEGTurboService {
     for (int row=0; row<tileHeight/mcuHeight; row++) {
       int end = start + 1;
 
-      long startOffset = restartMarkers.get(start);
+      hasMarker(start);
+      long startOffset = restartMarkers[start];
       long endOffset = in.length();
-      if (end < restartMarkers.size()) {
-        endOffset = restartMarkers.get(end);
+      if (hasMarker(end)) {
+        endOffset = restartMarkers[end];
       }
 
       dataLength += (endOffset - startOffset);
       start += xTiles;
-      if (start >= restartMarkers.size()) {
+      if (!hasMarker(start)) {
         break;
       }
     }
@@ -376,10 +395,11 @@ public class JPEGTurboServiceImpl implements JPEGTurboService {
 
       long endOffset = in.length();
 
-      if (end < restartMarkers.size()) {
-        endOffset = restartMarkers.get(end);
+      if (hasMarker(end)) {
+        endOffset = restartMarkers[end];
       }
-      long startOffset = restartMarkers.get(start);
+      hasMarker(start);
+      long startOffset = restartMarkers[start];
 
       in.seek(startOffset);
       int toRead = (int) (endOffset - startOffset - 2);
@@ -390,7 +410,7 @@ public class JPEGTurboServiceImpl implements JPEGTurboService {
       offset += 2;
       start += xTiles;
 
-      if (start >= restartMarkers.size()) {
+      if (!hasMarker(start)) {
         break;
       }
     }
@@ -409,7 +429,11 @@ public class JPEGTurboServiceImpl implements JPEGTurboService {
     }
     in = null;
     offset = 0;
-    restartMarkers.clear();
+    restartMarkers = new long[0];
+    markerCount = 0;
+    markersComplete = false;
+    scanPointer = 0;
+    scanBuffer = null;
     restartInterval = 1;
     sos = 0;
     imageDimensions = 0;
@@ -420,6 +444,7 @@ public class JPEGTurboServiceImpl implements JPEGTurboService {
     xTiles = 0;
     yTiles = 0;
     header = null;
+    closeDecoders();
   }
 
   @Override
@@ -429,6 +454,174 @@ public class JPEGTurboServiceImpl implements JPEGTurboService {
 
   // -- Helper methods --
 
+  /**
+   * Check whether the restart marker with the given index exists,
+   * scanning the stream for more markers only as far as necessary.
+   */
+  private boolean hasMarker(int index) throws IOException {
+    while (!markersComplete && index >= markerCount) {
+      scanMarkers();
+    }
+    return index < markerCount;
+  }
+
+  /** Scan the next block of the stream for restart markers. */
+  private void scanMarkers() throws IOException {
+    long length = in.length();
+    if (scanPointer + 1 >= length) {
+      markersComplete = true;
+      return;
+    }
+    if (scanBuffer == null) {
+      scanBuffer = new byte[SCAN_BUFFER_SIZE];
+    }
+    int n = (int) Math.min(scanBuffer.length, length - scanPointer);
+    in.seek(scanPointer);
+    in.readFully(scanBuffer, 0, n);
+
+    int i = 0;
+    for (; i<n-1; i++) {
+      if (scanBuffer[i] == (byte) 0xff) {
+        int marker = 0xff00 | (scanBuffer[i + 1] & 0xff);
+        if (marker >= RST0 && marker <= RST7) {
+          addMarker(scanPointer + i + 2);
+          LOGGER.debug("adding RST marker at {}", scanPointer + i + 2);
+          i += restartInterval;
+        }
+      }
+    }
+
+    // the last byte may be the first half of a marker, so is examined again
+    scanPointer += i;
+  }
+
+  private void addMarker(long marker) {
+    if (markerCount == restartMarkers.length) {
+      restartMarkers = Arrays.copyOf(restartMarkers,
+        Math.max(16, restartMarkers.length * 2));
+    }
+    restartMarkers[markerCount++] = marker;
+  }
+
+  /** Decompress a single tile using this thread's decompressor. */
+  private byte[] decompress(byte[] compressedData, int scale)
+    throws IOException
+  {
+    try {
+      int pixelType = TJ.PF_RGB;
+      int pixelSize = TJ.getPixelSize(pixelType);
+
+      TJDecompressor decoder = getDecompressor();
+      decoder.setJPEGImage(compressedData, compressedData.length);
+      int width = tileWidth / scale;
+      return decoder.decompress(width, width * pixelSize,
+        tileHeight / scale, pixelType, pixelType);
+    }
+    catch (Exception e) {
+      IOException ioe = new IOException(e.getMessage());
+      ioe.initCause(e);
+      throw ioe;
+    }
+  }
+
+  /**
+   * Decompress each of the given tiles at the given scale,
+   * in parallel if there is more than one tile.
+   */
+  private List<byte[]> decompress(List<byte[]> compressedTiles,
+    final int scale)
+    throws IOException
+  {
+    List<byte[]> tiles = new ArrayList<byte[]>(compressedTiles.size());
+    if (compressedTiles.size() == 1) {
+      tiles.add(decompress(compressedTiles.get(0), scale));
+      return tiles;
+    }
+
+    List<Future<byte[]>> futures = new ArrayList<Future<byte[]>>();
+    ExecutorService pool = getDecodePool();
+    for (final byte[] compressed : compressedTiles) {
+      futures.add(pool.submit(new Callable<byte[]>() {
+        @Override
+        public byte[] call() throws IOException {
+          return decompress(compressed, scale);
+        }
+      }));
+    }
+    try {
+      for (Future<byte[]> future : futures) {
+        tiles.add(future.get());
+      }
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while decoding tiles", e);
+    }
+    catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      throw new IOException(cause);
+    }
+    finally {
+      for (Future<byte[]> future : futures) {
+        future.cancel(false);
+      }
+    }
+    return tiles;
+  }
+
+  /** Retrieve this thread's decompressor, creating it if necessary. */
+  private synchronized TJDecompressor getDecompressor() throws Exception {
+    if (threadDecompressor == null) {
+      threadDecompressor = new ThreadLocal<TJDecompressor>();
+      decompressors = new ArrayList<TJDecompressor>();
+    }
+    TJDecompressor decoder = threadDecompressor.get();
+    if (decoder == null) {
+      decoder = new TJDecompressor();
+      threadDecompressor.set(decoder);
+      decompressors.add(decoder);
+    }
+    return decoder;
+  }
+
+  /** Shut down the decoding pool and free all native decompressors. */
+  private synchronized void closeDecoders() {
+    if (decodePool != null) {
+      decodePool.shutdown();
+      decodePool = null;
+    }
+    if (decompressors != null) {
+      for (TJDecompressor decoder : decompressors) {
+        try {
+          decoder.close();
+        }
+        catch (Exception e) {
+          LOGGER.debug("Could not close decompressor", e);
+        }
+      }
+    }
+    decompressors = null;
+    threadDecompressor = null;
+  }
+
+  private synchronized ExecutorService getDecodePool() {
+    if (decodePool == null) {
+      int threads = Runtime.getRuntime().availableProcessors();
+      decodePool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread t = new Thread(r, "JPEGTurbo-decode");
+          t.setDaemon(true);
+          return t;
+        }
+      });
+    }
+    return decodePool;
+  }
+
   private byte[] getFixedHeader() throws IOException {
     in.seek(offset);
 
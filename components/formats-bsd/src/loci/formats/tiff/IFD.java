@@ -33,9 +33,16 @@
 package loci.formats.tiff;
 
 import java.io.IOException;
+import java.io.Serializable;
 import java.lang.reflect.Array;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
 
 import loci.common.DebugTools;
 import loci.formats.FormatException;
@@ -47,17 +54,46 @@ import org.slf4j.LoggerFactory;
 /**
  * Data structure for working with TIFF Image File Directories (IFDs).
  *
+ * Entries are stored in parallel arrays sorted by tag, with Integer, Long
+ * and Boolean values stored unboxed; this uses much less memory than a
+ * HashMap, which matters for files with many thousands of IFDs.  Values
+ * derived from the most commonly used tags (image and tile dimensions,
+ * bits per sample, compression, etc.) are cached until the IFD is modified.
+ *
  * @author Curtis Rueden ctrueden at wisc.edu
  * @author Eric Kjellman egkjellman at wisc.edu
  * @author Melissa Linkert melissa at glencoesoftware.com
  * @author Chris Allan callan at blackcat.ca
  */
-public class IFD extends HashMap<Integer, Object> {
+public class IFD extends AbstractMap<Integer, Object>
+  implements Cloneable, Serializable
+{
 
   // -- Constants --
 
   private static final Logger LOGGER = LoggerFactory.getLogger(IFD.class);
 
+  // kinds of stored value; numbers and booleans are not boxed
+  private static final byte OBJECT = 0;
+  private static final byte INTEGER = 1;
+  private static final byte LONG = 2;
+  private static final byte BOOLEAN = 3;
+
+  // indices of cached values derived from entries
+  private static final int CACHED_LITTLE_ENDIAN = 0;
+  private static final int CACHED_TILED = 1;
+  private static final int CACHED_IMAGE_WIDTH = 2;
+  private static final int CACHED_IMAGE_LENGTH = 3;
+  private static final int CACHED_TILE_WIDTH = 4;
+  private static final int CACHED_TILE_LENGTH = 5;
+  private static final int CACHED_BITS_PER_SAMPLE = 6;
+  private static final int CACHED_BYTES_PER_SAMPLE = 7;
+  private static final int CACHED_SAMPLES_PER_PIXEL = 8;
+  private static final int CACHED_COMPRESSION = 9;
+  private static final int CACHED_PHOTO_INTERP = 10;
+  private static final int CACHED_PLANAR_CONFIG = 11;
+  private static final int CACHE_SIZE = 12;
+
   // non-IFD tags (for internal use)
   public static final int LITTLE_ENDIAN = 0;
   public static final int BIG_TIFF = 1;
@@ -197,6 +233,23 @@ public class IFD extends HashMap<Integer, Object> {
   public static final int SHARPNESS = 41994;
   public static final int SUBJECT_DISTANCE_RANGE = 41996;
 
+  // -- Fields --
+
+  /** Tags in ascending order; only the first 'size' entries are used. */
+  private int[] tags = new int[0];
+  private byte[] kinds = new byte[0];
+  private long[] numbers = new long[0];
+  private Object[] objects = new Object[0];
+  private int size;
+
+  /** Number of structural modifications, for fail-fast iteration. */
+  private transient int modCount;
+
+  /** Values derived from entries; discarded whenever an entry changes. */
+  private transient Object[] cache;
+
+  private transient Set<Map.Entry<Integer, Object>> entrySet;
+
   // -- Constructors --
 
   public IFD() {
@@ -204,7 +257,116 @@ public class IFD extends HashMap<Integer, Object> {
   }
 
   public IFD(IFD ifd) {
-    super(ifd);
+    super();
+    size = ifd.size;
+    tags = Arrays.copyOf(ifd.tags, size);
+    kinds = Arrays.copyOf(ifd.kinds, size);
+    numbers = Arrays.copyOf(ifd.numbers, size);
+    objects = Arrays.copyOf(ifd.objects, size);
+  }
+
+  // -- Map API methods --
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return key instanceof Integer && indexOf((Integer) key) >= 0;
+  }
+
+  @Override
+  public Object get(Object key) {
+    if (!(key instanceof Integer)) {
+      return null;
+    }
+    int index = indexOf((Integer) key);
+    return index < 0 ? null : valueAt(index);
+  }
+
+  @Override
+  public Object put(Integer key, Object value) {
+    int tag = key.intValue();
+    int index = indexOf(tag);
+    Object previous = null;
+    if (index >= 0) {
+      previous = valueAt(index);
+    }
+    else {
+      index = -index - 1;
+      insertAt(index, tag);
+    }
+    setValueAt(index, value);
+    cache = null;
+    return previous;
+  }
+
+  @Override
+  public void putAll(Map<? extends Integer, ? extends Object> map) {
+    if (map instanceof IFD && size == 0) {
+      IFD ifd = (IFD) map;
+      size = ifd.size;
+      tags = Arrays.copyOf(ifd.tags, size);
+      kinds = Arrays.copyOf(ifd.kinds, size);
+      numbers = Arrays.copyOf(ifd.numbers, size);
+      objects = Arrays.copyOf(ifd.objects, size);
+      modCount++;
+      cache = null;
+      return;
+    }
+    super.putAll(map);
+  }
+
+  @Override
+  public Object remove(Object key) {
+    if (!(key instanceof Integer)) {
+      return null;
+    }
+    int index = indexOf((Integer) key);
+    if (index < 0) {
+      return null;
+    }
+    Object previous = valueAt(index);
+    removeAt(index);
+    return previous;
+  }
+
+  @Override
+  public void clear() {
+    Arrays.fill(objects, 0, size, null);
+    size = 0;
+    modCount++;
+    cache = null;
+  }
+
+  @Override
+  public Set<Map.Entry<Integer, Object>> entrySet() {
+    if (entrySet == null) {
+      entrySet = new EntrySet();
+    }
+    return entrySet;
+  }
+
+  // -- Object API methods --
+
+  @Override
+  public IFD clone() {
+    try {
+      IFD ifd = (IFD) super.clone();
+      ifd.tags = Arrays.copyOf(tags, size);
+      ifd.kinds = Arrays.copyOf(kinds, size);
+      ifd.numbers = Arrays.copyOf(numbers, size);
+      ifd.objects = Arrays.copyOf(objects, size);
+      ifd.modCount = 0;
+      ifd.cache = null;
+      ifd.entrySet = null;
+      return ifd;
+    }
+    catch (CloneNotSupportedException e) {
+      throw new IllegalStateException(e);
+    }
   }
 
   // -- Tag retrieval methods --
@@ -216,12 +378,18 @@ public class IFD extends HashMap<Integer, Object> {
 
   /** Gets whether the TIFF information in this IFD is little-endian. */
   public boolean isLittleEndian() throws FormatException {
-    return ((Boolean) getIFDValue(LITTLE_ENDIAN, Boolean.class)).booleanValue();
+    Boolean little = (Boolean) getCached(CACHED_LITTLE_ENDIAN);
+    if (little == null) {
+      little = (Boolean) getIFDValue(LITTLE_ENDIAN, Boolean.class);
+      setCached(CACHED_LITTLE_ENDIAN, little);
+    }
+    return little.booleanValue();
   }
 
   /** Gets the given directory entry value from this IFD. */
   public Object getIFDValue(int tag) {
-    return get(Integer.valueOf(tag));
+    int index = indexOf(tag);
+    return index < 0 ? null : valueAt(index);
   }
 
   /**
@@ -229,7 +397,7 @@ public class IFD extends HashMap<Integer, Object> {
    * performing some error checking.
    */
   public Object getIFDValue(int tag, Class checkClass) throws FormatException {
-    Object value = get(Integer.valueOf(tag));
+    Object value = getIFDValue(tag);
     if (checkClass != null && value != null && !checkClass.isInstance(value)) {
       // wrap object in array of length 1, if appropriate
       Class cType = checkClass.getComponentType();
@@ -492,14 +660,30 @@ public class IFD extends HashMap<Integer, Object> {
 
   /** Returns the width of an image tile. */
   public long getTileWidth() throws FormatException {
+    Long cached = (Long) getCached(CACHED_TILE_WIDTH);
+    if (cached != null) {
+      return cached.longValue();
+    }
     long tileWidth = getIFDLongValue(TILE_WIDTH, 0);
-    return tileWidth == 0 ? getImageWidth() : tileWidth;
+    if (tileWidth == 0) {
+      tileWidth = getImageWidth();
+    }
+    setCached(CACHED_TILE_WIDTH, tileWidth);
+    return tileWidth;
   }
 
   /** Returns the length of an image tile. */
   public long getTileLength() throws FormatException {
+    Long cached = (Long) getCached(CACHED_TILE_LENGTH);
+    if (cached != null) {
+      return cached.longValue();
+    }
     long tileLength = getIFDLongValue(TILE_LENGTH, 0);
-    return tileLength == 0 ? getRowsPerStrip()[0] : tileLength;
+    if (tileLength == 0) {
+      tileLength = getRowsPerStrip()[0];
+    }
+    setCached(CACHED_TILE_LENGTH, tileLength);
+    return tileLength;
   }
 
   /** Returns the number of image tiles per row. */
@@ -523,9 +707,14 @@ public class IFD extends HashMap<Integer, Object> {
   }
 
   public boolean isTiled() throws FormatException {
-    Object offsets = get(Integer.valueOf(STRIP_OFFSETS));
-    Object tileWidth = get(Integer.valueOf(TILE_WIDTH));
-    return offsets == null && tileWidth != null;
+    Boolean tiled = (Boolean) getCached(CACHED_TILED);
+    if (tiled == null) {
+      Object offsets = getIFDValue(STRIP_OFFSETS);
+      Object tileWidth = getIFDValue(TILE_WIDTH);
+      tiled = offsets == null && tileWidth != null;
+      setCached(CACHED_TILED, tiled);
+    }
+    return tiled.booleanValue();
   }
 
   /**
@@ -534,11 +723,16 @@ public class IFD extends HashMap<Integer, Object> {
    * @throws FormatException if there is a problem parsing the IFD metadata.
    */
   public long getImageWidth() throws FormatException {
+    Long cached = (Long) getCached(CACHED_IMAGE_WIDTH);
+    if (cached != null) {
+      return cached.longValue();
+    }
     long width = getIFDLongValue(IMAGE_WIDTH, 0);
     if (width > Integer.MAX_VALUE) {
       throw new FormatException("Sorry, ImageWidth > " + Integer.MAX_VALUE +
         " is not supported.");
     }
+    setCached(CACHED_IMAGE_WIDTH, width);
     return width;
   }
 
@@ -548,11 +742,16 @@ public class IFD extends HashMap<Integer, Object> {
    * @throws FormatException if there is a problem parsing the IFD metadata.
    */
   public long getImageLength() throws FormatException {
+    Long cached = (Long) getCached(CACHED_IMAGE_LENGTH);
+    if (cached != null) {
+      return cached.longValue();
+    }
     long length = getIFDLongValue(IMAGE_LENGTH, 0);
     if (length > Integer.MAX_VALUE) {
       throw new FormatException("Sorry, ImageLength > " + Integer.MAX_VALUE +
         " is not supported.");
     }
+    setCached(CACHED_IMAGE_LENGTH, length);
     return length;
   }
 
@@ -565,6 +764,10 @@ public class IFD extends HashMap<Integer, Object> {
    * @see #getSamplesPerPixel()
    */
   public int[] getBitsPerSample() throws FormatException {
+    int[] cached = (int[]) getCached(CACHED_BITS_PER_SAMPLE);
+    if (cached != null) {
+      return cached.clone();
+    }
     int[] bitsPerSample = getIFDIntArray(BITS_PER_SAMPLE);
     if (bitsPerSample == null) bitsPerSample = new int[] {1};
 
@@ -584,6 +787,7 @@ public class IFD extends HashMap<Integer, Object> {
       }
     }
 
+    setCached(CACHED_BITS_PER_SAMPLE, bitsPerSample.clone());
     return bitsPerSample;
   }
 
@@ -637,6 +841,10 @@ public class IFD extends HashMap<Integer, Object> {
    * @see #getBitsPerSample()
    */
   public int[] getBytesPerSample() throws FormatException {
+    int[] cached = (int[]) getCached(CACHED_BYTES_PER_SAMPLE);
+    if (cached != null) {
+      return cached.clone();
+    }
     int[] bitsPerSample = getBitsPerSample();
     int[] bps = new int[bitsPerSample.length];
     for (int i=0; i<bitsPerSample.length; i++) {
@@ -645,6 +853,7 @@ public class IFD extends HashMap<Integer, Object> {
       bps[i] /= 8;
       if (bps[i] == 0) bps[i] = 1;
     }
+    setCached(CACHED_BYTES_PER_SAMPLE, bps.clone());
     return bps;
   }
 
@@ -655,10 +864,16 @@ public class IFD extends HashMap<Integer, Object> {
    * @throws FormatException if there is a problem parsing the IFD metadata.
    */
   public int getSamplesPerPixel() throws FormatException {
-    if (getCompression() == TiffCompression.OLD_JPEG) {
-      return 3; // always RGB
+    Integer cached = (Integer) getCached(CACHED_SAMPLES_PER_PIXEL);
+    if (cached != null) {
+      return cached.intValue();
     }
-    return getIFDIntValue(SAMPLES_PER_PIXEL, 1);
+    int samples = 3; // OLD_JPEG is always RGB
+    if (getCompression() != TiffCompression.OLD_JPEG) {
+      samples = getIFDIntValue(SAMPLES_PER_PIXEL, 1);
+    }
+    setCached(CACHED_SAMPLES_PER_PIXEL, samples);
+    return samples;
   }
 
   /**
@@ -681,8 +896,14 @@ public class IFD extends HashMap<Integer, Object> {
    * @throws FormatException if there is a problem parsing the IFD metadata.
    */
   public TiffCompression getCompression() throws FormatException {
-    return TiffCompression.get(getIFDIntValue(
+    TiffCompression compression =
+      (TiffCompression) getCached(CACHED_COMPRESSION);
+    if (compression == null) {
+      compression = TiffCompression.get(getIFDIntValue(
         COMPRESSION, TiffCompression.UNCOMPRESSED.getCode()));
+      setCached(CACHED_COMPRESSION, compression);
+    }
+    return compression;
   }
 
   /**
@@ -704,14 +925,25 @@ public class IFD extends HashMap<Integer, Object> {
    * @throws FormatException if there is a problem parsing the IFD metadata.
    */
   public PhotoInterp getPhotometricInterpretation() throws FormatException {
+    PhotoInterp cached = (PhotoInterp) getCached(CACHED_PHOTO_INTERP);
+    if (cached != null) {
+      return cached;
+    }
     Object photo = getIFDValue(PHOTOMETRIC_INTERPRETATION);
-    if (photo instanceof PhotoInterp) return (PhotoInterp) photo;
-    if (photo == null && getCompression() == TiffCompression.OLD_JPEG) {
-      return PhotoInterp.RGB;
+    PhotoInterp photoInterp = null;
+    if (photo instanceof PhotoInterp) {
+      photoInterp = (PhotoInterp) photo;
     }
-    int pi = photo instanceof Number ? ((Number) photo).intValue() :
-      ((int[]) photo)[0];
-    return PhotoInterp.get(pi);
+    else if (photo == null && getCompression() == TiffCompression.OLD_JPEG) {
+      photoInterp = PhotoInterp.RGB;
+    }
+    else {
+      int pi = photo instanceof Number ? ((Number) photo).intValue() :
+        ((int[]) photo)[0];
+      photoInterp = PhotoInterp.get(pi);
+    }
+    setCached(CACHED_PHOTO_INTERP, photoInterp);
+    return photoInterp;
   }
 
   /**
@@ -726,11 +958,16 @@ public class IFD extends HashMap<Integer, Object> {
    * @throws FormatException if there is a problem parsing the IFD metadata.
    */
   public int getPlanarConfiguration() throws FormatException {
+    Integer cached = (Integer) getCached(CACHED_PLANAR_CONFIG);
+    if (cached != null) {
+      return cached.intValue();
+    }
     int planarConfig = getIFDIntValue(PLANAR_CONFIGURATION, 1);
     if (planarConfig != 1 && planarConfig != 2) {
       throw new FormatException("Sorry, PlanarConfiguration (" + planarConfig +
         ") not supported.");
     }
+    setCached(CACHED_PLANAR_CONFIG, planarConfig);
     return planarConfig;
   }
 
@@ -773,14 +1010,7 @@ public class IFD extends HashMap<Integer, Object> {
       }
     }
 
-    if (isTiled()) return offsets;
-    long rowsPerStrip = getRowsPerStrip()[0];
-    long numStrips = (getImageLength() + rowsPerStrip - 1) / rowsPerStrip;
-    if (getPlanarConfiguration() == 2) numStrips *= getSamplesPerPixel();
-    if (offsets.length < numStrips) {
-      throw new FormatException("StripOffsets length (" + offsets.length +
-        ") does not match expected " + "number of strips (" + numStrips + ")");
-    }
+    checkStripCount("StripOffsets", offsets.length);
     return offsets;
   }
 
@@ -794,6 +1024,63 @@ public class IFD extends HashMap<Integer, Object> {
     return null;
   }
 
+  /**
+   * Retrieves a single strip offset for the image, without reading
+   * the entire StripOffsets (or TileOffsets) array.
+   * @param index the index of the strip or tile
+   * @return the offset of the given strip or tile
+   * @throws FormatException if there is a problem parsing the IFD metadata.
+   * @see #getStripOffsets()
+   */
+  public long getStripOffset(int index) throws FormatException {
+    long offset = 0;
+    OnDemandLongArray onDemand = getOnDemandStripOffsets();
+    if (onDemand != null) {
+      checkStripIndex("StripOffsets", onDemand.size(), index);
+      try {
+        offset = onDemand.get(index);
+      }
+      catch (IOException e) {
+        throw new FormatException("Failed to retrieve offset", e);
+      }
+    }
+    else {
+      long[] offsets = getIFDLongArray(isTiled() ? TILE_OFFSETS : STRIP_OFFSETS);
+      if (isTiled() && offsets == null) {
+        offsets = getIFDLongArray(STRIP_OFFSETS);
+      }
+      if (offsets == null) {
+        throw new FormatException("StripOffsets not found");
+      }
+      checkStripIndex("StripOffsets", offsets.length, index);
+      offset = offsets[index];
+    }
+    return offset < 0 ? offset + 0x100000000L : offset;
+  }
+
+  /**
+   * Retrieves the number of strip offsets for the image, without reading
+   * the entire StripOffsets (or TileOffsets) array.
+   * @return the number of strips or tiles, or 0 if no offsets are present
+   * @throws FormatException if there is a problem parsing the IFD metadata.
+   */
+  public long getStripOffsetCount() throws FormatException {
+    OnDemandLongArray onDemand = getOnDemandStripOffsets();
+    if (onDemand != null) {
+      checkStripCount("StripOffsets", onDemand.size());
+      return onDemand.size();
+    }
+    long[] offsets = getIFDLongArray(isTiled() ? TILE_OFFSETS : STRIP_OFFSETS);
+    if (isTiled() && offsets == null) {
+      offsets = getIFDLongArray(STRIP_OFFSETS);
+    }
+    if (offsets == null) {
+      return 0;
+    }
+    checkStripCount("StripOffsets", offsets.length);
+    return offsets.length;
+  }
+
   /**
    * Retrieves strip byte counts for the image (TIFF tag StripByteCounts) from
    * this IFD.
@@ -841,18 +1128,93 @@ public class IFD extends HashMap<Integer, Object> {
     }
     else System.arraycopy(byteCounts, 0, counts, 0, counts.length);
 
-    if (isTiled()) return counts;
+    checkStripCount("StripByteCounts", counts.length);
+    return counts;
+  }
 
+  /**
+   * Retrieves a single strip byte count for the image, without reading
+   * the entire StripByteCounts (or TileByteCounts) array.
+   * @param index the index of the strip or tile
+   * @return the byte count of the given strip or tile
+   * @throws FormatException if there is a problem parsing the IFD metadata.
+   * @see #getStripByteCounts()
+   */
+  public long getStripByteCount(int index) throws FormatException {
+    int tag = isTiled() ? TILE_BYTE_COUNTS : STRIP_BYTE_COUNTS;
+    Object value = getIFDValue(tag);
+    if (isTiled() && value == null) {
+      tag = STRIP_BYTE_COUNTS;
+      value = getIFDValue(tag);
+    }
+    if (value == null) {
+      // byte counts are calculated from the image size
+      long[] counts = getStripByteCounts();
+      if (counts == null) {
+        throw new FormatException("StripByteCounts not found");
+      }
+      checkStripIndex("StripByteCounts", counts.length, index);
+      return counts[index];
+    }
+
+    long count = 0;
+    if (value instanceof OnDemandLongArray) {
+      OnDemandLongArray counts = (OnDemandLongArray) value;
+      checkStripIndex("StripByteCounts", counts.size(), index);
+      try {
+        count = counts.get(index);
+      }
+      catch (IOException e) {
+        throw new FormatException("Failed to retrieve byte count", e);
+      }
+    }
+    else {
+      long[] counts = getIFDLongArray(tag);
+      checkStripIndex("StripByteCounts", counts.length, index);
+      count = counts[index];
+    }
+
+    if (getCompression() == TiffCompression.LZW &&
+      (!containsKey(ROWS_PER_STRIP) ||
+      ((getImageLength() % getRowsPerStrip()[0])) != 0))
+    {
+      count *= 2;
+    }
+    return count;
+  }
+
+  /**
+   * Checks that a StripOffsets or StripByteCounts table of the given length
+   * contains an entry for every strip in the image.  Tiled images are not
+   * checked.
+   * @throws FormatException if the table has too few entries.
+   */
+  private void checkStripCount(String name, long length)
+    throws FormatException
+  {
+    if (isTiled()) return;
     long rowsPerStrip = getRowsPerStrip()[0];
     long numStrips = (getImageLength() + rowsPerStrip - 1) / rowsPerStrip;
     if (getPlanarConfiguration() == 2) numStrips *= getSamplesPerPixel();
-
-    if (counts.length < numStrips) {
-      throw new FormatException("StripByteCounts length (" + counts.length +
+    if (length < numStrips) {
+      throw new FormatException(name + " length (" + length +
         ") does not match expected " + "number of strips (" + numStrips + ")");
     }
+  }
 
-    return counts;
+  /**
+   * Checks that a StripOffsets or StripByteCounts table of the given length
+   * is consistent with the image, and that it contains the given index.
+   * @throws FormatException if the table has too few entries.
+   */
+  private void checkStripIndex(String name, long length, int index)
+    throws FormatException
+  {
+    checkStripCount(name, length);
+    if (index < 0 || index >= length) {
+      throw new FormatException(name + " index (" + index +
+        ") is out of range (" + length + " entries)");
+    }
   }
 
   /**
@@ -955,6 +1317,198 @@ public class IFD extends HashMap<Integer, Object> {
     putIFDValue(tag, Long.valueOf(value));
   }
 
+  // -- Helper methods --
+
+  /**
+   * @return the index of the given tag, or (-(insertion point) - 1)
+   *   if the tag is not present
+   */
+  private int indexOf(int tag) {
+    return Arrays.binarySearch(tags, 0, size, tag);
+  }
+
+  private Object valueAt(int index) {
+    switch (kinds[index]) {
+      case INTEGER:
+        return Integer.valueOf((int) numbers[index]);
+      case LONG:
+        return Long.valueOf(numbers[index]);
+      case BOOLEAN:
+        return Boolean.valueOf(numbers[index] != 0);
+      default:
+        return objects[index];
+    }
+  }
+
+  private void setValueAt(int index, Object value) {
+    if (value instanceof Integer) {
+      kinds[index] = INTEGER;
+      numbers[index] = ((Integer) value).intValue();
+      objects[index] = null;
+    }
+    else if (value instanceof Long) {
+      kinds[index] = LONG;
+      numbers[index] = ((Long) value).longValue();
+      objects[index] = null;
+    }
+    else if (value instanceof Boolean) {
+      kinds[index] = BOOLEAN;
+      numbers[index] = ((Boolean) value).booleanValue() ? 1 : 0;
+      objects[index] = null;
+    }
+    else {
+      kinds[index] = OBJECT;
+      numbers[index] = 0;
+      objects[index] = value;
+    }
+  }
+
+  /** Open a slot for the given tag at the given index. */
+  private void insertAt(int index, int tag) {
+    if (size == tags.length) {
+      int capacity = Math.max(8, size + (size >> 1));
+      tags = Arrays.copyOf(tags, capacity);
+      kinds = Arrays.copyOf(kinds, capacity);
+      numbers = Arrays.copyOf(numbers, capacity);
+      objects = Arrays.copyOf(objects, capacity);
+    }
+    int tail = size - index;
+    System.arraycopy(tags, index, tags, index + 1, tail);
+    System.arraycopy(kinds, index, kinds, index + 1, tail);
+    System.arraycopy(numbers, index, numbers, index + 1, tail);
+    System.arraycopy(objects, index, objects, index + 1, tail);
+    tags[index] = tag;
+    size++;
+    modCount++;
+  }
+
+  private void removeAt(int index) {
+    int tail = size - index - 1;
+    System.arraycopy(tags, index + 1, tags, index, tail);
+    System.arraycopy(kinds, index + 1, kinds, index, tail);
+    System.arraycopy(numbers, index + 1, numbers, index, tail);
+    System.arraycopy(objects, index + 1, objects, index, tail);
+    size--;
+    objects[size] = null;
+    modCount++;
+    cache = null;
+  }
+
+  private Object getCached(int key) {
+    Object[] values = cache;
+    return values == null ? null : values[key];
+  }
+
+  private void setCached(int key, Object value) {
+    Object[] values = cache;
+    if (values == null) {
+      values = new Object[CACHE_SIZE];
+      cache = values;
+    }
+    values[key] = value;
+  }
+
+  // -- Helper classes --
+
+  /** View of the entries in this IFD, in ascending tag order. */
+  private class EntrySet extends AbstractSet<Map.Entry<Integer, Object>> {
+    @Override
+    public int size() {
+      return size;
+    }
+
+    @Override
+    public void clear() {
+      IFD.this.clear();
+    }
+
+    @Override
+    public Iterator<Map.Entry<Integer, Object>> iterator() {
+      return new Iterator<Map.Entry<Integer, Object>>() {
+        private int next = 0;
+        private int last = -1;
+        private int expectedModCount = modCount;
+
+        @Override
+        public boolean hasNext() {
+          return next < size;
+        }
+
+        @Override
+        public Map.Entry<Integer, Object> next() {
+          if (modCount != expectedModCount) {
+            throw new ConcurrentModificationException();
+          }
+          if (next >= size) {
+            throw new NoSuchElementException();
+          }
+          last = next++;
+          return new Entry(tags[last]);
+        }
+
+        @Override
+        public void remove() {
+          if (last < 0) {
+            throw new IllegalStateException();
+          }
+          if (modCount != expectedModCount) {
+            throw new ConcurrentModificationException();
+          }
+          removeAt(last);
+          next = last;
+          last = -1;
+          expectedModCount = modCount;
+        }
+      };
+    }
+  }
+
+  /** Entry that reads and writes through to the IFD. */
+  private class Entry implements Map.Entry<Integer, Object> {
+    private final int tag;
+
+    Entry(int tag) {
+      this.tag = tag;
+    }
+
+    @Override
+    public Integer getKey() {
+      return tag;
+    }
+
+    @Override
+    public Object getValue() {
+      return getIFDValue(tag);
+    }
+
+    @Override
+    public Object setValue(Object value) {
+      return put(tag, value);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Map.Entry)) {
+        return false;
+      }
+      Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+      Object value = getValue();
+      return getKey().equals(e.getKey()) &&
+        (value == null ? e.getValue() == null : value.equals(e.getValue()));
+    }
+
+    @Override
+    public int hashCode() {
+      Object value = getValue();
+      return getKey().hashCode() ^ (value == null ? 0 : value.hashCode());
+    }
+
+    @Override
+    public String toString() {
+      return tag + "=" + getValue();
+    }
+  }
+
   // -- Debugging --
 
   /** Prints the contents of this IFD. */
@@ -0,0 +1,374 @@
+/*
+ * #%L
+ * BSD implementations of Bio-Formats readers and writers
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats.tiff;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * Read-only {@link IFDList} that parses each {@link IFD} only when it is
+ * first requested.
+ *
+ * Only the offsets of the IFDs are held in memory; parsed IFDs are kept in
+ * a bounded least-recently-used cache and re-read from the underlying
+ * {@link TiffParser} after they have been evicted.  Changes made to an IFD
+ * returned by this list are therefore not guaranteed to persist.
+ *
+ * Unlike {@link TiffParser#getMainIFDs()}, every offset in the chain is
+ * assumed to point to an image IFD.
+ */
+public class LazyIFDList extends IFDList {
+
+  // -- Constants --
+
+  private static final long serialVersionUID = 1L;
+
+  /** Default maximum number of parsed IFDs to keep in memory. */
+  public static final int DEFAULT_CACHE_SIZE = 256;
+
+  // -- Fields --
+
+  private final long[] offsets;
+
+  private final int cacheSize;
+
+  private transient TiffParser parser;
+
+  private transient Map<Integer, IFD> cache;
+
+  /** Read-only view used to implement the bulk List methods. */
+  private transient List<IFD> view;
+
+  // -- Constructors --
+
+  /**
+   * Constructs a list of the IFDs stored at the given offsets, using the
+   * default cache size.
+   */
+  public LazyIFDList(TiffParser parser, long[] offsets) {
+    this(parser, offsets, DEFAULT_CACHE_SIZE);
+  }
+
+  /**
+   * Constructs a list of the IFDs stored at the given offsets.
+   *
+   * @param parser the parser used to read IFDs; may be null if
+   *   {@link #setParser(TiffParser)} is called before any IFD is requested
+   * @param offsets the offset to each IFD, in list order
+   * @param cacheSize the maximum number of parsed IFDs to keep in memory
+   */
+  public LazyIFDList(TiffParser parser, long[] offsets, int cacheSize) {
+    super();
+    if (cacheSize < 1) {
+      throw new IllegalArgumentException("Invalid cache size: " + cacheSize);
+    }
+    this.parser = parser;
+    this.offsets = offsets.clone();
+    this.cacheSize = cacheSize;
+  }
+
+  // -- LazyIFDList API methods --
+
+  /** Sets the parser used to read IFDs that are not cached. */
+  public synchronized void setParser(TiffParser parser) {
+    this.parser = parser;
+    cache = null;
+  }
+
+  /** Gets the parser used to read IFDs that are not cached. */
+  public TiffParser getParser() {
+    return parser;
+  }
+
+  /** Gets a copy of the offset to each IFD. */
+  public long[] getOffsets() {
+    return offsets.clone();
+  }
+
+  /** Gets the offset to the IFD at the given index. */
+  public long getOffset(int index) {
+    checkIndex(index);
+    return offsets[index];
+  }
+
+  /** Gets the maximum number of parsed IFDs kept in memory. */
+  public int getCacheSize() {
+    return cacheSize;
+  }
+
+  /** Gets the IFDs that are currently parsed and cached. */
+  public synchronized List<IFD> getCachedIFDs() {
+    if (cache == null) {
+      return new ArrayList<IFD>();
+    }
+    return new ArrayList<IFD>(cache.values());
+  }
+
+  // -- List API methods --
+
+  /**
+   * Gets the IFD at the given index, parsing it if it is not cached.
+   *
+   * @throws IllegalStateException if no parser has been set or the IFD
+   *   could not be read
+   */
+  @Override
+  public synchronized IFD get(int index) {
+    checkIndex(index);
+    if (cache == null) {
+      cache = new LinkedHashMap<Integer, IFD>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, IFD> eldest) {
+          return size() > cacheSize;
+        }
+      };
+    }
+    Integer key = Integer.valueOf(index);
+    IFD ifd = cache.get(key);
+    if (ifd == null) {
+      ifd = readIFD(index);
+      cache.put(key, ifd);
+    }
+    return ifd;
+  }
+
+  @Override
+  public int size() {
+    return offsets.length;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return offsets.length == 0;
+  }
+
+  @Override
+  public boolean contains(Object o) {
+    return view().contains(o);
+  }
+
+  @Override
+  public int indexOf(Object o) {
+    return view().indexOf(o);
+  }
+
+  @Override
+  public int lastIndexOf(Object o) {
+    return view().lastIndexOf(o);
+  }
+
+  @Override
+  public Iterator<IFD> iterator() {
+    return view().iterator();
+  }
+
+  @Override
+  public ListIterator<IFD> listIterator() {
+    return view().listIterator();
+  }
+
+  @Override
+  public ListIterator<IFD> listIterator(int index) {
+    return view().listIterator(index);
+  }
+
+  @Override
+  public List<IFD> subList(int fromIndex, int toIndex) {
+    return view().subList(fromIndex, toIndex);
+  }
+
+  @Override
+  public Spliterator<IFD> spliterator() {
+    return view().spliterator();
+  }
+
+  @Override
+  public void forEach(Consumer<? super IFD> action) {
+    view().forEach(action);
+  }
+
+  @Override
+  public Object[] toArray() {
+    return view().toArray();
+  }
+
+  @Override
+  public <T> T[] toArray(T[] a) {
+    return view().toArray(a);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return view().equals(o);
+  }
+
+  @Override
+  public int hashCode() {
+    return view().hashCode();
+  }
+
+  @Override
+  public Object clone() {
+    return new LazyIFDList(parser, offsets, cacheSize);
+  }
+
+  @Override
+  public IFD set(int index, IFD ifd) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public boolean add(IFD ifd) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void add(int index, IFD ifd) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public boolean addAll(Collection<? extends IFD> c) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public boolean addAll(int index, Collection<? extends IFD> c) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public IFD remove(int index) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public boolean remove(Object o) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public boolean removeAll(Collection<?> c) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public boolean retainAll(Collection<?> c) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public boolean removeIf(Predicate<? super IFD> filter) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void replaceAll(UnaryOperator<IFD> operator) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void sort(Comparator<? super IFD> c) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void clear() {
+    throw new UnsupportedOperationException();
+  }
+
+  // -- Helper methods --
+
+  /**
+   * Gets the view used to implement the bulk List methods.  The view is
+   * created on first use, so that it is also available after the list
+   * has been deserialized.
+   */
+  private List<IFD> view() {
+    List<IFD> v = view;
+    if (v == null) {
+      v = new AbstractList<IFD>() {
+        @Override
+        public IFD get(int index) {
+          return LazyIFDList.this.get(index);
+        }
+
+        @Override
+        public int size() {
+          return offsets.length;
+        }
+      };
+      view = v;
+    }
+    return v;
+  }
+
+  private void checkIndex(int index) {
+    if (index < 0 || index >= offsets.length) {
+      throw new IndexOutOfBoundsException(
+        "Index: " + index + ", Size: " + offsets.length);
+    }
+  }
+
+  /** Reads and fills in the IFD at the given index. */
+  private IFD readIFD(int index) {
+    if (parser == null) {
+      throw new IllegalStateException("No TiffParser has been set");
+    }
+    try {
+      IFD ifd = parser.getIFD(offsets[index]);
+      if (ifd == null) {
+        throw new IllegalStateException(
+          "No IFD at offset " + offsets[index]);
+      }
+      parser.fillInIFD(ifd);
+      return ifd;
+    }
+    catch (IOException e) {
+      throw new IllegalStateException(
+        "Could not read IFD at offset " + offsets[index], e);
+    }
+  }
+}
@@ -33,15 +33,39 @@
 package loci.formats.tiff;
 
 import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import loci.common.DataTools;
 import loci.common.RandomAccessInputStream;
 
 /**
+ * Array of 64-bit values (typically BigTIFF strip or tile offsets and
+ * byte counts) that is read from the underlying stream as needed.
+ *
+ * Values are read in fixed-size pages, which are kept in an LRU cache
+ * shared by all instances.  Retrieving a single value therefore only
+ * reads the page that contains it, instead of the whole array.
  *
  * @author Melissa Linkert <melissa at glencoesoftware.com>
  */
 public class OnDemandLongArray {
 
+  /** Number of values in each cached page. */
+  public static final int PAGE_SIZE = 1024;
+
+  /** Maximum number of pages cached across all arrays. */
+  public static final int MAX_CACHED_PAGES = 512;
+
+  private static final Map<PageKey, long[]> PAGES =
+    new LinkedHashMap<PageKey, long[]>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<PageKey, long[]> eldest) {
+        return size() > MAX_CACHED_PAGES;
+      }
+    };
+
   private transient RandomAccessInputStream stream;
   private int size;
   private long start;
@@ -64,11 +88,10 @@ public class OnDemandLongArray {
   }
 
   public long get(int index) throws IOException {
-    long fp = stream.getFilePointer();
-    stream.seek(start + index * 8);
-    long value = stream.readLong();
-    stream.seek(fp);
-    return value;
+    if (index < 0 || index >= size) {
+      throw new ArrayIndexOutOfBoundsException(index);
+    }
+    return getPage(index / PAGE_SIZE)[index % PAGE_SIZE];
   }
 
   public long size() {
@@ -85,6 +108,7 @@ public class OnDemandLongArray {
   }
 
   public void close() throws IOException {
+    evictPages();
     if (stream != null) {
       stream.close();
     }
@@ -93,4 +117,74 @@ public class OnDemandLongArray {
     start = 0;
   }
 
+  // -- Helper methods --
+
+  /**
+   * Retrieve the given page of values, reading it from the stream
+   * if it is not already cached.
+   */
+  private long[] getPage(int page) throws IOException {
+    PageKey key = new PageKey(this, page);
+    synchronized (PAGES) {
+      long[] values = PAGES.get(key);
+      if (values != null) {
+        return values;
+      }
+    }
+
+    int first = page * PAGE_SIZE;
+    int count = Math.min(PAGE_SIZE, size - first);
+    byte[] rawBytes = new byte[count * 8];
+    long fp = stream.getFilePointer();
+    stream.seek(start + (long) first * 8);
+    stream.readFully(rawBytes);
+    stream.seek(fp);
+    long[] values = (long[])
+      DataTools.makeDataArray(rawBytes, 8, false, stream.isLittleEndian());
+
+    synchronized (PAGES) {
+      PAGES.put(key, values);
+    }
+    return values;
+  }
+
+  /** Remove all of this array's pages from the shared cache. */
+  private void evictPages() {
+    synchronized (PAGES) {
+      Iterator<PageKey> keys = PAGES.keySet().iterator();
+      while (keys.hasNext()) {
+        if (keys.next().array == this) {
+          keys.remove();
+        }
+      }
+    }
+  }
+
+  // -- Helper classes --
+
+  /** Identifies a single page of a specific array. */
+  private static class PageKey {
+    private final OnDemandLongArray array;
+    private final int page;
+
+    PageKey(OnDemandLongArray array, int page) {
+      this.array = array;
+      this.page = page;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof PageKey)) {
+        return false;
+      }
+      PageKey key = (PageKey) o;
+      return array == key.array && page == key.page;
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * System.identityHashCode(array) + page;
+    }
+  }
+
 }
@@ -38,6 +38,7 @@ import java.util.HashMap;
 import java.util.Map;
 
 import loci.common.DataTools;
+import loci.common.RandomAccessInputStream;
 import loci.common.enumeration.CodedEnum;
 import loci.common.enumeration.EnumException;
 import loci.formats.FormatException;
@@ -52,6 +53,7 @@ import loci.formats.codec.LZWCodec;
 import loci.formats.codec.NikonCodec;
 import loci.formats.codec.PackbitsCodec;
 import loci.formats.codec.PassthroughCodec;
+import loci.formats.codec.StreamingDecoder;
 import loci.formats.codec.ZlibCodec;
 import loci.formats.codec.ZstdCodec;
 
@@ -288,6 +290,24 @@ public enum TiffCompression implements CodedEnum {
     return codec.decompress(input, options);
   }
 
+  /**
+   * Creates a decoder that decompresses a strip incrementally, so that
+   * only the leading part of the strip needs to be decoded.
+   * @return the decoder, or null if this compression type cannot be
+   *   decoded incrementally
+   */
+  public StreamingDecoder getStreamingDecoder(RandomAccessInputStream in,
+    long offset, long length)
+  {
+    if (codec instanceof LZWCodec) {
+      return ((LZWCodec) codec).getStreamingDecoder(in, offset, length);
+    }
+    if (codec instanceof ZlibCodec) {
+      return ((ZlibCodec) codec).getStreamingDecoder(in, offset, length);
+    }
+    return null;
+  }
+
   /** Undoes in-place differencing according to the given predictor value. */
   public static void undifference(byte[] input, IFD ifd)
     throws FormatException
@@ -34,10 +34,11 @@ package loci.formats.tiff;
 
 import java.io.Closeable;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
-import java.util.List;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import loci.common.ByteArrayHandle;
 import loci.common.Constants;
@@ -47,7 +48,9 @@ import loci.common.Region;
 import loci.common.enumeration.EnumException;
 import loci.formats.FormatException;
 import loci.formats.ImageTools;
+import loci.formats.Instrumentation;
 import loci.formats.codec.CodecOptions;
+import loci.formats.codec.StreamingDecoder;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -67,13 +70,27 @@ public class TiffParser implements Closeable {
   private static final Logger LOGGER =
     LoggerFactory.getLogger(TiffParser.class);
 
+  /** Maximum number of partially decoded strips to keep for resuming. */
+  private static final int MAX_STRIP_DECODERS = 4;
+
   // -- Fields --
 
   /** Input source from which to parse TIFF data. */
   protected transient RandomAccessInputStream in;
 
-  /** Cached tile buffer to avoid re-allocations when reading tiles. */
-  private byte[] cachedTileBuffer;
+  /**
+   * Cached tile buffer to avoid re-allocations when reading tiles.
+   * Reused across calls to getSamples as long as the tile size is unchanged.
+   */
+  private transient byte[] cachedTileBuffer;
+
+  /**
+   * Decoders for compressed strips that have been partially read, indexed
+   * by strip offset.  Reading further down a strip resumes the decoder
+   * instead of decompressing the strip from the beginning again.
+   */
+  private transient Map<Long, StreamingDecoder> stripDecoders =
+    new LinkedHashMap<Long, StreamingDecoder>();
 
   /** Whether or not the TIFF file contains BigTIFF data. */
   private boolean bigTiff;
@@ -130,6 +147,8 @@ public class TiffParser implements Closeable {
     if (canClose && in != null) {
       in.close();
     }
+    cachedTileBuffer = null;
+    closeStripDecoders();
   }
 
   // -- TiffParser methods --
@@ -358,27 +377,50 @@ public class TiffParser implements Closeable {
     int bytesPerEntry = bigTiff ? TiffConstants.BIG_TIFF_BYTES_PER_ENTRY :
       TiffConstants.BYTES_PER_ENTRY;
 
-    final List<Long> offsets = new ArrayList<Long>();
+    long[] offsets = new long[16];
+    int count = 0;
+    long length = in.length();
     long offset = getFirstOffset();
-    while (offset > 0 && offset < in.length()) {
+    while (offset > 0 && offset < length) {
       in.seek(offset);
-      offsets.add(offset);
+      if (count == offsets.length) {
+        offsets = Arrays.copyOf(offsets, count * 2);
+      }
+      offsets[count++] = offset;
       long nEntries = bigTiff ? in.readLong() : in.readUnsignedShort();
       long entryBytes = nEntries * bytesPerEntry;
-      if (in.getFilePointer() + entryBytes + (bigTiff ? 8 : 4) > in.length()) {
+      if (in.getFilePointer() + entryBytes + (bigTiff ? 8 : 4) > length) {
         // this can easily happen when writing multiple planes to a file
         break;
       }
+      // hop directly to the next IFD pointer without reading the entries
       in.skipBytes(entryBytes);
       offset = getNextOffset(offset);
     }
 
-    long[] f = new long[offsets.size()];
-    for (int i=0; i<f.length; i++) {
-      f[i] = offsets.get(i).longValue();
-    }
+    return Arrays.copyOf(offsets, count);
+  }
+
+  /**
+   * Returns the main list of IFDs in the file, without parsing any of them.
+   * Each IFD is read from this parser when it is first requested, and a
+   * bounded number of parsed IFDs are cached.
+   *
+   * This is much faster than {@link #getMainIFDs()} for files with many
+   * pages, but assumes that every IFD in the chain describes an image.
+   */
+  public LazyIFDList getLazyMainIFDs() throws IOException {
+    return getLazyMainIFDs(LazyIFDList.DEFAULT_CACHE_SIZE);
+  }
 
-    return f;
+  /**
+   * Returns the main list of IFDs in the file, without parsing any of them.
+   *
+   * @param cacheSize the maximum number of parsed IFDs to keep in memory
+   * @see #getLazyMainIFDs()
+   */
+  public LazyIFDList getLazyMainIFDs(int cacheSize) throws IOException {
+    return new LazyIFDList(this, getIFDOffsets(), cacheSize);
   }
 
   /**
@@ -740,63 +782,26 @@ public class TiffParser implements Closeable {
     int pixel = ifd.getBytesPerSample()[0];
     int effectiveChannels = planarConfig == 2 ? 1 : samplesPerPixel;
 
-    if (ifd.get(IFD.STRIP_BYTE_COUNTS) instanceof OnDemandLongArray) {
-      OnDemandLongArray counts = (OnDemandLongArray) ifd.get(IFD.STRIP_BYTE_COUNTS);
-      if (counts != null) {
-        counts.setStream(in);
-      }
-    }
-    if (ifd.get(IFD.TILE_BYTE_COUNTS) instanceof OnDemandLongArray) {
-      OnDemandLongArray counts = (OnDemandLongArray) ifd.get(IFD.TILE_BYTE_COUNTS);
-      if (counts != null) {
-        counts.setStream(in);
-      }
-    }
-
-    long[] stripByteCounts = ifd.getStripByteCounts();
-    long[] rowsPerStrip = ifd.getRowsPerStrip();
+    setOnDemandStreams(ifd);
 
+    // only the offset and byte count for the requested tile are retrieved,
+    // so that large offset tables are never read in their entirety
     int offsetIndex = (int) (row * numTileCols + col);
-    int countIndex = offsetIndex;
-    if (equalStrips) {
-      countIndex = 0;
-    }
-    if (stripByteCounts[countIndex] == (rowsPerStrip[0] * tileWidth) &&
-      pixel > 1)
-    {
-      stripByteCounts[countIndex] *= pixel;
-    }
-    else if (stripByteCounts[countIndex] < 0 && countIndex > 0) {
-      LOGGER.debug("byte count #{} was {}; correcting to {}", countIndex,
-        stripByteCounts[countIndex], stripByteCounts[countIndex - 1]);
-      stripByteCounts[countIndex] = stripByteCounts[countIndex - 1];
-    }
+    long byteCount = getStripByteCount(ifd, offsetIndex);
 
-    long stripOffset = 0;
-    long nStrips = 0;
-
-    if (ifd.getOnDemandStripOffsets() != null) {
-      OnDemandLongArray stripOffsets = ifd.getOnDemandStripOffsets();
-      stripOffsets.setStream(in);
-      stripOffset = stripOffsets.get(offsetIndex);
-      nStrips = stripOffsets.size();
-    }
-    else {
-      long[] stripOffsets = ifd.getStripOffsets();
-      stripOffset = stripOffsets[offsetIndex];
-      nStrips = stripOffsets.length;
-    }
+    long stripOffset = ifd.getStripOffset(offsetIndex);
+    long nStrips = ifd.getStripOffsetCount();
 
     int size = (int) (tileWidth * tileLength * pixel * effectiveChannels);
 
     if (buf == null) buf = new byte[size];
-    if (stripByteCounts[countIndex] == 0 || stripOffset >= in.length()) {
+    if (byteCount == 0 || stripOffset >= in.length()) {
       // make sure that the buffer is cleared before returning
       // the caller may be reusing the same buffer for multiple calls to getTile
       Arrays.fill(buf, (byte) 0);
       return buf;
     }
-    int tileSize = (int) stripByteCounts[countIndex];
+    int tileSize = (int) byteCount;
     if (jpegTable != null) {
       tileSize += jpegTable.length - 2;
     }
@@ -860,6 +865,122 @@ public class TiffParser implements Closeable {
     return buf;
   }
 
+  /**
+   * Checks whether the tiles in the given IFD can be copied without
+   * decompression and decoded independently with the tile's codec, giving
+   * the same pixels as {@link #getSamples(IFD, byte[])}.  This excludes
+   * strips, predictors, bit-packed or half-precision samples, planar
+   * multi-channel data and photometric interpretations that need to be
+   * converted after decompression.
+   */
+  public static boolean canCopyCompressedTiles(IFD ifd)
+    throws FormatException
+  {
+    TiffCompression compression = ifd.getCompression();
+    if (!ifd.isTiled() || compression.getCodec() == null ||
+      compression == TiffCompression.OLD_JPEG)
+    {
+      return false;
+    }
+    int bits = ifd.getBitsPerSample()[0];
+    if ((bits % 8) != 0 || (ifd.getIFDIntValue(IFD.SAMPLE_FORMAT) == 3 &&
+      bits != 32 && bits != 64))
+    {
+      return false;
+    }
+    PhotoInterp photoInterp = ifd.getPhotometricInterpretation();
+    if (photoInterp == PhotoInterp.WHITE_IS_ZERO ||
+      photoInterp == PhotoInterp.CMYK ||
+      (photoInterp == PhotoInterp.Y_CB_CR &&
+      compression != TiffCompression.JPEG))
+    {
+      return false;
+    }
+    return ifd.getIFDIntValue(IFD.PREDICTOR, 1) == 1 &&
+      ifd.getIFDIntValue(IFD.FILL_ORDER) != 2 &&
+      (ifd.getPlanarConfiguration() == 1 || ifd.getSamplesPerPixel() == 1);
+  }
+
+  /**
+   * Retrieves the options needed to decode a single tile from the given
+   * IFD, as returned by {@link #getCompressedTile(IFD, byte[], int, int)}.
+   * @see #canCopyCompressedTiles(IFD)
+   */
+  public static CodecOptions getCompressedTileCodecOptions(IFD ifd)
+    throws FormatException
+  {
+    CodecOptions options =
+      ifd.getCompression().getCompressionCodecOptions(ifd);
+    options.width = (int) ifd.getTileWidth();
+    options.height = (int) ifd.getTileLength();
+    options.maxBytes = options.width * options.height * options.channels *
+      ifd.getBytesPerSample()[0];
+    return options;
+  }
+
+  /**
+   * Retrieves the number of bytes returned by
+   * {@link #getCompressedTile(IFD, byte[], int, int)} for the given tile.
+   */
+  public long getCompressedTileSize(IFD ifd, int row, int col)
+    throws FormatException
+  {
+    long byteCount = getRawTileByteCount(ifd, getTileIndex(ifd, row, col));
+    byte[] jpegTable = (byte[]) ifd.getIFDValue(IFD.JPEG_TABLES);
+    if (jpegTable != null && byteCount > 2) {
+      // the tables lose their EOI marker and the tile loses its SOI marker
+      byteCount += jpegTable.length - 4;
+    }
+    if (byteCount < 0 || byteCount > Integer.MAX_VALUE) {
+      throw new FormatException("Invalid compressed tile size: " + byteCount);
+    }
+    return byteCount;
+  }
+
+  /**
+   * Reads a single tile without decompressing it.  If the IFD has shared
+   * JPEG tables, they are merged into the tile so that it can be decoded
+   * on its own.
+   *
+   * @param buf buffer in which to store the tile, or null to allocate one
+   *   of size {@link #getCompressedTileSize(IFD, int, int)}
+   * @return the buffer containing the compressed tile
+   */
+  public byte[] getCompressedTile(IFD ifd, byte[] buf, int row, int col)
+    throws FormatException, IOException
+  {
+    setOnDemandStreams(ifd);
+    int index = getTileIndex(ifd, row, col);
+    long offset = ifd.getStripOffset(index);
+    long byteCount = getRawTileByteCount(ifd, index);
+    int size = (int) getCompressedTileSize(ifd, row, col);
+
+    if (buf == null) {
+      buf = new byte[size];
+    }
+    else if (buf.length < size) {
+      throw new IllegalArgumentException("Tile buffer too small: expected >=" +
+        size + ", got " + buf.length);
+    }
+    if (byteCount <= 0) {
+      return buf;
+    }
+
+    byte[] jpegTable = (byte[]) ifd.getIFDValue(IFD.JPEG_TABLES);
+    if (jpegTable != null && byteCount > 2) {
+      int tableLength = jpegTable.length - 2;
+      System.arraycopy(jpegTable, 0, buf, 0, tableLength);
+      // skip over the duplicate SOI marker
+      in.seek(offset + 2);
+      in.readFully(buf, tableLength, (int) byteCount - 2);
+    }
+    else {
+      in.seek(offset);
+      in.readFully(buf, 0, (int) byteCount);
+    }
+    return buf;
+  }
+
   public byte[] getSamples(IFD ifd, byte[] buf)
     throws FormatException, IOException
   {
@@ -938,37 +1059,22 @@ public class TiffParser implements Closeable {
     long imageWidth = ifd.getImageWidth();
     long imageLength = ifd.getImageLength();
 
-    long[] stripOffsets = null;
+    setOnDemandStreams(ifd);
 
-    if (ifd.getOnDemandStripOffsets() != null) {
-      OnDemandLongArray offsets = ifd.getOnDemandStripOffsets();
-      offsets.setStream(in);
-      stripOffsets = offsets.toArray();
-    }
-    else {
-      stripOffsets = ifd.getStripOffsets();
-    }
-
-    if (ifd.get(IFD.STRIP_BYTE_COUNTS) instanceof OnDemandLongArray) {
-      OnDemandLongArray counts = (OnDemandLongArray) ifd.get(IFD.STRIP_BYTE_COUNTS);
-      if (counts != null) {
-        counts.setStream(in);
-      }
-    }
-    if (ifd.get(IFD.TILE_BYTE_COUNTS) instanceof OnDemandLongArray) {
-      OnDemandLongArray counts = (OnDemandLongArray) ifd.get(IFD.TILE_BYTE_COUNTS);
-      if (counts != null) {
-        counts.setStream(in);
-      }
-    }
-
-    long[] stripByteCounts = ifd.getStripByteCounts();
+    // offsets and byte counts are only read when needed, as the complete
+    // tables may be very large (e.g. millions of tiles in a BigTIFF)
+    long[] stripOffsets = null;
+    long[] stripByteCounts = null;
 
     // if the image is stored as strips (not tiles) and
     // the strips are stored in order with no gaps then we can
     // treat them as a single strip for faster reading
     boolean contiguousTiles = tileWidth == imageWidth && planarConfig == 1;
-    if (contiguousTiles) {
+    if (contiguousTiles || numTileRows * numTileCols == 1) {
+      stripOffsets = ifd.getStripOffsets();
+      stripByteCounts = ifd.getStripByteCounts();
+    }
+    if (contiguousTiles && stripOffsets != null && stripByteCounts != null) {
       for (int i=1; i<stripOffsets.length; i++) {
         if (stripOffsets[i] != stripOffsets[i - 1] + stripByteCounts[i - 1] ||
           stripOffsets[i] + stripByteCounts[i] > in.length())
@@ -1051,13 +1157,7 @@ public class TiffParser implements Closeable {
         }
       }
       if (effectiveChannels > 1) {
-        byte[][] split = new byte[effectiveChannels][buf.length / effectiveChannels];
-        for (int c=0; c<split.length; c++) {
-          split[c] = ImageTools.splitChannels(buf, c, effectiveChannels, bytes, false, true);
-        }
-        for (int c=0; c<split.length; c++) {
-          System.arraycopy(split[c], 0, buf, c * split[c].length, split[c].length);
-        }
+        ImageTools.deinterleave(buf.clone(), buf, effectiveChannels, bytes);
       }
       return buf;
     }
@@ -1084,10 +1184,16 @@ public class TiffParser implements Closeable {
     int bufferSize = (int) tileWidth * (int) tileLength *
       bufferSizeSamplesPerPixel * bpp;
 
-    cachedTileBuffer = new byte[bufferSize];
+    if (cachedTileBuffer == null || cachedTileBuffer.length != bufferSize) {
+      cachedTileBuffer = new byte[bufferSize];
+    }
 
     Region tileBounds = new Region(0, 0, (int) tileWidth, (int) tileLength);
 
+    // compressed strips that are only partly covered by the requested
+    // region are decoded incrementally, up to the last requested row
+    boolean partialStrips = canDecodePartialStrips(ifd, overlapX, overlapY);
+
     for (int row=0; row<numTileRows; row++) {
       // make the first row shorter to account for row overlap
       if (row == 0) {
@@ -1116,7 +1222,20 @@ public class TiffParser implements Closeable {
 
         if (!imageBounds.intersects(tileBounds)) continue;
 
-        getTile(ifd, cachedTileBuffer, row, col);
+        boolean decoded = false;
+        if (partialStrips) {
+          int firstRow = Math.max(y - tileBounds.y, 0);
+          int stripRows =
+            (int) Math.min(tileLength, imageLength - tileBounds.y);
+          int lastRow = Math.min(endY - tileBounds.y, stripRows);
+          if (firstRow > 0 || lastRow < stripRows) {
+            decoded =
+              getStripRows(ifd, cachedTileBuffer, row, firstRow, lastRow);
+          }
+        }
+        if (!decoded) {
+          getTile(ifd, cachedTileBuffer, row, col);
+        }
 
         // adjust tile bounds, if necessary
 
@@ -1170,6 +1289,191 @@ public class TiffParser implements Closeable {
     return buf;
   }
 
+  /**
+   * Retrieves the byte count of a single strip or tile, correcting
+   * obviously invalid values.
+   */
+  private long getStripByteCount(IFD ifd, int index) throws FormatException {
+    int countIndex = equalStrips ? 0 : index;
+    long byteCount = ifd.getStripByteCount(countIndex);
+    if (byteCount == (ifd.getRowsPerStrip()[0] * ifd.getTileWidth()) &&
+      ifd.getBytesPerSample()[0] > 1)
+    {
+      byteCount *= ifd.getBytesPerSample()[0];
+    }
+    else if (byteCount < 0 && countIndex > 0) {
+      long previous = ifd.getStripByteCount(countIndex - 1);
+      LOGGER.debug("byte count #{} was {}; correcting to {}", countIndex,
+        byteCount, previous);
+      byteCount = previous;
+    }
+    return byteCount;
+  }
+
+  /** Computes the index of a tile, checking that it is within range. */
+  private int getTileIndex(IFD ifd, int row, int col) throws FormatException {
+    long rows = ifd.getTilesPerColumn();
+    long cols = ifd.getTilesPerRow();
+    if (col < 0 || col >= cols) {
+      throw new IllegalArgumentException(
+        "X index " + col + " not in range [0, " + cols + ")");
+    }
+    if (row < 0 || row >= rows) {
+      throw new IllegalArgumentException(
+        "Y index " + row + " not in range [0, " + rows + ")");
+    }
+    return (int) (row * cols + col);
+  }
+
+  /**
+   * Gets the byte count recorded for the given tile.  Unlike
+   * {@link IFD#getStripByteCounts()}, no allowance is made for writers that
+   * under-report LZW byte counts, as that would copy data belonging to the
+   * next tile.
+   */
+  private long getRawTileByteCount(IFD ifd, int index) throws FormatException {
+    long[] byteCounts = ifd.getIFDLongArray(IFD.TILE_BYTE_COUNTS);
+    if (byteCounts == null) {
+      byteCounts = ifd.getIFDLongArray(IFD.STRIP_BYTE_COUNTS);
+    }
+    if (byteCounts == null || index >= byteCounts.length) {
+      return getStripByteCount(ifd, index);
+    }
+    return byteCounts[index];
+  }
+
+  /**
+   * Checks whether strips in the given IFD can be decoded a few rows at a
+   * time.  This requires strips rather than tiles, a compression type that
+   * supports incremental decoding, and samples that need no conversion
+   * beyond de-interleaving.
+   */
+  private boolean canDecodePartialStrips(IFD ifd, int overlapX, int overlapY)
+    throws FormatException
+  {
+    TiffCompression compression = ifd.getCompression();
+    if (compression != TiffCompression.LZW &&
+      compression != TiffCompression.DEFLATE &&
+      compression != TiffCompression.PROPRIETARY_DEFLATE)
+    {
+      return false;
+    }
+    PhotoInterp photoInterp = ifd.getPhotometricInterpretation();
+    return !ifd.isTiled() && overlapX == 0 && overlapY == 0 &&
+      (ifd.getPlanarConfiguration() == 1 || ifd.getSamplesPerPixel() == 1) &&
+      (ifd.getBitsPerSample()[0] % 8) == 0 &&
+      photoInterp != PhotoInterp.WHITE_IS_ZERO &&
+      photoInterp != PhotoInterp.CMYK && photoInterp != PhotoInterp.Y_CB_CR &&
+      ifd.getIFDIntValue(IFD.FILL_ORDER) != 2;
+  }
+
+  /**
+   * Decodes rows <code>firstRow</code> (inclusive) to <code>lastRow</code>
+   * (exclusive) of a compressed strip, and stores them at the same position
+   * in the tile buffer that {@link #getTile(IFD, byte[], int, int)} would
+   * use.  Rows after <code>lastRow</code> are not decompressed.  If an
+   * earlier call left a decoder for the same strip before
+   * <code>firstRow</code>, decoding resumes from there.
+   *
+   * @return false if the strip could not be decoded incrementally, in which
+   *   case the buffer is unchanged
+   */
+  private boolean getStripRows(IFD ifd, byte[] buf, int strip, int firstRow,
+    int lastRow) throws FormatException, IOException
+  {
+    long offset = ifd.getStripOffset(strip);
+    long byteCount = getStripByteCount(ifd, strip);
+    if (byteCount <= 0 || offset >= in.length()) {
+      return false;
+    }
+
+    int samplesPerPixel = ifd.getSamplesPerPixel();
+    long tileWidth = ifd.getTileWidth();
+    int pixel = ifd.getBytesPerSample()[0];
+    int rowLen = (int) (tileWidth * samplesPerPixel * pixel);
+    long start = (long) firstRow * rowLen;
+
+    StreamingDecoder decoder = stripDecoders.remove(offset);
+    if (decoder != null && decoder.getPosition() > start) {
+      decoder.close();
+      decoder = null;
+    }
+    if (Instrumentation.isEnabled()) {
+      Instrumentation.cacheAccessed("TiffParser.stripDecoders",
+        decoder != null);
+    }
+    if (decoder == null) {
+      decoder =
+        ifd.getCompression().getStreamingDecoder(in, offset, byteCount);
+      if (decoder == null) {
+        return false;
+      }
+    }
+    else {
+      LOGGER.trace("Resuming strip at offset {} from byte {}", offset,
+        decoder.getPosition());
+    }
+
+    byte[] rows = new byte[(lastRow - firstRow) * rowLen];
+    int length = 0;
+    try {
+      decoder.skip(start - decoder.getPosition());
+      if (decoder.getPosition() == start) {
+        length = decoder.readFully(rows, 0, rows.length);
+      }
+    }
+    catch (IOException e) {
+      decoder.close();
+      throw e;
+    }
+    if (length == rows.length) {
+      stripDecoders.put(offset, decoder);
+      if (stripDecoders.size() > MAX_STRIP_DECODERS) {
+        Iterator<StreamingDecoder> eldest = stripDecoders.values().iterator();
+        eldest.next().close();
+        eldest.remove();
+      }
+    }
+    else {
+      decoder.close();
+    }
+
+    TiffCompression.undifference(rows, ifd);
+    if (samplesPerPixel == 1) {
+      System.arraycopy(rows, 0, buf, (int) start, rows.length);
+    }
+    else {
+      unpackBytes(buf, (int) (firstRow * tileWidth), rows, ifd);
+    }
+    return true;
+  }
+
+  /** Releases any decoders left over from partially read strips. */
+  private void closeStripDecoders() throws IOException {
+    for (StreamingDecoder decoder : stripDecoders.values()) {
+      decoder.close();
+    }
+    stripDecoders.clear();
+  }
+
+  /**
+   * Make sure that any offset or byte count arrays in the given IFD
+   * that are read on demand will use this parser's stream.
+   */
+  private void setOnDemandStreams(IFD ifd) throws FormatException {
+    OnDemandLongArray offsets = ifd.getOnDemandStripOffsets();
+    if (offsets != null) {
+      offsets.setStream(in);
+    }
+    int[] tags = {IFD.STRIP_BYTE_COUNTS, IFD.TILE_BYTE_COUNTS};
+    for (int tag : tags) {
+      Object counts = ifd.get(tag);
+      if (counts instanceof OnDemandLongArray) {
+        ((OnDemandLongArray) counts).setStream(in);
+      }
+    }
+  }
+
   // -- Utility methods - byte stream decoding --
 
   /**
@@ -1239,6 +1543,19 @@ public class TiffParser implements Closeable {
     boolean noDiv8 = bps0 % 8 != 0;
     boolean littleEndian = ifd.isLittleEndian();
 
+    // Chunky samples that need no conversion are only de-interleaved;
+    // the byte order of each sample is unchanged.
+    if (!noDiv8 && photoInterp != PhotoInterp.WHITE_IS_ZERO
+        && photoInterp != PhotoInterp.CMYK
+        && photoInterp != PhotoInterp.Y_CB_CR) {
+      int count = Math.min(sampleCount, nSamples - startIndex);
+      if (count > 0) {
+        ImageTools.deinterleave(bytes, 0, samples, startIndex * numBytes,
+          nChannels, numBytes, count, nSamples);
+      }
+      return;
+    }
+
     long maxValue = (long) Math.pow(2, bps0) - 1;
     if (photoInterp == PhotoInterp.CMYK) maxValue = Integer.MAX_VALUE;
 
@@ -1249,6 +1566,31 @@ public class TiffParser implements Closeable {
       skipBits = 0;
     }
 
+    // Single-channel samples whose bit depth is not a multiple of 8 are
+    // unpacked one row at a time, skipping the padding at the end of
+    // each row.
+    if (noDiv8 && nChannels == 1 && bps0 <= 16
+        && photoInterp != PhotoInterp.CMYK
+        && photoInterp != PhotoInterp.Y_CB_CR
+        && photoInterp != PhotoInterp.CFA_ARRAY) {
+      boolean invert = photoInterp == PhotoInterp.WHITE_IS_ZERO;
+      int count = Math.min(sampleCount, nSamples - startIndex);
+      int ndx = startIndex;
+      long bitOffset = 0;
+      while (count > 0) {
+        int rowRemaining = (int) (imageWidth - (ndx % imageWidth));
+        int n = Math.min(count, rowRemaining);
+        bitOffset = ImageTools.unpackBits(bytes, bitOffset, bps0, invert,
+          samples, ndx * numBytes, numBytes, littleEndian, n);
+        if (n == rowRemaining) {
+          bitOffset += skipBits;
+        }
+        ndx += n;
+        count -= n;
+      }
+      return;
+    }
+
     // set up YCbCr-specific values
     float lumaRed = PhotoInterp.LUMA_RED;
     float lumaGreen = PhotoInterp.LUMA_GREEN;
@@ -0,0 +1,236 @@
+/*
+ * #%L
+ * BSD implementations of Bio-Formats readers and writers
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats.utests;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertTrue;
+import static org.testng.internal.junit.ArrayAsserts.assertArrayEquals;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import loci.formats.AsyncFormatReader;
+import loci.formats.FormatException;
+import loci.formats.IFormatReader;
+import loci.formats.in.FakeReader;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link loci.formats.AsyncFormatReader}.
+ */
+public class AsyncFormatReaderTest {
+
+  private static final String ID =
+    "test&sizeX=512&sizeY=384&sizeZ=3&series=2&resolutions=3.fake";
+
+  private final AtomicInteger created = new AtomicInteger();
+  private final AtomicInteger opened = new AtomicInteger();
+
+  private final AsyncFormatReader.ReaderFactory factory =
+    new AsyncFormatReader.ReaderFactory() {
+      @Override
+      public IFormatReader createReader() {
+        created.incrementAndGet();
+        return new FakeReader() {
+          @Override
+          public byte[] openBytes(int no, byte[] buf, int x, int y,
+            int w, int h)
+            throws FormatException, java.io.IOException
+          {
+            opened.incrementAndGet();
+            return super.openBytes(no, buf, x, y, w, h);
+          }
+        };
+      }
+    };
+
+  private AsyncFormatReader reader;
+
+  @BeforeMethod
+  public void setUp() {
+    created.set(0);
+    opened.set(0);
+  }
+
+  @AfterMethod
+  public void tearDown() throws Exception {
+    if (reader != null) {
+      reader.close();
+      reader = null;
+    }
+  }
+
+  @Test
+  public void testMatchesSynchronousReads() throws Exception {
+    reader = new AsyncFormatReader(factory, ID, 3, 64);
+    IFormatReader expected = new FakeReader();
+    expected.setFlattenedResolutions(false);
+    expected.setId(ID);
+
+    List<CompletableFuture<byte[]>> futures =
+      new ArrayList<CompletableFuture<byte[]>>();
+    List<byte[]> planes = new ArrayList<byte[]>();
+    for (int s=0; s<expected.getSeriesCount(); s++) {
+      expected.setSeries(s);
+      for (int r=0; r<expected.getResolutionCount(); r++) {
+        expected.setResolution(r);
+        for (int no=0; no<expected.getImageCount(); no++) {
+          futures.add(reader.openBytesAsync(s, r, no));
+          planes.add(expected.openBytes(no));
+          futures.add(reader.openBytesAsync(s, r, no, 7, 5, 32, 16));
+          planes.add(expected.openBytes(no, 7, 5, 32, 16));
+        }
+      }
+    }
+    expected.close();
+
+    for (int i=0; i<futures.size(); i++) {
+      assertArrayEquals(planes.get(i), futures.get(i).get());
+    }
+    // one metadata reader plus at most 3 readers for pixel data
+    assertTrue(created.get() <= 4);
+    assertEquals(0, reader.getPendingCount());
+  }
+
+  @Test
+  public void testBackpressure() throws Exception {
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    final CountDownLatch latch = new CountDownLatch(1);
+    try {
+      reader = new AsyncFormatReader(factory, ID, 1, 2, executor);
+      // block the only thread, so that requests stay pending
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            latch.await();
+          }
+          catch (InterruptedException e) { }
+        }
+      });
+
+      CompletableFuture<byte[]> first = reader.openBytesAsync(0, 0, 0);
+      CompletableFuture<byte[]> second = reader.openBytesAsync(0, 0, 1);
+      CompletableFuture<byte[]> third = reader.openBytesAsync(0, 0, 2);
+      assertEquals(2, reader.getPendingCount());
+      assertTrue(third.isCompletedExceptionally());
+      try {
+        third.get();
+      }
+      catch (ExecutionException e) {
+        assertTrue(e.getCause() instanceof RejectedExecutionException);
+      }
+
+      latch.countDown();
+      first.get(10, TimeUnit.SECONDS);
+      second.get(10, TimeUnit.SECONDS);
+      assertEquals(0, reader.getPendingCount());
+      assertFalse(reader.openBytesAsync(0, 0, 2).get().length == 0);
+    }
+    finally {
+      latch.countDown();
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testCancelBeforeRead() throws Exception {
+    reader = new AsyncFormatReader(factory, ID, 1, 4);
+    reader.close();
+    CompletableFuture<byte[]> closed = reader.openBytesAsync(0, 0, 0);
+    assertTrue(closed.isCompletedExceptionally());
+    reader = null;
+
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    final CountDownLatch latch = new CountDownLatch(1);
+    try {
+      reader = new AsyncFormatReader(factory, ID, 1, 4, executor);
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            latch.await();
+          }
+          catch (InterruptedException e) { }
+        }
+      });
+      CompletableFuture<byte[]> cancelled = reader.openBytesAsync(0, 0, 0);
+      assertTrue(cancelled.cancel(false));
+      latch.countDown();
+      reader.openBytesAsync(0, 0, 1).get(10, TimeUnit.SECONDS);
+      assertEquals(1, opened.get());
+      assertEquals(0, reader.getPendingCount());
+    }
+    finally {
+      latch.countDown();
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testDefaultReadersCreateNoMemoFiles() throws Exception {
+    File dir = Files.createTempDirectory(
+      AsyncFormatReaderTest.class.getName() + ".").toFile();
+    File file = new File(dir, "test&sizeX=64&sizeY=64&sizeZ=2.fake");
+    try {
+      assertTrue(file.createNewFile());
+      reader = new AsyncFormatReader(file.getAbsolutePath(), 2);
+      reader.openBytesAsync(0, 0, 0).get(10, TimeUnit.SECONDS);
+      reader.openBytesAsync(0, 0, 1).get(10, TimeUnit.SECONDS);
+      reader.close();
+      reader = null;
+      assertEquals(1, dir.listFiles().length);
+    }
+    finally {
+      for (File f : dir.listFiles()) {
+        f.delete();
+      }
+      dir.delete();
+    }
+  }
+
+}
@@ -0,0 +1,132 @@
+/*
+ * #%L
+ * BSD implementations of Bio-Formats readers and writers
+ * %%
+ * Copyright (C) 2026 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats.utests;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import loci.formats.DirectoryListingCache;
+
+public class DirectoryListingCacheTest {
+
+  private Path dir;
+
+  @BeforeMethod
+  public void setUp() throws IOException {
+    DirectoryListingCache.clear();
+    dir = Files.createTempDirectory("DirectoryListingCacheTest");
+    dir.toFile().deleteOnExit();
+  }
+
+  @AfterMethod
+  public void tearDown() {
+    for (File f : dir.toFile().listFiles()) {
+      f.delete();
+    }
+    dir.toFile().delete();
+    DirectoryListingCache.clear();
+  }
+
+  private void touch(String name) throws IOException {
+    Files.createFile(dir.resolve(name)).toFile().deleteOnExit();
+  }
+
+  @Test
+  public void testSortedListing() throws IOException {
+    touch("c.tif");
+    touch("a.tif");
+    touch("b.tif");
+    assertEquals(DirectoryListingCache.list(dir.toString()),
+      new String[] {"a.tif", "b.tif", "c.tif"});
+  }
+
+  @Test
+  public void testCachedUntilModified() throws IOException {
+    touch("a.tif");
+    File d = dir.toFile();
+    long modified = d.lastModified() - 60000;
+    d.setLastModified(modified);
+    assertEquals(DirectoryListingCache.list(d.getPath()),
+      new String[] {"a.tif"});
+
+    // the listing is reused while the modification time is unchanged
+    touch("b.tif");
+    d.setLastModified(modified);
+    assertEquals(DirectoryListingCache.list(d.getPath()),
+      new String[] {"a.tif"});
+
+    d.setLastModified(modified + 1000);
+    assertEquals(DirectoryListingCache.list(d.getPath()),
+      new String[] {"a.tif", "b.tif"});
+  }
+
+  @Test
+  public void testRecentlyModifiedNotCached() throws IOException {
+    touch("a.tif");
+    assertEquals(DirectoryListingCache.list(dir.toString()),
+      new String[] {"a.tif"});
+    long modified = dir.toFile().lastModified();
+    touch("b.tif");
+    dir.toFile().setLastModified(modified);
+    assertEquals(DirectoryListingCache.list(dir.toString()),
+      new String[] {"a.tif", "b.tif"});
+  }
+
+  @Test
+  public void testMissingDirectory() {
+    assertNull(DirectoryListingCache.list(
+      dir.resolve("missing").toString()));
+  }
+
+  @Test
+  public void testFindPrefixRange() {
+    String[] names = {"a1.tif", "b1.tif", "b10.tif", "b2.tif", "c1.tif"};
+    assertEquals(DirectoryListingCache.findPrefixRange(names, "b"),
+      new int[] {1, 4});
+    assertEquals(DirectoryListingCache.findPrefixRange(names, "b1"),
+      new int[] {1, 3});
+    assertEquals(DirectoryListingCache.findPrefixRange(names, "d"),
+      new int[] {5, 5});
+    assertEquals(DirectoryListingCache.findPrefixRange(names, ""),
+      new int[] {0, 5});
+  }
+
+}
@@ -264,6 +264,28 @@ public class FakeReaderTest {
     assertEquals(reader.getSizeX(), sizeX);
   }
 
+  @Test
+  public void testTileSizeAndCompression() throws Exception {
+    reader.setId("foo&sizeX=1024&sizeY=1024&resolutions=2.fake");
+    assertEquals(reader.getOptimalTileWidth(), 1024);
+    assertEquals(reader.getCompression(), null);
+    reader.close();
+
+    reader.setId("foo&sizeX=1024&sizeY=1024&resolutions=2" +
+      "&tileSizeX=600&tileSizeY=128&compression=LZW.fake");
+    assertEquals(reader.getOptimalTileWidth(), 600);
+    assertEquals(reader.getOptimalTileHeight(), 128);
+    assertEquals(reader.getCompression(), "LZW");
+    reader.setResolution(1);
+    assertEquals(reader.getOptimalTileWidth(), 512);
+    assertEquals(reader.getOptimalTileHeight(), 128);
+  }
+
+  @Test(expectedExceptions={FormatException.class})
+  public void testInvalidTileSize() throws Exception {
+    reader.setId("foo&tileSizeX=-1.fake");
+  }
+
   @Test
   public void testValuesFromIni() throws Exception {
     int sizeX = FakeReader.DEFAULT_SIZE_X + 1;
@@ -56,6 +56,9 @@ import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertEqualsNoOrder;
 import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
 import static loci.formats.FilePatternBlock.BLOCK_START;
 import static loci.formats.FilePatternBlock.BLOCK_END;
 
@@ -264,4 +267,50 @@ public class FileStitcherTest {
     fs.close();
   }
 
+  @Test
+  public void testReaderPool() throws IOException, FormatException {
+    FileStitcher fs = new FileStitcher();
+    fs.setMaxOpenReaders(2);
+    fs.setId("test_z<0-5>.fake");
+    assertEquals(fs.getImageCount(), 6);
+    for (int no : new int[] {5, 1, 4, 2, 3, 0, 5, 1}) {
+      assertNotNull(fs.openBytes(no));
+      // the first file's reader plus at most two pooled readers
+      assertTrue(fs.getUnderlyingReaders().length <= 3);
+    }
+
+    IFormatReader r = fs.getReader(5);
+    assertSame(fs.getReader(5), r);
+    fs.getReader(1);
+    assertSame(fs.getReader(5), r);
+    fs.getReader(2);
+    fs.getReader(3);
+    assertNull(r.getCurrentFile());
+    assertNotSame(fs.getReader(5), r);
+    assertNotNull(fs.openBytes(5));
+    fs.close();
+  }
+
+  @Test
+  public void testUsedFilesLeaveReaderPool() throws IOException, FormatException {
+    FileStitcher fs = new FileStitcher();
+    fs.setMaxOpenReaders(2);
+    fs.setId("test_z<0-5>.fake");
+    assertNotNull(fs.openBytes(5));
+    IFormatReader r = fs.getReader(5);
+    assertEquals(fs.getUnderlyingReaders().length, 2);
+
+    assertEquals(fs.getUsedFiles().length, 6);
+    // no readers were added to the pool, and the open reader was kept
+    assertEquals(fs.getUnderlyingReaders().length, 2);
+    assertSame(fs.getReader(5), r);
+    assertNotNull(r.getCurrentFile());
+    fs.close();
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testInvalidMaxOpenReaders() {
+    new FileStitcher().setMaxOpenReaders(0);
+  }
+
 }
@@ -32,7 +32,14 @@
 
 package loci.formats.utests;
 
+import loci.formats.ChannelSeparator;
+import loci.formats.ClassList;
+import loci.formats.IFormatReader;
 import loci.formats.ImageReader;
+import loci.formats.Instrumentation;
+import loci.formats.ReaderMetrics;
+import loci.formats.ReaderWrapper;
+import loci.formats.in.FakeReader;
 import loci.formats.in.MetadataOptions;
 import loci.formats.in.DynamicMetadataOptions;
 import loci.formats.in.MetadataLevel;
@@ -43,6 +50,7 @@ import org.testng.annotations.Test;
 import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.fail;
 
 
 public class ImageReaderTest {
@@ -85,4 +93,60 @@ public class ImageReaderTest {
     reader.close();
   }
 
+  @Test
+  public void testInstrumentedOpenBytes() throws Exception {
+    ReaderMetrics metrics = new ReaderMetrics();
+    Instrumentation.addListener(metrics);
+    ImageReader reader = new ImageReader();
+    try {
+      reader.setId("test.fake");
+      reader.openBytes(0);
+      assertEquals(metrics.getPhaseCounts().get(
+        reader.getReader().getFormat() + "/openBytes"), Long.valueOf(1));
+    }
+    finally {
+      reader.close();
+      Instrumentation.removeListener(metrics);
+    }
+  }
+
+  @Test
+  public void testInstrumentedOpenBytesWithoutId() throws Exception {
+    ReaderMetrics metrics = new ReaderMetrics();
+    Instrumentation.addListener(metrics);
+    ImageReader reader = new ImageReader();
+    try {
+      reader.openBytes(0);
+      fail("Expected IllegalStateException");
+    }
+    catch (IllegalStateException e) {
+      // the original exception must not be replaced by one thrown
+      // while recording the duration of the call
+      for (StackTraceElement element : e.getStackTrace()) {
+        assertTrue(!element.getMethodName().equals("stopTimer"));
+      }
+    }
+    finally {
+      reader.close();
+      Instrumentation.removeListener(metrics);
+    }
+  }
+
+  @Test
+  public void testDuplicateKeepsReaderClasses() throws Exception {
+    ClassList<IFormatReader> classes =
+      new ClassList<IFormatReader>(IFormatReader.class);
+    classes.addClass(FakeReader.class);
+    ReaderWrapper wrapper = new ChannelSeparator(new ImageReader(classes));
+    ReaderWrapper copy = wrapper.duplicate(null);
+    assertTrue(copy instanceof ChannelSeparator);
+    IFormatReader[] readers = ((ImageReader) copy.getReader()).getReaders();
+    assertEquals(readers.length, 1);
+    assertTrue(readers[0] instanceof FakeReader);
+
+    // a given reader class still replaces the image reader
+    copy = wrapper.duplicate(FakeReader.class);
+    assertTrue(copy.getReader() instanceof FakeReader);
+  }
+
 }
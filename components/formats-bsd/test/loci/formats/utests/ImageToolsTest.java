@@ -0,0 +1,233 @@
+/*
+ * #%L
+ * BSD implementations of Bio-Formats readers and writers
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats.utests;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.internal.junit.ArrayAsserts.assertArrayEquals;
+
+import java.util.Random;
+
+import loci.common.DataTools;
+import loci.formats.ImageTools;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for the channel, lookup table and sample unpacking methods in
+ * {@link loci.formats.ImageTools}.
+ */
+public class ImageToolsTest {
+
+  private static final int PIXELS = 1031;
+
+  @DataProvider(name = "layouts")
+  public Object[][] createLayouts() {
+    return new Object[][] {
+      {1, 1}, {2, 1}, {3, 1}, {4, 1}, {5, 1},
+      {3, 2}, {4, 2}, {3, 4}, {2, 8},
+    };
+  }
+
+  @Test(dataProvider = "layouts")
+  public void testDeinterleave(int c, int bytes) {
+    byte[] src = random(PIXELS * c * bytes);
+    byte[] dest = new byte[src.length];
+    ImageTools.deinterleave(src, dest, c, bytes);
+
+    int plane = PIXELS * bytes;
+    for (int ch=0; ch<c; ch++) {
+      byte[] expected =
+        ImageTools.splitChannels(src, ch, c, bytes, false, true);
+      byte[] actual = new byte[plane];
+      System.arraycopy(dest, ch * plane, actual, 0, plane);
+      assertArrayEquals(expected, actual);
+    }
+  }
+
+  @Test(dataProvider = "layouts")
+  public void testInterleave(int c, int bytes) {
+    byte[] src = random(PIXELS * c * bytes);
+    byte[] planar = new byte[src.length];
+    byte[] interleaved = new byte[src.length];
+    ImageTools.deinterleave(src, planar, c, bytes);
+    ImageTools.interleave(planar, interleaved, c, bytes);
+    assertArrayEquals(src, interleaved);
+  }
+
+  @Test
+  public void testDeinterleaveOffset() {
+    int c = 3;
+    int planeLength = 20;
+    byte[] src = random(5 * c);
+    byte[] dest = new byte[planeLength * c];
+    ImageTools.deinterleave(src, 0, dest, 10, c, 1, 5, planeLength);
+    for (int i=0; i<5; i++) {
+      for (int ch=0; ch<c; ch++) {
+        assertEquals(src[i * c + ch], dest[ch * planeLength + 10 + i]);
+      }
+    }
+  }
+
+  @Test(dataProvider = "layouts")
+  public void testSplitChannels(int c, int bytes) {
+    byte[] src = random(PIXELS * c * bytes);
+    for (int ch=0; ch<c; ch++) {
+      byte[] actual =
+        ImageTools.splitChannels(src, ch, c, bytes, false, true);
+      assertEquals(PIXELS * bytes, actual.length);
+      for (int i=0; i<PIXELS; i++) {
+        for (int b=0; b<bytes; b++) {
+          assertEquals(src[(i * c + ch) * bytes + b], actual[i * bytes + b]);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testApplyLookupTable8() {
+    for (int c=1; c<=4; c++) {
+      byte[][] lut = new byte[c][];
+      for (int ch=0; ch<c; ch++) {
+        lut[ch] = random(256);
+      }
+      byte[] indices = random(PIXELS);
+      byte[][] expected = ImageTools.indexedToRGB(lut, indices);
+
+      byte[] planar = new byte[PIXELS * c];
+      ImageTools.applyLookupTable(lut, indices, planar, false);
+      byte[] interleaved = new byte[PIXELS * c];
+      ImageTools.applyLookupTable(lut, indices, interleaved, true);
+
+      for (int ch=0; ch<c; ch++) {
+        for (int i=0; i<PIXELS; i++) {
+          assertEquals(lut[ch][indices[i] & 0xff], expected[ch][i]);
+          assertEquals(expected[ch][i], planar[ch * PIXELS + i]);
+          assertEquals(expected[ch][i], interleaved[i * c + ch]);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testApplyLookupTable16() {
+    Random r = new Random(16);
+    for (boolean little : new boolean[] {true, false}) {
+      int c = 3;
+      short[][] lut = new short[c][65536];
+      for (int ch=0; ch<c; ch++) {
+        for (int i=0; i<lut[ch].length; i++) {
+          lut[ch][i] = (short) r.nextInt();
+        }
+      }
+      byte[] indices = random(PIXELS * 2);
+      short[][] expected = ImageTools.indexedToRGB(lut, indices, little);
+
+      byte[] planar = new byte[PIXELS * c * 2];
+      ImageTools.applyLookupTable(lut, indices, planar, false, little);
+      byte[] interleaved = new byte[PIXELS * c * 2];
+      ImageTools.applyLookupTable(lut, indices, interleaved, true, little);
+
+      for (int ch=0; ch<c; ch++) {
+        for (int i=0; i<PIXELS; i++) {
+          int index = DataTools.bytesToInt(indices, i * 2, 2, little);
+          assertEquals(lut[ch][index], expected[ch][i]);
+          assertEquals(expected[ch][i],
+            DataTools.bytesToShort(planar, (ch * PIXELS + i) * 2, little));
+          assertEquals(expected[ch][i],
+            DataTools.bytesToShort(interleaved, (i * c + ch) * 2, little));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testSwapBytes() {
+    for (int bytes : new int[] {1, 2, 3, 4, 8}) {
+      byte[] src = random(PIXELS * bytes + 1);
+      byte[] swapped = src.clone();
+      ImageTools.swapBytes(swapped, 1, PIXELS * bytes, bytes);
+      assertEquals(src[0], swapped[0]);
+      for (int i=0; i<PIXELS; i++) {
+        for (int b=0; b<bytes; b++) {
+          assertEquals(src[1 + i * bytes + b],
+            swapped[1 + i * bytes + bytes - 1 - b]);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testUnpackBits() throws Exception {
+    byte[] src = random(PIXELS * 2);
+    for (int bits : new int[] {1, 2, 4, 7, 10, 12, 15, 16, 24}) {
+      int bytes = (bits + 7) / 8;
+      for (boolean invert : new boolean[] {false, true}) {
+        for (boolean little : new boolean[] {false, true}) {
+          // start part way into the first byte, and read past the end of
+          // 'src' so that the trailing samples are unpacked as 0
+          long start = 3;
+          int count = (int) ((src.length * 8L - start) / bits) + 2;
+          byte[] dest = new byte[count * bytes];
+          long end = ImageTools.unpackBits(src, start, bits, invert, dest, 0,
+            bytes, little, count);
+          assertEquals(start + (long) count * bits, end);
+
+          long max = (1L << bits) - 1;
+          for (int i=0; i<count; i++) {
+            long value = 0;
+            long pos = start + (long) i * bits;
+            if (pos + bits <= src.length * 8L) {
+              for (int b=0; b<bits; b++, pos++) {
+                int bit = (src[(int) (pos / 8)] >> (7 - (int) (pos % 8))) & 1;
+                value = (value << 1) | bit;
+              }
+            }
+            if (invert) {
+              value = max - value;
+            }
+            assertEquals(value,
+              DataTools.bytesToLong(dest, i * bytes, bytes, little));
+          }
+        }
+      }
+    }
+  }
+
+  private byte[] random(int length) {
+    byte[] b = new byte[length];
+    new Random(length).nextBytes(b);
+    return b;
+  }
+
+}
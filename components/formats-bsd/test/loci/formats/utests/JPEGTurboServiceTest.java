@@ -0,0 +1,272 @@
+/*
+ * #%L
+ * BSD implementations of Bio-Formats readers and writers
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package loci.formats.utests;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertTrue;
+import static org.testng.internal.junit.ArrayAsserts.assertArrayEquals;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageOutputStream;
+
+import loci.common.ByteArrayHandle;
+import loci.common.RandomAccessInputStream;
+import loci.formats.services.JPEGTurboServiceImpl;
+
+import org.testng.SkipException;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link loci.formats.services.JPEGTurboServiceImpl}.
+ */
+public class JPEGTurboServiceTest {
+
+  private static final int WIDTH = 1000;
+  private static final int HEIGHT = 700;
+
+  /** Restart interval in MCUs, i.e. 128 pixel wide tiles. */
+  private static final int INTERVAL = 8;
+
+  private static final String JPEG_METADATA = "javax_imageio_jpeg_image_1.0";
+
+  private byte[] jpeg;
+  private List<JPEGTurboServiceImpl> services;
+
+  @BeforeMethod
+  public void setUp() throws Exception {
+    jpeg = createJPEG(WIDTH, HEIGHT, INTERVAL);
+    services = new ArrayList<JPEGTurboServiceImpl>();
+  }
+
+  @AfterMethod
+  public void tearDown() throws Exception {
+    for (JPEGTurboServiceImpl service : services) {
+      service.close();
+    }
+  }
+
+  @Test
+  public void testLazyMarkersMatchEagerScan() throws Exception {
+    JPEGTurboServiceImpl lazy = createService();
+    assertFalse(lazy.isRestartMarkerScanComplete());
+    // reading the first tile only scans the start of the stream
+    lazy.getCompressedTile(0, 0);
+    assertFalse(lazy.isRestartMarkerScanComplete());
+
+    long[] markers = lazy.getRestartMarkers();
+    assertTrue(lazy.isRestartMarkerScanComplete());
+    assertArrayEquals(findMarkers(jpeg), markers);
+
+    JPEGTurboServiceImpl eager = createService();
+    assertArrayEquals(markers, eager.getRestartMarkers());
+  }
+
+  @Test
+  public void testLazyTilesMatchEagerTiles() throws Exception {
+    JPEGTurboServiceImpl eager = createService();
+    eager.getRestartMarkers();
+    JPEGTurboServiceImpl lazy = createService();
+    JPEGTurboServiceImpl preset = new JPEGTurboServiceImpl();
+    services.add(preset);
+    preset.setRestartMarkers(eager.getRestartMarkers());
+    preset.initialize(createStream(), WIDTH, HEIGHT);
+
+    // visit the tiles backwards, so that the lazy scan jumps ahead
+    for (int row=eager.getTileRows()-1; row>=0; row--) {
+      for (int col=eager.getTileColumns()-1; col>=0; col--) {
+        byte[] expected = eager.getTile(col, row);
+        assertArrayEquals(expected, lazy.getTile(col, row));
+        assertArrayEquals(expected, preset.getTile(col, row));
+        assertArrayEquals(eager.getCompressedTile(col, row),
+          lazy.getCompressedTile(col, row));
+      }
+    }
+  }
+
+  @Test
+  public void testRegionMatchesTiles() throws Exception {
+    JPEGTurboServiceImpl service = createService();
+    int x = 100;
+    int y = 50;
+    int w = 700;
+    int h = 400;
+    byte[] region = service.getTile(new byte[w * h * 3], x, y, w, h);
+
+    JPEGTurboServiceImpl tiles = createService();
+    int tileWidth = tiles.getTileWidth();
+    int tileHeight = tiles.getTileHeight();
+    for (int row=0; row<h; row++) {
+      int tileRow = (y + row) / tileHeight;
+      for (int col=0; col<w; col++) {
+        int tileCol = (x + col) / tileWidth;
+        byte[] tile = tiles.getTile(tileCol, tileRow);
+        int src = 3 * (((y + row) % tileHeight) * tileWidth +
+          ((x + col) % tileWidth));
+        int dest = 3 * (row * w + col);
+        for (int c=0; c<3; c++) {
+          assertEquals(tile[src + c], region[dest + c]);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testCloseReleasesDecodeThreads() throws Exception {
+    JPEGTurboServiceImpl service = createService();
+    byte[] first = service.getTile(new byte[WIDTH * HEIGHT * 3],
+      0, 0, WIDTH, HEIGHT);
+    service.close();
+
+    long timeout = System.currentTimeMillis() + 10000;
+    while (countDecodeThreads() > 0 &&
+      System.currentTimeMillis() < timeout)
+    {
+      Thread.sleep(10);
+    }
+    assertEquals(0, countDecodeThreads());
+
+    // the service can be initialized again after closing
+    service.initialize(createStream(), WIDTH, HEIGHT);
+    assertArrayEquals(first, service.getTile(new byte[WIDTH * HEIGHT * 3],
+      0, 0, WIDTH, HEIGHT));
+  }
+
+  // -- Helper methods --
+
+  private JPEGTurboServiceImpl createService() throws Exception {
+    JPEGTurboServiceImpl service = new JPEGTurboServiceImpl();
+    services.add(service);
+    if (!service.isLibraryLoaded()) {
+      throw new SkipException("Turbo JPEG library not available");
+    }
+    service.initialize(createStream(), WIDTH, HEIGHT);
+    return service;
+  }
+
+  private RandomAccessInputStream createStream() throws IOException {
+    return new RandomAccessInputStream(new ByteArrayHandle(jpeg));
+  }
+
+  private static int countDecodeThreads() {
+    int count = 0;
+    for (Thread t : Thread.getAllStackTraces().keySet()) {
+      if (t.getName().equals("JPEGTurbo-decode") && t.isAlive()) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /** Find the offset following every RST marker in the given JPEG. */
+  private static long[] findMarkers(byte[] data) {
+    List<Long> markers = new ArrayList<Long>();
+    int sos = 0;
+    while (sos < data.length - 1 &&
+      !(data[sos] == (byte) 0xff && data[sos + 1] == (byte) 0xda))
+    {
+      sos++;
+    }
+    int scan = sos + 2 + (((data[sos + 2] & 0xff) << 8) | (data[sos + 3] & 0xff));
+    markers.add((long) scan);
+    for (int i=scan; i<data.length-1; i++) {
+      if (data[i] == (byte) 0xff && (data[i + 1] & 0xf8) == 0xd0) {
+        markers.add((long) i + 2);
+      }
+    }
+    long[] result = new long[markers.size()];
+    for (int i=0; i<result.length; i++) {
+      result[i] = markers.get(i);
+    }
+    return result;
+  }
+
+  /**
+   * Create an RGB JPEG with the given restart interval.
+   */
+  static byte[] createJPEG(int width, int height, int interval)
+    throws IOException
+  {
+    BufferedImage image =
+      new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    for (int y=0; y<height; y++) {
+      for (int x=0; x<width; x++) {
+        int r = (x * 7) & 0xff;
+        int g = (y * 5) & 0xff;
+        int b = ((x + y) / 3) & 0xff;
+        image.setRGB(x, y, (r << 16) | (g << 8) | b);
+      }
+    }
+
+    ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+    ImageWriteParam param = writer.getDefaultWriteParam();
+    IIOMetadata metadata = writer.getDefaultImageMetadata(
+      new ImageTypeSpecifier(image), param);
+    IIOMetadataNode root =
+      (IIOMetadataNode) metadata.getAsTree(JPEG_METADATA);
+    IIOMetadataNode markers =
+      (IIOMetadataNode) root.getElementsByTagName("markerSequence").item(0);
+    IIOMetadataNode dri = new IIOMetadataNode("dri");
+    dri.setAttribute("interval", String.valueOf(interval));
+    markers.insertBefore(dri, markers.getFirstChild());
+    metadata.setFromTree(JPEG_METADATA, root);
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ImageOutputStream ios = ImageIO.createImageOutputStream(out);
+    try {
+      writer.setOutput(ios);
+      writer.write(null, new IIOImage(image, null, metadata), param);
+    }
+    finally {
+      ios.close();
+      writer.dispose();
+    }
+    return out.toByteArray();
+  }
+
+}
@@ -40,6 +40,7 @@ import static org.testng.Assert.assertNull;
 import java.io.File;
 import java.nio.file.Files;
 
+import loci.formats.IFormatReader;
 import loci.formats.Memoizer;
 import loci.formats.in.FakeReader;
 
@@ -198,6 +199,21 @@ public class MemoizerTest {
     checkNoMemo(memoizer, id);
   }
 
+  @Test
+  public void testSetIdSameFile() throws Exception {
+    Memoizer memoizer = new Memoizer(reader, 0);
+    checkMemo(memoizer, id);
+
+    // reopen from the memo, then set the same file again
+    memoizer.setId(id);
+    assertTrue(memoizer.isLoadedFromMemo());
+    IFormatReader open = memoizer.getReader();
+    memoizer.setId(id);
+    assertTrue(memoizer.getReader() == open);
+    assertTrue(memoizer.isLoadedFromMemo());
+    memoizer.close();
+  }
+
   @Test
   public void testGetMemoFilePermissionsDirectory() throws Exception {
     File directory = createTempDir();
@@ -274,4 +290,37 @@ public class MemoizerTest {
     checkMemo(memoizer, id);
   }
 
+  @Test
+  public void testDuplicateDirectory() throws Exception {
+    File directory = createTempDir();
+    Memoizer memoizer = new Memoizer(reader, 0, directory);
+    Memoizer copy = (Memoizer) memoizer.duplicate(null);
+    assertEquals(copy.getMemoFile(id), memoizer.getMemoFile(id));
+
+    // the copy restores the memo file saved by the original
+    memoizer.setId(id);
+    assertTrue(memoizer.isSavedToMemo());
+    memoizer.close();
+    copy.setId(id);
+    assertTrue(copy.isLoadedFromMemo());
+    copy.close();
+    recursiveDeleteOnExit(directory);
+  }
+
+  @Test
+  public void testDuplicateNullDirectory() throws Exception {
+    Memoizer memoizer = new Memoizer(reader, 0, null);
+    Memoizer copy = (Memoizer) memoizer.duplicate(null);
+    assertNull(copy.getMemoFile(id));
+    checkNoMemo(copy, id);
+  }
+
+  @Test
+  public void testDuplicateInPlace() throws Exception {
+    Memoizer memoizer = new Memoizer(reader, 0);
+    Memoizer copy = (Memoizer) memoizer.duplicate(null);
+    checkMemoFile(copy.getMemoFile(id));
+    checkMemo(copy, id);
+  }
+
 }
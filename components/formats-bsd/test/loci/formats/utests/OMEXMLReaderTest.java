@@ -0,0 +1,191 @@
+/*
+ * #%L
+ * BSD implementations of Bio-Formats readers and writers
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats.utests;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import loci.common.services.ServiceFactory;
+import loci.formats.FormatTools;
+import loci.formats.MetadataTools;
+import loci.formats.in.OMEXMLReader;
+import loci.formats.meta.IMetadata;
+import loci.formats.out.OMEXMLWriter;
+import loci.formats.services.OMEXMLService;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/**
+ * Tests reading of whole planes and regions from OME-XML files with
+ * uncompressed and compressed BinData.
+ */
+public class OMEXMLReaderTest {
+
+  private static final int SIZE_X = 48;
+  private static final int SIZE_Y = 32;
+  private static final int SIZE_T = 3;
+  private static final int SERIES = 2;
+
+  private File dir;
+  private byte[][][] planes;
+
+  @BeforeClass
+  public void setUp() throws Exception {
+    dir = Files.createTempDirectory("omexml").toFile();
+    int planeSize = SIZE_X * SIZE_Y * 2;
+    planes = new byte[SERIES][SIZE_T][planeSize];
+    for (int s=0; s<SERIES; s++) {
+      for (int t=0; t<SIZE_T; t++) {
+        for (int i=0; i<planeSize; i++) {
+          planes[s][t][i] = (byte) ((i * 7 + t * 31 + s * 101) % 253);
+        }
+      }
+    }
+  }
+
+  @AfterClass
+  public void tearDown() throws Exception {
+    for (File f : dir.listFiles()) {
+      f.delete();
+    }
+    dir.delete();
+  }
+
+  @DataProvider(name = "compression")
+  public Object[][] createCompression() {
+    return new Object[][] {{"Uncompressed"}, {"zlib"}};
+  }
+
+  @Test(dataProvider = "compression")
+  public void testWrittenFile(String compression) throws Exception {
+    File file = writeFile(compression);
+    checkFile(file);
+  }
+
+  @Test(dataProvider = "compression")
+  public void testWrappedBinData(String compression) throws Exception {
+    File file = writeFile(compression);
+    String xml = new String(Files.readAllBytes(file.toPath()),
+      StandardCharsets.UTF_8);
+
+    // wrap the base64 text, and add markup that could be mistaken
+    // for the start or end of a BinData element
+    StringBuilder wrapped = new StringBuilder();
+    int start = 0;
+    int binData = xml.indexOf("<BinData");
+    while (binData >= 0) {
+      int textStart = xml.indexOf('>', binData) + 1;
+      int textEnd = xml.indexOf('<', textStart);
+      wrapped.append(xml, start, binData);
+      wrapped.append("<!-- <BinData>AAAA</BinData> -->");
+      wrapped.append(xml, binData, textStart);
+      for (int i=textStart; i<textEnd; i+=76) {
+        wrapped.append("\n  ");
+        wrapped.append(xml, i, Math.min(i + 76, textEnd));
+      }
+      wrapped.append('\n');
+      start = textEnd;
+      binData = xml.indexOf("<BinData", start);
+    }
+    wrapped.append(xml.substring(start));
+    xml = wrapped.toString().replace("Name=\"image #0\"", "Name=\"a > b\"");
+
+    Files.write(file.toPath(), xml.getBytes(StandardCharsets.UTF_8));
+    checkFile(file);
+  }
+
+  private File writeFile(String compression) throws Exception {
+    ServiceFactory factory = new ServiceFactory();
+    OMEXMLService service = factory.getInstance(OMEXMLService.class);
+    IMetadata metadata = service.createOMEXMLMetadata();
+    for (int s=0; s<SERIES; s++) {
+      MetadataTools.populateMetadata(metadata, s, "image #" + s, false,
+        "XYZCT", "uint16", SIZE_X, SIZE_Y, 1, 1, SIZE_T, 1);
+    }
+
+    File file = new File(dir, compression + ".ome");
+    file.delete();
+    OMEXMLWriter writer = new OMEXMLWriter();
+    writer.setMetadataRetrieve(metadata);
+    writer.setCompression(compression);
+    writer.setId(file.getAbsolutePath());
+    for (int s=0; s<SERIES; s++) {
+      writer.setSeries(s);
+      for (int t=0; t<SIZE_T; t++) {
+        writer.saveBytes(t, planes[s][t]);
+      }
+    }
+    writer.close();
+    return file;
+  }
+
+  private void checkFile(File file) throws Exception {
+    OMEXMLReader reader = new OMEXMLReader();
+    try {
+      reader.setId(file.getAbsolutePath());
+      assertEquals(SERIES, reader.getSeriesCount());
+      for (int s=0; s<SERIES; s++) {
+        reader.setSeries(s);
+        assertEquals(SIZE_T, reader.getImageCount());
+        assertEquals(FormatTools.UINT16, reader.getPixelType());
+        for (int t=0; t<SIZE_T; t++) {
+          assertTrue(Arrays.equals(planes[s][t], reader.openBytes(t)));
+
+          int x = 5;
+          int y = 7;
+          int w = 17;
+          int h = 11;
+          byte[] region = reader.openBytes(t, x, y, w, h);
+          for (int row=0; row<h; row++) {
+            for (int col=0; col<w * 2; col++) {
+              assertEquals(planes[s][t][((row + y) * SIZE_X + x) * 2 + col],
+                region[row * w * 2 + col]);
+            }
+          }
+        }
+      }
+    }
+    finally {
+      reader.close();
+    }
+  }
+
+}
@@ -33,9 +33,19 @@
 package loci.formats.utests;
 
 import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertSame;
 import static org.testng.AssertJUnit.assertTrue;
 
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Hashtable;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import loci.common.services.DependencyException;
 import loci.common.services.ServiceException;
@@ -57,6 +67,9 @@ import org.testng.annotations.Test;
  */
 public class OMEXMLServiceTest {
 
+  private static final String UPGRADE_FILE =
+    "/spec/schema/samples/2011-06/6x4y1z1t3c8b-swatch-upgrade.ome";
+
   private OMEXMLService service;
 
   @BeforeMethod
@@ -139,4 +152,80 @@ public class OMEXMLServiceTest {
 
     assertTrue(xml.contains(expectedText));
   }
+
+  @Test
+  public void testTransformLatestVersion() throws ServiceException {
+    OMEXMLMetadata metadata = service.createOMEXMLMetadata();
+    metadata.setImageID("Image:0", 0);
+    String xml = service.getOMEXML(metadata);
+    assertEquals(service.getLatestVersion(), service.getOMEXMLVersion(xml));
+    assertSame(xml, service.transformToLatestVersion(xml));
+  }
+
+  @Test
+  public void testTransformOldVersion() throws Exception {
+    String xml = readSample(UPGRADE_FILE);
+    assertEquals("2011-06", service.getOMEXMLVersion(xml));
+
+    String upgraded = service.transformToLatestVersion(xml);
+    assertNotNull(upgraded);
+    assertEquals(service.getLatestVersion(),
+      service.getOMEXMLVersion(upgraded));
+    // a second upgrade reuses the compiled stylesheets
+    assertEquals(upgraded, service.transformToLatestVersion(xml));
+
+    OMEXMLMetadata metadata = service.createOMEXMLMetadata(xml);
+    assertEquals(1, metadata.getImageCount());
+    assertEquals("Pixels:0:0", metadata.getPixelsID(0));
+  }
+
+  @Test
+  public void testGetOMEXMLVersionIncomplete() {
+    // only the root element is needed to determine the version
+    String xml = "<OME xmlns=\"http://www.openmicroscopy.org/Schemas/OME/" +
+      "2012-06\"><Image ID=\"Image:0\">";
+    assertEquals("2012-06", service.getOMEXMLVersion(xml));
+    assertEquals(null, service.getOMEXMLVersion(""));
+  }
+
+  @Test
+  public void testConcurrentValidation() throws Exception {
+    final String valid = service.getOMEXML(
+      service.createOMEXMLMetadata(readSample(UPGRADE_FILE)));
+    final String invalid = valid.replace("DimensionOrder=\"XYCZT\"",
+      "DimensionOrder=\"XYZZY\"");
+    assertTrue(!valid.equals(invalid));
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+      for (int i=0; i<16; i++) {
+        final String xml = i % 2 == 0 ? valid : invalid;
+        results.add(executor.submit(new Callable<Boolean>() {
+          @Override
+          public Boolean call() {
+            return service.validateOMEXML(xml);
+          }
+        }));
+      }
+      for (int i=0; i<results.size(); i++) {
+        assertEquals(i % 2 == 0, results.get(i).get().booleanValue());
+      }
+    }
+    finally {
+      executor.shutdown();
+    }
+  }
+
+  private String readSample(String path) {
+    InputStream stream = getClass().getResourceAsStream(path);
+    assertNotNull(stream);
+    Scanner scanner = new Scanner(stream, "UTF-8");
+    try {
+      return scanner.useDelimiter("\\A").next();
+    }
+    finally {
+      scanner.close();
+    }
+  }
 }
@@ -0,0 +1,179 @@
+/*
+ * #%L
+ * BSD implementations of Bio-Formats readers and writers
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package loci.formats.utests;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.List;
+
+import loci.formats.CoreMetadata;
+import loci.formats.in.DynamicMetadataOptions;
+import loci.formats.in.TileJPEGReader;
+import loci.formats.services.JPEGTurboServiceImpl;
+
+import org.testng.SkipException;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for the scaled sub-resolutions of
+ * {@link loci.formats.in.TileJPEGReader}.
+ */
+public class TileJPEGReaderTest {
+
+  private static final int WIDTH = 1000;
+  private static final int HEIGHT = 700;
+  private static final int RESOLUTIONS = 4;
+
+  private File file;
+  private TileJPEGReader reader;
+
+  @BeforeMethod
+  public void setUp() throws Exception {
+    if (!new JPEGTurboServiceImpl().isLibraryLoaded()) {
+      throw new SkipException("Turbo JPEG library not available");
+    }
+    file = File.createTempFile("TileJPEGReaderTest", ".jpg");
+    file.deleteOnExit();
+    FileOutputStream out = new FileOutputStream(file);
+    try {
+      out.write(JPEGTurboServiceTest.createJPEG(WIDTH, HEIGHT, 8));
+    }
+    finally {
+      out.close();
+    }
+    reader = new TileJPEGReader();
+    DynamicMetadataOptions options = new DynamicMetadataOptions();
+    options.setInteger(TileJPEGReader.SCALED_RESOLUTIONS_KEY, RESOLUTIONS);
+    reader.setMetadataOptions(options);
+  }
+
+  @AfterMethod
+  public void tearDown() throws Exception {
+    if (reader != null) {
+      reader.close();
+    }
+    if (file != null) {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void testResolutionSizes() throws Exception {
+    reader.setFlattenedResolutions(false);
+    reader.setId(file.getAbsolutePath());
+    assertEquals(1, reader.getSeriesCount());
+    assertEquals(RESOLUTIONS, reader.getResolutionCount());
+    for (int r=0; r<RESOLUTIONS; r++) {
+      reader.setResolution(r);
+      int scale = 1 << r;
+      assertEquals((WIDTH + scale - 1) / scale, reader.getSizeX());
+      assertEquals((HEIGHT + scale - 1) / scale, reader.getSizeY());
+    }
+
+    List<CoreMetadata> core = reader.getCoreMetadataList();
+    assertEquals(RESOLUTIONS, core.size());
+    assertEquals(RESOLUTIONS, core.get(0).resolutionCount);
+    for (int r=1; r<RESOLUTIONS; r++) {
+      assertEquals(1, core.get(r).resolutionCount);
+    }
+  }
+
+  @Test
+  public void testFlattenedResolutions() throws Exception {
+    reader.setFlattenedResolutions(true);
+    reader.setId(file.getAbsolutePath());
+    assertEquals(RESOLUTIONS, reader.getSeriesCount());
+    for (int s=0; s<RESOLUTIONS; s++) {
+      reader.setSeries(s);
+      assertEquals(1, reader.getResolutionCount());
+      assertEquals((WIDTH + (1 << s) - 1) >> s, reader.getSizeX());
+    }
+  }
+
+  @Test
+  public void testScaledPixels() throws Exception {
+    reader.setFlattenedResolutions(false);
+    reader.setId(file.getAbsolutePath());
+    byte[] full = reader.openBytes(0);
+
+    for (int r=1; r<RESOLUTIONS; r++) {
+      reader.setResolution(r);
+      int scale = 1 << r;
+      int w = reader.getSizeX();
+      int h = reader.getSizeY();
+      byte[] scaled = reader.openBytes(0);
+      assertEquals(w * h * 3, scaled.length);
+
+      // each scaled pixel should be close to the average of the
+      // corresponding full resolution pixels
+      long totalError = 0;
+      for (int y=0; y<h; y++) {
+        for (int x=0; x<w; x++) {
+          for (int c=0; c<3; c++) {
+            int sum = 0;
+            int count = 0;
+            for (int yy=y*scale; yy<Math.min((y + 1) * scale, HEIGHT); yy++) {
+              for (int xx=x*scale; xx<Math.min((x + 1) * scale, WIDTH); xx++) {
+                sum += full[3 * (yy * WIDTH + xx) + c] & 0xff;
+                count++;
+              }
+            }
+            int expected = sum / count;
+            totalError += Math.abs(expected - (scaled[3 * (y * w + x) + c] & 0xff));
+          }
+        }
+      }
+      double meanError = (double) totalError / (w * h * 3);
+      assertTrue("resolution " + r + " mean error " + meanError,
+        meanError < 8);
+
+      // a sub-region of a scaled resolution matches the whole plane
+      byte[] region = reader.openBytes(0, w / 4, h / 4, w / 2, h / 2);
+      for (int y=0; y<h/2; y++) {
+        for (int x=0; x<w/2; x++) {
+          for (int c=0; c<3; c++) {
+            assertEquals(scaled[3 * ((y + h / 4) * w + x + w / 4) + c],
+              region[3 * (y * (w / 2) + x) + c]);
+          }
+        }
+      }
+    }
+  }
+
+}
@@ -0,0 +1,328 @@
+/*
+ * #%L
+ * BSD implementations of Bio-Formats readers and writers
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats.utests.out;
+
+import static org.testng.Assert.assertEquals;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import loci.common.RandomAccessInputStream;
+import loci.formats.FormatTools;
+import loci.formats.MetadataTools;
+import loci.formats.codec.CompressionType;
+import loci.formats.in.DicomReader;
+import loci.formats.in.DynamicMetadataOptions;
+import loci.formats.out.DicomWriter;
+import loci.formats.ome.OMEPyramidStore;
+
+import ome.xml.model.primitives.PositiveInteger;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/**
+ * Tests writing DICOM tiles out of order and from multiple threads.
+ */
+public class DicomWriterTest {
+
+  private static final int SIZE_X = 600;
+  private static final int SIZE_Y = 400;
+  private static final int TILE_SIZE = 128;
+  private static final int RESOLUTIONS = 2;
+
+  private File dir;
+  private byte[][] planes;
+  private List<int[]> tiles;
+
+  @DataProvider(name = "compressions")
+  public Object[][] createCompressions() {
+    return new Object[][] {
+      {CompressionType.UNCOMPRESSED.getCompression(), 1},
+      {CompressionType.JPEG.getCompression(), 1},
+      {CompressionType.J2K.getCompression(), 1},
+      {CompressionType.J2K.getCompression(), 4},
+    };
+  }
+
+  @BeforeMethod
+  public void setUp() throws Exception {
+    dir = Files.createTempDirectory("dicomWriterTest").toFile();
+
+    planes = new byte[RESOLUTIONS][];
+    tiles = new ArrayList<int[]>();
+    for (int res=0; res<RESOLUTIONS; res++) {
+      int sizeX = SIZE_X >> res;
+      int sizeY = SIZE_Y >> res;
+      planes[res] = new byte[sizeX * sizeY];
+      for (int i=0; i<planes[res].length; i++) {
+        planes[res][i] = (byte) ((i % sizeX) + (i / sizeX) * 3 + res);
+      }
+
+      for (int y=0; y<sizeY; y+=TILE_SIZE) {
+        for (int x=0; x<sizeX; x+=TILE_SIZE) {
+          tiles.add(new int[] {res, x, y,
+            Math.min(TILE_SIZE, sizeX - x), Math.min(TILE_SIZE, sizeY - y)});
+        }
+      }
+    }
+  }
+
+  @AfterMethod
+  public void tearDown() throws Exception {
+    delete(dir);
+  }
+
+  @Test(dataProvider = "compressions")
+  public void testConcurrentTiles(String compression, int threads) throws Exception {
+    // write all tiles in order from a single thread,
+    // then in reverse order from several threads
+    File expected = new File(new File(dir, "expected"), "test.dcm");
+    DicomWriter writer = createWriter(expected, compression, 1);
+    try {
+      for (int[] tile : tiles) {
+        writer.setResolution(tile[0]);
+        writer.saveBytes(0, getTile(planes[tile[0]], tile),
+          tile[1], tile[2], tile[3], tile[4]);
+      }
+    }
+    finally {
+      writer.close();
+    }
+
+    File actual = new File(new File(dir, "actual"), "test.dcm");
+    final DicomWriter concurrentWriter = createWriter(actual, compression, threads);
+    final List<int[]> reversed = new ArrayList<int[]>(tiles);
+    Collections.reverse(reversed);
+    final List<Exception> errors =
+      Collections.synchronizedList(new ArrayList<Exception>());
+    List<Thread> workers = new ArrayList<Thread>();
+    try {
+      for (int t=0; t<3; t++) {
+        final int first = t;
+        Thread worker = new Thread() {
+          @Override
+          public void run() {
+            try {
+              for (int i=first; i<reversed.size(); i+=3) {
+                int[] tile = reversed.get(i);
+                concurrentWriter.saveBytes(0, tile[0], 0,
+                  getTile(planes[tile[0]], tile),
+                  tile[1], tile[2], tile[3], tile[4]);
+              }
+            }
+            catch (Exception e) {
+              errors.add(e);
+            }
+          }
+        };
+        workers.add(worker);
+        worker.start();
+      }
+      for (Thread worker : workers) {
+        worker.join();
+      }
+      if (errors.size() > 0) {
+        throw errors.get(0);
+      }
+    }
+    finally {
+      concurrentWriter.close();
+    }
+
+    byte[][] expectedPlanes = readPlanes(new File(expected.getParentFile(), "test_0_0.dcm"));
+    byte[][] actualPlanes = readPlanes(new File(actual.getParentFile(), "test_0_0.dcm"));
+    for (int res=0; res<RESOLUTIONS; res++) {
+      assertEquals(actualPlanes[res], expectedPlanes[res]);
+    }
+
+    if (compression.equals(CompressionType.UNCOMPRESSED.getCompression())) {
+      for (int res=0; res<RESOLUTIONS; res++) {
+        assertEquals(actualPlanes[res], planes[res]);
+      }
+    }
+    else {
+      for (int res=0; res<RESOLUTIONS; res++) {
+        int xTiles = (int) Math.ceil((double) (SIZE_X >> res) / TILE_SIZE);
+        int yTiles = (int) Math.ceil((double) (SIZE_Y >> res) / TILE_SIZE);
+        checkOffsetTable(new File(actual.getParentFile(), "test_0_" + res + ".dcm"),
+          xTiles * yTiles);
+      }
+    }
+  }
+
+  @Test
+  public void testEncodePoolInOrder() throws Exception {
+    // tiles written in order are compressed out of order by the pool,
+    // so the caller waits on frames held for reordering
+    String compression = CompressionType.J2K.getCompression();
+    File expected = new File(new File(dir, "expected"), "test.dcm");
+    File actual = new File(new File(dir, "actual"), "test.dcm");
+    for (File file : new File[] {expected, actual}) {
+      DicomWriter writer =
+        createWriter(file, compression, file == expected ? 1 : 2);
+      try {
+        for (int[] tile : tiles) {
+          writer.setResolution(tile[0]);
+          writer.saveBytes(0, getTile(planes[tile[0]], tile),
+            tile[1], tile[2], tile[3], tile[4]);
+        }
+      }
+      finally {
+        writer.close();
+      }
+    }
+
+    byte[][] expectedPlanes = readPlanes(new File(expected.getParentFile(), "test_0_0.dcm"));
+    byte[][] actualPlanes = readPlanes(new File(actual.getParentFile(), "test_0_0.dcm"));
+    for (int res=0; res<RESOLUTIONS; res++) {
+      assertEquals(actualPlanes[res], expectedPlanes[res]);
+      int xTiles = (int) Math.ceil((double) (SIZE_X >> res) / TILE_SIZE);
+      int yTiles = (int) Math.ceil((double) (SIZE_Y >> res) / TILE_SIZE);
+      checkOffsetTable(new File(actual.getParentFile(), "test_0_" + res + ".dcm"),
+        xTiles * yTiles);
+    }
+  }
+
+  private DicomWriter createWriter(File file, String compression, int threads)
+    throws Exception
+  {
+    OMEPyramidStore metadata = new OMEPyramidStore();
+    MetadataTools.populateMetadata(metadata, 0, "tiles", true, "XYZCT",
+      FormatTools.getPixelTypeString(FormatTools.UINT8),
+      SIZE_X, SIZE_Y, 1, 1, 1, 1);
+    for (int res=1; res<RESOLUTIONS; res++) {
+      metadata.setResolutionSizeX(new PositiveInteger(SIZE_X >> res), 0, res);
+      metadata.setResolutionSizeY(new PositiveInteger(SIZE_Y >> res), 0, res);
+    }
+
+    DynamicMetadataOptions options = new DynamicMetadataOptions();
+    options.set(DicomWriter.ENCODE_THREADS_KEY, String.valueOf(threads));
+
+    file.getParentFile().mkdirs();
+    DicomWriter writer = new DicomWriter();
+    writer.setMetadataOptions(options);
+    writer.setMetadataRetrieve(metadata);
+    writer.setWriteSequentially(true);
+    writer.setId(file.getAbsolutePath());
+    writer.setCompression(compression);
+    for (int res=0; res<RESOLUTIONS; res++) {
+      writer.setResolution(res);
+      writer.setTileSizeX(TILE_SIZE);
+      writer.setTileSizeY(TILE_SIZE);
+    }
+    writer.setResolution(0);
+    return writer;
+  }
+
+  private byte[][] readPlanes(File file) throws Exception {
+    DicomReader reader = new DicomReader();
+    try {
+      reader.setFlattenedResolutions(false);
+      reader.setId(file.getAbsolutePath());
+      assertEquals(reader.getResolutionCount(), RESOLUTIONS);
+      byte[][] rtn = new byte[RESOLUTIONS][];
+      for (int res=0; res<RESOLUTIONS; res++) {
+        reader.setResolution(res);
+        assertEquals(reader.getSizeX(), SIZE_X >> res);
+        assertEquals(reader.getSizeY(), SIZE_Y >> res);
+        rtn[res] = reader.openBytes(0);
+      }
+      return rtn;
+    }
+    finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * Check that the Basic Offset Table points to each frame's item tag.
+   */
+  private void checkOffsetTable(File file, int frameCount) throws Exception {
+    RandomAccessInputStream in = new RandomAccessInputStream(file.getAbsolutePath());
+    try {
+      in.order(true);
+      long pixelData = -1;
+      byte[] buf = new byte[4];
+      for (long fp=128; fp<in.length() - 4; fp++) {
+        in.seek(fp);
+        in.read(buf);
+        if (buf[0] == (byte) 0xe0 && buf[1] == 0x7f && buf[2] == 0x10 && buf[3] == 0) {
+          pixelData = fp;
+          break;
+        }
+      }
+      // skip tag, VR, reserved bytes and undefined length
+      in.seek(pixelData + 12);
+      assertEquals(in.readInt(), 0xe000fffe);
+      assertEquals(in.readInt(), frameCount * 4);
+      long[] offsets = new long[frameCount];
+      for (int i=0; i<frameCount; i++) {
+        offsets[i] = in.readInt() & 0xffffffffL;
+      }
+      long firstFragment = in.getFilePointer();
+      for (long offset : offsets) {
+        in.seek(firstFragment + offset);
+        assertEquals(in.readInt(), 0xe000fffe);
+      }
+    }
+    finally {
+      in.close();
+    }
+  }
+
+  private static void delete(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+
+  private static byte[] getTile(byte[] plane, int[] tile) {
+    int sizeX = SIZE_X >> tile[0];
+    byte[] buf = new byte[tile[3] * tile[4]];
+    for (int row=0; row<tile[4]; row++) {
+      System.arraycopy(plane, (tile[2] + row) * sizeX + tile[1], buf, row * tile[3], tile[3]);
+    }
+    return buf;
+  }
+
+}
@@ -0,0 +1,298 @@
+/*
+ * #%L
+ * BSD implementations of Bio-Formats readers and writers
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats.utests.out;
+
+import static org.testng.Assert.assertEquals;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import loci.common.RandomAccessInputStream;
+import loci.formats.FormatException;
+import loci.formats.FormatTools;
+import loci.formats.ImageTools;
+import loci.formats.MetadataTools;
+import loci.formats.in.DynamicMetadataOptions;
+import loci.formats.in.JPEG2000Reader;
+import loci.formats.meta.IMetadata;
+import loci.formats.ome.OMEXMLMetadataImpl;
+import loci.formats.out.JPEG2000Writer;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/**
+ * Tests writing JPEG-2000 tiles out of order and from multiple threads.
+ */
+public class JPEG2000WriterTest {
+
+  private static final int SIZE_X = 300;
+  private static final int SIZE_Y = 200;
+  private static final int TILE_SIZE = 64;
+
+  private File file;
+
+  @DataProvider(name = "layouts")
+  public Object[][] createLayouts() {
+    return new Object[][] {
+      {FormatTools.UINT8, 1, 1},
+      {FormatTools.UINT8, 3, 1},
+      {FormatTools.UINT16, 1, 1},
+      {FormatTools.UINT8, 3, 4},
+      {FormatTools.UINT16, 1, 4},
+    };
+  }
+
+  @AfterMethod
+  public void tearDown() throws Exception {
+    if (file != null) {
+      file.delete();
+    }
+  }
+
+  @DataProvider(name = "tileSizes")
+  public Object[][] createTileSizes() {
+    // requested tile size, expected tile width and height
+    return new Object[][] {
+      {50, 32, 32}, {100, 64, 64}, {128, 128, 128}, {150, 128, 128},
+      {250, 128, 200}, {300, 300, 200},
+    };
+  }
+
+  @Test(dataProvider = "layouts")
+  public void testTilesOutOfOrder(int pixelType, int channels, int threads)
+    throws Exception
+  {
+    checkTiles(pixelType, channels, threads, TILE_SIZE, TILE_SIZE, TILE_SIZE);
+  }
+
+  @Test(dataProvider = "tileSizes")
+  public void testTileSizeRounding(int requested, int width, int height)
+    throws Exception
+  {
+    checkTiles(FormatTools.UINT8, 1, 2, requested, width, height);
+  }
+
+  @Test(expectedExceptions = FormatException.class)
+  public void testUnalignedFirstTile() throws Exception {
+    file = File.createTempFile("jpeg2000WriterTest", ".jp2");
+    JPEG2000Writer writer = createWriter(FormatTools.UINT8, 1, 1);
+    writer.setTileSizeX(0);
+    writer.setTileSizeY(0);
+    try {
+      writer.saveBytes(0, new byte[100 * 100], 0, 0, 100, 100);
+    }
+    finally {
+      writer.close();
+    }
+  }
+
+  private void checkTiles(int pixelType, int channels, int threads,
+    int requestedTileSize, int expectedWidth, int expectedHeight)
+    throws Exception
+  {
+    int bpp = FormatTools.getBytesPerPixel(pixelType);
+    byte[] plane = new byte[SIZE_X * SIZE_Y * channels * bpp];
+    for (int i=0; i<plane.length; i++) {
+      plane[i] = (byte) (i % 251 + i / 977);
+    }
+
+    file = File.createTempFile("jpeg2000WriterTest", ".jp2");
+    JPEG2000Writer writer = createWriter(pixelType, channels, threads);
+    int tileX = writer.setTileSizeX(requestedTileSize);
+    int tileY = writer.setTileSizeY(requestedTileSize);
+    assertEquals(tileX, expectedWidth);
+    assertEquals(tileY, expectedHeight);
+
+    List<int[]> tiles = new ArrayList<int[]>();
+    for (int y=0; y<SIZE_Y; y+=tileY) {
+      for (int x=0; x<SIZE_X; x+=tileX) {
+        tiles.add(new int[] {x, y,
+          Math.min(tileX, SIZE_X - x), Math.min(tileY, SIZE_Y - y)});
+      }
+    }
+    Collections.reverse(tiles);
+
+    try {
+      for (int[] tile : tiles) {
+        writer.saveBytes(0, getTile(plane, tile, channels * bpp),
+          tile[0], tile[1], tile[2], tile[3]);
+      }
+    }
+    finally {
+      writer.close();
+    }
+
+    if (tiles.size() > 1) {
+      checkTileLengths(tiles.size());
+    }
+
+    JPEG2000Reader reader = new JPEG2000Reader();
+    try {
+      reader.setId(file.getAbsolutePath());
+      assertEquals(reader.getSizeX(), SIZE_X);
+      assertEquals(reader.getSizeY(), SIZE_Y);
+      assertEquals(reader.getRGBChannelCount(), channels);
+      assertEquals(reader.getPixelType(), pixelType);
+      byte[] actual = reader.openBytes(0);
+      if (reader.isInterleaved() || channels == 1) {
+        assertEquals(actual, plane);
+      }
+      else {
+        byte[] interleaved = new byte[actual.length];
+        ImageTools.interleave(actual, interleaved, channels, bpp);
+        assertEquals(interleaved, plane);
+      }
+    }
+    finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testFullPlane() throws Exception {
+    byte[] plane = new byte[SIZE_X * SIZE_Y];
+    for (int i=0; i<plane.length; i++) {
+      plane[i] = (byte) i;
+    }
+    file = File.createTempFile("jpeg2000WriterTest", ".jp2");
+    JPEG2000Writer writer = createWriter(FormatTools.UINT8, 1, 1);
+    writer.setTileSizeX(0);
+    writer.setTileSizeY(0);
+    try {
+      writer.saveBytes(0, plane);
+    }
+    finally {
+      writer.close();
+    }
+
+    JPEG2000Reader reader = new JPEG2000Reader();
+    try {
+      reader.setId(file.getAbsolutePath());
+      assertEquals(reader.openBytes(0), plane);
+    }
+    finally {
+      reader.close();
+    }
+  }
+
+  private JPEG2000Writer createWriter(int pixelType, int channels, int threads)
+    throws Exception
+  {
+    IMetadata metadata = new OMEXMLMetadataImpl();
+    MetadataTools.populateMetadata(metadata, 0, "tiles", false, "XYCZT",
+      FormatTools.getPixelTypeString(pixelType),
+      SIZE_X, SIZE_Y, 1, channels, 1, channels);
+
+    DynamicMetadataOptions options = new DynamicMetadataOptions();
+    options.set(JPEG2000Writer.ENCODE_THREADS_KEY, String.valueOf(threads));
+
+    JPEG2000Writer writer = new JPEG2000Writer();
+    writer.setMetadataOptions(options);
+    writer.setMetadataRetrieve(metadata);
+    writer.setInterleaved(true);
+    writer.setId(file.getAbsolutePath());
+    writer.setTileSizeX(TILE_SIZE);
+    writer.setTileSizeY(TILE_SIZE);
+    return writer;
+  }
+
+  private byte[] getTile(byte[] plane, int[] tile, int pixel) {
+    byte[] rtn = new byte[tile[2] * tile[3] * pixel];
+    for (int row=0; row<tile[3]; row++) {
+      System.arraycopy(plane, ((tile[1] + row) * SIZE_X + tile[0]) * pixel,
+        rtn, row * tile[2] * pixel, tile[2] * pixel);
+    }
+    return rtn;
+  }
+
+  /**
+   * Check that the TLM marker segment lists one tile-part per tile,
+   * and that each length matches the tile-part's SOT marker segment.
+   */
+  private void checkTileLengths(int tileCount) throws Exception {
+    RandomAccessInputStream in =
+      new RandomAccessInputStream(file.getAbsolutePath());
+    try {
+      in.order(false);
+      long soc = -1;
+      for (long fp=0; fp<in.length() - 2; fp++) {
+        in.seek(fp);
+        if (in.readShort() == (short) 0xff4f) {
+          soc = fp;
+          break;
+        }
+      }
+      in.seek(soc + 2);
+      int[] lengths = null;
+      int[] indexes = null;
+      while (true) {
+        int marker = in.readShort() & 0xffff;
+        if (marker == 0xff90) {
+          in.seek(in.getFilePointer() - 2);
+          break;
+        }
+        int length = in.readShort() & 0xffff;
+        long next = in.getFilePointer() + length - 2;
+        if (marker == 0xff55) {
+          in.skipBytes(2);
+          int entries = (length - 4) / 6;
+          lengths = new int[entries];
+          indexes = new int[entries];
+          for (int i=0; i<entries; i++) {
+            indexes[i] = in.readShort() & 0xffff;
+            lengths[i] = in.readInt();
+          }
+        }
+        in.seek(next);
+      }
+      assertEquals(lengths.length, tileCount);
+      for (int i=0; i<tileCount; i++) {
+        long sot = in.getFilePointer();
+        assertEquals(in.readShort() & 0xffff, 0xff90);
+        in.skipBytes(2);
+        assertEquals(in.readShort() & 0xffff, indexes[i]);
+        assertEquals(in.readInt(), lengths[i]);
+        in.seek(sot + lengths[i]);
+      }
+      assertEquals(in.readShort() & 0xffff, 0xffd9);
+    }
+    finally {
+      in.close();
+    }
+  }
+
+}
@@ -0,0 +1,257 @@
+/*
+ * #%L
+ * BSD implementations of Bio-Formats readers and writers
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats.utests.out;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.fail;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import loci.common.services.ServiceFactory;
+import loci.formats.FormatException;
+import loci.formats.MetadataTools;
+import loci.formats.in.OMEXMLReader;
+import loci.formats.meta.IMetadata;
+import loci.formats.out.OMEXMLWriter;
+import loci.formats.services.OMEXMLService;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the functionality of OMEXMLWriter
+ */
+public class OMEXMLWriterTest {
+
+  private static final int SIZE_X = 45;
+  private static final int SIZE_Y = 37;
+  private static final int SIZE_T = 2;
+  private static final int TILE_SIZE = 16;
+
+  private File dir;
+
+  @DataProvider(name = "writeParams")
+  public Object[][] createParams() {
+    return new Object[][] {
+      {"Uncompressed", 1, false},
+      {"zlib", 1, false},
+      {"Uncompressed", 3, false},
+      {"zlib", 3, true},
+    };
+  }
+
+  @BeforeMethod
+  public void setUp() throws Exception {
+    dir = Files.createTempDirectory("omexmlWriterTest").toFile();
+  }
+
+  @AfterMethod
+  public void tearDown() throws Exception {
+    for (File f : dir.listFiles()) {
+      f.delete();
+    }
+    dir.delete();
+  }
+
+  @Test(dataProvider = "writeParams")
+  public void testSaveTiles(String compression, int channels,
+    boolean interleaved) throws Exception
+  {
+    byte[][] planes = createPlanes(channels);
+
+    File full = new File(dir, "full.ome");
+    OMEXMLWriter writer = createWriter(full, compression, channels, interleaved);
+    for (int t=0; t<SIZE_T; t++) {
+      writer.saveBytes(t, planes[t]);
+    }
+    writer.close();
+
+    // write tiles in reverse order, so that every row must be buffered
+    File tiled = new File(dir, "tiled.ome");
+    writer = createWriter(tiled, compression, channels, interleaved);
+    for (int t=0; t<SIZE_T; t++) {
+      for (int y=SIZE_Y - SIZE_Y % TILE_SIZE; y>=0; y-=TILE_SIZE) {
+        for (int x=SIZE_X - SIZE_X % TILE_SIZE; x>=0; x-=TILE_SIZE) {
+          int w = Math.min(TILE_SIZE, SIZE_X - x);
+          int h = Math.min(TILE_SIZE, SIZE_Y - y);
+          byte[] tile = getTile(planes[t], channels, interleaved, x, y, w, h);
+          writer.saveBytes(t, tile, x, y, w, h);
+        }
+      }
+    }
+    writer.close();
+
+    assertEquals(Files.readAllBytes(tiled.toPath()),
+      Files.readAllBytes(full.toPath()));
+
+    OMEXMLReader reader = new OMEXMLReader();
+    try {
+      reader.setId(tiled.getAbsolutePath());
+      assertEquals(reader.getImageCount(), SIZE_T * channels);
+      int planeSize = SIZE_X * SIZE_Y;
+      for (int t=0; t<SIZE_T; t++) {
+        for (int c=0; c<channels; c++) {
+          byte[] expected = new byte[planeSize];
+          for (int i=0; i<planeSize; i++) {
+            expected[i] =
+              interleaved ? planes[t][i * channels + c] : planes[t][c * planeSize + i];
+          }
+          assertEquals(reader.openBytes(reader.getIndex(0, c, t)), expected);
+        }
+      }
+    }
+    finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * Overlapping tiles must not be mistaken for a complete row; the last
+   * tile written wins where tiles overlap.
+   */
+  @Test
+  public void testOverlappingTiles() throws Exception {
+    byte[][] planes = createPlanes(1);
+
+    File full = new File(dir, "full.ome");
+    OMEXMLWriter writer = createWriter(full, "Uncompressed", 1, false);
+    for (int t=0; t<SIZE_T; t++) {
+      writer.saveBytes(t, planes[t]);
+    }
+    writer.close();
+
+    File tiled = new File(dir, "overlapping.ome");
+    writer = createWriter(tiled, "Uncompressed", 1, false);
+    int w = SIZE_X * 2 / 3;
+    for (int t=0; t<SIZE_T; t++) {
+      // write the left part twice, so that more than a row's worth of
+      // bytes has been stored before the right part is written
+      writer.saveBytes(t, new byte[w * SIZE_Y], 1, 0, w, SIZE_Y);
+      byte[] left = getTile(planes[t], 1, false, 0, 0, w, SIZE_Y);
+      writer.saveBytes(t, left, 0, 0, w, SIZE_Y);
+      byte[] right =
+        getTile(planes[t], 1, false, w - 2, 0, SIZE_X - w + 2, SIZE_Y);
+      writer.saveBytes(t, right, w - 2, 0, SIZE_X - w + 2, SIZE_Y);
+    }
+    writer.close();
+
+    assertEquals(Files.readAllBytes(tiled.toPath()),
+      Files.readAllBytes(full.toPath()));
+  }
+
+  @Test
+  public void testIncompletePlane() throws Exception {
+    byte[][] planes = createPlanes(1);
+    File file = new File(dir, "incomplete.ome");
+    OMEXMLWriter writer = createWriter(file, "Uncompressed", 1, false);
+    byte[] tile = getTile(planes[0], 1, false, 0, 0, TILE_SIZE, TILE_SIZE);
+    writer.saveBytes(0, tile, 0, 0, TILE_SIZE, TILE_SIZE);
+    try {
+      writer.saveBytes(1, planes[1]);
+      fail("Expected FormatException");
+    }
+    catch (FormatException e) {
+      // expected, as plane 0 is incomplete
+    }
+    writer.close();
+
+    // the missing pixels are written as 0
+    OMEXMLReader reader = new OMEXMLReader();
+    try {
+      reader.setId(file.getAbsolutePath());
+      byte[] plane = reader.openBytes(0);
+      for (int y=0; y<SIZE_Y; y++) {
+        for (int x=0; x<SIZE_X; x++) {
+          int expected = x < TILE_SIZE && y < TILE_SIZE ?
+            planes[0][y * SIZE_X + x] : 0;
+          assertEquals(plane[y * SIZE_X + x], expected);
+        }
+      }
+    }
+    finally {
+      reader.close();
+    }
+  }
+
+  private OMEXMLWriter createWriter(File file, String compression,
+    int channels, boolean interleaved) throws Exception
+  {
+    ServiceFactory factory = new ServiceFactory();
+    OMEXMLService service = factory.getInstance(OMEXMLService.class);
+    IMetadata metadata = service.createOMEXMLMetadata();
+    MetadataTools.populateMetadata(metadata, 0, "test", false, "XYCZT",
+      "uint8", SIZE_X, SIZE_Y, 1, channels, SIZE_T, channels);
+
+    OMEXMLWriter writer = new OMEXMLWriter();
+    writer.setMetadataRetrieve(metadata);
+    writer.setCompression(compression);
+    writer.setInterleaved(interleaved);
+    writer.setId(file.getAbsolutePath());
+    return writer;
+  }
+
+  private byte[][] createPlanes(int channels) {
+    byte[][] planes = new byte[SIZE_T][SIZE_X * SIZE_Y * channels];
+    for (int t=0; t<SIZE_T; t++) {
+      for (int i=0; i<planes[t].length; i++) {
+        planes[t][i] = (byte) (i * 13 + t * 7 + i / 11);
+      }
+    }
+    return planes;
+  }
+
+  private byte[] getTile(byte[] plane, int channels, boolean interleaved,
+    int x, int y, int w, int h)
+  {
+    byte[] tile = new byte[w * h * channels];
+    for (int c=0; c<channels; c++) {
+      for (int row=0; row<h; row++) {
+        for (int col=0; col<w; col++) {
+          int pixel = (row + y) * SIZE_X + col + x;
+          int tilePixel = row * w + col;
+          if (interleaved) {
+            tile[tilePixel * channels + c] = plane[pixel * channels + c];
+          }
+          else {
+            tile[c * w * h + tilePixel] = plane[c * SIZE_X * SIZE_Y + pixel];
+          }
+        }
+      }
+    }
+    return tile;
+  }
+
+}
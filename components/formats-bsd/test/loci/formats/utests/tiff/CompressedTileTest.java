@@ -0,0 +1,219 @@
+/*
+ * #%L
+ * BSD implementations of Bio-Formats readers and writers
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats.utests.tiff;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import loci.formats.FormatException;
+import loci.formats.FormatTools;
+import loci.formats.IFormatReader;
+import loci.formats.MetadataTools;
+import loci.formats.codec.Codec;
+import loci.formats.codec.LZWCodec;
+import loci.formats.in.MinimalTiffReader;
+import loci.formats.in.OMETiffReader;
+import loci.formats.in.TiffReader;
+import loci.formats.meta.IMetadata;
+import loci.formats.out.OMETiffWriter;
+import loci.formats.out.TiffWriter;
+
+import ome.xml.model.enums.DimensionOrder;
+import ome.xml.model.enums.PixelType;
+import ome.xml.model.primitives.PositiveInteger;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Tests reading pre-compressed tiles from TIFF and OME-TIFF files.
+ */
+public class CompressedTileTest {
+
+  private static final int TILE_SIZE = 16;
+  private static final int WIDTH = TILE_SIZE * 3;
+  private static final int HEIGHT = TILE_SIZE * 2;
+  private static final int PLANES = 2;
+
+  private File tiled;
+  private File stripped;
+  private File omeTiff;
+
+  @BeforeClass
+  public void setUp() throws Exception {
+    tiled = File.createTempFile("compressedTileTest", ".tiff");
+    stripped = File.createTempFile("compressedTileTest", ".tiff");
+    omeTiff = File.createTempFile("compressedTileTest", ".ome.tiff");
+    writeFile(new TiffWriter(), tiled, TILE_SIZE);
+    writeFile(new TiffWriter(), stripped, 0);
+    writeFile(new OMETiffWriter(), omeTiff, TILE_SIZE);
+  }
+
+  @AfterClass
+  public void tearDown() {
+    tiled.delete();
+    stripped.delete();
+    omeTiff.delete();
+  }
+
+  @Test
+  public void testTiffReader() throws FormatException, IOException {
+    checkTiles(new TiffReader(), tiled);
+  }
+
+  @Test
+  public void testMinimalTiffReader() throws FormatException, IOException {
+    checkTiles(new MinimalTiffReader(), tiled);
+  }
+
+  @Test
+  public void testOMETiffReader() throws FormatException, IOException {
+    checkTiles(new OMETiffReader(), omeTiff);
+  }
+
+  @Test(expectedExceptions={ UnsupportedOperationException.class })
+  public void testStrips() throws FormatException, IOException {
+    try (TiffReader reader = new TiffReader()) {
+      reader.setId(stripped.getAbsolutePath());
+      reader.getTileCodec(0);
+    }
+  }
+
+  @Test
+  public void testCanUsePrecompressedTiles() throws Exception {
+    File out = File.createTempFile("compressedTileTest", ".tiff");
+    try (TiffReader tiledReader = new TiffReader();
+      TiffReader strippedReader = new TiffReader();
+      TiffWriter writer = new TiffWriter())
+    {
+      IMetadata meta = MetadataTools.createOMEXMLMetadata();
+      populateImage(meta, WIDTH, HEIGHT);
+      writer.setMetadataRetrieve(meta);
+      writer.setCompression(TiffWriter.COMPRESSION_LZW);
+      writer.setId(out.getAbsolutePath());
+      writer.setTileSizeX(TILE_SIZE);
+      writer.setTileSizeY(TILE_SIZE);
+
+      tiledReader.setId(tiled.getAbsolutePath());
+      assertTrue(
+        FormatTools.canUsePrecompressedTiles(tiledReader, writer, 0, 0));
+      strippedReader.setId(stripped.getAbsolutePath());
+      assertFalse(
+        FormatTools.canUsePrecompressedTiles(strippedReader, writer, 0, 0));
+    }
+    finally {
+      out.delete();
+    }
+  }
+
+  // -- Helper methods --
+
+  /**
+   * Checks that each compressed tile decodes to the same pixels as the
+   * corresponding region returned by openBytes.
+   */
+  private void checkTiles(IFormatReader reader, File file)
+    throws FormatException, IOException
+  {
+    try {
+      reader.setId(file.getAbsolutePath());
+      for (int no=0; no<reader.getImageCount(); no++) {
+        assertEquals(HEIGHT / TILE_SIZE, reader.getTileRows(no));
+        assertEquals(WIDTH / TILE_SIZE, reader.getTileColumns(no));
+        Codec codec = reader.getTileCodec(no);
+        assertTrue(codec instanceof LZWCodec);
+        for (int y=0; y<reader.getTileRows(no); y++) {
+          for (int x=0; x<reader.getTileColumns(no); x++) {
+            byte[] compressed = reader.openCompressedBytes(no, x, y);
+            byte[] tile = codec.decompress(compressed,
+              reader.getTileCodecOptions(no, x, y));
+            byte[] expected = reader.openBytes(no,
+              x * TILE_SIZE, y * TILE_SIZE, TILE_SIZE, TILE_SIZE);
+            assertEquals(expected.length, tile.length);
+            for (int i=0; i<expected.length; i++) {
+              assertEquals(expected[i], tile[i]);
+            }
+          }
+        }
+      }
+    }
+    finally {
+      reader.close();
+    }
+  }
+
+  private void writeFile(TiffWriter writer, File file, int tileSize)
+    throws Exception
+  {
+    file.delete();
+    IMetadata meta = MetadataTools.createOMEXMLMetadata();
+    populateImage(meta, WIDTH, HEIGHT);
+    writer.setMetadataRetrieve(meta);
+    writer.setCompression(TiffWriter.COMPRESSION_LZW);
+    writer.setWriteSequentially(true);
+    writer.setId(file.getAbsolutePath());
+    if (tileSize > 0) {
+      writer.setTileSizeX(tileSize);
+      writer.setTileSizeY(tileSize);
+    }
+    byte[] plane = new byte[WIDTH * HEIGHT];
+    for (int no=0; no<PLANES; no++) {
+      for (int i=0; i<plane.length; i++) {
+        plane[i] = (byte) ((i % WIDTH) * (no + 1) + i / WIDTH);
+      }
+      writer.saveBytes(no, plane);
+    }
+    writer.close();
+  }
+
+  private void populateImage(IMetadata meta, int width, int height) {
+    meta.setImageID("Image:0", 0);
+    meta.setPixelsID("Pixels:0", 0);
+    meta.setPixelsDimensionOrder(DimensionOrder.XYZCT, 0);
+    meta.setPixelsSizeX(new PositiveInteger(width), 0);
+    meta.setPixelsSizeY(new PositiveInteger(height), 0);
+    meta.setPixelsSizeZ(new PositiveInteger(PLANES), 0);
+    meta.setPixelsSizeC(new PositiveInteger(1), 0);
+    meta.setPixelsSizeT(new PositiveInteger(1), 0);
+    meta.setPixelsType(PixelType.UINT8, 0);
+    meta.setPixelsBigEndian(false, 0);
+    meta.setChannelID("Channel:0:0", 0, 0);
+    meta.setChannelSamplesPerPixel(new PositiveInteger(1), 0, 0);
+  }
+
+}
@@ -0,0 +1,187 @@
+/*
+ * #%L
+ * BSD implementations of Bio-Formats readers and writers
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats.utests.tiff;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import loci.formats.FormatException;
+import loci.formats.tiff.IFD;
+import loci.formats.tiff.PhotoInterp;
+import loci.formats.tiff.TiffCompression;
+import loci.formats.tiff.TiffRational;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for the {@link java.util.Map} implementation and
+ * cached accessors in {@link loci.formats.tiff.IFD}.
+ */
+public class IFDTest {
+
+  private IFD ifd;
+  private Map<Integer, Object> expected;
+
+  @BeforeMethod
+  public void setUp() {
+    ifd = new IFD();
+    expected = new HashMap<Integer, Object>();
+    put(IFD.LITTLE_ENDIAN, Boolean.TRUE);
+    put(IFD.IMAGE_WIDTH, 512L);
+    put(IFD.IMAGE_LENGTH, 256);
+    put(IFD.BITS_PER_SAMPLE, new int[] {16});
+    put(IFD.COMPRESSION, TiffCompression.UNCOMPRESSED.getCode());
+    put(IFD.X_RESOLUTION, new TiffRational(72, 1));
+    put(IFD.SOFTWARE, "test");
+    put(IFD.MAKE, null);
+    put(IFD.ORIENTATION, (short) 1);
+  }
+
+  private void put(int tag, Object value) {
+    ifd.put(tag, value);
+    expected.put(tag, value);
+  }
+
+  @Test
+  public void testMapContract() {
+    assertEquals(expected, ifd);
+    assertEquals(ifd, expected);
+    assertEquals(expected.hashCode(), ifd.hashCode());
+    assertEquals(expected.size(), ifd.size());
+    assertTrue(ifd.containsKey(IFD.MAKE));
+    assertNull(ifd.get(IFD.MAKE));
+    assertFalse(ifd.containsKey(IFD.MODEL));
+    assertNull(ifd.get("not a tag"));
+
+    // values keep their original types
+    assertEquals(Long.valueOf(512), ifd.get(IFD.IMAGE_WIDTH));
+    assertEquals(Integer.valueOf(256), ifd.get(IFD.IMAGE_LENGTH));
+    assertEquals(Boolean.TRUE, ifd.get(IFD.LITTLE_ENDIAN));
+    assertEquals(Short.valueOf((short) 1), ifd.get(IFD.ORIENTATION));
+
+    assertEquals(Integer.valueOf(256), ifd.put(IFD.IMAGE_LENGTH, 128L));
+    assertEquals(Long.valueOf(128), ifd.get(IFD.IMAGE_LENGTH));
+    assertEquals("test", ifd.remove(IFD.SOFTWARE));
+    assertNull(ifd.remove(IFD.SOFTWARE));
+    assertEquals(expected.size() - 1, ifd.size());
+  }
+
+  @Test
+  public void testIterationOrder() {
+    int previous = -1;
+    for (Integer tag : ifd.keySet()) {
+      assertTrue(tag > previous);
+      previous = tag;
+    }
+  }
+
+  @Test
+  public void testIteratorRemove() {
+    Iterator<Map.Entry<Integer, Object>> entries = ifd.entrySet().iterator();
+    while (entries.hasNext()) {
+      Map.Entry<Integer, Object> entry = entries.next();
+      if (entry.getKey() > IFD.COMPRESSION) {
+        entries.remove();
+        expected.remove(entry.getKey());
+      }
+      else {
+        entry.setValue(entry.getKey());
+        expected.put(entry.getKey(), entry.getKey());
+      }
+    }
+    assertEquals(expected, ifd);
+  }
+
+  @Test
+  public void testCopy() {
+    IFD copy = new IFD(ifd);
+    IFD clone = ifd.clone();
+    assertEquals(ifd, copy);
+    assertEquals(ifd, clone);
+    copy.put(IFD.IMAGE_WIDTH, 1L);
+    clone.remove(IFD.IMAGE_WIDTH);
+    assertEquals(Long.valueOf(512), ifd.get(IFD.IMAGE_WIDTH));
+
+    IFD all = new IFD();
+    all.putAll(ifd);
+    assertEquals(ifd, all);
+  }
+
+  @Test
+  public void testCachedAccessors() throws FormatException {
+    assertEquals(512, ifd.getImageWidth());
+    assertEquals(256, ifd.getImageLength());
+    assertEquals(512, ifd.getTileWidth());
+    assertEquals(2, ifd.getBytesPerSample()[0]);
+    assertEquals(TiffCompression.UNCOMPRESSED, ifd.getCompression());
+    assertEquals(1, ifd.getSamplesPerPixel());
+    assertTrue(ifd.isLittleEndian());
+    assertFalse(ifd.isTiled());
+
+    // modifying the returned arrays must not affect later calls
+    ifd.getBitsPerSample()[0] = 1;
+    ifd.getBytesPerSample()[0] = 1;
+    assertEquals(16, ifd.getBitsPerSample()[0]);
+    assertEquals(2, ifd.getBytesPerSample()[0]);
+
+    // modifying the IFD must update the cached values
+    ifd.putIFDValue(IFD.IMAGE_WIDTH, 1024);
+    ifd.putIFDValue(IFD.BITS_PER_SAMPLE, new int[] {8, 8, 8});
+    ifd.putIFDValue(IFD.SAMPLES_PER_PIXEL, 3);
+    ifd.putIFDValue(IFD.COMPRESSION, TiffCompression.LZW.getCode());
+    ifd.putIFDValue(IFD.PHOTOMETRIC_INTERPRETATION, PhotoInterp.RGB);
+    ifd.putIFDValue(IFD.TILE_WIDTH, 128);
+    ifd.putIFDValue(IFD.LITTLE_ENDIAN, false);
+    assertEquals(1024, ifd.getImageWidth());
+    assertEquals(128, ifd.getTileWidth());
+    assertEquals(1, ifd.getBytesPerSample()[0]);
+    assertEquals(3, ifd.getSamplesPerPixel());
+    assertEquals(TiffCompression.LZW, ifd.getCompression());
+    assertEquals(PhotoInterp.RGB, ifd.getPhotometricInterpretation());
+    assertTrue(ifd.isTiled());
+    assertFalse(ifd.isLittleEndian());
+
+    ifd.remove(IFD.TILE_WIDTH);
+    assertFalse(ifd.isTiled());
+    ifd.clear();
+    assertEquals(0, ifd.getImageWidth());
+  }
+
+}
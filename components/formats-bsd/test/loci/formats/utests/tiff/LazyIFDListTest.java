@@ -0,0 +1,256 @@
+/*
+ * #%L
+ * BSD implementations of Bio-Formats readers and writers
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats.utests.tiff;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+
+import loci.common.RandomAccessInputStream;
+import loci.formats.FormatException;
+import loci.formats.FormatTools;
+import loci.formats.Memoizer;
+import loci.formats.MetadataTools;
+import loci.formats.in.DynamicMetadataOptions;
+import loci.formats.in.MinimalTiffReader;
+import loci.formats.meta.IMetadata;
+import loci.formats.out.TiffWriter;
+import loci.formats.tiff.IFD;
+import loci.formats.tiff.IFDList;
+import loci.formats.tiff.LazyIFDList;
+import loci.formats.tiff.TiffParser;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+/**
+ * Unit tests for {@link loci.formats.tiff.LazyIFDList}.
+ */
+public class LazyIFDListTest {
+
+  private static final int PAGES = 20;
+  private static final int SIZE_X = 16;
+  private static final int SIZE_Y = 8;
+  private static final int CACHE_SIZE = 4;
+
+  private File file;
+
+  @BeforeClass
+  public void setUp() throws Exception {
+    file = File.createTempFile("LazyIFDListTest", ".tif");
+    IMetadata meta = MetadataTools.createOMEXMLMetadata();
+    MetadataTools.populateMetadata(meta, 0, null, false, "XYZCT",
+      FormatTools.getPixelTypeString(FormatTools.UINT8),
+      SIZE_X, SIZE_Y, PAGES, 1, 1, 1);
+    TiffWriter writer = new TiffWriter();
+    writer.setMetadataRetrieve(meta);
+    writer.setId(file.getAbsolutePath());
+    byte[] plane = new byte[SIZE_X * SIZE_Y];
+    for (int i=0; i<PAGES; i++) {
+      Arrays.fill(plane, (byte) i);
+      writer.saveBytes(i, plane);
+    }
+    writer.close();
+  }
+
+  @AfterClass
+  public void tearDown() throws Exception {
+    file.delete();
+  }
+
+  @Test
+  public void testMatchesMainIFDs() throws FormatException, IOException {
+    RandomAccessInputStream s =
+      new RandomAccessInputStream(file.getAbsolutePath());
+    try {
+      TiffParser parser = new TiffParser(s);
+      IFDList eager = parser.getMainIFDs();
+      LazyIFDList lazy = parser.getLazyMainIFDs(CACHE_SIZE);
+      assertEquals(PAGES, eager.size());
+      assertEquals(PAGES, lazy.size());
+      assertTrue(Arrays.equals(parser.getIFDOffsets(), lazy.getOffsets()));
+      assertEquals(0, lazy.getCachedIFDs().size());
+
+      // read backwards and then forwards, so that IFDs are evicted
+      for (int i=PAGES-1; i>=0; i--) {
+        assertIFDEquals(eager.get(i), lazy.get(i));
+        assertTrue(lazy.getCachedIFDs().size() <= CACHE_SIZE);
+      }
+      int index = 0;
+      for (IFD ifd : lazy) {
+        assertIFDEquals(eager.get(index++), ifd);
+      }
+      assertEquals(PAGES, index);
+      assertEquals(CACHE_SIZE, lazy.getCachedIFDs().size());
+      assertTrue(lazy.get(1) == lazy.get(1));
+    }
+    finally {
+      s.close();
+    }
+  }
+
+  @Test(expectedExceptions = UnsupportedOperationException.class)
+  public void testReadOnly() {
+    LazyIFDList list = new LazyIFDList(null, new long[] {8});
+    list.add(new IFD());
+  }
+
+  @Test(expectedExceptions = IndexOutOfBoundsException.class)
+  public void testGetOutOfBounds() {
+    new LazyIFDList(null, new long[] {8}).get(1);
+  }
+
+  @Test
+  public void testKryoRoundTrip() throws FormatException, IOException {
+    Kryo kryo = new Memoizer.KryoDeser().kryo;
+    RandomAccessInputStream s =
+      new RandomAccessInputStream(file.getAbsolutePath());
+    try {
+      TiffParser parser = new TiffParser(s);
+      LazyIFDList list = parser.getLazyMainIFDs(CACHE_SIZE);
+      list.get(0);
+
+      Output output = new Output(1024, -1);
+      kryo.writeClassAndObject(output, list);
+      LazyIFDList copy = (LazyIFDList) kryo.readClassAndObject(
+        new Input(output.toBytes()));
+
+      assertTrue(Arrays.equals(list.getOffsets(), copy.getOffsets()));
+      assertEquals(CACHE_SIZE, copy.getCacheSize());
+      assertNull(copy.getParser());
+      assertEquals(0, copy.getCachedIFDs().size());
+
+      copy.setParser(parser);
+      assertIFDEquals(list.get(PAGES - 1), copy.get(PAGES - 1));
+      assertIterates(list, copy);
+    }
+    finally {
+      s.close();
+    }
+  }
+
+  @Test
+  public void testSerializationRoundTrip() throws Exception {
+    RandomAccessInputStream s =
+      new RandomAccessInputStream(file.getAbsolutePath());
+    try {
+      TiffParser parser = new TiffParser(s);
+      LazyIFDList list = parser.getLazyMainIFDs(CACHE_SIZE);
+      list.get(0);
+
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      ObjectOutputStream out = new ObjectOutputStream(bytes);
+      out.writeObject(list);
+      out.close();
+      ObjectInputStream in = new ObjectInputStream(
+        new ByteArrayInputStream(bytes.toByteArray()));
+      LazyIFDList copy = (LazyIFDList) in.readObject();
+      in.close();
+
+      assertTrue(Arrays.equals(list.getOffsets(), copy.getOffsets()));
+      assertEquals(CACHE_SIZE, copy.getCacheSize());
+      assertNull(copy.getParser());
+      assertEquals(0, copy.getCachedIFDs().size());
+      assertEquals(PAGES, copy.size());
+
+      copy.setParser(parser);
+      assertIterates(list, copy);
+      assertEquals(2, copy.subList(1, 3).size());
+    }
+    finally {
+      s.close();
+    }
+  }
+
+  @Test
+  public void testReader() throws FormatException, IOException {
+    MinimalTiffReader eager = new MinimalTiffReader();
+    MinimalTiffReader lazy = new MinimalTiffReader();
+    DynamicMetadataOptions options = new DynamicMetadataOptions();
+    options.setBoolean(MinimalTiffReader.LAZY_IFDS_KEY, true);
+    lazy.setMetadataOptions(options);
+    try {
+      eager.setId(file.getAbsolutePath());
+      lazy.setId(file.getAbsolutePath());
+      assertTrue(lazy.getIFDs() instanceof LazyIFDList);
+      assertEquals(eager.getImageCount(), lazy.getImageCount());
+      assertEquals(eager.getSizeX(), lazy.getSizeX());
+      assertEquals(eager.getSizeY(), lazy.getSizeY());
+      assertEquals(eager.getPixelType(), lazy.getPixelType());
+      for (int i=0; i<PAGES; i++) {
+        byte[] plane = lazy.openBytes(i);
+        assertTrue(Arrays.equals(eager.openBytes(i), plane));
+        assertEquals(i, plane[0]);
+      }
+    }
+    finally {
+      eager.close();
+      lazy.close();
+    }
+  }
+
+  private void assertIterates(LazyIFDList expected, LazyIFDList actual)
+    throws FormatException
+  {
+    int index = 0;
+    for (IFD ifd : actual) {
+      assertIFDEquals(expected.get(index++), ifd);
+    }
+    assertEquals(PAGES, index);
+  }
+
+  private void assertIFDEquals(IFD expected, IFD actual)
+    throws FormatException
+  {
+    assertEquals(expected.getImageWidth(), actual.getImageWidth());
+    assertEquals(expected.getImageLength(), actual.getImageLength());
+    assertTrue(Arrays.equals(expected.getStripOffsets(),
+      actual.getStripOffsets()));
+    assertTrue(Arrays.equals(expected.getStripByteCounts(),
+      actual.getStripByteCounts()));
+  }
+
+}
@@ -0,0 +1,242 @@
+/*
+ * #%L
+ * BSD implementations of Bio-Formats readers and writers
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package loci.formats.utests.tiff;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.fail;
+
+import java.io.IOException;
+
+import loci.common.ByteArrayHandle;
+import loci.common.DataTools;
+import loci.common.RandomAccessInputStream;
+import loci.formats.FormatException;
+import loci.formats.tiff.IFD;
+import loci.formats.tiff.OnDemandLongArray;
+import loci.formats.tiff.TiffCompression;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link loci.formats.tiff.OnDemandLongArray} and
+ * the index-based offset and byte count methods in
+ * {@link loci.formats.tiff.IFD}.
+ */
+public class OnDemandLongArrayTest {
+
+  private static final int HEADER = 16;
+  private static final int SIZE = OnDemandLongArray.PAGE_SIZE * 2 + 37;
+
+  @DataProvider(name = "endianness")
+  public Object[][] createEndianness() {
+    return new Object[][] {{true}, {false}};
+  }
+
+  @DataProvider(name = "onDemand")
+  public Object[][] createOnDemand() {
+    return new Object[][] {{true}, {false}};
+  }
+
+  @Test(dataProvider = "endianness")
+  public void testGet(boolean little) throws IOException {
+    RandomAccessInputStream s = createStream(little);
+    OnDemandLongArray array = createArray(s);
+    long[] expected = array.toArray();
+    assertEquals(SIZE, expected.length);
+
+    s.seek(3);
+    // read out of order, so that pages are read and reused in any order
+    for (int i=SIZE-1; i>=0; i-=7) {
+      assertEquals(expected[i], array.get(i));
+    }
+    for (int i=0; i<SIZE; i++) {
+      assertEquals(value(i), array.get(i));
+    }
+    assertEquals(3, s.getFilePointer());
+    array.close();
+  }
+
+  @Test(expectedExceptions = ArrayIndexOutOfBoundsException.class)
+  public void testGetOutOfBounds() throws IOException {
+    OnDemandLongArray array = createArray(createStream(true));
+    array.get(SIZE);
+  }
+
+  @Test
+  public void testIFDOnDemand() throws IOException, FormatException {
+    RandomAccessInputStream s = createStream(true);
+    IFD ifd = createIFD();
+    ifd.put(IFD.TILE_OFFSETS, createArray(s));
+    ifd.put(IFD.TILE_BYTE_COUNTS, createArray(s));
+
+    long[] offsets = ifd.getStripOffsets();
+    long[] counts = ifd.getStripByteCounts();
+    assertEquals(SIZE, ifd.getStripOffsetCount());
+    for (int i=0; i<SIZE; i++) {
+      assertEquals(offsets[i], ifd.getStripOffset(i));
+      assertEquals(counts[i], ifd.getStripByteCount(i));
+    }
+    s.close();
+  }
+
+  @Test
+  public void testIFDArrays() throws FormatException {
+    IFD ifd = createIFD();
+    ifd.put(IFD.COMPRESSION, TiffCompression.LZW.getCode());
+    long[] offsets = new long[SIZE];
+    long[] counts = new long[SIZE];
+    for (int i=0; i<SIZE; i++) {
+      offsets[i] = value(i);
+      counts[i] = i + 1;
+    }
+    ifd.put(IFD.TILE_OFFSETS, offsets);
+    ifd.put(IFD.TILE_BYTE_COUNTS, counts);
+
+    long[] expectedCounts = ifd.getStripByteCounts();
+    assertEquals(SIZE, ifd.getStripOffsetCount());
+    for (int i=0; i<SIZE; i++) {
+      assertEquals(offsets[i], ifd.getStripOffset(i));
+      assertEquals(expectedCounts[i], ifd.getStripByteCount(i));
+    }
+  }
+
+  @Test(dataProvider = "onDemand",
+    expectedExceptions = FormatException.class)
+  public void testIFDOffsetOutOfRange(boolean onDemand)
+    throws IOException, FormatException
+  {
+    IFD ifd = createIFD();
+    putTables(ifd, IFD.TILE_OFFSETS, IFD.TILE_BYTE_COUNTS, onDemand);
+    ifd.getStripOffset(SIZE);
+  }
+
+  @Test(dataProvider = "onDemand",
+    expectedExceptions = FormatException.class)
+  public void testIFDByteCountOutOfRange(boolean onDemand)
+    throws IOException, FormatException
+  {
+    IFD ifd = createIFD();
+    putTables(ifd, IFD.TILE_OFFSETS, IFD.TILE_BYTE_COUNTS, onDemand);
+    ifd.getStripByteCount(-1);
+  }
+
+  @Test(dataProvider = "onDemand")
+  public void testIFDStripCountMismatch(boolean onDemand)
+    throws IOException, FormatException
+  {
+    // one more strip than there are offsets and byte counts
+    IFD ifd = new IFD();
+    ifd.put(IFD.IMAGE_WIDTH, 16L);
+    ifd.put(IFD.IMAGE_LENGTH, SIZE + 1L);
+    ifd.put(IFD.ROWS_PER_STRIP, 1L);
+    ifd.put(IFD.BITS_PER_SAMPLE, 8);
+    putTables(ifd, IFD.STRIP_OFFSETS, IFD.STRIP_BYTE_COUNTS, onDemand);
+
+    try {
+      ifd.getStripOffset(0);
+      fail("Expected FormatException");
+    }
+    catch (FormatException e) { }
+    try {
+      ifd.getStripOffsetCount();
+      fail("Expected FormatException");
+    }
+    catch (FormatException e) { }
+    try {
+      ifd.getStripByteCount(0);
+      fail("Expected FormatException");
+    }
+    catch (FormatException e) { }
+
+    ifd.put(IFD.IMAGE_LENGTH, (long) SIZE);
+    assertEquals(SIZE, ifd.getStripOffsetCount());
+    assertEquals(value(SIZE - 1), ifd.getStripOffset(SIZE - 1));
+  }
+
+  private static long value(int index) {
+    return 0x100000000L + index * 4099L;
+  }
+
+  private static IFD createIFD() {
+    IFD ifd = new IFD();
+    ifd.put(IFD.IMAGE_WIDTH, 256L * SIZE);
+    ifd.put(IFD.IMAGE_LENGTH, 256L);
+    ifd.put(IFD.TILE_WIDTH, 256L);
+    ifd.put(IFD.TILE_LENGTH, 256L);
+    ifd.put(IFD.BITS_PER_SAMPLE, 8);
+    return ifd;
+  }
+
+  private static void putTables(IFD ifd, int offsetTag, int countTag,
+    boolean onDemand)
+    throws IOException
+  {
+    if (onDemand) {
+      RandomAccessInputStream s = createStream(true);
+      ifd.put(offsetTag, createArray(s));
+      ifd.put(countTag, createArray(s));
+    }
+    else {
+      long[] values = new long[SIZE];
+      for (int i=0; i<SIZE; i++) {
+        values[i] = value(i);
+      }
+      ifd.put(offsetTag, values);
+      ifd.put(countTag, values.clone());
+    }
+  }
+
+  private static RandomAccessInputStream createStream(boolean little)
+    throws IOException
+  {
+    byte[] data = new byte[HEADER + SIZE * 8];
+    for (int i=0; i<SIZE; i++) {
+      DataTools.unpackBytes(value(i), data, HEADER + i * 8, 8, little);
+    }
+    RandomAccessInputStream s =
+      new RandomAccessInputStream(new ByteArrayHandle(data));
+    s.order(little);
+    return s;
+  }
+
+  private static OnDemandLongArray createArray(RandomAccessInputStream s)
+    throws IOException
+  {
+    s.seek(HEADER);
+    OnDemandLongArray array = new OnDemandLongArray(s);
+    array.setSize(SIZE);
+    return array;
+  }
+
+}
@@ -37,11 +37,13 @@ import static org.testng.AssertJUnit.assertEquals;
 import java.io.IOException;
 
 import loci.common.ByteArrayHandle;
+import loci.common.DataTools;
 import loci.common.RandomAccessInputStream;
 import loci.common.RandomAccessOutputStream;
 import loci.formats.FormatException;
 import loci.formats.FormatTools;
 import loci.formats.tiff.IFD;
+import loci.formats.tiff.PhotoInterp;
 import loci.formats.tiff.TiffCompression;
 import loci.formats.tiff.TiffParser;
 import loci.formats.tiff.TiffSaver;
@@ -61,12 +63,13 @@ public class TiffPixelsTest {
 
   private static final int BITS_PER_PIXEL = 16;
 
-  private IFD ifd = new IFD();
+  private IFD ifd;
 
   private byte[] data;
 
   @BeforeMethod
   public void setUp() {
+    ifd = new IFD();
     ifd.put(IFD.IMAGE_WIDTH, IMAGE_WIDTH);
     ifd.put(IFD.IMAGE_LENGTH, IMAGE_LENGTH);
     ifd.put(IFD.BITS_PER_SAMPLE, new int[] { BITS_PER_PIXEL });
@@ -153,7 +156,132 @@ public class TiffPixelsTest {
     }
   }
 
-  // -- Helper method --
+  @Test
+  public void testLZWPartialStrip() throws FormatException, IOException {
+    ifd.put(IFD.COMPRESSION, TiffCompression.LZW.getCode());
+    checkSavedRegions();
+  }
+
+  @Test
+  public void testLZWPartialStripPredictor()
+    throws FormatException, IOException
+  {
+    ifd.put(IFD.COMPRESSION, TiffCompression.LZW.getCode());
+    ifd.put(IFD.PREDICTOR, 2);
+    checkSavedRegions();
+  }
+
+  @Test
+  public void testDEFLATEPartialStrip() throws FormatException, IOException {
+    ifd.put(IFD.COMPRESSION, TiffCompression.DEFLATE.getCode());
+    checkSavedRegions();
+  }
+
+  @Test
+  public void testDEFLATEPartialStripPredictor()
+    throws FormatException, IOException
+  {
+    ifd.put(IFD.COMPRESSION, TiffCompression.DEFLATE.getCode());
+    ifd.put(IFD.PREDICTOR, 2);
+    checkSavedRegions();
+  }
+
+  // -- Helper methods --
+
+  /**
+   * Saves the test data as a single strip, then reads it back in row bands
+   * top to bottom (resuming a partially decoded strip) and bottom to top
+   * (restarting the strip), checking each region against the original data.
+   */
+  private void checkSavedRegions() throws FormatException, IOException {
+    int bpp = BITS_PER_PIXEL / 8;
+    ByteArrayHandle savedData = new ByteArrayHandle();
+    try (RandomAccessOutputStream out = new RandomAccessOutputStream(savedData);
+          RandomAccessInputStream in = new RandomAccessInputStream(savedData)) {
+      TiffSaver saver = new TiffSaver(out, savedData);
+      saver.writeImage(data, ifd, 0, FormatTools.UINT16, false);
+      TiffParser parser = new TiffParser(in);
+      int[][] regions = {
+        {0, 0, 64, 5}, {0, 5, 64, 10}, {16, 20, 8, 3}, {0, 40, 64, 24},
+        {4, 60, 60, 4}, {0, 30, 64, 10}, {3, 1, 7, 2}
+      };
+      for (int[] r : regions) {
+        byte[] region = new byte[r[2] * r[3] * bpp];
+        parser.getSamples(ifd, region, r[0], r[1], r[2], r[3]);
+        for (int row=0; row<r[3]; row++) {
+          for (int col=0; col<r[2] * bpp; col++) {
+            int index = ((r[1] + row) * IMAGE_WIDTH + r[0]) * bpp + col;
+            assertEquals(region[row * r[2] * bpp + col], data[index]);
+          }
+        }
+      }
+      parser.close();
+    }
+  }
+
+  @Test
+  public void testUnpack12Bit() throws FormatException {
+    int width = 5, height = 3;
+    int[] values = new int[width * height];
+    for (int i=0; i<values.length; i++) {
+      values[i] = (i * 977) & 0xfff;
+    }
+    IFD packed = packedIFD(width, height, 12);
+    byte[] samples = new byte[values.length * 2];
+    TiffParser.unpackBytes(samples, 0, pack(values, 12, width), packed);
+    for (int i=0; i<values.length; i++) {
+      assertEquals(values[i], DataTools.bytesToInt(samples, i * 2, 2, false));
+    }
+  }
+
+  @Test
+  public void testUnpack1BitWhiteIsZero() throws FormatException {
+    int width = 10, height = 4;
+    int[] values = new int[width * height];
+    for (int i=0; i<values.length; i++) {
+      values[i] = (i % 3) == 0 ? 1 : 0;
+    }
+    IFD packed = packedIFD(width, height, 1);
+    packed.put(IFD.PHOTOMETRIC_INTERPRETATION,
+      PhotoInterp.WHITE_IS_ZERO.getCode());
+    byte[] samples = new byte[values.length];
+    TiffParser.unpackBytes(samples, 0, pack(values, 1, width), packed);
+    for (int i=0; i<values.length; i++) {
+      assertEquals(1 - values[i], samples[i]);
+    }
+  }
+
+  private IFD packedIFD(int width, int height, int bits) {
+    IFD packed = new IFD();
+    packed.put(IFD.IMAGE_WIDTH, width);
+    packed.put(IFD.IMAGE_LENGTH, height);
+    packed.put(IFD.BITS_PER_SAMPLE, new int[] {bits});
+    packed.put(IFD.SAMPLES_PER_PIXEL, 1);
+    packed.put(IFD.LITTLE_ENDIAN, Boolean.FALSE);
+    packed.put(IFD.COMPRESSION, TiffCompression.UNCOMPRESSED.getCode());
+    packed.put(IFD.PHOTOMETRIC_INTERPRETATION,
+      PhotoInterp.BLACK_IS_ZERO.getCode());
+    return packed;
+  }
+
+  /** Packs samples most significant bit first, padding each row to a byte. */
+  private byte[] pack(int[] values, int bits, int width) {
+    int rowBytes = (width * bits + 7) / 8;
+    int height = values.length / width;
+    byte[] packed = new byte[rowBytes * height];
+    for (int row=0; row<height; row++) {
+      long pos = row * rowBytes * 8L;
+      for (int col=0; col<width; col++) {
+        int value = values[row * width + col];
+        for (int b=bits-1; b>=0; b--, pos++) {
+          if (((value >> b) & 1) != 0) {
+            packed[(int) (pos / 8)] |= 0x80 >> (pos % 8);
+          }
+        }
+      }
+    }
+    return packed;
+  }
 
   private byte[] readSavedPlane() throws FormatException, IOException {
     ByteArrayHandle savedData = new ByteArrayHandle();
@@ -175,7 +175,15 @@ public class HamamatsuVMSReader extends FormatReader {
           if (initializedSeries != getCoreIndex() || initializedPlane != no ||
             !file.equals(initializedFile))
           {
+            // only keep complete marker tables, so that switching files
+            // never forces a scan of the rest of the previous file
+            if (initializedFile != null &&
+              service.isRestartMarkerScanComplete())
+            {
+              restartMarkers.put(initializedFile, service.getRestartMarkers());
+            }
             service.close();
+            initializedFile = null;
             if (restartMarkers.containsKey(file)) {
               service.setRestartMarkers(restartMarkers.get(file));
             }
@@ -185,7 +193,6 @@ public class HamamatsuVMSReader extends FormatReader {
             // closing the service will close this file
             RandomAccessInputStream s = new RandomAccessInputStream(file);
             service.initialize(s, tile.width, tile.height);
-            restartMarkers.put(file, service.getRestartMarkers());
 
             initializedSeries = getCoreIndex();
             initializedPlane = no;
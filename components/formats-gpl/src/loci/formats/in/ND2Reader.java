@@ -27,6 +27,7 @@ package loci.formats.in;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Map;
@@ -280,7 +281,7 @@ public class ND2Reader extends SubResolutionFormatReader {
         int destLength = w * pixel;
 
         int p = rowLength * y + x * pixel;
-        byte[] pix = new byte[destLength * h];
+        byte[] pix = split ? borrowBuffer(destLength * h) : buf;
         for (int row=0; row<h; row++) {
           if (p + destLength <= t.length) {
             System.arraycopy(t, p, pix, row * destLength, destLength);
@@ -288,15 +289,15 @@ public class ND2Reader extends SubResolutionFormatReader {
             p += destLength + skip;
           }
           else {
+            Arrays.fill(pix, row * destLength, destLength * h, (byte) 0);
             break;
           }
         }
 
         if (split) {
-          pix = ImageTools.splitChannels(pix, lastChannel, getEffectiveSizeC(),
-            bpp, false, true);
+          splitChannels(pix, buf, bpp);
+          releaseBuffer(pix);
         }
-        System.arraycopy(pix, 0, buf, 0, pix.length);
       }
       else {
         copyPixels(x, y, w, h, bpp, scanlinePad, t, buf, split);
@@ -304,10 +305,11 @@ public class ND2Reader extends SubResolutionFormatReader {
       t = null;
     }
     else if (split && (getSizeC() <= 4 || scanlinePad == 0) && nXFields == 1) {
-      byte[] pix = new byte[(getSizeX() + scanlinePad) * getSizeY() * pixel];
+      byte[] pix =
+        borrowBuffer((getSizeX() + scanlinePad) * getSizeY() * pixel);
       in.read(pix);
       copyPixels(x, y, w, h, bpp, scanlinePad, pix, buf, split);
-      pix = null;
+      releaseBuffer(pix);
     }
     else if (split) {
       // one padding pixel per row total, instead of one padding pixel
@@ -317,7 +319,7 @@ public class ND2Reader extends SubResolutionFormatReader {
 
       long skip = (long) rowLength * y;
       in.seek(in.getFilePointer() + skip);
-      byte[] pix = new byte[destLength * h];
+      byte[] pix = borrowBuffer(destLength * h);
       long pre = (long) x * pixel;
       long post = (long) pixel * (getSizeX() - w - x) + (scanlinePad * bpp);
       for (int row=0; row<h; row++) {
@@ -326,9 +328,8 @@ public class ND2Reader extends SubResolutionFormatReader {
         in.seek(in.getFilePointer() + post);
       }
 
-      pix = ImageTools.splitChannels(pix, lastChannel, getEffectiveSizeC(),
-        bpp, false, true);
-      System.arraycopy(pix, 0, buf, 0, pix.length);
+      splitChannels(pix, buf, bpp);
+      releaseBuffer(pix);
     }
     else {
       // plane is not compressed
@@ -2616,13 +2617,30 @@ public class ND2Reader extends SubResolutionFormatReader {
     byte[] pix, byte[] buf, boolean split)
     throws IOException
   {
+    byte[] channel = null;
     if (split) {
-      pix = ImageTools.splitChannels(pix, lastChannel, getEffectiveSizeC(), bpp,
-        false, true);
+      channel = borrowBuffer(pix.length / getEffectiveSizeC());
+      pix = splitChannels(pix, channel, bpp);
     }
     RandomAccessInputStream s = new RandomAccessInputStream(pix);
     readPlane(s, x, y, w, h, scanlinePad, buf);
     s.close();
+    releaseBuffer(channel);
+  }
+
+  /**
+   * Copies the channel selected by {@link #lastChannel} from the
+   * interleaved array 'pix' into 'dest', returning the array that
+   * holds the channel's pixels.
+   */
+  private byte[] splitChannels(byte[] pix, byte[] dest, int bpp) {
+    int c = getEffectiveSizeC();
+    byte[] channel = ImageTools.splitChannels(pix, dest, lastChannel, c, bpp,
+      false, true, pix.length / c);
+    if (channel != dest) {
+      System.arraycopy(channel, 0, dest, 0, channel.length);
+    }
+    return dest;
   }
 
   /** Remove control and invalid characters from the given string. */
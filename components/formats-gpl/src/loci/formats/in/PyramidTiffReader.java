@@ -63,6 +63,7 @@ public class PyramidTiffReader extends BaseTiffReader {
     equalStrips = true;
     noSubresolutions = true;
     canSeparateSeries = false;
+    canReadCompressedTiles = true;
   }
 
   // -- IFormatReader API methods --
@@ -119,6 +120,15 @@ public class PyramidTiffReader extends BaseTiffReader {
     return super.getOptimalTileHeight();
   }
 
+  // -- Internal MinimalTiffReader API methods --
+
+  /* @see loci.formats.in.MinimalTiffReader#getCompressedTileIFD(int) */
+  @Override
+  protected IFD getCompressedTileIFD(int no) throws FormatException {
+    IFD ifd = ifds.get(getCoreIndex());
+    return TiffParser.canCopyCompressedTiles(ifd) ? ifd : null;
+  }
+
   // -- Internal BaseTiffReader API methods --
 
   /* @see loci.formats.in.BaseTiffReader#initStandardMetadata() */
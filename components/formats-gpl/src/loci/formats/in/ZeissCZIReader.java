@@ -35,6 +35,13 @@ import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import javax.xml.parsers.DocumentBuilder;
 
 import loci.common.ByteArrayHandle;
@@ -49,6 +56,7 @@ import loci.formats.CoreMetadata;
 import loci.formats.FormatException;
 import loci.formats.FormatReader;
 import loci.formats.FormatTools;
+import loci.formats.Instrumentation;
 import loci.formats.MetadataTools;
 import loci.formats.codec.CodecOptions;
 import loci.formats.codec.JPEGCodec;
@@ -97,6 +105,12 @@ public class ZeissCZIReader extends FormatReader {
   public static final boolean TRIM_DIMENSIONS_DEFAULT = false;
   public static final String RELATIVE_POSITIONS_KEY = "zeissczi.relative_positions";
   public static final boolean RELATIVE_POSITIONS_DEFAULT = false;
+  /** Maximum size in MB of decompressed subblocks kept in memory. */
+  public static final String SUBBLOCK_CACHE_KEY = "zeissczi.subblock_cache";
+  public static final int SUBBLOCK_CACHE_DEFAULT = 64;
+  /** Number of threads used to decompress subblocks for one tile. */
+  public static final String DECODE_THREADS_KEY = "zeissczi.decode_threads";
+  public static final int DECODE_THREADS_DEFAULT = 1;
 
   private static final int ALIGNMENT = 32;
   private static final int HEADER_SIZE = 32;
@@ -178,6 +192,12 @@ public class ZeissCZIReader extends FormatReader {
 
   private transient DocumentBuilder parser;
 
+  /** Decompressed subblocks, keyed by file name and position. */
+  private transient LinkedHashMap<String, DecodedBlock> decodedBlocks =
+    new LinkedHashMap<String, DecodedBlock>(16, 0.75f, true);
+  private transient long decodedBytes = 0;
+  private transient ExecutorService decoder;
+
   private ArrayList<Attachment> extraImages = new ArrayList<Attachment>();
   private int[] tileWidth;
   private int[] tileHeight;
@@ -399,6 +419,8 @@ public class ZeissCZIReader extends FormatReader {
           }
         }
       }
+      List<SubBlock> intersectingBlocks = new ArrayList<SubBlock>();
+      List<Region> intersectingTiles = new ArrayList<Region>();
       for (SubBlock plane : planes) {
         if ((plane.coreIndex == currentIndex && plane.planeIndex == no) ||
           (plane.planeIndex == previousChannel && validScanDim))
@@ -427,42 +449,8 @@ public class ZeissCZIReader extends FormatReader {
             tile.y /= res;
 
             if (tile.intersects(image)) {
-              emptyTile = false;
-              compression = plane.directoryEntry.compression;
-              byte[] rawData = new SubBlock(plane).readPixelData();
-              Region intersection = tile.intersection(image);
-              int intersectionX = 0;
-
-              if (tile.x < image.x) {
-                intersectionX = image.x - tile.x;
-              }
-
-              outputCol = (intersection.x - x) * pixel;
-              outputRow = intersection.y - y;
-              if (validScanDim) {
-                outputRow -= tile.y;
-              }
-
-              if (rawData.length < realX * realY * pixel) {
-                realX = rawData.length / (realY * pixel);
-              }
-              else if (rawData.length == (realX + 1) * (realY + 1) * pixel) {
-                realX++;
-                realY++;
-              }
-
-              int rowLen = pixel * (int) Math.min(intersection.width, realX);
-              int outputOffset = outputRow * outputRowLen + outputCol;
-              for (int trow=0; trow<intersection.height; trow++) {
-                int realRow = trow + intersection.y - tile.y;
-                if (validScanDim) {
-                  realRow += tile.y;
-                }
-                int inputOffset = pixel * (realRow * realX + intersectionX);
-                System.arraycopy(
-                  rawData, inputOffset, buf, outputOffset, rowLen);
-                outputOffset += outputRowLen;
-              }
+              intersectingBlocks.add(plane);
+              intersectingTiles.add(tile);
             }
           }
           else {
@@ -493,6 +481,54 @@ public class ZeissCZIReader extends FormatReader {
           }
         }
       }
+
+      // decompress all of the intersecting subblocks before copying,
+      // so that they can be decompressed in parallel
+      DecodedBlock[] decoded = decodeBlocks(intersectingBlocks);
+      for (int i=0; i<decoded.length; i++) {
+        SubBlock plane = intersectingBlocks.get(i);
+        Region tile = intersectingTiles.get(i);
+        DecodedBlock rawData = decoded[i];
+
+        int res = (int) Math.pow(scaleFactor, plane.resolutionIndex);
+        int realX = plane.x / res;
+        int realY = plane.y / res;
+
+        emptyTile = false;
+        compression = plane.directoryEntry.compression;
+        Region intersection = tile.intersection(image);
+        int intersectionX = 0;
+
+        if (tile.x < image.x) {
+          intersectionX = image.x - tile.x;
+        }
+
+        outputCol = (intersection.x - x) * pixel;
+        outputRow = intersection.y - y;
+        if (validScanDim) {
+          outputRow -= tile.y;
+        }
+
+        if (rawData.length() < realX * realY * pixel) {
+          realX = rawData.length() / (realY * pixel);
+        }
+        else if (rawData.length() == (realX + 1) * (realY + 1) * pixel) {
+          realX++;
+          realY++;
+        }
+
+        int rowLen = pixel * (int) Math.min(intersection.width, realX);
+        int outputOffset = outputRow * outputRowLen + outputCol;
+        for (int trow=0; trow<intersection.height; trow++) {
+          int realRow = trow + intersection.y - tile.y;
+          if (validScanDim) {
+            realRow += tile.y;
+          }
+          int inputOffset = pixel * (realRow * realX + intersectionX);
+          rawData.copy(inputOffset, buf, outputOffset, rowLen);
+          outputOffset += outputRowLen;
+        }
+      }
     } finally {
     }
 
@@ -572,6 +608,12 @@ public class ZeissCZIReader extends FormatReader {
       phaseLabels = null;
       indexIntoPlanes.clear();
       parser = null;
+      decodedBlocks.clear();
+      decodedBytes = 0;
+      if (decoder != null) {
+        decoder.shutdown();
+        decoder = null;
+      }
       extraImages.clear();
       maxResolution = 0;
       tileWidth = null;
@@ -628,6 +670,8 @@ public class ZeissCZIReader extends FormatReader {
     optionsList.add(INCLUDE_ATTACHMENTS_KEY);
     optionsList.add(TRIM_DIMENSIONS_KEY);
     optionsList.add(RELATIVE_POSITIONS_KEY);
+    optionsList.add(SUBBLOCK_CACHE_KEY);
+    optionsList.add(DECODE_THREADS_KEY);
     return optionsList;
   }
 
@@ -1780,8 +1824,149 @@ public class ZeissCZIReader extends FormatReader {
     return RELATIVE_POSITIONS_DEFAULT;
   }
 
+  /**
+   * @return the maximum number of bytes of decompressed subblocks to cache;
+   *         0 disables the cache
+   */
+  public long getSubBlockCacheSize() {
+    MetadataOptions options = getMetadataOptions();
+    if (options instanceof DynamicMetadataOptions) {
+      Integer size = ((DynamicMetadataOptions) options).getInteger(
+        SUBBLOCK_CACHE_KEY, SUBBLOCK_CACHE_DEFAULT);
+      if (size != null) {
+        return Math.max(size, 0) * 1024L * 1024L;
+      }
+    }
+    return SUBBLOCK_CACHE_DEFAULT * 1024L * 1024L;
+  }
+
+  /** @return the number of threads used to decompress subblocks */
+  public int getDecodeThreads() {
+    MetadataOptions options = getMetadataOptions();
+    if (options instanceof DynamicMetadataOptions) {
+      Integer threads = ((DynamicMetadataOptions) options).getInteger(
+        DECODE_THREADS_KEY, DECODE_THREADS_DEFAULT);
+      if (threads != null) {
+        return threads;
+      }
+    }
+    return DECODE_THREADS_DEFAULT;
+  }
+
   // -- Helper methods --
 
+  /**
+   * Decompress the given subblocks, using the subblock cache and the
+   * decoder pool where possible.
+   */
+  private DecodedBlock[] decodeBlocks(List<SubBlock> blocks)
+    throws FormatException, IOException
+  {
+    DecodedBlock[] decoded = new DecodedBlock[blocks.size()];
+    List<Integer> missing = new ArrayList<Integer>();
+    boolean instrumented =
+      Instrumentation.isEnabled() && getSubBlockCacheSize() > 0;
+    for (int i=0; i<decoded.length; i++) {
+      decoded[i] = decodedBlocks.get(getBlockKey(blocks.get(i)));
+      if (decoded[i] == null) {
+        missing.add(i);
+      }
+      if (instrumented) {
+        Instrumentation.cacheAccessed("ZeissCZIReader.subblocks",
+          decoded[i] != null);
+      }
+    }
+
+    ExecutorService pool = missing.size() > 1 ? getDecoder() : null;
+    if (pool == null) {
+      for (Integer i : missing) {
+        decoded[i] = new SubBlock(blocks.get(i)).decode();
+      }
+    }
+    else {
+      List<Future<DecodedBlock>> results =
+        new ArrayList<Future<DecodedBlock>>();
+      for (Integer i : missing) {
+        final SubBlock block = new SubBlock(blocks.get(i));
+        results.add(pool.submit(new Callable<DecodedBlock>() {
+          @Override
+          public DecodedBlock call() throws FormatException, IOException {
+            return block.decode();
+          }
+        }));
+      }
+      try {
+        for (int i=0; i<missing.size(); i++) {
+          decoded[missing.get(i)] = results.get(i).get();
+        }
+      }
+      catch (InterruptedException e) {
+        throw new IOException("Interrupted while decoding subblocks", e);
+      }
+      catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof FormatException) {
+          throw (FormatException) cause;
+        }
+        if (cause instanceof IOException) {
+          throw (IOException) cause;
+        }
+        throw new FormatException("Could not decode subblock", cause);
+      }
+      finally {
+        for (Future<DecodedBlock> result : results) {
+          result.cancel(true);
+        }
+      }
+    }
+
+    for (Integer i : missing) {
+      cacheBlock(blocks.get(i), decoded[i]);
+    }
+    return decoded;
+  }
+
+  /**
+   * Add a decompressed subblock to the cache, evicting the least recently
+   * used subblocks as needed.  Uncompressed subblocks are not cached.
+   */
+  private void cacheBlock(SubBlock block, DecodedBlock decoded) {
+    long maxBytes = getSubBlockCacheSize();
+    if (block.directoryEntry.compression == UNCOMPRESSED ||
+      decoded.length() > maxBytes)
+    {
+      return;
+    }
+    DecodedBlock previous = decodedBlocks.put(getBlockKey(block), decoded);
+    if (previous != null) {
+      decodedBytes -= previous.length();
+    }
+    decodedBytes += decoded.length();
+    Iterator<DecodedBlock> eldest = decodedBlocks.values().iterator();
+    while (decodedBytes > maxBytes && eldest.hasNext()) {
+      decodedBytes -= eldest.next().length();
+      eldest.remove();
+    }
+  }
+
+  private String getBlockKey(SubBlock block) {
+    return block.filename + ":" + block.startingPosition;
+  }
+
+  /**
+   * @return the pool used to decompress subblocks, or null if subblocks
+   *  should be decompressed on the calling thread
+   */
+  private synchronized ExecutorService getDecoder() {
+    if (decoder == null) {
+      int threads = getDecodeThreads();
+      if (threads > 1) {
+        decoder = Executors.newFixedThreadPool(threads);
+      }
+    }
+    return decoder;
+  }
+
   private void readSegments(String id) throws IOException {
     if (in != null) {
       in.close();
@@ -4098,10 +4283,9 @@ public class ZeissCZIReader extends FormatReader {
     }
 
     public byte[] readPixelData(RandomAccessInputStream s, Region tile, byte[] buf) throws FormatException, IOException {
-      s.order(isLittleEndian());
-      s.seek(dataOffset);
-
       if (directoryEntry.compression == UNCOMPRESSED) {
+        s.order(isLittleEndian());
+        s.seek(dataOffset);
         if (buf == null) {
           buf = new byte[(int) dataSize];
         }
@@ -4114,8 +4298,44 @@ public class ZeissCZIReader extends FormatReader {
         return buf;
       }
 
-      byte[] data = new byte[(int) dataSize];
-      s.read(data);
+      byte[] data = decode(s).unpack();
+      if (buf != null && buf.length >= data.length) {
+        System.arraycopy(data, 0, buf, 0, data.length);
+        data = buf;
+      }
+      return data;
+    }
+
+    /**
+     * Reads and decompresses the pixel data, using a new stream.
+     * @see #decode(RandomAccessInputStream)
+     */
+    public DecodedBlock decode() throws FormatException, IOException {
+      try (RandomAccessInputStream s = new RandomAccessInputStream(filename, (int) dataSize)) {
+        return decode(s);
+      }
+    }
+
+    /**
+     * Reads and decompresses the pixel data.  ZSTD_1 data that uses
+     * high/low byte packing is not unpacked, so that callers can unpack
+     * only the bytes they need.
+     */
+    public DecodedBlock decode(RandomAccessInputStream s) throws FormatException, IOException {
+      s.order(isLittleEndian());
+      s.seek(dataOffset);
+
+      if (directoryEntry.compression == UNCOMPRESSED) {
+        byte[] data = new byte[(int) dataSize];
+        s.readFully(data);
+        return new DecodedBlock(data, false);
+      }
+
+      // safe to call from decoder threads, as the buffer pool is shared
+      byte[] compressed = borrowBuffer((int) dataSize);
+      s.read(compressed);
+      byte[] data = compressed;
+      boolean highLowUnpacking = false;
 
       int bytesPerPixel = FormatTools.getBytesPerPixel(getPixelType());
       CodecOptions options = new CodecOptions();
@@ -4154,7 +4374,6 @@ public class ZeissCZIReader extends FormatReader {
           data = new ZstdCodec().decompress(data);
           break;
         case ZSTD_1:
-          boolean highLowUnpacking = false;
           int pointer = 0;
           try (RandomAccessInputStream stream = new RandomAccessInputStream(data)) {
             int sizeOfHeader = readVarint(stream);
@@ -4174,21 +4393,11 @@ public class ZeissCZIReader extends FormatReader {
             pointer = (int) stream.getFilePointer();
           }
 
-          byte[] decoded =  new ZstdCodec().decompress(data, pointer, data.length - pointer);
+          data = new ZstdCodec().decompress(data, pointer, data.length - pointer);
           // ZSTD_1 implies high/low byte unpacking, so it would be weird
           // if this flag were unset
-          if (highLowUnpacking) {
-            data = new byte[decoded.length];
-            int secondHalf = decoded.length / 2;
-            for (int i=0; i<decoded.length; i++) {
-              boolean even = i % 2 == 0;
-              int offset = i / 2;
-              data[i] = even ? decoded[offset] : decoded[secondHalf + offset];
-            }
-          }
-          else {
+          if (!highLowUnpacking) {
             LOGGER.debug("ZSTD-1 compression used, but no high/low byte unpacking");
-            data = decoded;
           }
 
           break;
@@ -4213,11 +4422,10 @@ public class ZeissCZIReader extends FormatReader {
           data = decode12BitCamera(data, options.maxBytes);
           break;
       }
-      if (buf != null && buf.length >= data.length) {
-        System.arraycopy(data, 0, buf, 0, data.length);
-        return buf;
+      if (data != compressed) {
+        releaseBuffer(compressed);
       }
-      return data;
+      return new DecodedBlock(data, highLowUnpacking);
     }
 
     // -- Helper methods --
@@ -4531,6 +4739,56 @@ public class ZeissCZIReader extends FormatReader {
     }
   }
 
+  /** Decompressed pixel data from a single subblock. */
+  static class DecodedBlock {
+    /** The decompressed bytes. */
+    public final byte[] data;
+
+    /**
+     * True if all low bytes are stored before all high bytes,
+     * as for ZSTD_1 compression.
+     */
+    public final boolean highLowPacked;
+
+    public DecodedBlock(byte[] data, boolean highLowPacked) {
+      this.data = data;
+      this.highLowPacked = highLowPacked;
+    }
+
+    /** @return the length in bytes of the unpacked data */
+    public int length() {
+      return data.length;
+    }
+
+    /**
+     * Copy unpacked bytes to the given array.  Only the requested bytes
+     * are unpacked if the data is high/low packed.
+     */
+    public void copy(int offset, byte[] dest, int destOffset, int len) {
+      if (!highLowPacked) {
+        System.arraycopy(data, offset, dest, destOffset, len);
+        return;
+      }
+      int secondHalf = data.length / 2;
+      for (int i=0; i<len; i++) {
+        int index = offset + i;
+        int packed = index / 2;
+        dest[destOffset + i] =
+          index % 2 == 0 ? data[packed] : data[secondHalf + packed];
+      }
+    }
+
+    /** @return all of the unpacked bytes */
+    public byte[] unpack() {
+      if (!highLowPacked) {
+        return data;
+      }
+      byte[] unpacked = new byte[data.length];
+      copy(0, unpacked, 0, data.length);
+      return unpacked;
+    }
+  }
+
   static class DimensionEntry {
     public String dimension;
     public int start;
@@ -0,0 +1,381 @@
+/*
+ * #%L
+ * OME Bio-Formats package for reading and converting biological file formats.
+ * %%
+ * Copyright (C) 2005 - 2017 Open Microscopy Environment:
+ *   - Board of Regents of the University of Wisconsin-Madison
+ *   - Glencoe Software, Inc.
+ *   - University of Dundee
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package loci.formats.utests.in;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import io.airlift.compress.zstd.ZstdCompressor;
+
+import loci.formats.FormatTools;
+import loci.formats.Instrumentation;
+import loci.formats.ReaderMetrics;
+import loci.formats.in.DynamicMetadataOptions;
+import loci.formats.in.ZeissCZIReader;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for the subblock cache and parallel decoding in
+ * {@link ZeissCZIReader}, using a synthetic mosaic of ZSTD-1 compressed
+ * subblocks.
+ */
+public class ZeissCZIReaderTest {
+
+  private static final int TILE_WIDTH = 512;
+  private static final int TILE_HEIGHT = 384;
+  private static final int TILE_ROWS = 2;
+  private static final int TILE_COLUMNS = 2;
+  private static final int SIZE_T = 2;
+
+  private static final String SUBBLOCK_CACHE = "ZeissCZIReader.subblocks";
+
+  private File dir;
+  private String id;
+
+  @BeforeClass
+  public void setUp() throws IOException {
+    dir = Files.createTempDirectory("ZeissCZIReaderTest").toFile();
+    File file = new File(dir, "mosaic.czi");
+    Files.write(file.toPath(), createMosaic());
+    id = file.getAbsolutePath();
+  }
+
+  @AfterClass
+  public void tearDown() {
+    File[] files = dir.listFiles();
+    if (files != null) {
+      for (File f : files) {
+        f.delete();
+      }
+    }
+    dir.delete();
+  }
+
+  @Test
+  public void testDimensions() throws Exception {
+    ZeissCZIReader reader = openReader(0, 1);
+    try {
+      assertEquals(1, reader.getSeriesCount());
+      assertEquals(TILE_WIDTH * TILE_COLUMNS, reader.getSizeX());
+      assertEquals(TILE_HEIGHT * TILE_ROWS, reader.getSizeY());
+      assertEquals(SIZE_T, reader.getImageCount());
+      assertEquals(FormatTools.UINT16, reader.getPixelType());
+    }
+    finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testSerialPlanes() throws Exception {
+    ZeissCZIReader reader = openReader(0, 1);
+    try {
+      for (int t=0; t<SIZE_T; t++) {
+        assertPixels(reader.openBytes(t), t, 0, 0,
+          reader.getSizeX(), reader.getSizeY());
+      }
+    }
+    finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * Regions that start and end at odd byte offsets within a subblock
+   * exercise partial unpacking of high/low packed data.
+   */
+  @Test
+  public void testSerialRegions() throws Exception {
+    ZeissCZIReader reader = openReader(0, 1);
+    try {
+      int[][] regions = {
+        {0, 0, 1, 1},
+        {3, 5, 17, 9},
+        {TILE_WIDTH - 7, TILE_HEIGHT - 3, 15, 7},
+        {TILE_WIDTH + 1, 1, TILE_WIDTH - 2, 2},
+        {1, TILE_HEIGHT * TILE_ROWS - 2, TILE_WIDTH * TILE_COLUMNS - 1, 2},
+      };
+      for (int[] r : regions) {
+        assertPixels(reader.openBytes(1, r[0], r[1], r[2], r[3]),
+          1, r[0], r[1], r[2], r[3]);
+      }
+    }
+    finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testCachedMatchesSerial() throws Exception {
+    assertSameBytes(openReader(0, 1), openReader(64, 1));
+  }
+
+  @Test
+  public void testParallelMatchesSerial() throws Exception {
+    assertSameBytes(openReader(0, 1), openReader(0, 4));
+  }
+
+  @Test
+  public void testCachedParallelMatchesSerial() throws Exception {
+    assertSameBytes(openReader(0, 1), openReader(64, 4));
+  }
+
+  @Test
+  public void testCacheHits() throws Exception {
+    ReaderMetrics metrics = new ReaderMetrics();
+    Instrumentation.addListener(metrics);
+    ZeissCZIReader reader = openReader(64, 1);
+    try {
+      reader.openBytes(0, 0, 0, 16, 16);
+      assertEquals(Long.valueOf(1), metrics.getCacheMisses().get(SUBBLOCK_CACHE));
+      assertEquals(null, metrics.getCacheHits().get(SUBBLOCK_CACHE));
+
+      // a different region of the same subblock is read from the cache
+      assertPixels(reader.openBytes(0, 33, 17, 5, 3), 0, 33, 17, 5, 3);
+      assertEquals(Long.valueOf(1), metrics.getCacheMisses().get(SUBBLOCK_CACHE));
+      assertEquals(Long.valueOf(1), metrics.getCacheHits().get(SUBBLOCK_CACHE));
+
+      // the cache is emptied when the file is closed
+      reader.close();
+      reader.setId(id);
+      reader.openBytes(0, 0, 0, 16, 16);
+      assertEquals(Long.valueOf(2), metrics.getCacheMisses().get(SUBBLOCK_CACHE));
+    }
+    finally {
+      reader.close();
+      Instrumentation.removeListener(metrics);
+    }
+  }
+
+  /**
+   * A 1 MB cache holds two subblocks, so reading a third evicts the least
+   * recently used one.
+   */
+  @Test
+  public void testCacheEviction() throws Exception {
+    assertTrue(2L * TILE_WIDTH * TILE_HEIGHT * 2 <= 1024 * 1024);
+    assertTrue(3L * TILE_WIDTH * TILE_HEIGHT * 2 > 1024 * 1024);
+
+    ReaderMetrics metrics = new ReaderMetrics();
+    Instrumentation.addListener(metrics);
+    ZeissCZIReader reader = openReader(1, 1);
+    try {
+      // top left, top right, then top left again: one hit
+      openTile(reader, 0, 0);
+      openTile(reader, 0, 1);
+      openTile(reader, 0, 0);
+      assertEquals(Long.valueOf(2), metrics.getCacheMisses().get(SUBBLOCK_CACHE));
+      assertEquals(Long.valueOf(1), metrics.getCacheHits().get(SUBBLOCK_CACHE));
+
+      // bottom left evicts top right, which was used least recently
+      openTile(reader, 1, 0);
+      openTile(reader, 0, 0);
+      assertEquals(Long.valueOf(3), metrics.getCacheMisses().get(SUBBLOCK_CACHE));
+      assertEquals(Long.valueOf(2), metrics.getCacheHits().get(SUBBLOCK_CACHE));
+      openTile(reader, 0, 1);
+      assertEquals(Long.valueOf(4), metrics.getCacheMisses().get(SUBBLOCK_CACHE));
+      assertEquals(Long.valueOf(2), metrics.getCacheHits().get(SUBBLOCK_CACHE));
+    }
+    finally {
+      reader.close();
+      Instrumentation.removeListener(metrics);
+    }
+  }
+
+  // -- Helper methods --
+
+  private ZeissCZIReader openReader(int cacheSize, int threads)
+    throws Exception
+  {
+    DynamicMetadataOptions options = new DynamicMetadataOptions();
+    options.set(ZeissCZIReader.SUBBLOCK_CACHE_KEY, String.valueOf(cacheSize));
+    options.set(ZeissCZIReader.DECODE_THREADS_KEY, String.valueOf(threads));
+    ZeissCZIReader reader = new ZeissCZIReader();
+    reader.setMetadataOptions(options);
+    reader.setId(id);
+    return reader;
+  }
+
+  private void openTile(ZeissCZIReader reader, int row, int col)
+    throws Exception
+  {
+    int x = col * TILE_WIDTH + 1;
+    int y = row * TILE_HEIGHT + 1;
+    assertPixels(reader.openBytes(0, x, y, 3, 3), 0, x, y, 3, 3);
+  }
+
+  /**
+   * Read the same planes and regions from both readers, and check that the
+   * results are identical.  Both readers are closed.
+   */
+  private void assertSameBytes(ZeissCZIReader expected,
+    ZeissCZIReader actual) throws Exception
+  {
+    try {
+      int[][] regions = {
+        {0, 0, expected.getSizeX(), expected.getSizeY()},
+        {TILE_WIDTH - 5, TILE_HEIGHT - 5, 11, 11},
+        {7, 3, 21, 2},
+        {TILE_WIDTH + 3, 0, 1, TILE_HEIGHT * TILE_ROWS},
+        {0, 0, expected.getSizeX(), expected.getSizeY()},
+      };
+      for (int t=0; t<SIZE_T; t++) {
+        for (int[] r : regions) {
+          byte[] a = expected.openBytes(t, r[0], r[1], r[2], r[3]);
+          byte[] b = actual.openBytes(t, r[0], r[1], r[2], r[3]);
+          assertTrue(Arrays.equals(a, b));
+        }
+      }
+    }
+    finally {
+      expected.close();
+      actual.close();
+    }
+  }
+
+  private static void assertPixels(byte[] buf, int t, int x, int y,
+    int w, int h)
+  {
+    assertEquals(w * h * 2, buf.length);
+    ByteBuffer pixels = ByteBuffer.wrap(buf).order(ByteOrder.LITTLE_ENDIAN);
+    for (int row=0; row<h; row++) {
+      for (int col=0; col<w; col++) {
+        int value = pixels.getShort() & 0xffff;
+        assertEquals(getPixel(t, x + col, y + row), value);
+      }
+    }
+  }
+
+  private static int getPixel(int t, int x, int y) {
+    return (x * 37 + y * 101 + t * 4099) & 0xffff;
+  }
+
+  /**
+   * Create a CZI file containing one ZSTD-1 compressed subblock for
+   * each tile and timepoint, with no metadata or directory segments.
+   */
+  private static byte[] createMosaic() {
+    ByteBuffer file = ByteBuffer.allocate(16 * 1024 * 1024);
+    file.order(ByteOrder.LITTLE_ENDIAN);
+
+    // file header segment
+    int next = startSegment(file, "ZISRAWFILE", 512);
+    file.putInt(1); // major version
+    file.putInt(0); // minor version
+    file.position(next);
+
+    ZstdCompressor compressor = new ZstdCompressor();
+    int tile = 0;
+    for (int t=0; t<SIZE_T; t++) {
+      for (int row=0; row<TILE_ROWS; row++) {
+        for (int col=0; col<TILE_COLUMNS; col++, tile++) {
+          int x = col * TILE_WIDTH;
+          int y = row * TILE_HEIGHT;
+
+          // store all low bytes, followed by all high bytes
+          int pixelCount = TILE_WIDTH * TILE_HEIGHT;
+          byte[] packed = new byte[pixelCount * 2];
+          for (int i=0; i<pixelCount; i++) {
+            int value = getPixel(t, x + i % TILE_WIDTH, y + i / TILE_WIDTH);
+            packed[i] = (byte) value;
+            packed[pixelCount + i] = (byte) (value >> 8);
+          }
+          byte[] zstd =
+            new byte[compressor.maxCompressedLength(packed.length)];
+          int zstdLength = compressor.compress(
+            packed, 0, packed.length, zstd, 0, zstd.length);
+
+          // 3 byte header: header size, chunk ID 1, high/low packing
+          int dataSize = zstdLength + 3;
+          next = startSegment(file, "ZISRAWSUBBLOCK", 256 + dataSize);
+          int entryStart = file.position();
+          file.putInt(0); // metadata size
+          file.putInt(0); // attachment size
+          file.putLong(dataSize);
+
+          // directory entry
+          file.put("DV".getBytes());
+          file.putInt(1); // GRAY16
+          file.putLong(0); // file position
+          file.putInt(0); // file part
+          file.putInt(6); // ZSTD_1
+          file.put((byte) 0); // pyramid type
+          file.put(new byte[5]);
+          file.putInt(5);
+          putDimension(file, "X", x, TILE_WIDTH);
+          putDimension(file, "Y", y, TILE_HEIGHT);
+          putDimension(file, "C", 0, 1);
+          putDimension(file, "T", t, 1);
+          putDimension(file, "M", tile % (TILE_ROWS * TILE_COLUMNS), 1);
+          file.position(entryStart + 256);
+
+          file.put((byte) 3);
+          file.put((byte) 1);
+          file.put((byte) 1);
+          file.put(zstd, 0, zstdLength);
+          file.position(next);
+        }
+      }
+    }
+    return Arrays.copyOf(file.array(), file.position());
+  }
+
+  /**
+   * Write a segment header.
+   * @return the position at which the next segment starts
+   */
+  private static int startSegment(ByteBuffer file, String segmentID,
+    int usedSize)
+  {
+    long allocatedSize = usedSize + (32 - usedSize % 32) % 32;
+    int next = (int) (file.position() + 32 + allocatedSize);
+    file.put(Arrays.copyOf(segmentID.getBytes(), 16));
+    file.putLong(allocatedSize);
+    file.putLong(usedSize);
+    return next;
+  }
+
+  private static void putDimension(ByteBuffer file, String dimension,
+    int start, int size)
+  {
+    file.put(Arrays.copyOf(dimension.getBytes(), 4));
+    file.putInt(start);
+    file.putInt(size);
+    file.putFloat(start);
+    file.putInt(size);
+  }
+
+}